@@ -19,6 +19,9 @@ import akka.NotUsed;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
 import akka.http.javadsl.model.ContentType;
 import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpHeader;
@@ -53,6 +56,7 @@ import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import scala.compat.java8.FutureConverters;
@@ -63,6 +67,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -80,6 +85,7 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
      * @param metrics Instance of <code>PeriodicMetrics</code>.
      * @param healthCheckPath The path for the health check.
      * @param statusPath The path for the status.
+     * @param parallelism The number of requests processed concurrently per connection.
      * @param supplementalRoutes List of supplemental routes in priority order.
      */
     public Routes(
@@ -87,11 +93,13 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
             final PeriodicMetrics metrics,
             final String healthCheckPath,
             final String statusPath,
+            final int parallelism,
             final List<SupplementalRoutes> supplementalRoutes) {
         _actorSystem = actorSystem;
         _metrics = metrics;
         _healthCheckPath = healthCheckPath;
         _statusPath = statusPath;
+        _parallelism = parallelism;
         _supplementalRoutes = supplementalRoutes;
     }
 
@@ -102,7 +110,7 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
      */
     public Flow<HttpRequest, HttpResponse, NotUsed> flow() {
         return Flow.<HttpRequest>create()
-                .mapAsync(1, this);
+                .mapAsync(_parallelism, this);
     }
 
     /**
@@ -196,9 +204,7 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
     }
 
     private CompletionStage<HttpResponse> dispatchHttpRequest(final HttpRequest request, final String actorName) {
-        final Future<ActorRef> refFuture = _actorSystem.actorSelection(actorName)
-                .resolveOne(FiniteDuration.create(1, TimeUnit.SECONDS));
-        return FutureConverters.toJava(refFuture).thenCompose(
+        return resolve(actorName).thenCompose(
                 ref -> {
                     final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
                     ref.tell(new RequestReply(request, response), ActorRef.noSender());
@@ -209,6 +215,23 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
                 .exceptionally(err -> HttpResponse.create().withStatus(404));
     }
 
+    private CompletionStage<ActorRef> resolve(final String actorPath) {
+        final ActorRef cachedRef = _actorRefs.get(actorPath);
+        if (cachedRef != null) {
+            return CompletableFuture.completedFuture(cachedRef);
+        }
+        final Future<ActorRef> refFuture = _actorSystem.actorSelection(actorPath)
+                .resolveOne(FiniteDuration.create(1, TimeUnit.SECONDS));
+        return FutureConverters.toJava(refFuture).thenApply(
+                ref -> {
+                    if (_actorRefs.putIfAbsent(actorPath, ref) == null) {
+                        // Forget the reference once the actor stops (e.g. when its pipeline is reloaded)
+                        _actorSystem.actorOf(ActorRefEvictor.props(_actorRefs, actorPath, ref));
+                    }
+                    return ref;
+                });
+    }
+
     private CompletionStage<HttpResponse> getHttpResponseForTelemetry(
             final HttpRequest request,
             final MessageProcessorsFactory messageProcessorsFactory) {
@@ -273,8 +296,10 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
     private final PeriodicMetrics _metrics;
     private final String _healthCheckPath;
     private final String _statusPath;
+    private final int _parallelism;
     @SuppressFBWarnings("SE_BAD_FIELD")
     private final List<SupplementalRoutes> _supplementalRoutes;
+    private final ConcurrentMap<String, ActorRef> _actorRefs = Maps.newConcurrentMap();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Routes.class);
 
@@ -318,4 +343,58 @@ public final class Routes implements Function<HttpRequest, CompletionStage<HttpR
         STATUS_JSON = statusJson;
     }
 
+    /**
+     * Removes a cached actor reference once the actor terminates.
+     */
+    /* package private */ static final class ActorRefEvictor extends UntypedActor {
+        /**
+         * Creates a {@link Props} for this actor.
+         *
+         * @param actorRefs The cached actor references by path.
+         * @param actorPath The path of the cached actor.
+         * @param actorRef The cached actor reference.
+         * @return A new {@link Props}
+         */
+        /* package private */ static Props props(
+                final ConcurrentMap<String, ActorRef> actorRefs,
+                final String actorPath,
+                final ActorRef actorRef) {
+            return Props.create(ActorRefEvictor.class, actorRefs, actorPath, actorRef);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void preStart() {
+            // NOTE: Watching an actor which already terminated delivers Terminated immediately
+            context().watch(_actorRef);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onReceive(final Object message) throws Exception {
+            if (message instanceof Terminated) {
+                _actorRefs.remove(_actorPath, _actorRef);
+                context().stop(self());
+            } else {
+                unhandled(message);
+            }
+        }
+
+        /* package private */ ActorRefEvictor(
+                final ConcurrentMap<String, ActorRef> actorRefs,
+                final String actorPath,
+                final ActorRef actorRef) {
+            _actorRefs = actorRefs;
+            _actorPath = actorPath;
+            _actorRef = actorRef;
+        }
+
+        private final ConcurrentMap<String, ActorRef> _actorRefs;
+        private final String _actorPath;
+        private final ActorRef _actorRef;
+    }
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.parsers;
+
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for <code>Parser</code> implementations which can also parse the
+ * remaining bytes of a buffer in place. This allows sources which read into
+ * a reused buffer to hand each entity to the parser without copying it.
+ *
+ * @param <T> The data type of the result.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public interface BufferParser<T> extends Parser<T, byte[]> {
+
+    /**
+     * Create a <code>T</code> from the remaining bytes of a buffer. The buffer
+     * may be reused by the caller once this method returns, so the result
+     * must not retain it.
+     *
+     * @param data The buffer containing the serialized representation.
+     * @return Instance of <code>T</code> from the data.
+     * @throws ParsingException If parsing of the data fails for any reason.
+     */
+    T parse(ByteBuffer data) throws ParsingException;
+}
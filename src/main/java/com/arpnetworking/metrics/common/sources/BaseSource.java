@@ -20,9 +20,12 @@ import com.arpnetworking.commons.observer.ObservableDelegate;
 import com.arpnetworking.commons.observer.Observer;
 import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.utility.Backlogged;
 import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 
 /**
@@ -39,6 +42,9 @@ public abstract class BaseSource implements Source {
     @Override
     public void attach(final Observer observer) {
         _observable.attach(observer);
+        if (observer instanceof Backlogged) {
+            _backlogged.add((Backlogged) observer);
+        }
     }
 
     /**
@@ -47,6 +53,9 @@ public abstract class BaseSource implements Source {
     @Override
     public void detach(final Observer observer) {
         _observable.detach(observer);
+        if (observer instanceof Backlogged) {
+            _backlogged.remove(observer);
+        }
     }
 
     /**
@@ -58,6 +67,20 @@ public abstract class BaseSource implements Source {
         _observable.notify(this, event);
     }
 
+    /**
+     * The largest backlog of the attached <code>Observer</code> instances
+     * which are <code>Backlogged</code>, or zero if there are none.
+     *
+     * @return The largest backlog of the attached observers.
+     */
+    protected long getBacklog() {
+        long backlog = 0;
+        for (final Backlogged backlogged : _backlogged) {
+            backlog = Math.max(backlog, backlogged.getBacklog());
+        }
+        return backlog;
+    }
+
     public String getName() {
         return _name;
     }
@@ -97,6 +120,7 @@ public abstract class BaseSource implements Source {
 
     private final String _name;
     private final ObservableDelegate _observable = ObservableDelegate.newInstance();
+    private final List<Backlogged> _backlogged = new CopyOnWriteArrayList<>();
 
     /**
      * Base <code>Builder</code> implementation.
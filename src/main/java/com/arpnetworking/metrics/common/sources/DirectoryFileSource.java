@@ -0,0 +1,678 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.sources;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.common.parsers.Parser;
+import com.arpnetworking.metrics.common.tailer.FilePositionStore;
+import com.arpnetworking.metrics.common.tailer.InitialPosition;
+import com.arpnetworking.metrics.common.tailer.LogPositionStore;
+import com.arpnetworking.metrics.common.tailer.PositionStore;
+import com.arpnetworking.metrics.common.tailer.StatefulTailer;
+import com.arpnetworking.metrics.common.tailer.Tailer;
+import com.arpnetworking.metrics.common.tailer.TailerListener;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotEmpty;
+import net.sf.oval.constraint.NotNull;
+import org.apache.commons.io.IOUtils;
+import org.joda.time.Duration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Produce instances of <code>T</code> from every file in a directory matching
+ * a glob. Files are discovered as they are created using a
+ * <code>WatchService</code> on the directory and by periodically scanning it,
+ * which also covers file systems without watch support. Each file is tailed
+ * by its own <code>StatefulTailer</code>, but rather than a thread per file
+ * the tailers are polled from a shared pool of threads. A tailer which read
+ * data is polled again after the other waiting tailers and each poll reads a
+ * bounded amount of data, so a busy file does not starve the others. The
+ * read positions of all files are kept in a single <code>PositionStore</code>
+ * keyed by a hash of the first bytes of each file and its file system key
+ * (e.g. inode), so files with the same header have their own positions
+ * while a file renamed by rotation and discovered again keeps its position.
+ *
+ * @param <T> The data type to parse from the <code>Source</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class DirectoryFileSource<T> extends BaseSource {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        _watchService = createWatchService();
+        scan(_initialPosition);
+        _scannerExecutor.execute(this::scanLoop);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        _isRunning = false;
+        if (_watchService.isPresent()) {
+            IOUtils.closeQuietly(_watchService.get());
+        }
+        _scannerExecutor.shutdownNow();
+        for (final TailedFile tailedFile : _files.values()) {
+            tailedFile.getTailer().stop();
+        }
+        _tailerExecutor.shutdown();
+        try {
+            _scannerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            _tailerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            LOGGER.warn()
+                    .setMessage("Unable to shutdown tailer executor")
+                    .setThrowable(e)
+                    .log();
+        }
+
+        // Polling a stopped tailer releases its file
+        for (final TailedFile tailedFile : _files.values()) {
+            tailedFile.getTailer().poll();
+        }
+        _files.clear();
+        IOUtils.closeQuietly(_positionStore);
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("super", super.toLogValue())
+                .put("directory", _directory)
+                .put("glob", _glob)
+                .put("maximumDepth", _maximumDepth)
+                .put("parser", _parser)
+                .put("batchSize", _batchSize)
+                .put("threads", _tailerExecutor.getCorePoolSize())
+                .put("watching", _watchService.isPresent())
+                .put("files", _files.keySet())
+                .put("positionStore", _positionStore)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private Optional<WatchService> createWatchService() {
+        try {
+            final WatchService watchService = _directory.getFileSystem().newWatchService();
+            _directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            return Optional.of(watchService);
+        } catch (final IOException | UnsupportedOperationException e) {
+            _logger.warn()
+                    .setMessage("Unable to watch directory; scanning only")
+                    .addData("source", this)
+                    .setThrowable(e)
+                    .log();
+            return Optional.empty();
+        }
+    }
+
+    private void scanLoop() {
+        long lastScan = System.currentTimeMillis();
+        while (_isRunning) {
+            try {
+                if (_watchService.isPresent()) {
+                    final WatchKey key = _watchService.get().poll(_scanInterval.getMillis(), TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        handleEvents(key);
+                    }
+                } else {
+                    Thread.sleep(_scanInterval.getMillis());
+                }
+                // Scan periodically even while events arrive in case any were lost
+                if (System.currentTimeMillis() - lastScan >= _scanInterval.getMillis()) {
+                    lastScan = System.currentTimeMillis();
+                    scan(InitialPosition.START);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final ClosedWatchServiceException e) {
+                return;
+                // CHECKSTYLE.OFF: IllegalCatch - Keep scanning until stopped
+            } catch (final RuntimeException e) {
+                // CHECKSTYLE.ON: IllegalCatch
+                _logger.error()
+                        .setMessage("Failed to scan directory")
+                        .addData("source", this)
+                        .setThrowable(e)
+                        .log();
+            }
+        }
+    }
+
+    private void handleEvents(final WatchKey key) {
+        boolean rescan = false;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.ENTRY_MODIFY.equals(event.kind())) {
+                // Read modified files without waiting for the read interval
+                final TailedFile tailedFile = _files.get(_directory.resolve((Path) event.context()));
+                if (tailedFile != null) {
+                    tailedFile.wake();
+                } else {
+                    rescan = true;
+                }
+            } else {
+                // Created files and lost events require a scan
+                rescan = true;
+            }
+        }
+        key.reset();
+        if (rescan) {
+            scan(InitialPosition.START);
+        }
+    }
+
+    private synchronized void scan(final InitialPosition initialPosition) {
+        if (!_isRunning) {
+            return;
+        }
+        final Set<Path> matches;
+        try (final Stream<Path> paths = Files.walk(_directory, _maximumDepth)) {
+            matches = paths
+                    .filter(path -> _matcher.matches(_directory.relativize(path)))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toSet());
+        } catch (final IOException e) {
+            _logger.warn()
+                    .setMessage("Unable to scan directory")
+                    .addData("source", this)
+                    .setThrowable(e)
+                    .log();
+            return;
+        }
+
+        // Tail new files and replace tailers which failed
+        for (final Path file : matches) {
+            final TailedFile existing = _files.get(file);
+            if (existing == null || !existing.getTailer().isRunning()) {
+                final TailedFile tailedFile = new TailedFile(file, initialPosition);
+                _files.put(file, tailedFile);
+                _logger.info()
+                        .setMessage("Tailing file")
+                        .addData("source", this)
+                        .addData("file", file)
+                        .log();
+                tailedFile.schedule(0);
+            }
+        }
+
+        // Retire tailers whose file is gone once they have finished reading it
+        for (final Path file : Sets.newHashSet(Sets.difference(_files.keySet(), matches))) {
+            final TailedFile tailedFile = _files.get(file);
+            if (tailedFile.isFileNotFound()) {
+                _files.remove(file);
+                tailedFile.getTailer().stop();
+                tailedFile.wake();
+                _logger.info()
+                        .setMessage("Stopped tailing file")
+                        .addData("source", this)
+                        .addData("file", file)
+                        .log();
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private DirectoryFileSource(final Builder<T> builder) {
+        this(builder, LOGGER);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ DirectoryFileSource(final Builder<T> builder, final Logger logger) {
+        super(builder);
+        _logger = logger;
+        _directory = builder._directory;
+        _glob = builder._glob;
+        _matcher = FileSystems.getDefault().getPathMatcher("glob:" + _glob);
+        _maximumDepth = builder._maximumDepth;
+        _parser = builder._parser;
+        _batchSize = builder._batchSize;
+        _interval = builder._interval;
+        _scanInterval = builder._scanInterval;
+        _initialPosition = builder._initialPosition;
+        if (builder._stateFile == null) {
+            _positionStore = new MemoryPositionStore();
+        } else if (builder._stateLog) {
+            _positionStore = new LogPositionStore.Builder().setFile(builder._stateFile).build();
+        } else {
+            _positionStore = new FilePositionStore.Builder().setFile(builder._stateFile).build();
+        }
+
+        _tailerExecutor = new ScheduledThreadPoolExecutor(
+                builder._threads,
+                (runnable) -> new Thread(runnable, "DirectoryFileSourceTailer"));
+        _tailerExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        _scannerExecutor = Executors.newSingleThreadExecutor(
+                (runnable) -> new Thread(runnable, "DirectoryFileSourceScanner"));
+    }
+
+    private final Path _directory;
+    private final String _glob;
+    private final PathMatcher _matcher;
+    private final int _maximumDepth;
+    private final Parser<T, byte[]> _parser;
+    private final int _batchSize;
+    private final Duration _interval;
+    private final Duration _scanInterval;
+    private final InitialPosition _initialPosition;
+    private final PositionStore _positionStore;
+    private final ScheduledThreadPoolExecutor _tailerExecutor;
+    private final ExecutorService _scannerExecutor;
+    private final ConcurrentMap<Path, TailedFile> _files = Maps.newConcurrentMap();
+    private final Logger _logger;
+
+    private volatile boolean _isRunning = true;
+    private volatile Optional<WatchService> _watchService = Optional.empty();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryFileSource.class);
+    private static final long READ_LIMIT = 1024 * 1024;
+
+    /**
+     * A tailed file and its listener. The tailer is polled by at most one
+     * thread at a time; each poll schedules the next.
+     */
+    private final class TailedFile implements TailerListener {
+
+        public StatefulTailer getTailer() {
+            return _tailer;
+        }
+
+        public boolean isFileNotFound() {
+            return _fileNotFound;
+        }
+
+        public synchronized void wake() {
+            if (_polling) {
+                _woken = true;
+            } else if (_next != null && _next.cancel(false)) {
+                schedule(0);
+            }
+        }
+
+        @Override
+        public void initialize(final Tailer tailer) {
+            _logger.debug()
+                    .setMessage("Tailer initialized")
+                    .addData("source", DirectoryFileSource.this)
+                    .addData("file", _file)
+                    .log();
+        }
+
+        @Override
+        public void fileNotFound() {
+            _fileNotFound = true;
+        }
+
+        @Override
+        public void fileRotated() {
+            _logger.info()
+                    .setMessage("Tailer file rotate")
+                    .addData("source", DirectoryFileSource.this)
+                    .addData("file", _file)
+                    .log();
+        }
+
+        @Override
+        public void fileOpened() {
+            _fileNotFound = false;
+            _logger.info()
+                    .setMessage("Tailer file opened")
+                    .addData("source", DirectoryFileSource.this)
+                    .addData("file", _file)
+                    .log();
+        }
+
+        @Override
+        public void handle(final ByteBuffer line) {
+            _records.handle(line);
+        }
+
+        @Override
+        public void flush() {
+            _records.flush();
+        }
+
+        @Override
+        public void handle(final Throwable t) {
+            _logger.error()
+                    .setMessage("Tailer exception")
+                    .addData("source", DirectoryFileSource.this)
+                    .addData("file", _file)
+                    .setThrowable(t)
+                    .log();
+        }
+
+        private synchronized void schedule(final long delay) {
+            if (!_tailer.isRunning()) {
+                // Release the file of a retired tailer
+                _next = null;
+                _tailer.poll();
+                return;
+            }
+            try {
+                _next = _tailerExecutor.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                // The source is stopping
+                _next = null;
+            }
+        }
+
+        private void poll() {
+            synchronized (this) {
+                _polling = true;
+                _woken = false;
+            }
+            boolean wait = true;
+            try {
+                wait = _tailer.poll();
+            } finally {
+                synchronized (this) {
+                    _polling = false;
+                    // NOTE: Tailers with more data are scheduled behind those already due
+                    schedule(wait && !_woken ? _interval.getMillis() : 0);
+                }
+            }
+        }
+
+        private TailedFile(final Path file, final InitialPosition initialPosition) {
+            _file = file;
+            _records = new RecordBatcher<>(_parser, _batchSize, DirectoryFileSource.this::notify, _logger);
+            _tailer = new StatefulTailer.Builder()
+                    .setFile(file)
+                    .setListener(this)
+                    .setReadInterval(_interval)
+                    .setPositionStore(_positionStore)
+                    .setIdentifyByFileKey(true)
+                    .setInitialPosition(initialPosition)
+                    .setReadLimit(READ_LIMIT)
+                    .build();
+        }
+
+        private final Path _file;
+        private final StatefulTailer _tailer;
+        private final RecordBatcher<T> _records;
+        private ScheduledFuture<?> _next;
+        private boolean _polling = false;
+        private boolean _woken = false;
+        private volatile boolean _fileNotFound = false;
+    }
+
+    /**
+     * A <code>PositionStore</code> in memory for sources without a state
+     * file. The positions of files which are renamed, and then discovered as
+     * new files, survive for the life of the source so they are not read
+     * again. Positions not updated within a day are discarded.
+     */
+    private static final class MemoryPositionStore implements PositionStore {
+
+        @Override
+        public Optional<Long> getPosition(final String identifier) {
+            return Optional.ofNullable(_positions.getIfPresent(identifier));
+        }
+
+        @Override
+        public void setPosition(final String identifier, final long position) {
+            _positions.put(identifier, position);
+        }
+
+        @Override
+        public void close() {
+            _positions.invalidateAll();
+        }
+
+        private final Cache<String, Long> _positions = CacheBuilder.newBuilder()
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .build();
+    }
+
+    /**
+     * Implementation of builder pattern for <code>DirectoryFileSource</code>.
+     *
+     * @param <T> the type parsed from the parser.
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    public static class Builder<T> extends BaseSource.Builder<Builder<T>, DirectoryFileSource<T>> {
+
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(DirectoryFileSource::new);
+        }
+
+        /**
+         * Sets the directory containing the source files. Cannot be null.
+         *
+         * @param value The directory path.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setDirectory(final Path value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Sets the glob matched against the path of each file relative to the
+         * directory (e.g. <code>*.log</code> or <code>*&#47;*-json.log</code>).
+         * Cannot be null or empty. Default is <code>*</code>.
+         *
+         * @param value The glob.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setGlob(final String value) {
+            _glob = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of directory levels searched for files. Files
+         * directly in the directory are at depth one. Cannot be null, minimum
+         * 1. Default is 1.
+         *
+         * @param value The maximum depth.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setMaximumDepth(final Integer value) {
+            _maximumDepth = value;
+            return this;
+        }
+
+        /**
+         * Sets file read interval. Cannot be null. Default is 500
+         * milliseconds.
+         *
+         * @param value The file read interval.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setInterval(final Duration value) {
+            _interval = value;
+            return this;
+        }
+
+        /**
+         * Sets the interval between scans of the directory for new files.
+         * Files are also discovered from directory change notifications where
+         * supported. Cannot be null. Default is 10 seconds.
+         *
+         * @param value The directory scan interval.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setScanInterval(final Duration value) {
+            _scanInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads tailing the files. Cannot be null,
+         * minimum 1. Default is 2.
+         *
+         * @param value The number of tailer threads.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setThreads(final Integer value) {
+            _threads = value;
+            return this;
+        }
+
+        /**
+         * Sets whether to tail the files present on start from their end or
+         * from their start. Files discovered later are always tailed from
+         * their start. Default InitialPosition.START;
+         *
+         * @param value Initial position to tail from.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setInitialPosition(final InitialPosition value) {
+            _initialPosition = value;
+            return this;
+        }
+
+        /**
+         * Sets <code>Parser</code>. Cannot be null.
+         *
+         * @param value The <code>Parser</code>.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setParser(final Parser<T, byte[]> value) {
+            _parser = value;
+            return this;
+        }
+
+        /**
+         * Sets state file shared by all files. Optional. Default is null.
+         * If null, positions are kept in memory for the life of the source.
+         *
+         * @param value The state file.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setStateFile(final Path value) {
+            _stateFile = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the state file is an append-only log of changed
+         * positions instead of a snapshot of all positions rewritten on each
+         * flush. The log is cheaper to update when tracking many files and
+         * is synced every second. The two formats are not interchangeable.
+         * Cannot be null. Default is false.
+         *
+         * @param value Whether the state file is a log.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setStateLog(final Boolean value) {
+            _stateLog = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of parsed records dispatched to observers
+         * as a single <code>List</code> event. Batches never span files.
+         * Cannot be null, minimum 1. Default is 1.
+         *
+         * @param value The maximum batch size.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setBatchSize(final Integer value) {
+            _batchSize = value;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Builder<T> self() {
+            return this;
+        }
+
+        @NotNull
+        private Path _directory;
+        @NotNull
+        @NotEmpty
+        private String _glob = "*";
+        @NotNull
+        @Min(1)
+        private Integer _maximumDepth = 1;
+        @NotNull
+        private Duration _interval = Duration.millis(500);
+        @NotNull
+        private Duration _scanInterval = Duration.standardSeconds(10);
+        @NotNull
+        @Min(1)
+        private Integer _threads = 2;
+        @NotNull
+        private InitialPosition _initialPosition = InitialPosition.START;
+        @NotNull
+        private Parser<T, byte[]> _parser;
+        private Path _stateFile;
+        @NotNull
+        private Boolean _stateLog = false;
+        @NotNull
+        @Min(1)
+        private Integer _batchSize = 1;
+    }
+}
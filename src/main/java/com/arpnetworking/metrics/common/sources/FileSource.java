@@ -17,9 +17,9 @@ package com.arpnetworking.metrics.common.sources;
 
 import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.metrics.common.parsers.Parser;
-import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
 import com.arpnetworking.metrics.common.tailer.FilePositionStore;
 import com.arpnetworking.metrics.common.tailer.InitialPosition;
+import com.arpnetworking.metrics.common.tailer.LogPositionStore;
 import com.arpnetworking.metrics.common.tailer.NoPositionStore;
 import com.arpnetworking.metrics.common.tailer.PositionStore;
 import com.arpnetworking.metrics.common.tailer.StatefulTailer;
@@ -28,17 +28,25 @@ import com.arpnetworking.metrics.common.tailer.TailerListener;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.Lists;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Period;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Produce instances of <code>T</code>from a file. Supports rotating files
@@ -73,6 +81,9 @@ public final class FileSource<T> extends BaseSource {
                     .setThrowable(e)
                     .log();
         }
+        if (_parseRing.isPresent()) {
+            _parseRing.get().shutdown();
+        }
     }
 
     /**
@@ -85,6 +96,8 @@ public final class FileSource<T> extends BaseSource {
         return LogValueMapFactory.builder(this)
                 .put("super", super.toLogValue())
                 .put("parser", _parser)
+                .put("batchSize", _batchSize)
+                .put("parseRing", _parseRing)
                 .put("tailer", _tailer)
                 .build();
     }
@@ -97,6 +110,28 @@ public final class FileSource<T> extends BaseSource {
         return toLogValue().toString();
     }
 
+    private void dispatch(final List<T> records) {
+        if (_batchSize == 1) {
+            for (final T record : records) {
+                notify(record);
+            }
+        } else {
+            for (final List<T> batch : Lists.partition(records, _batchSize)) {
+                notify(Collections.unmodifiableList(batch));
+            }
+        }
+    }
+
+    private static PositionStore createPositionStore(final Builder<?> builder) {
+        if (builder._stateFile == null) {
+            return NO_POSITION_STORE;
+        } else if (builder._stateLog) {
+            return new LogPositionStore.Builder().setFile(builder._stateFile).build();
+        } else {
+            return new FilePositionStore.Builder().setFile(builder._stateFile).build();
+        }
+    }
+
     @SuppressWarnings("unused")
     private FileSource(final Builder<T> builder) {
         this(builder, LOGGER);
@@ -104,27 +139,45 @@ public final class FileSource<T> extends BaseSource {
 
     // NOTE: Package private for testing
     /* package private */ FileSource(final Builder<T> builder, final Logger logger) {
+        this(builder, logger, createPositionStore(builder));
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ FileSource(final Builder<T> builder, final Logger logger, final PositionStore positionStore) {
         super(builder);
         _logger = logger;
         _parser = builder._parser;
-        final PositionStore positionStore;
-        if (builder._stateFile == null) {
-            positionStore = NO_POSITION_STORE;
+        _batchSize = builder._batchSize;
+        _records = new RecordBatcher<>(_parser, _batchSize, this::notify, _logger);
+        if (builder._parserThreads > 0) {
+            _parseRing = Optional.of(new ParseRing(
+                    builder._parserThreads,
+                    builder._parseQueueSize,
+                    builder._preserveOrder,
+                    positionStore));
         } else {
-            positionStore = new FilePositionStore.Builder().setFile(builder._stateFile).build();
+            _parseRing = Optional.empty();
         }
 
+        // Lines handed to the parse ring are checkpointed only once dispatched
+        final LogTailerListener listener = new LogTailerListener();
         _tailer = new StatefulTailer.Builder()
                 .setFile(builder._sourceFile)
-                .setListener(new LogTailerListener())
+                .setListener(listener)
                 .setReadInterval(builder._interval)
-                .setPositionStore(positionStore)
+                .setPositionStore(
+                        _parseRing.isPresent() ? new DispatchedPositionStore(positionStore, listener) : positionStore)
                 .setInitialPosition(builder._initialPosition)
+                .setCatchUpThreshold(builder._catchUpThreshold)
+                .setWatchInterval(builder._watchInterval)
                 .build();
         _tailerExecutor = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "FileSourceTailer"));
     }
 
     private final Parser<T, byte[]> _parser;
+    private final int _batchSize;
+    private final RecordBatcher<T> _records;
+    private final Optional<ParseRing> _parseRing;
     private final Tailer _tailer;
     private final ExecutorService _tailerExecutor;
     private final Logger _logger;
@@ -132,6 +185,7 @@ public final class FileSource<T> extends BaseSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(FileSource.class);
     private static final Period FILE_NOT_FOUND_WARNING_INTERVAL = Period.minutes(1);
     private static final NoPositionStore NO_POSITION_STORE = new NoPositionStore();
+    private static final int LINES_PER_CHUNK = 256;
 
     private class LogTailerListener implements TailerListener {
 
@@ -173,18 +227,26 @@ public final class FileSource<T> extends BaseSource {
         }
 
         @Override
-        public void handle(final byte[] line) {
-            final T record;
-            try {
-                record = _parser.parse(line);
-            } catch (final ParsingException e) {
-                _logger.error()
-                        .setMessage("Failed to parse data")
-                        .setThrowable(e)
-                        .log();
+        public void handle(final ByteBuffer line) {
+            if (_parseRing.isPresent()) {
+                // The line is only valid during this call so it is copied
+                // into the chunk to be parsed on the parser threads
+                _chunk.add(line);
+                if (_chunk.size() >= _linesPerChunk) {
+                    submitChunk();
+                }
                 return;
             }
-            FileSource.this.notify(record);
+            _records.handle(line);
+        }
+
+        @Override
+        public void flush() {
+            if (_parseRing.isPresent()) {
+                submitChunk();
+                return;
+            }
+            _records.flush();
         }
 
         @Override
@@ -224,7 +286,289 @@ public final class FileSource<T> extends BaseSource {
             }
         }
 
+        private void checkpoint(final String identifier, final long position) {
+            if (_chunk.size() > 0) {
+                // The position follows lines which are not yet submitted
+                _chunk.setCheckpoint(identifier, position);
+            } else {
+                _parseRing.get().checkpoint(new Checkpoint(identifier, position));
+            }
+        }
+
+        private void submitChunk() {
+            if (_chunk.size() == 0) {
+                return;
+            }
+            final LineChunk chunk = _chunk;
+            _chunk = new LineChunk(_linesPerChunk);
+            try {
+                _parseRing.get().submit(chunk);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                _logger.info()
+                        .setMessage("Parse submission interrupted")
+                        .addData("source", FileSource.this)
+                        .addData("action", "stopping")
+                        .setThrowable(e)
+                        .log();
+
+                _tailer.stop();
+            }
+        }
+
         private Optional<DateTime> _lastFileNotFoundWarning = Optional.empty();
+        private final int _linesPerChunk = Math.max(_batchSize, LINES_PER_CHUNK);
+        private LineChunk _chunk = new LineChunk(_linesPerChunk);
+    }
+
+    /**
+     * Position store handed to the tailer when lines are parsed on the parse
+     * ring. Positions are held back with the lines they follow and stored once
+     * the ring has dispatched those lines.
+     */
+    private final class DispatchedPositionStore implements PositionStore {
+
+        @Override
+        public Optional<Long> getPosition(final String identifier) {
+            return _positionStore.getPosition(identifier);
+        }
+
+        @Override
+        public void setPosition(final String identifier, final long position) {
+            // NOTE: Only the tailer thread sets positions
+            _listener.checkpoint(identifier, position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _positionStore.close();
+        }
+
+        private DispatchedPositionStore(final PositionStore positionStore, final LogTailerListener listener) {
+            _positionStore = positionStore;
+            _listener = listener;
+        }
+
+        private final PositionStore _positionStore;
+        private final LogTailerListener _listener;
+    }
+
+    /**
+     * Parses chunks of lines on a pool of parser threads. The number of
+     * chunks submitted but not yet completed at the head of the ring is
+     * bounded by the size of the ring; submission blocks the tailer while the
+     * ring is full. When order is preserved the records of each chunk are
+     * dispatched in submission order as the chunks at the head of the ring
+     * complete; otherwise each chunk is dispatched from its parser thread as
+     * soon as it is parsed. In either case the position following a chunk is
+     * stored only once it and every earlier chunk have been dispatched.
+     */
+    private final class ParseRing {
+
+        public void submit(final LineChunk chunk) throws InterruptedException {
+            _available.acquire();
+            // NOTE: Only the tailer thread submits chunks
+            final long sequence;
+            synchronized (_completed) {
+                sequence = _nextSequence++;
+                _checkpoints[slot(sequence)] = chunk.getCheckpoint();
+            }
+            _executor.execute(() -> parse(sequence, chunk));
+        }
+
+        public void checkpoint(final Checkpoint checkpoint) {
+            synchronized (_completed) {
+                if (_nextDispatch == _nextSequence) {
+                    // Every submitted chunk has been dispatched
+                    commit(checkpoint);
+                } else {
+                    // Supersede the position following the last submitted chunk
+                    _checkpoints[slot(_nextSequence - 1)] = checkpoint;
+                }
+            }
+        }
+
+        public void shutdown() {
+            _executor.shutdown();
+            try {
+                _executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                LOGGER.warn()
+                        .setMessage("Unable to shutdown parser executor")
+                        .setThrowable(e)
+                        .log();
+            }
+        }
+
+        @LogValue
+        public Object toLogValue() {
+            return LogValueMapFactory.builder(this)
+                    .put("parserThreads", _parserThreads)
+                    .put("size", _completed.length)
+                    .put("preserveOrder", _preserveOrder)
+                    .build();
+        }
+
+        @Override
+        public String toString() {
+            return toLogValue().toString();
+        }
+
+        private void parse(final long sequence, final LineChunk chunk) {
+            final List<T> records = Lists.newArrayListWithCapacity(chunk.size());
+            try {
+                final ByteBuffer view = chunk.view();
+                for (int i = 0; i < chunk.size(); ++i) {
+                    final Optional<T> record = _records.parse(chunk.line(view, i));
+                    if (record.isPresent()) {
+                        records.add(record.get());
+                    }
+                }
+            } finally {
+                // Always complete the chunk so later chunks are released
+                complete(sequence, records);
+            }
+        }
+
+        private void complete(final long sequence, final List<T> records) {
+            try {
+                if (!_preserveOrder) {
+                    dispatch(records);
+                }
+            } finally {
+                synchronized (_completed) {
+                    // Once dispatched only the completion of the chunk is retained
+                    _completed[slot(sequence)] = _preserveOrder ? records : Collections.emptyList();
+                    advance();
+                }
+            }
+        }
+
+        private void advance() {
+            List<T> next = _completed[slot(_nextDispatch)];
+            while (next != null) {
+                final int slot = slot(_nextDispatch);
+                _completed[slot] = null;
+                ++_nextDispatch;
+                try {
+                    if (_preserveOrder) {
+                        dispatch(next);
+                    }
+                    commit(_checkpoints[slot]);
+                } finally {
+                    _checkpoints[slot] = null;
+                    _available.release();
+                }
+                next = _completed[slot(_nextDispatch)];
+            }
+        }
+
+        private void commit(@Nullable final Checkpoint checkpoint) {
+            if (checkpoint != null) {
+                _positionStore.setPosition(checkpoint._identifier, checkpoint._position);
+            }
+        }
+
+        private int slot(final long sequence) {
+            return (int) (sequence % _completed.length);
+        }
+
+        @SuppressWarnings("unchecked")
+        private ParseRing(
+                final int parserThreads,
+                final int size,
+                final boolean preserveOrder,
+                final PositionStore positionStore) {
+            _parserThreads = parserThreads;
+            _preserveOrder = preserveOrder;
+            _positionStore = positionStore;
+            _completed = (List<T>[]) new List<?>[size];
+            _checkpoints = new Checkpoint[size];
+            _available = new Semaphore(size);
+            _executor = Executors.newFixedThreadPool(
+                    parserThreads,
+                    (runnable) -> new Thread(runnable, "FileSourceParser"));
+        }
+
+        private final int _parserThreads;
+        private final boolean _preserveOrder;
+        private final PositionStore _positionStore;
+        private final List<T>[] _completed;
+        private final Checkpoint[] _checkpoints;
+        private final Semaphore _available;
+        private final ExecutorService _executor;
+        private long _nextSequence = 0;
+        private long _nextDispatch = 0;
+    }
+
+    /**
+     * Copies of consecutive lines packed into a single buffer.
+     */
+    private static final class LineChunk {
+
+        public void add(final ByteBuffer line) {
+            if (_data.remaining() < line.remaining()) {
+                final ByteBuffer data = ByteBuffer.allocate(
+                        Math.max(_data.capacity() * 2, _data.position() + line.remaining()));
+                _data.flip();
+                data.put(_data);
+                _data = data;
+            }
+            _data.put(line);
+            _ends[_size++] = _data.position();
+        }
+
+        public int size() {
+            return _size;
+        }
+
+        public ByteBuffer view() {
+            return _data.duplicate();
+        }
+
+        @Nullable
+        public Checkpoint getCheckpoint() {
+            return _checkpointIdentifier == null ? null : new Checkpoint(_checkpointIdentifier, _checkpointPosition);
+        }
+
+        public void setCheckpoint(final String identifier, final long position) {
+            _checkpointIdentifier = identifier;
+            _checkpointPosition = position;
+        }
+
+        public ByteBuffer line(final ByteBuffer view, final int index) {
+            view.clear();
+            view.position(index == 0 ? 0 : _ends[index - 1]);
+            view.limit(_ends[index]);
+            return view;
+        }
+
+        private LineChunk(final int maximumLines) {
+            _ends = new int[maximumLines];
+        }
+
+        private ByteBuffer _data = ByteBuffer.allocate(INITIAL_CHUNK_SIZE);
+        private int _size = 0;
+        private String _checkpointIdentifier;
+        private long _checkpointPosition;
+        private final int[] _ends;
+
+        private static final int INITIAL_CHUNK_SIZE = 65536;
+    }
+
+    /**
+     * The read position following the lines handed to the parse ring.
+     */
+    private static final class Checkpoint {
+
+        private Checkpoint(final String identifier, final long position) {
+            _identifier = identifier;
+            _position = position;
+        }
+
+        private final String _identifier;
+        private final long _position;
     }
 
     /**
@@ -300,6 +644,106 @@ public final class FileSource<T> extends BaseSource {
             return this;
         }
 
+        /**
+         * Sets whether the state file is an append-only log of changed
+         * positions instead of a snapshot of all positions rewritten on each
+         * flush. The log is cheaper to update when tracking many files and
+         * is synced every second. The two formats are not interchangeable.
+         * Cannot be null. Default is false.
+         *
+         * @param value Whether the state file is a log.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setStateLog(final Boolean value) {
+            _stateLog = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of parsed records dispatched to observers
+         * as a single <code>List</code> event. Records are dispatched once the
+         * batch is full or the available data has been read. A batch size of
+         * one dispatches each record as its own event. Cannot be null, minimum
+         * 1. Default is 1.
+         *
+         * @param value The maximum batch size.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setBatchSize(final Integer value) {
+            _batchSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of unread bytes beyond which the tailer catches up
+         * from memory mapped windows of the file until it is within this
+         * distance of the end of the file. Optional. Default is null. If null,
+         * the tailer always reads through its read buffer.
+         *
+         * @param value The catch up threshold in bytes.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setCatchUpThreshold(final Long value) {
+            _catchUpThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum interval between file reads when reading on change
+         * notifications. If set, the file is read as soon as it is reported
+         * changed instead of every interval. Optional. Default is null. If
+         * null, the file is read every interval.
+         *
+         * @param value The maximum interval between file reads.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setWatchInterval(final Duration value) {
+            _watchInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads parsing lines read by the tailer. Lines
+         * are handed to the parser threads in chunks. A value of zero parses
+         * each line on the tailer thread. Cannot be null, minimum 0. Default
+         * is 0.
+         *
+         * @param value The number of parser threads.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setParserThreads(final Integer value) {
+            _parserThreads = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chunks of lines submitted to the parser
+         * threads but not yet dispatched to observers. The tailer blocks while
+         * this many chunks are outstanding. Only used with parser threads.
+         * Cannot be null, minimum 1. Default is 64.
+         *
+         * @param value The maximum number of outstanding chunks.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setParseQueueSize(final Integer value) {
+            _parseQueueSize = value;
+            return this;
+        }
+
+        /**
+         * Sets whether records parsed on the parser threads are dispatched in
+         * the order they were read. If false, each chunk is dispatched as soon
+         * as it is parsed. Only used with parser threads. Cannot be null.
+         * Default is true.
+         *
+         * @param value Whether to preserve the order of records.
+         * @return This instance of <code>Builder</code>.
+         */
+        public final Builder<T> setPreserveOrder(final Boolean value) {
+            _preserveOrder = value;
+            return this;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -317,6 +761,22 @@ public final class FileSource<T> extends BaseSource {
         private Parser<T, byte[]> _parser;
         private Path _stateFile;
         @NotNull
+        private Boolean _stateLog = false;
+        @NotNull
         private InitialPosition _initialPosition = InitialPosition.START;
+        @NotNull
+        @Min(1)
+        private Integer _batchSize = 1;
+        @Min(0)
+        private Long _catchUpThreshold;
+        private Duration _watchInterval;
+        @NotNull
+        @Min(0)
+        private Integer _parserThreads = 0;
+        @NotNull
+        @Min(1)
+        private Integer _parseQueueSize = 64;
+        @NotNull
+        private Boolean _preserveOrder = true;
     }
 }
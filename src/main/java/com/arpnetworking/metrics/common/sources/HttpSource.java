@@ -15,29 +15,23 @@
  */
 package com.arpnetworking.metrics.common.sources;
 
-import akka.Done;
-import akka.NotUsed;
 import akka.actor.Props;
 import akka.actor.UntypedActor;
+import akka.http.javadsl.model.HttpEntity;
 import akka.http.javadsl.model.HttpHeader;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.HttpResponse;
 import akka.http.javadsl.model.RequestEntity;
-import akka.japi.Pair;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.routing.RoundRobinPool;
 import akka.stream.ActorMaterializer;
 import akka.stream.ActorMaterializerSettings;
-import akka.stream.FanInShape2;
-import akka.stream.FlowShape;
-import akka.stream.Graph;
 import akka.stream.Materializer;
+import akka.stream.StreamLimitReachedException;
 import akka.stream.Supervision;
-import akka.stream.UniformFanOutShape;
-import akka.stream.javadsl.Broadcast;
 import akka.stream.javadsl.Flow;
-import akka.stream.javadsl.GraphDSL;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Sink;
-import akka.stream.javadsl.Zip;
 import akka.util.ByteString;
 import com.arpnetworking.http.RequestReply;
 import com.arpnetworking.metrics.common.parsers.Parser;
@@ -47,12 +41,19 @@ import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotNull;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
@@ -67,7 +68,16 @@ public class HttpSource extends ActorSource {
      */
     @Override
     protected Props createProps() {
-        return Actor.props(this);
+        final Props props = Actor.props(this);
+        if (_poolSize > 1) {
+            // Requests are distributed across the pool by a router at the actor name
+            return new RoundRobinPool(_poolSize).props(props);
+        }
+        return props;
+    }
+
+    private boolean isOverloaded() {
+        return _maxBacklog.isPresent() && getBacklog() > _maxBacklog.get();
     }
 
     /**
@@ -78,9 +88,17 @@ public class HttpSource extends ActorSource {
     protected HttpSource(final Builder<?, ? extends HttpSource> builder) {
         super(builder);
         _parser = builder._parser;
+        _maxBodySize = builder._maxBodySize;
+        _poolSize = builder._poolSize;
+        _maxBacklog = Optional.ofNullable(builder._maxBacklog);
+        _retryAfterSeconds = builder._retryAfterSeconds;
     }
 
     private final Parser<List<Record>, com.arpnetworking.metrics.mad.model.HttpRequest> _parser;
+    private final int _maxBodySize;
+    private final int _poolSize;
+    private final Optional<Long> _maxBacklog;
+    private final int _retryAfterSeconds;
 
     /**
      * Internal actor to process requests.
@@ -103,22 +121,64 @@ public class HttpSource extends ActorSource {
         public void onReceive(final Object message) throws Exception {
             if (message instanceof RequestReply) {
                 final RequestReply requestReply = (RequestReply) message;
-                // TODO(barp): Fix the ugly HttpRequest cast here due to java vs scala dsl
-                akka.stream.javadsl.Source.single(requestReply.getRequest())
-                        .via(_processGraph)
-                        .toMat(_sink, Keep.right())
-                        .run(_materializer)
-                        .whenComplete((done, err) -> {
-                            final CompletableFuture<HttpResponse> responseFuture = requestReply.getResponse();
-                            if (err == null) {
+                final HttpRequest request = requestReply.getRequest();
+                final CompletableFuture<HttpResponse> responseFuture = requestReply.getResponse();
+
+                // Shed load while the aggregation workers are behind instead of queuing without bound
+                if (_source.isOverloaded()) {
+                    BAD_REQUEST_LOGGER.warn()
+                            .setMessage("Rejected http post")
+                            .addData("reason", "overloaded")
+                            .addData("source", _source.getName())
+                            .log();
+                    responseFuture.complete(
+                            HttpResponse.create()
+                                    .withStatus(429)
+                                    .addHeader(RawHeader.create("Retry-After", String.valueOf(_retryAfterSeconds))));
+                    return;
+                }
+
+                // Reject bodies declared too large before reading any of them
+                final OptionalLong contentLength = request.entity().getContentLengthOption();
+                if (contentLength.isPresent() && contentLength.getAsLong() > _maxBodySize) {
+                    BAD_REQUEST_LOGGER.warn()
+                            .setMessage("Rejected http post")
+                            .addData("reason", "body too large")
+                            .addData("contentLength", contentLength.getAsLong())
+                            .addData("maxBodySize", _maxBodySize)
+                            .log();
+                    responseFuture.complete(HttpResponse.create().withStatus(413));
+                    return;
+                }
+
+                readBody(request.entity())
+                        .thenApplyAsync(
+                                body -> {
+                                    final List<Record> records = parseRecords(
+                                            new com.arpnetworking.metrics.mad.model.HttpRequest(
+                                                    createHeaderMultimap(request.getHeaders()),
+                                                    body));
+                                    // Records parsed from a request are dispatched together as a batch
+                                    if (!records.isEmpty()) {
+                                        _source.notify(records);
+                                    }
+                                    return records;
+                                },
+                                _executor)
+                        .whenComplete((records, throwable) -> {
+                            if (throwable == null) {
                                 responseFuture.complete(HttpResponse.create().withStatus(200));
                             } else {
+                                final Throwable err = throwable instanceof CompletionException
+                                        && throwable.getCause() != null ? throwable.getCause() : throwable;
                                 BAD_REQUEST_LOGGER.warn()
                                         .setMessage("Error handling http post")
                                         .setThrowable(err)
                                         .log();
                                 if (err instanceof ParsingException) {
                                     responseFuture.complete(HttpResponse.create().withStatus(400));
+                                } else if (err instanceof StreamLimitReachedException) {
+                                    responseFuture.complete(HttpResponse.create().withStatus(413));
                                 } else {
                                     responseFuture.complete(HttpResponse.create().withStatus(500));
                                 }
@@ -135,54 +195,32 @@ public class HttpSource extends ActorSource {
          * @param source The {@link HttpSource} to send notifications through.
          */
         /* package private */ Actor(final HttpSource source) {
+            _source = source;
             _parser = source._parser;
-            _sink = Sink.foreach(source::notify);
+            _maxBodySize = source._maxBodySize;
+            _retryAfterSeconds = source._retryAfterSeconds;
+            _executor = context().dispatcher();
             _materializer = ActorMaterializer.create(
                     ActorMaterializerSettings.create(context().system())
                             .withSupervisionStrategy(Supervision.stoppingDecider()),
                     context());
 
-            _processGraph = GraphDSL.create(builder -> {
-
-                // Flows
-                final Flow<HttpRequest, byte[], NotUsed> getBodyFlow = Flow.<HttpRequest>create()
-                        .map(HttpRequest::entity)
-                        .flatMapConcat(RequestEntity::getDataBytes)
-                        .reduce(ByteString::concat)
-                        .map(ByteString::toArray) // Transform to array form
-                        .named("getBody");
-
-                final Flow<HttpRequest, Multimap<String, String>, NotUsed> getHeadersFlow = Flow.<HttpRequest>create()
-                        .map(HttpRequest::getHeaders)
-                        .map(Actor::createHeaderMultimap) // Transform to array form
-                        .named("getHeaders");
-
-                final Flow<Pair<byte[], Multimap<String, String>>, Record, NotUsed> createAndParseFlow =
-                        Flow.<Pair<byte[], Multimap<String, String>>>create()
-                                .map(Actor::mapModel)
-                                .mapConcat(this::parseRecords) // Parse the json string into a record builder
-                                // NOTE: this should be _parser::parse, but aspectj NPEs with that currently
-                                .named("createAndParseRequest");
-
-                // Shapes
-                final UniformFanOutShape<HttpRequest, HttpRequest> split = builder.add(Broadcast.create(2));
-
-                final FlowShape<HttpRequest, byte[]> getBody = builder.add(getBodyFlow);
-                final FlowShape<HttpRequest, Multimap<String, String>> getHeaders = builder.add(getHeadersFlow);
-                final FanInShape2<
-                        byte[],
-                        Multimap<String, String>,
-                        Pair<byte[], Multimap<String, String>>> join = builder.add(Zip.create());
-                final FlowShape<Pair<byte[], Multimap<String, String>>, Record> createRequest =
-                        builder.add(createAndParseFlow);
-
-                // Wire the shapes
-                builder.from(split.out(0)).via(getBody).toInlet(join.in0()); // Split to get the body bytes
-                builder.from(split.out(1)).via(getHeaders).toInlet(join.in1()); // Split to get the headers
-                builder.from(join.out()).toInlet(createRequest.in()); // Join to create the Request and parse it
-
-                return new FlowShape<>(split.in(), createRequest.out());
-            });
+            // NOTE: The sink is created once and only materialized for bodies which are not already in memory;
+            // the chunks are kept as received and the limit fails the stream once the body exceeds the maximum size
+            _bodySink = Flow.<ByteString>create()
+                    .limitWeighted(_maxBodySize, chunk -> (long) chunk.size())
+                    .map(ByteString::asByteBuffer)
+                    .toMat(Sink.seq(), Keep.right())
+                    .named("readBody");
+        }
+
+        private CompletionStage<List<ByteBuffer>> readBody(final RequestEntity entity) {
+            if (entity instanceof HttpEntity.Strict) {
+                // The server already buffered the body so there is nothing to stream
+                return CompletableFuture.completedFuture(
+                        Collections.singletonList(((HttpEntity.Strict) entity).getData().asByteBuffer()));
+            }
+            return entity.getDataBytes().runWith(_bodySink, _materializer);
         }
 
         private static Multimap<String, String> createHeaderMultimap(final Iterable<HttpHeader> headers) {
@@ -195,19 +233,22 @@ public class HttpSource extends ActorSource {
             return headersBuilder.build();
         }
 
-        private static com.arpnetworking.metrics.mad.model.HttpRequest mapModel(final Pair<byte[], Multimap<String, String>> pair) {
-            return new com.arpnetworking.metrics.mad.model.HttpRequest(pair.second(), pair.first());
-        }
-
-        private List<Record> parseRecords(final com.arpnetworking.metrics.mad.model.HttpRequest request)
-                throws ParsingException {
-            return _parser.parse(request);
+        private List<Record> parseRecords(final com.arpnetworking.metrics.mad.model.HttpRequest request) {
+            // NOTE: this should be _parser::parse, but aspectj NPEs with that currently
+            try {
+                return _parser.parse(request);
+            } catch (final ParsingException e) {
+                throw new CompletionException(e);
+            }
         }
 
-        private final Sink<Record, CompletionStage<Done>> _sink;
+        private final HttpSource _source;
         private final Parser<List<Record>, com.arpnetworking.metrics.mad.model.HttpRequest> _parser;
+        private final int _maxBodySize;
+        private final int _retryAfterSeconds;
+        private final Executor _executor;
         private final Materializer _materializer;
-        private final Graph<FlowShape<HttpRequest, Record>, NotUsed> _processGraph;
+        private final Sink<ByteString, CompletionStage<List<ByteBuffer>>> _bodySink;
 
         private static final Logger BAD_REQUEST_LOGGER =
                 LoggerFactory.getRateLimitLogger(HttpSource.class, Duration.ofSeconds(30));
@@ -243,7 +284,68 @@ public class HttpSource extends ActorSource {
             return self();
         }
 
+        /**
+         * Sets the maximum size of a request body in bytes. Larger requests
+         * are rejected with status 413 without being parsed. Optional. Default
+         * is 8 MiB.
+         *
+         * @param value Value
+         * @return This builder
+         */
+        public B setMaxBodySize(final Integer value) {
+            _maxBodySize = value;
+            return self();
+        }
+
+        /**
+         * Sets the number of actors receiving requests. Each actor reads and
+         * dispatches its requests independently. Optional. Default is 1.
+         *
+         * @param value Value
+         * @return This builder
+         */
+        public B setPoolSize(final Integer value) {
+            _poolSize = value;
+            return self();
+        }
+
+        /**
+         * Sets the number of records queued by the aggregation workers above
+         * which requests are rejected with status 429 until the workers catch
+         * up. Optional. Default is no limit.
+         *
+         * @param value Value
+         * @return This builder
+         */
+        public B setMaxBacklog(final Long value) {
+            _maxBacklog = value;
+            return self();
+        }
+
+        /**
+         * Sets the number of seconds clients are asked to wait before retrying
+         * a request rejected with status 429. Optional. Default is 1.
+         *
+         * @param value Value
+         * @return This builder
+         */
+        public B setRetryAfterSeconds(final Integer value) {
+            _retryAfterSeconds = value;
+            return self();
+        }
+
         @NotNull
         private Parser<List<Record>, com.arpnetworking.metrics.mad.model.HttpRequest> _parser;
+        @NotNull
+        @Min(1)
+        private Integer _maxBodySize = 8 * 1024 * 1024;
+        @NotNull
+        @Min(1)
+        private Integer _poolSize = 1;
+        @Min(0)
+        private Long _maxBacklog;
+        @NotNull
+        @Min(0)
+        private Integer _retryAfterSeconds = 1;
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.sources;
+
+import com.arpnetworking.metrics.common.parsers.BufferParser;
+import com.arpnetworking.metrics.common.parsers.Parser;
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+import com.arpnetworking.steno.Logger;
+import com.google.common.collect.Lists;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Parses the lines read by a tailer and dispatches the records either
+ * individually or, when the batch size is greater than one, as an
+ * unmodifiable <code>List</code> of records. Parsing is thread safe but
+ * batching is not; each tailer should have its own instance.
+ *
+ * @param <T> The data type to parse.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class RecordBatcher<T> {
+
+    /**
+     * Parse a line. The line is only valid during this call.
+     *
+     * @param line The line to parse.
+     * @return The parsed record or empty if it could not be parsed.
+     */
+    public Optional<T> parse(final ByteBuffer line) {
+        try {
+            if (_bufferParser.isPresent()) {
+                return Optional.ofNullable(_bufferParser.get().parse(line));
+            } else {
+                final byte[] data = new byte[line.remaining()];
+                line.get(data);
+                return Optional.ofNullable(_parser.parse(data));
+            }
+        } catch (final ParsingException e) {
+            _logger.error()
+                    .setMessage("Failed to parse data")
+                    .setThrowable(e)
+                    .log();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parse a line and add the record to the batch, dispatching the batch
+     * once it is full.
+     *
+     * @param line The line to parse.
+     */
+    public void handle(final ByteBuffer line) {
+        final Optional<T> record = parse(line);
+        if (!record.isPresent()) {
+            return;
+        }
+        if (_batchSize == 1) {
+            _consumer.accept(record.get());
+            return;
+        }
+        _batch.add(record.get());
+        if (_batch.size() >= _batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Dispatch the records in the batch, if any.
+     */
+    public void flush() {
+        if (!_batch.isEmpty()) {
+            final List<T> batch = _batch;
+            _batch = Lists.newArrayListWithCapacity(_batchSize);
+            _consumer.accept(Collections.unmodifiableList(batch));
+        }
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param parser The <code>Parser</code> for the lines.
+     * @param batchSize The maximum number of records in a batch.
+     * @param consumer The consumer of records and batches of records.
+     * @param logger The <code>Logger</code> for parsing failures.
+     */
+    /* package private */ RecordBatcher(
+            final Parser<T, byte[]> parser,
+            final int batchSize,
+            final Consumer<Object> consumer,
+            final Logger logger) {
+        _parser = parser;
+        if (parser instanceof BufferParser) {
+            @SuppressWarnings("unchecked")
+            final BufferParser<T> bufferParser = (BufferParser<T>) parser;
+            _bufferParser = Optional.of(bufferParser);
+        } else {
+            _bufferParser = Optional.empty();
+        }
+        _batchSize = batchSize;
+        _consumer = consumer;
+        _logger = logger;
+    }
+
+    private final Parser<T, byte[]> _parser;
+    private final Optional<BufferParser<T>> _bufferParser;
+    private final int _batchSize;
+    private final Consumer<Object> _consumer;
+    private final Logger _logger;
+    private List<T> _batch = Lists.newArrayList();
+}
@@ -19,8 +19,9 @@ import com.arpnetworking.commons.observer.Observable;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 /**
- * Interface for sources of <code>Record</code> data entries. All
- * implementations must be thread safe.
+ * Interface for sources of <code>Record</code> data entries. Observers may
+ * receive each entry as its own event or a <code>List</code> of entries read
+ * together as a single event. All implementations must be thread safe.
  *
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
  */
@@ -44,7 +44,7 @@ import java.util.concurrent.ConcurrentMap;
 /**
  * Implementation of <code>PositionStore</code> which stores the read
  * position in a file on local disk. This class is thread-safe per file
- * identifier.
+ * identifier and may be shared by the tailers of different files.
  *
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
  */
@@ -116,7 +116,7 @@ public final class FilePositionStore implements PositionStore {
         return toLogValue().toString();
     }
 
-    private void flush() {
+    private synchronized void flush() {
         // Age out old state
         final DateTime now = DateTime.now();
         final DateTime oldest = now.minus(_retention);
@@ -184,7 +184,7 @@ public final class FilePositionStore implements PositionStore {
     private final Duration _retention;
     private final ConcurrentMap<String, Descriptor> _state;
 
-    private DateTime _lastFlush = DateTime.now();
+    private volatile DateTime _lastFlush = DateTime.now();
 
     private static final TypeReference<ConcurrentMap<String, Descriptor>> STATE_MAP_TYPE_REFERENCE =
             new TypeReference<ConcurrentMap<String, Descriptor>>(){};
@@ -0,0 +1,381 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.tailer;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.sf.oval.constraint.NotNull;
+import org.apache.commons.io.IOUtils;
+import org.joda.time.Duration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Implementation of <code>PositionStore</code> which appends changed read
+ * positions to a log file on local disk. Positions are buffered in memory
+ * and each flush appends one record per file identifier changed since the
+ * previous flush followed by a single sync, so the cost of a flush is
+ * proportional to the number of changed files and a crash loses at most the
+ * positions of one flush interval. The log is compacted into a snapshot of
+ * the current positions once it holds several times as many records as there
+ * are positions, and at least once per retention period to age out unused
+ * positions. A partially written record at the end of the log is ignored.
+ * This class is thread-safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class LogPositionStore implements PositionStore {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Long> getPosition(final String identifier) {
+        final Descriptor descriptor = _state.get(identifier);
+        if (descriptor == null) {
+            return Optional.empty();
+        }
+        return Optional.of(descriptor.getPosition());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPosition(final String identifier, final long position) {
+        final long now = System.currentTimeMillis();
+        final Descriptor descriptor = _state.get(identifier);
+        if (descriptor == null) {
+            final Descriptor existingDescriptor = _state.putIfAbsent(identifier, new Descriptor(position, now));
+            if (existingDescriptor != null) {
+                existingDescriptor.update(position, now);
+            }
+        } else {
+            descriptor.update(position, now);
+        }
+        _dirty.add(identifier);
+        if (now - _lastFlush >= _flushInterval.getMillis()) {
+            flush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+        if (_channel != null) {
+            flush();
+            IOUtils.closeQuietly(_channel);
+            _channel = null;
+        }
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.<String, Object>builder()
+                .put("file", _file)
+                .put("flushInterval", _flushInterval)
+                .put("retention", _retention)
+                .put("size", _state.size())
+                .put("logRecords", _logRecords)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private synchronized void flush() {
+        final long now = System.currentTimeMillis();
+        _lastFlush = now;
+        if (_channel == null) {
+            return;
+        }
+
+        // Append the changed positions
+        final StringBuilder records = new StringBuilder();
+        long count = 0;
+        final Iterator<String> iterator = _dirty.iterator();
+        while (iterator.hasNext()) {
+            final String identifier = iterator.next();
+            iterator.remove();
+            final Descriptor descriptor = _state.get(identifier);
+            if (descriptor != null) {
+                appendRecord(records, identifier, descriptor);
+                ++count;
+            }
+        }
+        try {
+            if (count > 0) {
+                write(_channel, records);
+                _channel.force(false);
+                _logRecords += count;
+            }
+
+            // Compact the log
+            if (_logRecords > Math.max(MINIMUM_COMPACTION_RECORDS, COMPACTION_RATIO * _state.size())
+                    || now - _lastCompaction >= _retention.getMillis()) {
+                compact(now);
+            }
+        } catch (final IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private void compact(final long now) throws IOException {
+        // Age out old state
+        final long oldest = now - _retention.getMillis();
+        final long sizeBefore = _state.size();
+        _state.entrySet().removeIf(entry -> entry.getValue().getLastUpdated() <= oldest);
+
+        // Replace the log with a snapshot of the state
+        final StringBuilder records = new StringBuilder();
+        for (final Map.Entry<String, Descriptor> entry : _state.entrySet()) {
+            appendRecord(records, entry.getKey(), entry.getValue());
+        }
+        final Path temporaryFile = Paths.get(_file.toAbsolutePath().toString() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(
+                temporaryFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, records);
+            channel.force(true);
+        }
+        Files.move(temporaryFile, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        IOUtils.closeQuietly(_channel);
+        _channel = FileChannel.open(_file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        final long logRecordsBefore = _logRecords;
+        _logRecords = _state.size();
+        _lastCompaction = now;
+
+        LOGGER.debug()
+                .setMessage("Compacted position log")
+                .addData("file", _file)
+                .addData("sizeBefore", sizeBefore)
+                .addData("sizeAfter", _state.size())
+                .addData("logRecordsBefore", logRecordsBefore)
+                .log();
+    }
+
+    private ConcurrentMap<String, Descriptor> load() {
+        final ConcurrentMap<String, Descriptor> state = Maps.newConcurrentMap();
+        final String log;
+        try {
+            log = new String(Files.readAllBytes(_file), Charsets.UTF_8);
+        } catch (final NoSuchFileException e) {
+            return state;
+        } catch (final IOException e) {
+            LOGGER.warn()
+                    .setMessage("Unable to load state")
+                    .addData("file", _file)
+                    .setThrowable(e)
+                    .log();
+            return state;
+        }
+
+        // Later records supersede earlier ones; only complete records are read
+        long invalidRecords = 0;
+        int start = 0;
+        int end = log.indexOf('\n', start);
+        while (end >= 0) {
+            final String[] fields = log.substring(start, end).split(" ");
+            if (fields.length == 3) {
+                try {
+                    state.put(fields[0], new Descriptor(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                } catch (final NumberFormatException e) {
+                    ++invalidRecords;
+                }
+            } else {
+                ++invalidRecords;
+            }
+            start = end + 1;
+            end = log.indexOf('\n', start);
+        }
+        if (invalidRecords > 0 || start < log.length()) {
+            LOGGER.warn()
+                    .setMessage("Ignored invalid records in position log")
+                    .addData("file", _file)
+                    .addData("invalidRecords", invalidRecords)
+                    .addData("partialRecord", start < log.length())
+                    .log();
+        }
+        return state;
+    }
+
+    private static void appendRecord(
+            final StringBuilder records,
+            final String identifier,
+            final Descriptor descriptor) {
+        records.append(identifier)
+                .append(' ')
+                .append(descriptor.getPosition())
+                .append(' ')
+                .append(descriptor.getLastUpdated())
+                .append('\n');
+    }
+
+    private static void write(final FileChannel channel, final StringBuilder records) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(Charsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private LogPositionStore(final Builder builder) {
+        _file = builder._file;
+        _flushInterval = builder._flushInterval;
+        _retention = builder._retention;
+        _state = load();
+
+        // Start from a snapshot so appends never follow a partial record
+        final long now = System.currentTimeMillis();
+        _lastFlush = now;
+        try {
+            compact(now);
+        } catch (final IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private final Path _file;
+    private final Duration _flushInterval;
+    private final Duration _retention;
+    private final ConcurrentMap<String, Descriptor> _state;
+    private final Set<String> _dirty = Sets.newConcurrentHashSet();
+
+    private FileChannel _channel;
+    private long _logRecords;
+    private long _lastCompaction;
+    private volatile long _lastFlush;
+
+    private static final long MINIMUM_COMPACTION_RECORDS = 10000;
+    private static final long COMPACTION_RATIO = 4;
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogPositionStore.class);
+
+    private static final class Descriptor {
+
+        public synchronized void update(final long position, final long updatedAt) {
+            _position = position;
+            _lastUpdated = updatedAt;
+        }
+
+        public synchronized long getPosition() {
+            return _position;
+        }
+
+        public synchronized long getLastUpdated() {
+            return _lastUpdated;
+        }
+
+        private Descriptor(final long position, final long lastUpdated) {
+            _position = position;
+            _lastUpdated = lastUpdated;
+        }
+
+        private long _position;
+        private long _lastUpdated;
+    }
+
+    /**
+     * Implementation of builder pattern for <code>LogPositionStore</code>.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    public static class Builder extends OvalBuilder<LogPositionStore> {
+
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(LogPositionStore::new);
+        }
+
+        /**
+         * Sets the file to store position in. Cannot be null or empty.
+         *
+         * @param value The file to store position in.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setFile(final Path value) {
+            _file = value;
+            return this;
+        }
+
+        /**
+         * Sets the interval between appending changed positions to the log.
+         * This is the most recent position history lost on a crash.
+         * Optional. Default is one second.
+         *
+         * @param value The interval between flushes to the log.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setFlushInterval(final Duration value) {
+            _flushInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets the duration of an entry in the position store. Optional.
+         * Default is one day.
+         *
+         * @param value The retention of an entry in the position store.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setRetention(final Duration value) {
+            _retention = value;
+            return this;
+        }
+
+        @NotNull
+        private Path _file;
+        @NotNull
+        private Duration _flushInterval = Duration.standardSeconds(1);
+        @NotNull
+        private Duration _retention = Duration.standardDays(1);
+    }
+}
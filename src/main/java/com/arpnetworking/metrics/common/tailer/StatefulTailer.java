@@ -20,19 +20,24 @@ import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.arpnetworking.utility.FileWatchTrigger;
 import com.arpnetworking.utility.TimerTrigger;
 import com.arpnetworking.utility.Trigger;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Throwables;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotNull;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
 import org.joda.time.Duration;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -49,7 +54,8 @@ import java.util.Optional;
  * Commons implementation. In particular, more robust support for rename-
  * recreate file rotations and some progress for copy-truncate cases. The major
  * new feature is the <code>PositionStore</code> which is used to checkpoint
- * the offset in the tailed file as identified by a hash of the file prefix.
+ * the offset in the tailed file as identified by a hash of the file prefix
+ * and, optionally, the file system's key for the file.
  *
  * @author Brandon Arp (brandonarp at gmail dot com)
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
@@ -79,10 +85,49 @@ public final class StatefulTailer implements Tailer {
             fileLoop();
         } finally {
             IOUtils.closeQuietly(_positionStore);
-            IOUtils.closeQuietly(_lineBuffer);
+            if (_trigger instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) _trigger);
+            }
         }
     }
 
+    /**
+     * Performs the tailing available without waiting for the read interval.
+     * This permits many tailers to share a pool of threads instead of each
+     * running on its own thread. The caller should poll again once the read
+     * interval elapses if this returns true and otherwise as soon as it is
+     * fair to do so. A tailer which fails while polling is stopped. Polling
+     * a stopped tailer releases the file it was reading. Unlike
+     * <code>run</code>, polling never closes the <code>PositionStore</code>.
+     *
+     * @return <code>True</code> if and only if the caller should wait for
+     * the read interval before polling again.
+     */
+    public boolean poll() {
+        if (isRunning()) {
+            try {
+                return step();
+                // CHECKSTYLE.OFF: IllegalCatch - Allow clients to decide how to handle exceptions
+            } catch (final Exception e) {
+                // CHECKSTYLE.ON: IllegalCatch
+                handleThrowable(e);
+                stop();
+            }
+        }
+        closeReader();
+        return false;
+    }
+
+    /**
+     * The number of bytes in the file after the last line read as of the
+     * most recent read.
+     *
+     * @return The number of bytes behind the end of the file.
+     */
+    public long getBytesBehind() {
+        return _bytesBehind;
+    }
+
     /**
      * Generate a Steno log compatible representation.
      *
@@ -96,6 +141,11 @@ public final class StatefulTailer implements Tailer {
                 .put("listener", _listener)
                 .put("isRunning", _isRunning)
                 .put("trigger", _trigger)
+                .put("catchUpThreshold", _catchUpThreshold)
+                .put("catchUpWindowSize", _catchUpWindowSize)
+                .put("readLimit", _readLimit)
+                .put("identifyByFileKey", _identifyByFileKey)
+                .put("bytesBehind", _bytesBehind)
                 .build();
     }
 
@@ -112,42 +162,19 @@ public final class StatefulTailer implements Tailer {
      *
      * @return <code>True</code> if and only if the <code>Tailer</code> is running.
      */
-    protected boolean isRunning() {
+    public boolean isRunning() {
         return _isRunning;
     }
 
     private void fileLoop() {
-        SeekableByteChannel reader = null;
-        InitialPosition nextInitialPosition = _initialPosition;
         try {
             while (isRunning()) {
-                // Attempt to open the file
-                try {
-                    reader = Files.newByteChannel(_file, StandardOpenOption.READ);
-                    LOGGER.trace()
-                            .setMessage("Opened file")
-                            .addData("file", _file)
-                            .log();
-                } catch (final NoSuchFileException e) {
-                    _listener.fileNotFound();
-                    _trigger.waitOnTrigger();
-                }
-
-                if (reader != null) {
-                    // Position the reader
-                    resume(reader, nextInitialPosition);
-                    _listener.fileOpened();
-
-                    // Any subsequent file opens we should start at the beginning
-                    nextInitialPosition = InitialPosition.START;
-
-                    // Read the file
-                    readLoop(reader);
-
-                    // Reset per file state
-                    IOUtils.closeQuietly(reader);
-                    reader = null;
-                    _hash = Optional.empty();
+                if (step()) {
+                    if (_pendingRotation.isPresent()) {
+                        _graceTrigger.waitOnTrigger();
+                    } else {
+                        _trigger.waitOnTrigger();
+                    }
                 }
             }
         // Clients may elect to kill the stateful tailer on an exception by calling stop, or they
@@ -163,10 +190,48 @@ public final class StatefulTailer implements Tailer {
             // CHECKSTYLE.ON: IllegalCatch
             handleThrowable(e);
         } finally {
-            IOUtils.closeQuietly(reader);
-            reader = null;
-            _hash = Optional.empty();
+            closeReader();
+        }
+    }
+
+    private boolean step() throws IOException {
+        if (_reader == null) {
+            return openFile();
         }
+        return readFile(_reader);
+    }
+
+    private boolean openFile() throws IOException {
+        // Attempt to open the file
+        try {
+            _reader = Files.newByteChannel(_file, StandardOpenOption.READ);
+            if (_identifyByFileKey) {
+                _fileKey = readFileKey();
+            }
+            LOGGER.trace()
+                    .setMessage("Opened file")
+                    .addData("file", _file)
+                    .log();
+        } catch (final NoSuchFileException e) {
+            closeReader();
+            _listener.fileNotFound();
+            return true;
+        }
+
+        // Position the reader
+        resume(_reader, _nextInitialPosition);
+        _listener.fileOpened();
+
+        // Any subsequent file opens we should start at the beginning
+        _nextInitialPosition = InitialPosition.START;
+
+        // Reset per file read state
+        _lastChecked = Optional.empty();
+        _currentReaderPrefixHash = Optional.empty();
+        _currentReaderPrefixHashLength = 0;
+        _pendingCheckpoint = false;
+        _pendingRotation = Optional.empty();
+        return false;
     }
 
     private void resume(final SeekableByteChannel reader, final InitialPosition initialPosition) throws IOException {
@@ -176,7 +241,7 @@ public final class StatefulTailer implements Tailer {
         // Override position with last known position from store
         _hash = computeHash(reader, REQUIRED_BYTES_FOR_HASH);
         if (_hash.isPresent()) {
-            final Optional<Long> storedPosition = _positionStore.getPosition(_hash.get());
+            final Optional<Long> storedPosition = _positionStore.getPosition(_hash.get() + _fileKey);
             if (storedPosition.isPresent()) {
                 // Optionally limit the size of the backlog to process
                 final long fileSize = reader.size();
@@ -199,151 +264,183 @@ public final class StatefulTailer implements Tailer {
     }
 
     // CHECKSTYLE.OFF: MethodLength - Nothing to refactor here.
-    private void readLoop(final SeekableByteChannel reader) throws IOException, InterruptedException {
-        Optional<Long> lastChecked = Optional.empty();
-        Optional<String> currentReaderPrefixHash = Optional.empty();
-        int currentReaderPrefixHashLength = 0;
-        while (isRunning()) {
-            // Obtain properties of file we expect we are reading
-            final Attributes attributes;
-            try {
-                attributes = getAttributes(_file, lastChecked);
-            } catch (final NoSuchFileException t) {
-                rotate(
-                        Optional.of(reader),
-                        String.format(
-                                "File rotation detected based attributes access failure; file=%s",
-                                _file));
+    private boolean readFile(final SeekableByteChannel reader) throws IOException {
+        if (_pendingRotation.isPresent()) {
+            // Read the data written to the old file during the grace period
+            readLines(reader, Optional.empty());
+            rotate(_pendingRotation.get());
+
+            // Return to the file loop
+            return false;
+        }
+        final boolean waited = _pendingCheckpoint;
+        if (_pendingCheckpoint) {
+            _pendingCheckpoint = false;
+            checkpoint(reader);
+        }
 
-                // Return to the file loop
-                return;
-            }
+        // Obtain properties of file we expect we are reading
+        final Attributes attributes;
+        try {
+            attributes = getAttributes(_file, _lastChecked);
+        } catch (final NoSuchFileException t) {
+            // Allow a full read interval before calling it quits on the old file
+            _pendingRotation = Optional.of(
+                    String.format(
+                            "File rotation detected based attributes access failure; file=%s",
+                            _file));
+            return true;
+        }
+
+        if (attributes.getLength() < reader.position()) {
+            // File was rotated; either:
+            // 1) Position is past the length of the file
+            // 2) The expected file is smaller than the current file
+            // Allow a full read interval before calling it quits on the old file
+            _pendingRotation = Optional.of(
+                    String.format(
+                            "File rotation detected based on length, position and size; file=%s, length=%d, position=%d, size=%d",
+                            _file,
+                            attributes.getLength(),
+                            reader.position(),
+                            reader.size()));
+            return true;
+
+        } else {
+            // File was _likely_ not rotated
+            if (reader.size() > reader.position()) {
+                // There is more data in the file
+                if (!readLines(reader, _readLimit)) {
+                    // There actually isn't any more data in the file; this
+                    // means the file was rotated and the new file has more
+                    // data than the old file (e.g. rotation from empty).
+
+                    // TODO(vkoskela): Account for missing final newline. [MAI-322]
+                    // There is a degenerate case where the last line in a
+                    // file does not have a newline. Then readLines will
+                    // always find new data, but the file has been rotated
+                    // away. We should buffer the contents of partial lines
+                    // thereby detecting when the length grows whether we
+                    // actually got more data in the current file.
+
+                    rotate(
+                            String.format(
+                                    "File rotation detected based on length and no new data; file=%s, length=%d, position=%d",
+                                    _file,
+                                    attributes.getLength(),
+                                    reader.position()));
+
+                    // Return to the file loop
+                    return false;
+                }
+                _lastChecked = Optional.of(attributes.getLastModifiedTime());
+
+                // This control path, specifically, successfully reading
+                // data from the file does not trigger a wait. This permits
+                // continuous reading without pausing.
+
+            } else if (attributes.isNewer()) {
+                // The file does not contain any additional data, but its
+                // last modified date is after the last read date. The file
+                // must have rotated and contains the same length of
+                // content. This can happen on periodic systems which log
+                // the same data at the beginning of each period.
 
-            if (attributes.getLength() < reader.position()) {
-                // File was rotated; either:
-                // 1) Position is past the length of the file
-                // 2) The expected file is smaller than the current file
                 rotate(
-                        Optional.of(reader),
                         String.format(
-                                "File rotation detected based on length, position and size; file=%s, length=%d, position=%d, size=%d",
+                                "File rotation detected based equal length and position but newer"
+                                        + "; file=%s, length=%d, position=%d, lastChecked=%s, attributes=%s",
                                 _file,
                                 attributes.getLength(),
                                 reader.position(),
-                                reader.size()));
+                                _lastChecked.get(),
+                                attributes));
 
                 // Return to the file loop
-                return;
+                return false;
 
             } else {
-                // File was _likely_ not rotated
-                if (reader.size() > reader.position()) {
-                    // There is more data in the file
-                    if (!readLines(reader)) {
-                        // There actually isn't any more data in the file; this
-                        // means the file was rotated and the new file has more
-                        // data than the old file (e.g. rotation from empty).
-
-                        // TODO(vkoskela): Account for missing final newline. [MAI-322]
-                        // There is a degenerate case where the last line in a
-                        // file does not have a newline. Then readLines will
-                        // always find new data, but the file has been rotated
-                        // away. We should buffer the contents of partial lines
-                        // thereby detecting when the length grows whether we
-                        // actually got more data in the current file.
-
-                        rotate(
-                                Optional.<SeekableByteChannel>empty(),
-                                String.format(
-                                        "File rotation detected based on length and no new data; file=%s, length=%d, position=%d",
-                                        _file,
-                                        attributes.getLength(),
-                                        reader.position()));
-
-                        // Return to the file loop
-                        return;
-                    }
-                    lastChecked = Optional.of(attributes.getLastModifiedTime());
-
-                    // This control path, specifically, successfully reading
-                    // data from the file does not trigger a wait. This permits
-                    // continuous reading without pausing.
-
-                } else if (attributes.isNewer()) {
-                    // The file does not contain any additional data, but its
-                    // last modified date is after the last read date. The file
-                    // must have rotated and contains the same length of
-                    // content. This can happen on periodic systems which log
-                    // the same data at the beginning of each period.
-
+                // The files are the same size and the timestamps are the
+                // same. This is more common than it sounds since file
+                // modification timestamps are not very precise on many
+                // file systems.
+                //
+                // Since we're not doing anything at this point let's hash
+                // the first N bytes of the current file and the expected
+                // file to see if we're still working on the same file.
+
+                // Skip the comparison if the trigger observed no change to
+                // the file while waiting
+                final Optional<Boolean> hashesSame;
+                if (!waited || _trigger.mayHaveChanged()) {
+                    hashesSame = compareByHash(_currentReaderPrefixHash, _currentReaderPrefixHashLength);
+                } else {
+                    hashesSame = Optional.empty();
+                }
+                if (hashesSame.isPresent() && !hashesSame.get()) {
+                    // The file rotated with the same length!
                     rotate(
-                            Optional.<SeekableByteChannel>empty(),
                             String.format(
-                                    "File rotation detected based equal length and position but newer"
-                                            + "; file=%s, length=%d, position=%d, lastChecked=%s, attributes=%s",
-                                    _file,
-                                    attributes.getLength(),
-                                    reader.position(),
-                                    lastChecked.get(),
-                                    attributes));
+                                    "File rotation detected based on hash; file=%s",
+                                    _file));
 
                     // Return to the file loop
-                    return;
-
-                } else {
-                    // The files are the same size and the timestamps are the
-                    // same. This is more common than it sounds since file
-                    // modification timestamps are not very precise on many
-                    // file systems.
-                    //
-                    // Since we're not doing anything at this point let's hash
-                    // the first N bytes of the current file and the expected
-                    // file to see if we're still working on the same file.
-
-                    final Optional<Boolean> hashesSame = compareByHash(currentReaderPrefixHash, currentReaderPrefixHashLength);
-                    if (hashesSame.isPresent() && !hashesSame.get()) {
-                        // The file rotated with the same length!
-                        rotate(
-                                Optional.<SeekableByteChannel>empty(),
-                                String.format(
-                                        "File rotation detected based on hash; file=%s",
-                                        _file));
-
-                        // Return to the file loop
-                        return;
-                    }
-                    // else: the files are empty or the hashes are the same. In
-                    // either case we don't have enough data to determine if
-                    // the files are different; we'll need to wait and see when
-                    // more data is written if the size and age diverge.
-
-                    // TODO(vkoskela): Configurable maximum rotation hash size. [MAI-323]
-                    // TODO(vkoskela): Configurable minimum rotation hash size. [MAI-324]
-                    // TODO(vkoskela): Configurable identity hash size. [MAI-325]
-                    // TODO(vkoskela): We should add a rehash interval. [MAI-326]
-                    // This interval would be separate from the read interval,
-                    // and generally longer, preventing us from rehashing the
-                    // file every interval; but short enough that we don't wait
-                    // too long before realizing a slowly growing file was
-                    // rotated.
-
-                    // Read interval
-                    _trigger.waitOnTrigger();
+                    return false;
                 }
+                // else: the files are empty or the hashes are the same. In
+                // either case we don't have enough data to determine if
+                // the files are different; we'll need to wait and see when
+                // more data is written if the size and age diverge.
+
+                // TODO(vkoskela): Configurable maximum rotation hash size. [MAI-323]
+                // TODO(vkoskela): Configurable minimum rotation hash size. [MAI-324]
+                // TODO(vkoskela): Configurable identity hash size. [MAI-325]
+                // TODO(vkoskela): We should add a rehash interval. [MAI-326]
+                // This interval would be separate from the read interval,
+                // and generally longer, preventing us from rehashing the
+                // file every interval; but short enough that we don't wait
+                // too long before realizing a slowly growing file was
+                // rotated.
+
+                // Read interval; the checkpoint follows the wait
+                _pendingCheckpoint = true;
+                return true;
             }
+        }
 
-            // Compute the prefix hash unless we have an identity
-            final int newPrefixHashLength = (int) Math.min(reader.size(), REQUIRED_BYTES_FOR_HASH);
-            if (!_hash.isPresent() && (currentReaderPrefixHashLength != newPrefixHashLength || !currentReaderPrefixHash.isPresent())) {
-                currentReaderPrefixHashLength = newPrefixHashLength;
-                currentReaderPrefixHash = computeHash(reader, currentReaderPrefixHashLength);
-            }
+        checkpoint(reader);
+        return false;
+    }
+    // CHECKSTYLE.ON: MethodLength
 
-            // Update the reader position
-            updateCheckpoint(reader.position());
+    private void checkpoint(final SeekableByteChannel reader) throws IOException {
+        // Compute the prefix hash unless we have an identity
+        final int newPrefixHashLength = (int) Math.min(reader.size(), REQUIRED_BYTES_FOR_HASH);
+        if (!_hash.isPresent()
+                && (_currentReaderPrefixHashLength != newPrefixHashLength || !_currentReaderPrefixHash.isPresent())) {
+            _currentReaderPrefixHashLength = newPrefixHashLength;
+            _currentReaderPrefixHash = computeHash(reader, _currentReaderPrefixHashLength);
         }
+
+        // Update the reader position
+        updateCheckpoint(reader.position());
+    }
+
+    private void closeReader() {
+        // Reset per file state
+        IOUtils.closeQuietly(_reader);
+        _reader = null;
+        _hash = Optional.empty();
+        _fileKey = "";
+    }
+
+    private String readFileKey() throws IOException {
+        // NOTE: A rotation between opening the file and reading its key is not detected
+        final Object fileKey = Files.readAttributes(_file, BasicFileAttributes.class).fileKey();
+        final String key = fileKey == null ? _file.toAbsolutePath().normalize().toString() : fileKey.toString();
+        _md5.reset();
+        return "-" + Hex.encodeHexString(_md5.digest(key.getBytes(StandardCharsets.UTF_8)));
     }
-    // CHECKSTYLE.ON: MethodLength
 
     private Attributes getAttributes(final Path file, final Optional<Long> lastChecked) throws IOException {
         final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
@@ -360,74 +457,179 @@ public final class StatefulTailer implements Tailer {
                 lastChecked.isPresent() && attributes.lastModifiedTime().toMillis() > lastChecked.get());
     }
 
-    private void rotate(final Optional<SeekableByteChannel> reader, final String reason) throws InterruptedException, IOException {
-        // Allow a full read interval before calling it quits on the old file
-        if (reader.isPresent()) {
-            _trigger.waitOnTrigger();
-            readLines(reader.get());
-        }
-
+    private void rotate(final String reason) {
         // Inform the listener
         _listener.fileRotated();
 
         LOGGER.info(reason);
+
+        // Return to the file loop
+        closeReader();
     }
 
-    private boolean readLines(final SeekableByteChannel reader) throws IOException {
+    private boolean readLines(final SeekableByteChannel reader, final Optional<Long> readLimit) throws IOException {
         // Compute the hash if not already set
         if (!_hash.isPresent() && reader.size() >= REQUIRED_BYTES_FOR_HASH) {
             _hash = computeHash(reader, REQUIRED_BYTES_FOR_HASH);
         }
 
-        // Track current position in file and next read position
+        // Track next read position
         // NOTE: The next read position is always the beginning of a line
-        long position = reader.position();
-        long nextReadPosition = position;
+        final long startPosition = reader.position();
+        _nextReadPosition = startPosition;
+        _hasCR = false;
 
         // Reset buffers
         _buffer.clear();
-        _lineBuffer.reset();
+        _partialLine.clear();
+
+        // Catch up on a large backlog directly from the file mapping
+        boolean hasData = false;
+        if (_catchUpThreshold.isPresent() && reader instanceof FileChannel) {
+            hasData = catchUp((FileChannel) reader);
+        }
 
         // Process available data
+        // NOTE: Lines are delivered as views of the read buffer; only a line
+        // which spans reads is assembled in the partial line buffer
+        long position = reader.position();
         int bufferSize = reader.read(_buffer);
-        boolean hasData = false;
-        boolean hasCR = false;
         while (isRunning() && bufferSize != -1) {
             hasData = true;
-            for (int i = 0; i < bufferSize; i++) {
-                final byte ch = _buffer.get(i);
-                switch (ch) {
-                    case '\n':
-                        hasCR = false;
-                        handleLine();
-                        nextReadPosition = position + i + 1;
-                        updateCheckpoint(nextReadPosition);
-                        break;
-                    case '\r':
-                        if (hasCR) {
-                            _lineBuffer.write('\r');
-                        }
-                        hasCR = true;
-                        break;
-                    default:
-                        if (hasCR) {
-                            hasCR = false;
-                            handleLine();
-                            nextReadPosition = position + i + 1;
-                            updateCheckpoint(nextReadPosition);
-                        }
-                        _lineBuffer.write(ch);
-                }
-            }
+            scanLines(_buffer, _lineView, bufferSize, position);
             position = reader.position();
+            if (readLimit.isPresent()
+                    && position - startPosition >= readLimit.get()
+                    && _nextReadPosition > startPosition) {
+                // Yield after reading the limit; the remainder is read next
+                break;
+            }
             _buffer.clear();
             bufferSize = reader.read(_buffer);
         }
 
-        reader.position(nextReadPosition);
+        _bytesBehind = Math.max(0, reader.size() - _nextReadPosition);
+        reader.position(_nextReadPosition);
         return hasData;
     }
 
+    private boolean catchUp(final FileChannel reader) throws IOException {
+        final long catchUpThreshold = _catchUpThreshold.get();
+        long position = reader.position();
+        long size = reader.size();
+        if (size - position <= catchUpThreshold) {
+            return false;
+        }
+
+        LOGGER.info()
+                .setMessage("Catching up")
+                .addData("file", _file)
+                .addData("position", position)
+                .addData("bytesBehind", size - position)
+                .log();
+
+        // Map the unread region in windows until within the threshold of the
+        // end of the file; the remainder is read normally
+        while (isRunning() && size - position > catchUpThreshold) {
+            final int windowSize = (int) Math.min(_catchUpWindowSize, size - position);
+            final MappedByteBuffer window = reader.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            scanLines(window, window.duplicate(), windowSize, position);
+            position += windowSize;
+            size = reader.size();
+            _bytesBehind = size - _nextReadPosition;
+            LOGGER.debug()
+                    .setMessage("Caught up window")
+                    .addData("file", _file)
+                    .addData("position", position)
+                    .addData("bytesBehind", _bytesBehind)
+                    .log();
+        }
+        reader.position(position);
+
+        LOGGER.info()
+                .setMessage("Caught up")
+                .addData("file", _file)
+                .addData("position", position)
+                .addData("bytesBehind", size - position)
+                .log();
+        return true;
+    }
+
+    private void scanLines(final ByteBuffer buffer, final ByteBuffer view, final int bufferSize, final long position) {
+        int lineStart = 0;
+        // The pending carriage return may be the last byte of the partial line
+        int crIndex = -1;
+        int i = 0;
+        while (i < bufferSize) {
+            if (!_hasCR) {
+                i = findLineTerminator(buffer, i, bufferSize);
+                if (i == bufferSize) {
+                    break;
+                }
+                if (buffer.get(i) == '\n') {
+                    handleLine(view, lineStart, i);
+                    lineStart = i + 1;
+                    _nextReadPosition = position + lineStart;
+                    updateCheckpoint(_nextReadPosition);
+                } else {
+                    _hasCR = true;
+                    crIndex = i;
+                }
+                ++i;
+            } else {
+                final byte ch = buffer.get(i);
+                if (ch == '\n') {
+                    _hasCR = false;
+                    handleLine(view, lineStart, crIndex);
+                    lineStart = i + 1;
+                    _nextReadPosition = position + lineStart;
+                    updateCheckpoint(_nextReadPosition);
+                    ++i;
+                } else if (ch == '\r') {
+                    // Only the last of consecutive carriage returns ends the line
+                    crIndex = i;
+                    ++i;
+                } else {
+                    // A lone carriage return ends the line and this byte
+                    // starts the next line
+                    _hasCR = false;
+                    handleLine(view, lineStart, crIndex);
+                    lineStart = i;
+                    _nextReadPosition = position + lineStart;
+                    updateCheckpoint(_nextReadPosition);
+                }
+            }
+        }
+        appendPartialLine(view, lineStart, bufferSize);
+        _listener.flush();
+    }
+
+    private static int findLineTerminator(final ByteBuffer buffer, final int from, final int to) {
+        int i = from;
+        // Skip eight bytes at a time while no byte is a line terminator
+        while (i + Long.BYTES <= to) {
+            final long word = buffer.getLong(i);
+            if (hasByte(word, NEWLINES) || hasByte(word, CARRIAGE_RETURNS)) {
+                break;
+            }
+            i += Long.BYTES;
+        }
+        while (i < to) {
+            final byte ch = buffer.get(i);
+            if (ch == '\n' || ch == '\r') {
+                return i;
+            }
+            ++i;
+        }
+        return to;
+    }
+
+    private static boolean hasByte(final long word, final long pattern) {
+        // Any byte of the word equal to the pattern byte is zero after the xor
+        final long value = word ^ pattern;
+        return ((value - LOW_BITS) & ~value & HIGH_BITS) != 0;
+    }
+
     private Optional<Boolean> compareByHash(final Optional<String> prefixHash, final int prefixLength) {
         final int appliedLength;
         if (_hash.isPresent()) {
@@ -503,13 +705,43 @@ public final class StatefulTailer implements Tailer {
 
     private void updateCheckpoint(final long position) {
         if (_hash.isPresent()) {
-            _positionStore.setPosition(_hash.get(), position);
+            _positionStore.setPosition(_hash.get() + _fileKey, position);
+        }
+    }
+
+    private void handleLine(final ByteBuffer view, final int start, final int end) {
+        if (_partialLine.position() == 0) {
+            _listener.handle(slice(view, start, end));
+        } else {
+            appendPartialLine(view, start, end);
+            _partialLine.flip();
+            _listener.handle(_partialLine);
+            _partialLine.clear();
+        }
+    }
+
+    private void appendPartialLine(final ByteBuffer view, final int start, final int end) {
+        if (end < start) {
+            // Drop the carriage return ending the partial line
+            _partialLine.position(_partialLine.position() - 1);
+            return;
+        }
+        final int length = end - start;
+        if (_partialLine.remaining() < length) {
+            final ByteBuffer partialLine = ByteBuffer.allocate(
+                    Math.max(_partialLine.capacity() * 2, _partialLine.position() + length));
+            _partialLine.flip();
+            partialLine.put(_partialLine);
+            _partialLine = partialLine;
         }
+        _partialLine.put(slice(view, start, end));
     }
 
-    private void handleLine() {
-        _listener.handle(_lineBuffer.toByteArray());
-        _lineBuffer.reset();
+    private static ByteBuffer slice(final ByteBuffer view, final int start, final int end) {
+        view.clear();
+        view.position(start);
+        view.limit(end);
+        return view;
     }
 
     private void handleThrowable(final Throwable t) {
@@ -519,13 +751,19 @@ public final class StatefulTailer implements Tailer {
     // NOTE: Package private for testing
 
     /* package private */ StatefulTailer(final Builder builder, final Trigger trigger) {
+        this(builder, trigger, trigger);
+    }
+
+    private StatefulTailer(final Builder builder, final Trigger trigger, final Trigger graceTrigger) {
         _file = builder._file;
         _positionStore = builder._positionStore;
         _listener = builder._listener;
         _trigger = trigger;
+        _graceTrigger = graceTrigger;
 
         _buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
-        _lineBuffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        _lineView = _buffer.duplicate();
+        _partialLine = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
         try {
             _md5 = MessageDigest.getInstance("MD5");
         } catch (final NoSuchAlgorithmException e) {
@@ -533,30 +771,61 @@ public final class StatefulTailer implements Tailer {
         }
 
         _initialPosition = builder._initialPosition;
+        _nextInitialPosition = _initialPosition;
+        _readLimit = Optional.ofNullable(builder._readLimit);
         _maximumOffsetOnResume = Optional.ofNullable(builder._maximumOffsetOnResume);
+        _catchUpThreshold = Optional.ofNullable(builder._catchUpThreshold);
+        _catchUpWindowSize = builder._catchUpWindowSize;
+        _identifyByFileKey = builder._identifyByFileKey;
         _listener.initialize(this);
     }
 
     private StatefulTailer(final Builder builder) {
         // TODO(vkoskela): Configurable grace period separate from interval. [MAI-327]
-        this(builder, new TimerTrigger(builder._readInterval));
+        this(
+                builder,
+                builder._watchInterval == null
+                        ? new TimerTrigger(builder._readInterval)
+                        : new FileWatchTrigger(builder._file, builder._watchInterval),
+                new TimerTrigger(builder._readInterval));
     }
 
     private final Path _file;
     private final PositionStore _positionStore;
     private final TailerListener _listener;
     private final ByteBuffer _buffer;
-    private final ByteArrayOutputStream _lineBuffer;
+    private final ByteBuffer _lineView;
     private final MessageDigest _md5;
     private final InitialPosition _initialPosition;
     private final Optional<Long> _maximumOffsetOnResume;
+    private final Optional<Long> _readLimit;
+    private final Optional<Long> _catchUpThreshold;
+    private final int _catchUpWindowSize;
+    private final boolean _identifyByFileKey;
     private final Trigger _trigger;
+    private final Trigger _graceTrigger;
 
     private volatile boolean _isRunning = true;
+    private SeekableByteChannel _reader;
+    private InitialPosition _nextInitialPosition;
+    private Optional<Long> _lastChecked = Optional.empty();
+    private Optional<String> _currentReaderPrefixHash = Optional.empty();
+    private int _currentReaderPrefixHashLength = 0;
+    private boolean _pendingCheckpoint = false;
+    private Optional<String> _pendingRotation = Optional.empty();
+    private volatile long _bytesBehind = 0;
     private Optional<String> _hash = Optional.empty();
+    private String _fileKey = "";
+    private ByteBuffer _partialLine;
+    private long _nextReadPosition;
+    private boolean _hasCR;
 
     private static final int REQUIRED_BYTES_FOR_HASH = 512;
     private static final int INITIAL_BUFFER_SIZE = 65536;
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long CARRIAGE_RETURNS = 0x0d0d0d0d0d0d0d0dL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
     private static final Logger LOGGER = LoggerFactory.getLogger(StatefulTailer.class);
 
     private static final class Attributes {
@@ -679,6 +948,85 @@ public final class StatefulTailer implements Tailer {
             return this;
         }
 
+        /**
+         * Sets the number of unread bytes beyond which the tailer catches up
+         * by scanning memory mapped windows of the file instead of reading it
+         * through the read buffer. Catching up stops once the tailer is within
+         * this distance of the end of the file. Optional. Default is to never
+         * catch up from a mapping.
+         *
+         * NOTE: Truncating a file while it is mapped (e.g. copy-truncate
+         * rotation) may cause the tailer to fail with an <code>Error</code>.
+         *
+         * @param value The catch up threshold in bytes.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setCatchUpThreshold(final Long value) {
+            _catchUpThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets the size of each memory mapped window when catching up.
+         * Optional. Default is 128 megabytes. Cannot be null.
+         *
+         * @param value The catch up window size in bytes.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setCatchUpWindowSize(final Integer value) {
+            _catchUpWindowSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of bytes after which the tailer stops reading and
+         * returns to check the file, resuming at the next line. This bounds
+         * the time spent reading a single file when tailers share threads.
+         * At least one line is always read. Optional. Default is to read all
+         * available data.
+         *
+         * @param value The read limit in bytes.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setReadLimit(final Long value) {
+            _readLimit = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum interval between file reads when waiting for
+         * changes to the file. If set, the tailer reads as soon as the file
+         * is reported created, modified or deleted by a
+         * <code>WatchService</code> instead of after each read interval, and
+         * skips rehashing the file if no change was reported. The read
+         * interval remains the grace period for reading a rotated file.
+         * Optional. Default is null. If null, the file is read every read
+         * interval.
+         *
+         * @param value The maximum interval between file reads.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setWatchInterval(final Duration value) {
+            _watchInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the file is identified in the <code>PositionStore</code>
+         * by the file system's key for the file (e.g. its inode) in addition
+         * to the hash of its prefix. This distinguishes files with the same
+         * prefix while a renamed file keeps its position. Where the file
+         * system has no file keys the path is used instead. Cannot be null.
+         * Default is false.
+         *
+         * @param value Whether to identify the file by its file key.
+         * @return This instance of {@link Builder}
+         */
+        public Builder setIdentifyByFileKey(final Boolean value) {
+            _identifyByFileKey = value;
+            return this;
+        }
+
         @NotNull
         private Path _file;
         @NotNull
@@ -690,5 +1038,15 @@ public final class StatefulTailer implements Tailer {
         @NotNull
         private InitialPosition _initialPosition = InitialPosition.START;
         private Long _maximumOffsetOnResume = null;
+        @Min(0)
+        private Long _catchUpThreshold = null;
+        @NotNull
+        @Min(1)
+        private Integer _catchUpWindowSize = 128 * 1024 * 1024;
+        @NotNull
+        private Boolean _identifyByFileKey = false;
+        @Min(1)
+        private Long _readLimit = null;
+        private Duration _watchInterval = null;
     }
 }
@@ -15,6 +15,8 @@
  */
 package com.arpnetworking.metrics.common.tailer;
 
+import java.nio.ByteBuffer;
+
 /**
  * Based on the Apache <code>TailerListener</code> but uses a <code>Tailer</code>
  * interface instead of a class for improved extensibility.
@@ -57,12 +59,27 @@ public interface TailerListener {
     void fileOpened();
 
     /**
-     * Handles a line from a <code>Tailer</code>.
+     * Handles a line from a <code>Tailer</code>. The line is the remaining
+     * bytes of the buffer, which is a view over the <code>Tailer</code>'s read
+     * buffer. The buffer is only valid for the duration of the call; its
+     * content is overwritten by subsequent reads and implementations must copy
+     * any bytes they retain.
      * <p>
      * <b>Note:</b> this is called from the <code>Tailer</code> thread.
      * @param line the raw line.
      */
-    void handle(final byte[] line);
+    void handle(final ByteBuffer line);
+
+    /**
+     * Called after the lines from a single read of the tailed file have been
+     * handled. Listeners which buffer lines should dispatch them. Listeners
+     * which do not buffer lines need not implement it.
+     * <p>
+     * <b>Note:</b> this is called from the <code>Tailer</code> thread.
+     */
+    default void flush() {
+        // Nothing is buffered
+    }
 
     /**
      * Handles a <code>Throwable</code> encountered during tailing.
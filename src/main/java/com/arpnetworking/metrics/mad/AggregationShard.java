@@ -0,0 +1,437 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.arpnetworking.tsdcore.model.Key;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.sf.oval.constraint.NotEmpty;
+import net.sf.oval.constraint.NotNull;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Responsible for managing aggregation buckets for all periods of the subset
+ * of <code>Key</code> instances hashed to this shard. Unlike the
+ * <code>PeriodWorker</code> which requires one thread per key and period, a
+ * shard owns its buckets outright and rotates them from a single
+ * <code>TimingWheel</code>, so the number of threads is independent of the
+ * number of distinct keys.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AggregationShard implements Runnable {
+
+    /**
+     * Shutdown this <code>AggregationShard</code>. Cannot be restarted.
+     */
+    public void shutdown() {
+        _isRunning = false;
+    }
+
+    /**
+     * Process a <code>Record</code> for a <code>Key</code> owned by this shard.
+     *
+     * @param key The <code>Key</code> of the <code>Record</code>.
+     * @param record Instance of <code>Record</code> to process.
+     */
+    public void record(final Key key, final Record record) {
+        _backlog.incrementAndGet();
+        _recordQueue.add(new KeyedRecords(key, Collections.singletonList(record)));
+    }
+
+    /**
+     * Process a batch of <code>Record</code> instances sharing a <code>Key</code>
+     * owned by this shard. The batch is queued as a single element and must
+     * not be modified after it is submitted.
+     *
+     * @param key The <code>Key</code> of the <code>Record</code> instances.
+     * @param records The <code>Record</code> instances to process.
+     */
+    public void record(final Key key, final List<Record> records) {
+        _backlog.addAndGet(records.size());
+        _recordQueue.add(new KeyedRecords(key, records));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        Thread.currentThread().setUncaughtExceptionHandler(
+                (thread, throwable) -> LOGGER.error()
+                        .setMessage("Unhandled exception")
+                        .addData("aggregationShard", AggregationShard.this)
+                        .setThrowable(throwable)
+                        .log());
+
+        while (_isRunning) {
+            try {
+                // Close any expired buckets
+                long now = System.currentTimeMillis();
+                rotate(now);
+
+                // Block until the next bucket expires or a record arrives
+                final OptionalLong nextDeadline = _timingWheel.getNextDeadline();
+                final long waitMillis = nextDeadline.isPresent()
+                        ? Math.min(Math.max(nextDeadline.getAsLong() - now, 0), MAXIMUM_WAIT_MILLIS)
+                        : MAXIMUM_WAIT_MILLIS;
+                KeyedRecords keyedRecords = _recordQueue.poll(waitMillis, TimeUnit.MILLISECONDS);
+
+                // Drain a bounded number of records so buckets are closed on time under sustained load
+                final long drainDeadline = System.currentTimeMillis() + MAXIMUM_DRAIN_MILLIS;
+                int drainedRecords = 0;
+                while (keyedRecords != null) {
+                    now = System.currentTimeMillis();
+                    try {
+                        for (final Record record : keyedRecords._records) {
+                            process(keyedRecords._key, record, now);
+                        }
+                    } finally {
+                        _backlog.addAndGet(-keyedRecords._records.size());
+                    }
+                    drainedRecords += keyedRecords._records.size();
+                    if (drainedRecords >= MAXIMUM_DRAIN_RECORDS || now >= drainDeadline) {
+                        break;
+                    }
+                    keyedRecords = _recordQueue.poll();
+                }
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+                LOGGER.warn()
+                        .setMessage("Interrupted waiting to close buckets")
+                        .setThrowable(e)
+                        .log();
+                // CHECKSTYLE.OFF: IllegalCatch - Top level catch to prevent thread death
+            } catch (final Exception e) {
+                // CHECKSTYLE.ON: IllegalCatch
+                LOGGER.error()
+                        .setMessage("Aggregator failure")
+                        .addData("aggregationShard", this)
+                        .setThrowable(e)
+                        .log();
+            }
+        }
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("name", _name)
+                .put("periods", _periods)
+                .put("keys", _bucketsByKey.size())
+                .put("timingWheel", _timingWheel)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    /* package private */ void process(final Key key, final Record record, final long now) {
+        KeyBuckets keyBuckets = _bucketsByKey.get(key);
+        if (keyBuckets == null) {
+            keyBuckets = new KeyBuckets(key);
+            _bucketsByKey.put(key, keyBuckets);
+        }
+
+        for (int i = 0; i < _periods.size(); ++i) {
+            final Period period = _periods.get(i);
+            final DateTime start = PeriodWorker.getStartTime(record.getTime(), period);
+            final Map<DateTime, Bucket> bucketsByStart = keyBuckets._bucketsByStart.get(i);
+            Bucket bucket = bucketsByStart.get(start);
+
+            // Create and schedule a new bucket if one does not exist; a bucket
+            // created after the period would have closed is a correction
+            if (bucket == null) {
+                final long timeout = _timeoutFunction.apply(period).getMillis();
+                final long periodExpiration = start.getMillis() + period.toStandardDuration().getMillis() + timeout;
+                final long expiration = Math.max(now + timeout, periodExpiration);
+                bucket = keyBuckets._bucketBuilders.get(i)
+                        .setStart(start)
+                        .setIsLate(_reaggregateLateData && periodExpiration <= now)
+                        .build();
+                bucketsByStart.put(start, bucket);
+                ++keyBuckets._openBucketCount;
+                _timingWheel.schedule(new ScheduledBucket(keyBuckets, i, bucket), expiration);
+
+                LOGGER.debug()
+                        .setMessage("Created new bucket")
+                        .addData("bucket", bucket)
+                        .addData("expiration", expiration)
+                        .addData("trigger", record.getId())
+                        .log();
+            }
+
+            // NOTE: Only this shard's thread adds to and closes its buckets so
+            // there is no race between processing and closing.
+            bucket.add(record);
+        }
+    }
+
+    /* package private */ void rotate(final long now) {
+        _maxCloseLatencyMillis = 0;
+        final int closedBucketCount = _timingWheel.expire(now, this::closeBucket);
+        if (closedBucketCount > 0) {
+            LOGGER.debug()
+                    .setMessage("Rotated")
+                    .addData("count", closedBucketCount)
+                    .addData("maxCloseLatencyMillis", _maxCloseLatencyMillis)
+                    .log();
+        }
+    }
+
+    private void closeBucket(final ScheduledBucket scheduledBucket, final long expiration) {
+        final long closeLatencyMillis = System.currentTimeMillis() - expiration;
+        _maxCloseLatencyMillis = Math.max(_maxCloseLatencyMillis, closeLatencyMillis);
+        _closeLatency.accumulate(closeLatencyMillis);
+        final KeyBuckets keyBuckets = scheduledBucket._keyBuckets;
+        final Bucket bucket = scheduledBucket._bucket;
+        bucket.close();
+        keyBuckets._bucketsByStart.get(scheduledBucket._periodIndex).remove(bucket.getStart());
+
+        // Release the key once it has no open buckets so that idle keys do not
+        // accumulate over the lifetime of the shard
+        if (--keyBuckets._openBucketCount == 0) {
+            _bucketsByKey.remove(keyBuckets._key);
+        }
+
+        LOGGER.debug()
+                .setMessage("Bucket closed")
+                .addData("aggregationShard", _name)
+                .addData("bucket", bucket)
+                .log();
+    }
+
+    private AggregationShard(final Builder builder) {
+        _name = builder._name;
+        _periods = ImmutableList.copyOf(builder._periods);
+        _bucketBuilderFactory = builder._bucketBuilderFactory;
+        _timeoutFunction = builder._timeoutFunction;
+        _reaggregateLateData = builder._reaggregateLateData;
+        _backlog = builder._backlog;
+        _closeLatency = builder._closeLatency;
+        _timingWheel = new TimingWheel<>(TICK_MILLIS, TICKS_PER_WHEEL, System.currentTimeMillis());
+    }
+
+    private volatile boolean _isRunning = true;
+
+    private final String _name;
+    private final ImmutableList<Period> _periods;
+    private final BiFunction<Key, Period, Bucket.Builder> _bucketBuilderFactory;
+    private final Function<Period, Duration> _timeoutFunction;
+    private final boolean _reaggregateLateData;
+    private final AtomicLong _backlog;
+    private final LongAccumulator _closeLatency;
+    private final BlockingQueue<KeyedRecords> _recordQueue = new LinkedBlockingQueue<>();
+    private final Map<Key, KeyBuckets> _bucketsByKey = Maps.newHashMap();
+    private final TimingWheel<ScheduledBucket> _timingWheel;
+    private long _maxCloseLatencyMillis = 0;
+
+    private static final long TICK_MILLIS = 100;
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final long MAXIMUM_WAIT_MILLIS = 1000;
+    private static final long MAXIMUM_DRAIN_MILLIS = TICK_MILLIS;
+    private static final int MAXIMUM_DRAIN_RECORDS = 10000;
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregationShard.class);
+
+    private final class KeyBuckets {
+
+        private KeyBuckets(final Key key) {
+            _key = key;
+            _bucketBuilders = Lists.newArrayListWithCapacity(_periods.size());
+            _bucketsByStart = Lists.newArrayListWithCapacity(_periods.size());
+            for (final Period period : _periods) {
+                _bucketBuilders.add(_bucketBuilderFactory.apply(key, period));
+                _bucketsByStart.add(Maps.newHashMap());
+            }
+        }
+
+        private final Key _key;
+        private final List<Bucket.Builder> _bucketBuilders;
+        private final List<Map<DateTime, Bucket>> _bucketsByStart;
+        private int _openBucketCount = 0;
+    }
+
+    private static final class ScheduledBucket {
+
+        private ScheduledBucket(final KeyBuckets keyBuckets, final int periodIndex, final Bucket bucket) {
+            _keyBuckets = keyBuckets;
+            _periodIndex = periodIndex;
+            _bucket = bucket;
+        }
+
+        private final KeyBuckets _keyBuckets;
+        private final int _periodIndex;
+        private final Bucket _bucket;
+    }
+
+    private static final class KeyedRecords {
+
+        private KeyedRecords(final Key key, final List<Record> records) {
+            _key = key;
+            _records = records;
+        }
+
+        private final Key _key;
+        private final List<Record> _records;
+    }
+
+    /**
+     * <code>Builder</code> implementation for <code>AggregationShard</code>.
+     */
+    public static final class Builder extends OvalBuilder<AggregationShard> {
+
+        /**
+         * Public constructor.
+         */
+        Builder() {
+            super(AggregationShard::new);
+        }
+
+        /**
+         * Set the name. Cannot be null or empty.
+         *
+         * @param value The name.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the periods. Cannot be null or empty.
+         *
+         * @param value The periods.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setPeriods(final List<Period> value) {
+            _periods = value;
+            return this;
+        }
+
+        /**
+         * Set the factory for <code>Bucket</code> <code>Builder</code>
+         * instances by <code>Key</code> and <code>Period</code>. Cannot be null.
+         *
+         * @param value The bucket builder factory.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setBucketBuilderFactory(final BiFunction<Key, Period, Bucket.Builder> value) {
+            _bucketBuilderFactory = value;
+            return this;
+        }
+
+        /**
+         * Set the function providing the time to wait after the end of a
+         * period before closing its buckets. Cannot be null.
+         *
+         * @param value The timeout function.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setTimeoutFunction(final Function<Period, Duration> value) {
+            _timeoutFunction = value;
+            return this;
+        }
+
+        /**
+         * Set whether records received after their period closed are
+         * aggregated into a correction bucket flagged as late. Optional.
+         * Cannot be null. Default is false.
+         *
+         * @param value Whether to re-aggregate late data.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setReaggregateLateData(final Boolean value) {
+            _reaggregateLateData = value;
+            return this;
+        }
+
+        /**
+         * Set the counter of records queued and not yet processed. The
+         * counter may be shared by shards. Optional. Cannot be null. Default
+         * is a counter for this shard.
+         *
+         * @param value The backlog counter.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setBacklog(final AtomicLong value) {
+            _backlog = value;
+            return this;
+        }
+
+        /**
+         * Set the accumulator of the maximum time in milliseconds between the
+         * scheduled and actual close of a bucket. The accumulator may be
+         * shared by shards and is reset by its reader. Optional. Cannot be null.
+         * Default is an accumulator for this shard.
+         *
+         * @param value The close latency accumulator.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setCloseLatency(final LongAccumulator value) {
+            _closeLatency = value;
+            return this;
+        }
+
+        @NotNull
+        @NotEmpty
+        private String _name;
+        @NotNull
+        @NotEmpty
+        private List<Period> _periods;
+        @NotNull
+        private BiFunction<Key, Period, Bucket.Builder> _bucketBuilderFactory;
+        @NotNull
+        private Function<Period, Duration> _timeoutFunction;
+        @NotNull
+        private Boolean _reaggregateLateData = false;
+        @NotNull
+        private AtomicLong _backlog = new AtomicLong();
+        @NotNull
+        private LongAccumulator _closeLatency = new LongAccumulator(Math::max, 0);
+    }
+}
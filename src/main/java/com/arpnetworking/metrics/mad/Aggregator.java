@@ -19,24 +19,35 @@ import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.commons.observer.Observable;
 import com.arpnetworking.commons.observer.Observer;
 import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Units;
+import com.arpnetworking.metrics.mad.configuration.AggregationMode;
 import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
-import com.arpnetworking.tsdcore.model.DefaultKey;
 import com.arpnetworking.tsdcore.model.Key;
+import com.arpnetworking.tsdcore.model.KeyRegistry;
 import com.arpnetworking.tsdcore.sinks.Sink;
 import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.utility.Backlogged;
 import com.arpnetworking.utility.Launchable;
+import com.arpnetworking.utility.PatternMatcher;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
+import org.joda.time.Duration;
 import org.joda.time.Period;
 
 import java.util.Collections;
@@ -46,8 +57,11 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import javax.annotation.Nullable;
 
 /**
  * Performs aggregation of <code>Record</code> instances per <code>Period</code>.
@@ -59,7 +73,7 @@ import java.util.regex.Pattern;
 // NOTE: The _periodWorkerExecutor is accessed both in synchronized lifecycle methods like launch() and shutdown() but
 // also non-synchronized methods like notify(). Access to _periodWorkerExecutor does not need to be synchronized.
 @SuppressFBWarnings("IS2_INCONSISTENT_SYNC")
-public final class Aggregator implements Observer, Launchable {
+public final class Aggregator implements Observer, Launchable, Backlogged {
 
     /**
      * {@inheritDoc}
@@ -73,7 +87,19 @@ public final class Aggregator implements Observer, Launchable {
 
         _periodWorkers.clear();
         if (!_periods.isEmpty()) {
-            _periodWorkerExecutor = Executors.newCachedThreadPool(r -> new Thread(r, "PeriodWorker"));
+            if (AggregationMode.SHARDED.equals(_aggregationMode)) {
+                launchShards();
+            } else {
+                _periodWorkerExecutor = Executors.newCachedThreadPool(r -> new Thread(r, "PeriodWorker"));
+            }
+        }
+        if (_metricsFactory.isPresent()) {
+            _metricsExecutor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "AggregatorMetrics"));
+            _metricsExecutor.scheduleAtFixedRate(
+                    this::publishMetrics,
+                    METRICS_INTERVAL_MILLIS,
+                    METRICS_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
         }
     }
 
@@ -86,11 +112,29 @@ public final class Aggregator implements Observer, Launchable {
                 .setMessage("Stopping aggregator")
                 .addData("aggregator", this)
                 .log();
+        LOGGER.info()
+                .setMessage("Statistics cache usage")
+                .addData("specifiedStatisticsCache", _cachedSpecifiedStatistics.stats())
+                .addData("dependentStatisticsCache", _cachedDependentStatistics.stats())
+                .log();
+        LOGGER.info()
+                .setMessage("Key registry usage")
+                .addData("keyCount", _keyRegistry.size())
+                .addData("keyRegistry", _keyRegistry.stats())
+                .log();
 
+        if (_metricsExecutor != null) {
+            _metricsExecutor.shutdown();
+            _metricsExecutor = null;
+        }
         for (final List<PeriodWorker> periodCloserList : _periodWorkers.values()) {
             periodCloserList.forEach(com.arpnetworking.metrics.mad.PeriodWorker::shutdown);
         }
         _periodWorkers.clear();
+        for (final AggregationShard shard : _shards) {
+            shard.shutdown();
+        }
+        _shards = ImmutableList.of();
         if (_periodWorkerExecutor != null) {
             _periodWorkerExecutor.shutdown();
             try {
@@ -100,6 +144,8 @@ public final class Aggregator implements Observer, Launchable {
             }
             _periodWorkerExecutor = null;
         }
+        // Records still queued when the workers stopped are discarded
+        _backlog.set(0);
     }
 
     /**
@@ -107,24 +153,38 @@ public final class Aggregator implements Observer, Launchable {
      */
     @Override
     public void notify(final Observable observable, final Object event) {
-        if (!(event instanceof Record)) {
+        if (event instanceof Record) {
+            record((Record) event);
+        } else if (event instanceof List) {
+            recordAll((List<?>) event);
+        } else {
             LOGGER.error()
                     .setMessage("Observed unsupported event")
                     .addData("event", event)
                     .log();
-            return;
         }
+    }
 
-        final Record record = (Record) event;
-        final Key key = new DefaultKey(record.getDimensions());
-        LOGGER.trace()
-                .setMessage("Processing record")
-                .addData("record", record)
-                .addData("key", key)
-                .log();
-        for (final PeriodWorker periodWorker : _periodWorkers.computeIfAbsent(key, this::createPeriodWorkers)) {
-            periodWorker.record(record);
-        }
+    /**
+     * The number of records queued for the aggregation workers and not yet
+     * processed. Records in the per key mode are counted once for each
+     * period.
+     *
+     * @return The number of queued records.
+     */
+    @Override
+    public long getBacklog() {
+        return _backlog.get();
+    }
+
+    /**
+     * Accessor for the name with characters which are not safe in metric
+     * names replaced.
+     *
+     * @return The metric safe name.
+     */
+    public String getMetricSafeName() {
+        return _name.replace("/", "_").replace(".", "_");
     }
 
     /**
@@ -135,10 +195,20 @@ public final class Aggregator implements Observer, Launchable {
     @LogValue
     public Object toLogValue() {
         return LogValueMapFactory.builder(this)
+                .put("name", _name)
                 .put("sink", _sink)
+                .put("aggregationMode", _aggregationMode)
+                .put("shardCount", _shardCount)
+                .put("periodTimeouts", _periodTimeouts)
+                .put("reaggregateLateData", _reaggregateLateData)
                 .put("timerStatistics", _specifiedTimerStatistics)
                 .put("counterStatistics", _specifiedCounterStatistics)
                 .put("gaugeStatistics", _specifiedGaugeStatistics)
+                .put("statistics", _statistics)
+                .put("specifiedStatisticsCache", _cachedSpecifiedStatistics.stats())
+                .put("dependentStatisticsCache", _cachedDependentStatistics.stats())
+                .put("keyRegistry", _keyRegistry)
+                .put("backlog", _backlog.get())
                 .put("periodWorkers", _periodWorkers)
                 .build();
     }
@@ -151,24 +221,119 @@ public final class Aggregator implements Observer, Launchable {
         return toLogValue().toString();
     }
 
+    private void record(final Record record) {
+        final Key key = _keyRegistry.intern(record.getDimensions());
+        LOGGER.trace()
+                .setMessage("Processing record")
+                .addData("record", record)
+                .addData("key", key)
+                .log();
+        final ImmutableList<AggregationShard> shards = _shards;
+        if (!shards.isEmpty()) {
+            getShard(shards, key).record(key, record);
+            return;
+        }
+        for (final PeriodWorker periodWorker : _periodWorkers.computeIfAbsent(key, this::createPeriodWorkers)) {
+            periodWorker.record(record);
+        }
+    }
+
+    private void recordAll(final List<?> events) {
+        // Group the records by dimensions so that each key is looked up once per batch
+        // and each worker receives a single queue operation per batch
+        final Map<ImmutableMap<String, String>, List<Record>> recordsByDimensions = Maps.newLinkedHashMap();
+        for (final Object event : events) {
+            if (!(event instanceof Record)) {
+                LOGGER.error()
+                        .setMessage("Observed unsupported event")
+                        .addData("event", event)
+                        .log();
+                continue;
+            }
+            final Record record = (Record) event;
+            recordsByDimensions.computeIfAbsent(record.getDimensions(), dimensions -> Lists.newArrayList()).add(record);
+        }
+
+        final ImmutableList<AggregationShard> shards = _shards;
+        for (final Map.Entry<ImmutableMap<String, String>, List<Record>> entry : recordsByDimensions.entrySet()) {
+            final Key key = _keyRegistry.intern(entry.getKey());
+            final List<Record> records = Collections.unmodifiableList(entry.getValue());
+            LOGGER.trace()
+                    .setMessage("Processing records")
+                    .addData("records", records.size())
+                    .addData("key", key)
+                    .log();
+            if (!shards.isEmpty()) {
+                getShard(shards, key).record(key, records);
+                continue;
+            }
+            for (final PeriodWorker periodWorker : _periodWorkers.computeIfAbsent(key, this::createPeriodWorkers)) {
+                periodWorker.record(records);
+            }
+        }
+    }
+
+    private static AggregationShard getShard(final ImmutableList<AggregationShard> shards, final Key key) {
+        return shards.get((key.hashCode() & Integer.MAX_VALUE) % shards.size());
+    }
+
+    private void launchShards() {
+        final ImmutableList<Period> periods = ImmutableList.copyOf(_periods);
+        final ImmutableList.Builder<AggregationShard> shards = ImmutableList.builder();
+        _periodWorkerExecutor = Executors.newFixedThreadPool(_shardCount, r -> new Thread(r, "AggregationShard"));
+        for (int i = 0; i < _shardCount; ++i) {
+            final AggregationShard shard = new AggregationShard.Builder()
+                    .setName("AggregationShard-" + i)
+                    .setPeriods(periods)
+                    .setBucketBuilderFactory(this::createBucketBuilder)
+                    .setTimeoutFunction(this::getPeriodTimeout)
+                    .setReaggregateLateData(_reaggregateLateData)
+                    .setBacklog(_backlog)
+                    .setCloseLatency(_closeLatency)
+                    .build();
+            shards.add(shard);
+            _periodWorkerExecutor.execute(shard);
+        }
+        _shards = shards.build();
+        LOGGER.info()
+                .setMessage("Created aggregation shards")
+                .addData("shardCount", _shardCount)
+                .log();
+    }
+
+    private Bucket.Builder createBucketBuilder(final Key key, final Period period) {
+        return new Bucket.Builder()
+                .setKey(key)
+                .setSpecifiedCounterStatistics(_specifiedCounterStatistics)
+                .setSpecifiedGaugeStatistics(_specifiedGaugeStatistics)
+                .setSpecifiedTimerStatistics(_specifiedTimerStatistics)
+                .setDependentCounterStatistics(_dependentCounterStatistics)
+                .setDependentGaugeStatistics(_dependentGaugeStatistics)
+                .setDependentTimerStatistics(_dependentTimerStatistics)
+                .setSpecifiedStatistics(_cachedSpecifiedStatistics)
+                .setDependentStatistics(_cachedDependentStatistics)
+                .setPeriod(period)
+                .setSink(_sink);
+    }
+
+    private Duration getPeriodTimeout(final Period period) {
+        final Period timeout = _periodTimeouts.get(period);
+        if (timeout != null) {
+            return timeout.toStandardDuration();
+        }
+        return PeriodWorker.getPeriodTimeout(period);
+    }
+
     private List<PeriodWorker> createPeriodWorkers(final Key key) {
         final List<PeriodWorker> periodWorkerList = Lists.newArrayListWithExpectedSize(_periods.size());
         for (final Period period : _periods) {
             final PeriodWorker periodWorker = new PeriodWorker.Builder()
                     .setPeriod(period)
-                    .setBucketBuilder(
-                            new Bucket.Builder()
-                                    .setKey(key)
-                                    .setSpecifiedCounterStatistics(_specifiedCounterStatistics)
-                                    .setSpecifiedGaugeStatistics(_specifiedGaugeStatistics)
-                                    .setSpecifiedTimerStatistics(_specifiedTimerStatistics)
-                                    .setDependentCounterStatistics(_dependentCounterStatistics)
-                                    .setDependentGaugeStatistics(_dependentGaugeStatistics)
-                                    .setDependentTimerStatistics(_dependentTimerStatistics)
-                                    .setSpecifiedStatistics(_cachedSpecifiedStatistics)
-                                    .setDependentStatistics(_cachedDependentStatistics)
-                                    .setPeriod(period)
-                                    .setSink(_sink))
+                    .setBucketBuilder(createBucketBuilder(key, period))
+                    .setTimeout(getPeriodTimeout(period))
+                    .setReaggregateLateData(_reaggregateLateData)
+                    .setBacklog(_backlog)
+                    .setCloseLatency(_closeLatency)
                     .build();
             periodWorkerList.add(periodWorker);
             _periodWorkerExecutor.execute(periodWorker);
@@ -181,6 +346,48 @@ public final class Aggregator implements Observer, Launchable {
         return periodWorkerList;
     }
 
+    private void publishMetrics() {
+        // CHECKSTYLE.OFF: IllegalCatch - Do not cancel the schedule on failure
+        try {
+            final Metrics metrics = _metricsFactory.get().create();
+            metrics.setGauge(_closeLatencyName, _closeLatency.getThenReset(), Units.MILLISECOND);
+            final CacheStats statisticsCacheStats = _cachedSpecifiedStatistics.stats()
+                    .plus(_cachedDependentStatistics.stats());
+            publishCacheStats(
+                    metrics,
+                    _statisticsCacheName,
+                    statisticsCacheStats.minus(_lastStatisticsCacheStats),
+                    _cachedSpecifiedStatistics.size());
+            _lastStatisticsCacheStats = statisticsCacheStats;
+            final CacheStats keyRegistryStats = _keyRegistry.stats();
+            publishCacheStats(
+                    metrics,
+                    _keyRegistryName,
+                    keyRegistryStats.minus(_lastKeyRegistryStats),
+                    _keyRegistry.size());
+            _lastKeyRegistryStats = keyRegistryStats;
+            metrics.close();
+        } catch (final RuntimeException e) {
+            // CHECKSTYLE.ON: IllegalCatch
+            LOGGER.warn()
+                    .setMessage("Unable to publish aggregator metrics")
+                    .addData("aggregator", _name)
+                    .setThrowable(e)
+                    .log();
+        }
+    }
+
+    private void publishCacheStats(
+            final Metrics metrics,
+            final String name,
+            final CacheStats delta,
+            final long size) {
+        metrics.incrementCounter(name + "/hits", delta.hitCount());
+        metrics.incrementCounter(name + "/misses", delta.missCount());
+        metrics.incrementCounter(name + "/evictions", delta.evictionCount());
+        metrics.setGauge(name + "/size", size);
+    }
+
     private ImmutableSet<Statistic> computeDependentStatistics(final ImmutableSet<Statistic> statistics) {
         final ImmutableSet.Builder<Statistic> builder = ImmutableSet.builder();
         for (final Statistic statistic : statistics) {
@@ -190,73 +397,101 @@ public final class Aggregator implements Observer, Launchable {
     }
 
     private Aggregator(final Builder builder) {
+        _name = builder._name;
+        _metricsFactory = Optional.ofNullable(builder._metricsFactory);
+        _closeLatencyName = "aggregator/" + getMetricSafeName() + "/close_latency";
+        _statisticsCacheName = "aggregator/" + getMetricSafeName() + "/statistics_cache";
+        _keyRegistryName = "aggregator/" + getMetricSafeName() + "/key_registry";
         _periods = ImmutableSet.copyOf(builder._periods);
         _sink = builder._sink;
+        _aggregationMode = builder._aggregationMode;
+        _shardCount = builder._shardCount;
+        _periodTimeouts = ImmutableMap.copyOf(builder._periodTimeouts);
+        _reaggregateLateData = builder._reaggregateLateData;
         _specifiedCounterStatistics = ImmutableSet.copyOf(builder._counterStatistics);
         _specifiedGaugeStatistics = ImmutableSet.copyOf(builder._gaugeStatistics);
         _specifiedTimerStatistics = ImmutableSet.copyOf(builder._timerStatistics);
         _dependentCounterStatistics = computeDependentStatistics(_specifiedCounterStatistics);
         _dependentGaugeStatistics = computeDependentStatistics(_specifiedGaugeStatistics);
         _dependentTimerStatistics = computeDependentStatistics(_specifiedTimerStatistics);
-        final ImmutableMap.Builder<Pattern, ImmutableSet<Statistic>> statisticsBuilder = ImmutableMap.builder();
+        final Map<String, ImmutableSet<Statistic>> statistics = Maps.newLinkedHashMap();
+        final Map<ImmutableSet<Statistic>, ImmutableSet<Statistic>> dependentStatistics = Maps.newHashMap();
         for (final Map.Entry<String, Set<Statistic>> entry : builder._statistics.entrySet()) {
-            final Pattern pattern = Pattern.compile(entry.getKey());
-            final ImmutableSet<Statistic> statistics = ImmutableSet.copyOf(entry.getValue());
-            statisticsBuilder.put(pattern, statistics);
+            final ImmutableSet<Statistic> specifiedStatistics = ImmutableSet.copyOf(entry.getValue());
+            statistics.put(entry.getKey(), specifiedStatistics);
+            dependentStatistics.computeIfAbsent(specifiedStatistics, this::computeDependentStatistics);
         }
-        _statistics = statisticsBuilder.build();
+        _statistics = new PatternMatcher<>(statistics);
+        _dependentStatistics = ImmutableMap.copyOf(dependentStatistics);
 
+        // The caches are shared by all buckets of the pipeline and bounded
+        // to protect against high cardinality metric names
         _cachedSpecifiedStatistics = CacheBuilder
                 .newBuilder()
-                .concurrencyLevel(1)
+                .maximumSize(builder._statisticsCacheMaximumSize)
+                .expireAfterAccess(builder._statisticsCacheExpiration.toStandardDuration().getMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
                 .build(
                         new CacheLoader<String, Optional<ImmutableSet<Statistic>>>() {
                             // TODO(vkoskela): Add @NonNull annotation to metric. [ISSUE-?]
                             @Override
                             public Optional<ImmutableSet<Statistic>> load(final String metric) throws Exception {
-                                for (final Map.Entry<Pattern, ImmutableSet<Statistic>> entry : _statistics.entrySet()) {
-                                    final Pattern pattern = entry.getKey();
-                                    final ImmutableSet<Statistic> statistics = entry.getValue();
-                                    if (pattern.matcher(metric).matches()) {
-                                        return Optional.of(statistics);
-                                    }
-                                }
-                                return Optional.empty();
+                                return _statistics.match(metric);
                             }
                         });
         _cachedDependentStatistics = CacheBuilder
                 .newBuilder()
-                .concurrencyLevel(1)
+                .maximumSize(builder._statisticsCacheMaximumSize)
+                .expireAfterAccess(builder._statisticsCacheExpiration.toStandardDuration().getMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
                 .build(new CacheLoader<String, Optional<ImmutableSet<Statistic>>>() {
                             // TODO(vkoskela): Add @NonNull annotation to metric. [ISSUE-?]
                             @Override
                             public Optional<ImmutableSet<Statistic>> load(final String metric) throws Exception {
-                                final Optional<ImmutableSet<Statistic>> statistics = _cachedSpecifiedStatistics.get(metric);
-                                if (statistics.isPresent()) {
-                                   return Optional.of(computeDependentStatistics(statistics.get()));
-                                } else {
-                                   return Optional.empty();
-                                }
+                                return _cachedSpecifiedStatistics.get(metric).map(_dependentStatistics::get);
                            }
                         });
-}
+        _keyRegistry = new KeyRegistry.Builder()
+                .setMaximumSize(builder._keyRegistryMaximumSize)
+                .setExpiration(builder._keyRegistryExpiration)
+                .build();
+    }
 
+    private final String _name;
+    private final Optional<MetricsFactory> _metricsFactory;
+    private final String _closeLatencyName;
+    private final LongAccumulator _closeLatency = new LongAccumulator(Math::max, 0);
+    private final String _statisticsCacheName;
+    private final String _keyRegistryName;
     private final ImmutableSet<Period> _periods;
     private final Sink _sink;
+    private final AggregationMode _aggregationMode;
+    private final int _shardCount;
+    private final ImmutableMap<Period, Period> _periodTimeouts;
+    private final boolean _reaggregateLateData;
     private final ImmutableSet<Statistic> _specifiedTimerStatistics;
     private final ImmutableSet<Statistic> _specifiedCounterStatistics;
     private final ImmutableSet<Statistic> _specifiedGaugeStatistics;
     private final ImmutableSet<Statistic> _dependentTimerStatistics;
     private final ImmutableSet<Statistic> _dependentCounterStatistics;
     private final ImmutableSet<Statistic> _dependentGaugeStatistics;
-    private final ImmutableMap<Pattern, ImmutableSet<Statistic>> _statistics;
+    private final PatternMatcher<ImmutableSet<Statistic>> _statistics;
+    private final ImmutableMap<ImmutableSet<Statistic>, ImmutableSet<Statistic>> _dependentStatistics;
     private final LoadingCache<String, Optional<ImmutableSet<Statistic>>> _cachedSpecifiedStatistics;
     private final LoadingCache<String, Optional<ImmutableSet<Statistic>>> _cachedDependentStatistics;
+    private final KeyRegistry _keyRegistry;
     private final Map<Key, List<PeriodWorker>> _periodWorkers = Maps.newConcurrentMap();
+    private final AtomicLong _backlog = new AtomicLong();
 
     private ExecutorService _periodWorkerExecutor = null;
+    private ScheduledExecutorService _metricsExecutor = null;
+    private CacheStats _lastStatisticsCacheStats = EMPTY_CACHE_STATS;
+    private CacheStats _lastKeyRegistryStats = EMPTY_CACHE_STATS;
+    private volatile ImmutableList<AggregationShard> _shards = ImmutableList.of();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Aggregator.class);
+    private static final long METRICS_INTERVAL_MILLIS = 1000;
+    private static final CacheStats EMPTY_CACHE_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
 
     /**
      * <code>Builder</code> implementation for <code>Aggregator</code>.
@@ -270,6 +505,32 @@ public final class Aggregator implements Observer, Launchable {
             super(Aggregator::new);
         }
 
+        /**
+         * Set the name used in the names of the metrics published by the
+         * aggregator, typically the name of the pipeline. Optional. Cannot be
+         * null or empty. Default is <code>default</code>.
+         *
+         * @param value The name.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the factory used to publish metrics about the aggregator, such
+         * as the maximum delay in closing a bucket after it expired. Optional.
+         * Default is to not publish metrics.
+         *
+         * @param value The metrics factory.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setMetricsFactory(@Nullable final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
         /**
          * Set the sink. Cannot be null or empty.
          *
@@ -337,6 +598,113 @@ public final class Aggregator implements Observer, Launchable {
             return this;
         }
 
+        /**
+         * The aggregation engine. Optional. Cannot be null. Default is
+         * <code>PER_KEY</code>.
+         *
+         * @param value The aggregation mode.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setAggregationMode(final AggregationMode value) {
+            _aggregationMode = value;
+            return this;
+        }
+
+        /**
+         * The number of shards when using the <code>SHARDED</code> aggregation
+         * mode. Optional. Cannot be null. Must be at least one. Default is the
+         * number of available processors.
+         *
+         * @param value The number of shards.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setShardCount(final Integer value) {
+            _shardCount = value;
+            return this;
+        }
+
+        /**
+         * The time to wait after the end of each period before closing its
+         * buckets. Optional. Cannot be null. Default is empty; periods without
+         * a timeout wait half the period bounded to between one second and ten
+         * minutes.
+         *
+         * @param value The timeout by period.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setPeriodTimeouts(final Map<Period, Period> value) {
+            _periodTimeouts = value;
+            return this;
+        }
+
+        /**
+         * Whether records received after their period closed are aggregated
+         * into a correction bucket which is published flagged as late.
+         * Optional. Cannot be null. Default is false.
+         *
+         * @param value Whether to re-aggregate late data.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setReaggregateLateData(final Boolean value) {
+            _reaggregateLateData = value;
+            return this;
+        }
+
+        /**
+         * The maximum number of metric names for which the matched statistics
+         * are cached. Optional. Cannot be null. Must be at least one. Default
+         * is 100,000.
+         *
+         * @param value The maximum number of cached metric names.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setStatisticsCacheMaximumSize(final Long value) {
+            _statisticsCacheMaximumSize = value;
+            return this;
+        }
+
+        /**
+         * The time after last access that the matched statistics for a metric
+         * name are evicted from the cache. Optional. Cannot be null. Default
+         * is one hour.
+         *
+         * @param value The cache expiration.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setStatisticsCacheExpiration(final Period value) {
+            _statisticsCacheExpiration = value;
+            return this;
+        }
+
+        /**
+         * The maximum number of distinct dimension sets for which canonical
+         * keys are retained. Optional. Cannot be null. Must be at least one.
+         * Default is 100,000.
+         *
+         * @param value The maximum number of registered keys.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setKeyRegistryMaximumSize(final Long value) {
+            _keyRegistryMaximumSize = value;
+            return this;
+        }
+
+        /**
+         * The time after last use that the canonical key for a dimension set
+         * is evicted. Optional. Cannot be null. Default is one hour.
+         *
+         * @param value The key expiration.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setKeyRegistryExpiration(final Period value) {
+            _keyRegistryExpiration = value;
+            return this;
+        }
+
+        @NotNull
+        @NotEmpty
+        private String _name = "default";
+        private MetricsFactory _metricsFactory;
         @NotNull
         private Sink _sink;
         @NotNull
@@ -349,5 +717,24 @@ public final class Aggregator implements Observer, Launchable {
         private Set<Statistic> _gaugeStatistics;
         @NotNull
         private Map<String, Set<Statistic>> _statistics = Collections.emptyMap();
+        @NotNull
+        private AggregationMode _aggregationMode = AggregationMode.PER_KEY;
+        @NotNull
+        @Min(1)
+        private Integer _shardCount = Runtime.getRuntime().availableProcessors();
+        @NotNull
+        private Map<Period, Period> _periodTimeouts = Collections.emptyMap();
+        @NotNull
+        private Boolean _reaggregateLateData = false;
+        @NotNull
+        @Min(1)
+        private Long _statisticsCacheMaximumSize = 100000L;
+        @NotNull
+        private Period _statisticsCacheExpiration = Period.hours(1);
+        @NotNull
+        @Min(1)
+        private Long _keyRegistryMaximumSize = 100000L;
+        @NotNull
+        private Period _keyRegistryExpiration = Period.hours(1);
     }
 }
@@ -31,29 +31,22 @@ import com.arpnetworking.tsdcore.sinks.Sink;
 import com.arpnetworking.tsdcore.statistics.Accumulator;
 import com.arpnetworking.tsdcore.statistics.Calculator;
 import com.arpnetworking.tsdcore.statistics.Statistic;
-import com.arpnetworking.tsdcore.statistics.StatisticFactory;
 import com.google.common.base.Throwables;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotNull;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 
 import java.time.Duration;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiFunction;
 
 /**
 * Contains samples for a particular aggregation period in time.
@@ -66,36 +59,31 @@ import java.util.function.BiFunction;
      * Close the bucket. The aggregates for each metric are emitted to the sink.
      */
     public void close() {
-        // Set the close flag before acquiring the write lock to allow "readers" to fail fast
+        // Set the close flag before waiting on in-flight adds; any add which
+        // has not yet claimed a stripe will observe the flag and fail fast
         if (_isOpen.getAndSet(false)) {
-            try {
-                // Acquire the write lock and flush the calculated statistics
-                _addCloseLock.writeLock().lock();
-                final ImmutableMultimap.Builder<String, AggregatedData> data = ImmutableMultimap.builder();
-                computeStatistics(_counterMetricCalculators, _specifiedCounterStatistics, data);
-                computeStatistics(_gaugeMetricCalculators, _specifiedGaugeStatistics, data);
-                computeStatistics(_timerMetricCalculators, _specifiedTimerStatistics, data);
-                computeStatistics(_explicitMetricCalculators, _specifiedStatisticsCache, data);
-                // TODO(vkoskela): Perform expression evaluation here. [NEXT]
-                // -> This still requires realizing and indexing the computed aggregated data
-                // in order to feed the expression evaluation. Once the filtering is consolidated
-                // we can probably just build a map here and then do one copy into immutable form
-                // in the PeriodicData. This becomes feasible with consolidated filtering because
-                // fewer copies (e.g. none) are made downstream.
-                // TODO(vkoskela): Perform alert evaluation here. [NEXT]
-                // -> This requires expressions. Otherwise, it's just a matter of changing the
-                // alerts abstraction from a Sink to something more appropriate and hooking it in
-                // here.
-                final PeriodicData periodicData = new PeriodicData.Builder()
-                        .setData(data.build())
-                        .setDimensions(_key)
-                        .setPeriod(_period)
-                        .setStart(_start)
-                        .build();
-                _sink.recordAggregateData(periodicData);
-            } finally {
-                _addCloseLock.writeLock().unlock();
-            }
+            awaitQuiescence();
+            final Stripe stripe = mergeStripes();
+            final ImmutableMultimap.Builder<String, AggregatedData> data = ImmutableMultimap.builder();
+            computeStatistics(stripe._metricCalculators, data);
+            // TODO(vkoskela): Perform expression evaluation here. [NEXT]
+            // -> This still requires realizing and indexing the computed aggregated data
+            // in order to feed the expression evaluation. Once the filtering is consolidated
+            // we can probably just build a map here and then do one copy into immutable form
+            // in the PeriodicData. This becomes feasible with consolidated filtering because
+            // fewer copies (e.g. none) are made downstream.
+            // TODO(vkoskela): Perform alert evaluation here. [NEXT]
+            // -> This requires expressions. Otherwise, it's just a matter of changing the
+            // alerts abstraction from a Sink to something more appropriate and hooking it in
+            // here.
+            final PeriodicData periodicData = new PeriodicData.Builder()
+                    .setData(data.build())
+                    .setDimensions(_key)
+                    .setPeriod(_period)
+                    .setStart(_start)
+                    .setIsLate(_isLate)
+                    .build();
+            _sink.recordAggregateData(periodicData);
         } else {
             LOGGER.warn()
                     .setMessage("Bucket closed multiple times")
@@ -110,80 +98,18 @@ import java.util.function.BiFunction;
      * @param record The data to add to this <code>Bucket</code>.
      */
     public void add(final Record record) {
-        for (final Map.Entry<String, ? extends Metric> entry : record.getMetrics().entrySet()) {
-            final String name = entry.getKey();
-            final Metric metric = entry.getValue();
-
-            if (metric.getValues().isEmpty()) {
-                LOGGER.debug()
-                        .setMessage("Discarding metric")
-                        .addData("reason", "no samples")
-                        .addData("name", name)
-                        .addData("metric", metric)
-                        .log();
-                continue;
-            }
-
-            Collection<Calculator<?>> calculators = Collections.emptyList();
-            // First check to see if the user has specified a set of statistics for this metric
-            final Optional<ImmutableSet<Statistic>> specifiedStatistics;
-            try {
-                specifiedStatistics = _specifiedStatisticsCache.get(name);
-            } catch (final ExecutionException e) {
-                throw Throwables.propagate(e);
-            }
-            if (specifiedStatistics.isPresent()) {
-                final Optional<ImmutableSet<Statistic>> dependentStatistics;
-                try {
-                    dependentStatistics = _dependentStatisticsCache.get(name);
-                } catch (final ExecutionException e) {
-                    throw Throwables.propagate(e);
-                }
-                calculators = getOrCreateCalculators(
-                        name,
-                        specifiedStatistics.get(),
-                        dependentStatistics.get(),
-                        _explicitMetricCalculators);
-            } else {
-                switch (metric.getType()) {
-                    case COUNTER: {
-                        calculators = getOrCreateCalculators(
-                                name,
-                                _specifiedCounterStatistics,
-                                _dependentCounterStatistics,
-                                _counterMetricCalculators);
-                        break;
-                    }
-                    case GAUGE: {
-                        calculators = getOrCreateCalculators(
-                                name,
-                                _specifiedGaugeStatistics,
-                                _dependentGaugeStatistics,
-                                _gaugeMetricCalculators);
-                        break;
-                    }
-                    case TIMER: {
-                        calculators = getOrCreateCalculators(
-                                name,
-                                _specifiedTimerStatistics,
-                                _dependentTimerStatistics,
-                                _timerMetricCalculators);
-                        break;
-                    }
-                    default:
-                        LOGGER.warn()
-                                .setMessage("Discarding metric")
-                                .addData("reason", "unsupported type")
-                                .addData("name", name)
-                                .addData("metric", metric)
-                                .log();
-                }
+        // Claim a stripe exclusively so its accumulators are only ever written
+        // by one thread at a time; close waits for all stripes to be released
+        // so the add either completes before close or is discarded
+        final Stripe stripe = claimStripe();
+        try {
+            if (!_isOpen.get()) {
+                discardAfterClose(record);
+                return;
             }
-            addMetric(
-                    name,
-                    metric,
-                    record.getTime(),
-                    calculators);
+            addToStripe(record, stripe);
+        } finally {
+            stripe._claimed.set(false);
         }
     }
 
@@ -208,9 +134,8 @@ import java.util.function.BiFunction;
                 .put("key", _key)
                 .put("start", _start)
                 .put("period", _period)
-                .put("timerStatistics", _specifiedTimerStatistics)
-                .put("counterStatistics", _specifiedCounterStatistics)
-                .put("gaugeStatistics", _specifiedGaugeStatistics)
+                .put("isLate", _isLate)
+                .put("stripeCount", _stripes.length)
                 .put("timerStatistics", _specifiedTimerStatistics)
                 .put("counterStatistics", _specifiedCounterStatistics)
                 .put("gaugeStatistics", _specifiedGaugeStatistics)
@@ -225,136 +150,185 @@ import java.util.function.BiFunction;
         return toLogValue().toString();
     }
 
-    private void computeStatistics(
-            final ConcurrentMap<String, Collection<Calculator<?>>> calculatorsByMetric,
-            final LoadingCache<String, Optional<ImmutableSet<Statistic>>> specifiedStatistics,
-            final ImmutableMultimap.Builder<String, AggregatedData> data) {
-        computeStatistics(calculatorsByMetric, (metric, statistic) -> {
-            final Optional<ImmutableSet<Statistic>> stats;
+    private void addToStripe(final Record record, final Stripe stripe) {
+        for (final Map.Entry<String, ? extends Metric> entry : record.getMetrics().entrySet()) {
+            final String name = entry.getKey();
+            final Metric metric = entry.getValue();
+
+            if (metric.getValues().isEmpty()) {
+                LOGGER.debug()
+                        .setMessage("Discarding metric")
+                        .addData("reason", "no samples")
+                        .addData("name", name)
+                        .addData("metric", metric)
+                        .log();
+                continue;
+            }
+
+            MetricCalculators calculators = stripe._metricCalculators.get(name);
+            if (calculators == null) {
+                final Optional<CalculatorPlan> plan = getPlan(name, metric);
+                if (!plan.isPresent()) {
+                    continue;
+                }
+                final MetricCalculators newCalculators = new MetricCalculators(plan.get());
+                calculators = stripe._metricCalculators.putIfAbsent(name, newCalculators);
+                if (calculators == null) {
+                    calculators = newCalculators;
+                }
+            }
+            addMetric(metric, calculators);
+        }
+    }
+
+    private Optional<CalculatorPlan> getPlan(final String name, final Metric metric) {
+        // First check to see if the user has specified a set of statistics for this metric
+        final Optional<ImmutableSet<Statistic>> specifiedStatistics;
+        try {
+            specifiedStatistics = _specifiedStatisticsCache.get(name);
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e);
+        }
+        if (specifiedStatistics.isPresent()) {
+            final Optional<ImmutableSet<Statistic>> dependentStatistics;
             try {
-                stats = specifiedStatistics.get(metric);
+                dependentStatistics = _dependentStatisticsCache.get(name);
             } catch (final ExecutionException e) {
                 throw Throwables.propagate(e);
             }
-            return stats.isPresent() && stats.get().contains(statistic);
-        }, data);
+            return Optional.of(CalculatorPlan.of(specifiedStatistics.get(), dependentStatistics.get()));
+        }
+        switch (metric.getType()) {
+            case COUNTER:
+                return Optional.of(_counterPlan);
+            case GAUGE:
+                return Optional.of(_gaugePlan);
+            case TIMER:
+                return Optional.of(_timerPlan);
+            default:
+                LOGGER.warn()
+                        .setMessage("Discarding metric")
+                        .addData("reason", "unsupported type")
+                        .addData("name", name)
+                        .addData("metric", metric)
+                        .log();
+                return Optional.empty();
+        }
     }
 
-    private void computeStatistics(
-            final ConcurrentMap<String, Collection<Calculator<?>>> calculatorsByMetric,
-            final ImmutableSet<Statistic> specifiedStatistics,
-            final ImmutableMultimap.Builder<String, AggregatedData> data) {
-        computeStatistics(calculatorsByMetric, (metric, statistic) -> specifiedStatistics.contains(statistic), data);
+    private void discardAfterClose(final Record record) {
+        // TODO(vkoskela): Re-aggregation starts here.
+        // 1) Send the record back to Aggregator.
+        // 2) This causes a new bucket to be created for this start+period.
+        // 3) Enhance aggregation at edges to support re-aggregation (or prevent overwrite).
+        for (final Map.Entry<String, ? extends Metric> entry : record.getMetrics().entrySet()) {
+            BUCKET_CLOSED_LOGGER
+                    .warn()
+                    .setMessage("Discarding metric")
+                    .addData("reason", "added after close")
+                    .addData("name", entry.getKey())
+                    .addData("metric", entry.getValue())
+                    .addData("time", record.getTime())
+                    .log();
+        }
     }
+
+    private Stripe claimStripe() {
+        // Start from the stripe for this thread and probe the others; with a
+        // single producer thread per bucket the first claim always succeeds
+        final int home = (int) (Thread.currentThread().getId() % _stripes.length);
+        while (true) {
+            for (int i = 0; i < _stripes.length; ++i) {
+                final Stripe stripe = _stripes[(home + i) % _stripes.length];
+                if (stripe._claimed.compareAndSet(false, true)) {
+                    return stripe;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    private void awaitQuiescence() {
+        for (final Stripe stripe : _stripes) {
+            while (stripe._claimed.get()) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private Stripe mergeStripes() {
+        final Stripe target = _stripes[0];
+        for (int i = 1; i < _stripes.length; ++i) {
+            for (final Map.Entry<String, MetricCalculators> entry : _stripes[i]._metricCalculators.entrySet()) {
+                final MetricCalculators source = entry.getValue();
+                final MetricCalculators existing = target._metricCalculators.putIfAbsent(entry.getKey(), source);
+                if (existing != null) {
+                    mergeCalculators(source, existing);
+                }
+            }
+        }
+        return target;
+    }
+
+    private void mergeCalculators(final MetricCalculators source, final MetricCalculators target) {
+        // The plans only differ if the metric was reported with conflicting
+        // types on different stripes; in that case merge what overlaps
+        for (final Accumulator<?> sourceAccumulator : source._accumulators) {
+            final int index = target._plan.indexOf(sourceAccumulator.getStatistic());
+            if (index >= 0 && target._calculators[index] instanceof Accumulator) {
+                merge((Accumulator<?>) target._calculators[index], sourceAccumulator);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void merge(final Accumulator<T> target, final Calculator<?> source) {
+        // Accumulators only depend on their own state
+        target.accumulate(((Calculator<T>) source).calculate(Collections.emptyMap()));
+    }
+
     private void computeStatistics(
-            final ConcurrentMap<String, Collection<Calculator<?>>> calculatorsByMetric,
-            final BiFunction<String, Statistic, Boolean> specified,
+            final Map<String, MetricCalculators> calculatorsByMetric,
             final ImmutableMultimap.Builder<String, AggregatedData> data) {
 
         final AggregatedData.Builder datumBuilder = new AggregatedData.Builder();
+        final CalculatorPlan.Dependencies dependencies = new CalculatorPlan.Dependencies();
 
-        for (final Map.Entry<String, Collection<Calculator<?>>> entry : calculatorsByMetric.entrySet()) {
+        for (final Map.Entry<String, MetricCalculators> entry : calculatorsByMetric.entrySet()) {
             final String metric = entry.getKey();
-            final Collection<Calculator<?>> calculators = entry.getValue();
-
-            // Build calculator dependencies for metric
-            // TODO(vkoskela): This is a waste of time. [NEXT]
-            // - Single set of calculators per metric and per statistic (no distinction between non-aux and aux)
-            // - Check the set of statistics to see if the calculator should be published
-            // - Still need both sets of statistics in order to create new set of calculators
-            final Map<Statistic, Calculator<?>> dependencies = Maps.newHashMap();
-            Optional<Calculator<?>> countStatisticCalculator = Optional.empty();
-            for (final Calculator<?> calculator : calculators) {
-                if (COUNT_STATISTIC.equals(calculator.getStatistic())) {
-                    countStatisticCalculator = Optional.of(calculator);
-                }
-                dependencies.put(calculator.getStatistic(), calculator);
-            }
-            CalculatedValue<?> populationSize = new CalculatedValue.Builder<>()
-                    .setValue(new Quantity.Builder().setValue(-1.0).build())
-                    .build();
-            if (countStatisticCalculator.isPresent()) {
-                populationSize = countStatisticCalculator.get().calculate(dependencies);
-            }
+            final CalculatorPlan plan = entry.getValue()._plan;
+            final Calculator<?>[] calculators = entry.getValue()._calculators;
+            dependencies.reset(plan, calculators);
 
-            // Compute each calculated value requested by the client
-            for (final Calculator<?> calculator : calculators) {
+            final long populationSize = (long) calculators[CalculatorPlan.COUNT_INDEX]
+                    .calculate(dependencies)
+                    .getValue()
+                    .getValue();
+
+            // Compute each calculated value in plan order
+            for (int i = 0; i < calculators.length; ++i) {
                 datumBuilder.setSupportingData(null);
-                final CalculatedValue<?> calculatedValue = calculator.calculate(dependencies);
+                final CalculatedValue<?> calculatedValue = calculators[i].calculate(dependencies);
                 data.put(
                         metric,
                         datumBuilder.setValue(calculatedValue.getValue())
-                                .setIsSpecified(specified.apply(metric, calculator.getStatistic()))
-                                .setPopulationSize((long) populationSize.getValue().getValue())
+                                .setIsSpecified(plan.isSpecified(i))
+                                .setPopulationSize(populationSize)
                                 .setSupportingData(calculatedValue.getData())
-                                .setStatistic(calculator.getStatistic())
+                                .setStatistic(plan.getStatistic(i))
                                 .build());
             }
         }
     }
 
-    private void addMetric(
-            final String name,
-            final Metric metric,
-            final DateTime time,
-            final Collection<Calculator<?>> calculators) {
-
-        try {
-            // Acquire a read lock and validate the bucket is still open
-            _addCloseLock.readLock().lock();
-            if (!_isOpen.get()) {
-                // TODO(vkoskela): Re-aggregation starts here.
-                // 1) Send the record back to Aggregator.
-                // 2) This causes a new bucket to be created for this start+period.
-                // 3) Enhance aggregation at edges to support re-aggregation (or prevent overwrite).
-                BUCKET_CLOSED_LOGGER
-                        .warn()
-                        .setMessage("Discarding metric")
-                        .addData("reason", "added after close")
-                        .addData("name", name)
-                        .addData("metric", metric)
-                        .addData("time", time)
-                        .log();
-                return;
-            }
-
-            // Add the value to any accumulators
-            for (final Calculator<?> calculator : calculators) {
-                if (calculator instanceof Accumulator) {
-                    final Accumulator<?> accumulator = (Accumulator<?>) calculator;
-                    synchronized (accumulator) {
-                        for (final Quantity quantity : metric.getValues()) {
-                            accumulator.accumulate(quantity);
-                        }
-                    }
-                }
-            }
-        } finally {
-            _addCloseLock.readLock().unlock();
-        }
-    }
-
-    private Collection<Calculator<?>> getOrCreateCalculators(
-            final String name,
-            final Collection<Statistic> specifiedStatistics,
-            final Collection<Statistic> dependentStatistics,
-            final ConcurrentMap<String, Collection<Calculator<?>>> calculatorsByMetric) {
-        Collection<Calculator<?>> calculators = calculatorsByMetric.get(name);
-        if (calculators == null) {
-            final Set<Calculator<?>> newCalculators = Sets.newHashSet();
-            for (final Statistic statistic : specifiedStatistics) {
-                newCalculators.add(statistic.createCalculator());
-            }
-            for (final Statistic statistic : dependentStatistics) {
-                newCalculators.add(statistic.createCalculator());
-            }
-            newCalculators.add(COUNT_STATISTIC.createCalculator());
-            calculators = calculatorsByMetric.putIfAbsent(name, newCalculators);
-            if (calculators == null) {
-                calculators = newCalculators;
+    private void addMetric(final Metric metric, final MetricCalculators calculators) {
+        // Add the value to any accumulators; the stripe is claimed by this
+        // thread so the accumulators are updated without locking
+        for (final Accumulator<?> accumulator : calculators._accumulators) {
+            for (final Quantity quantity : metric.getValues()) {
+                accumulator.accumulate(quantity);
             }
         }
-        return calculators;
     }
 
     Bucket(final Builder builder) {
@@ -362,43 +336,66 @@ import java.util.function.BiFunction;
         _key = builder._key;
         _start = builder._start;
         _period = builder._period;
+        _isLate = builder._isLate;
         _specifiedCounterStatistics = builder._specifiedCounterStatistics;
         _specifiedGaugeStatistics = builder._specifiedGaugeStatistics;
         _specifiedTimerStatistics = builder._specifiedTimerStatistics;
-        _dependentCounterStatistics = builder._dependentCounterStatistics;
-        _dependentGaugeStatistics = builder._dependentGaugeStatistics;
-        _dependentTimerStatistics = builder._dependentTimerStatistics;
+        _counterPlan = CalculatorPlan.of(_specifiedCounterStatistics, builder._dependentCounterStatistics);
+        _gaugePlan = CalculatorPlan.of(_specifiedGaugeStatistics, builder._dependentGaugeStatistics);
+        _timerPlan = CalculatorPlan.of(_specifiedTimerStatistics, builder._dependentTimerStatistics);
         _specifiedStatisticsCache = builder._specifiedStatistics;
         _dependentStatisticsCache = builder._dependentStatistics;
+        _stripes = new Stripe[builder._stripeCount];
+        for (int i = 0; i < _stripes.length; ++i) {
+            _stripes[i] = new Stripe();
+        }
     }
 
     private final AtomicBoolean _isOpen = new AtomicBoolean(true);
-    private final ReadWriteLock _addCloseLock = new ReentrantReadWriteLock();
-    private final ConcurrentMap<String, Collection<Calculator<?>>> _counterMetricCalculators = Maps.newConcurrentMap();
-    private final ConcurrentMap<String, Collection<Calculator<?>>> _gaugeMetricCalculators = Maps.newConcurrentMap();
-    private final ConcurrentMap<String, Collection<Calculator<?>>> _timerMetricCalculators = Maps.newConcurrentMap();
-    private final ConcurrentMap<String, Collection<Calculator<?>>> _explicitMetricCalculators = Maps.newConcurrentMap();
+    private final Stripe[] _stripes;
     private final Sink _sink;
     private final Key _key;
     private final DateTime _start;
     private final Period _period;
+    private final boolean _isLate;
     private final ImmutableSet<Statistic> _specifiedCounterStatistics;
     private final ImmutableSet<Statistic> _specifiedGaugeStatistics;
     private final ImmutableSet<Statistic> _specifiedTimerStatistics;
-    private final ImmutableSet<Statistic> _dependentCounterStatistics;
-    private final ImmutableSet<Statistic> _dependentGaugeStatistics;
-    private final ImmutableSet<Statistic> _dependentTimerStatistics;
+    private final CalculatorPlan _counterPlan;
+    private final CalculatorPlan _gaugePlan;
+    private final CalculatorPlan _timerPlan;
     private final LoadingCache<String, Optional<ImmutableSet<Statistic>>> _dependentStatisticsCache;
     private final LoadingCache<String, Optional<ImmutableSet<Statistic>>> _specifiedStatisticsCache;
 
-    private static final StatisticFactory STATISTIC_FACTORY;
-    private static final Statistic COUNT_STATISTIC;
     private static final Logger LOGGER = LoggerFactory.getLogger(Bucket.class);
     private static final Logger BUCKET_CLOSED_LOGGER = LoggerFactory.getRateLimitLogger(Bucket.class, Duration.ofSeconds(30));
 
-    static {
-        STATISTIC_FACTORY = new StatisticFactory();
-        COUNT_STATISTIC = STATISTIC_FACTORY.getStatistic("count");
+    /**
+     * Calculators for the metrics added to this stripe together with the
+     * flag held by the one producer thread currently adding to it. Claiming
+     * and releasing the flag publishes the calculators to the next claimant
+     * and to close.
+     */
+    private static final class Stripe {
+
+        private final AtomicBoolean _claimed = new AtomicBoolean(false);
+        private final Map<String, MetricCalculators> _metricCalculators = Maps.newHashMap();
+    }
+
+    /**
+     * Calculators for a single metric laid out by its <code>CalculatorPlan</code>.
+     */
+    private static final class MetricCalculators {
+
+        /* package private */ MetricCalculators(final CalculatorPlan plan) {
+            _plan = plan;
+            _calculators = plan.createCalculators();
+            _accumulators = plan.getAccumulators(_calculators);
+        }
+
+        private final CalculatorPlan _plan;
+        private final Calculator<?>[] _calculators;
+        private final Accumulator<?>[] _accumulators;
     }
 
     /**
@@ -523,6 +520,19 @@ import java.util.function.BiFunction;
             return this;
         }
 
+        /**
+         * Set whether this bucket aggregates samples received after the
+         * period was originally closed. Optional. Cannot be null. Default is
+         * false.
+         *
+         * @param value Whether the bucket is late.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setIsLate(final Boolean value) {
+            _isLate = value;
+            return this;
+        }
+
         /**
          * Set the specified statistics for a given metric. Cannot be null or empty.
          *
@@ -545,6 +555,21 @@ import java.util.function.BiFunction;
             return this;
         }
 
+        /**
+         * Set the number of accumulation stripes. Each add claims one stripe
+         * exclusively, preferring the stripe for its thread id, and the stripes
+         * are merged on close. One stripe suffices when each bucket has a single
+         * producer thread, as on the aggregation path; use more only when
+         * records are added by concurrent producers. Optional. Cannot be null.
+         * Must be at least one. Default is one.
+         *
+         * @param value The number of stripes.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setStripeCount(final Integer value) {
+            _stripeCount = value;
+            return this;
+        }
 
         /**
          * Generate a Steno log compatible representation.
@@ -558,6 +583,7 @@ import java.util.function.BiFunction;
                     .put("key", _key)
                     .put("start", _start)
                     .put("period", _period)
+                    .put("isLate", _isLate)
                     .put("specifiedTimerStatistics", _specifiedTimerStatistics)
                     .put("specifiedCounterStatistics", _specifiedCounterStatistics)
                     .put("specifiedGaugeStatistics", _specifiedGaugeStatistics)
@@ -584,6 +610,8 @@ import java.util.function.BiFunction;
         @NotNull
         private Period _period;
         @NotNull
+        private Boolean _isLate = false;
+        @NotNull
         private ImmutableSet<Statistic> _specifiedTimerStatistics;
         @NotNull
         private ImmutableSet<Statistic> _specifiedCounterStatistics;
@@ -599,5 +627,8 @@ import java.util.function.BiFunction;
         private LoadingCache<String, Optional<ImmutableSet<Statistic>>> _specifiedStatistics;
         @NotNull
         private LoadingCache<String, Optional<ImmutableSet<Statistic>>> _dependentStatistics;
+        @NotNull
+        @Min(1)
+        private Integer _stripeCount = 1;
     }
 }
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.tsdcore.statistics.Accumulator;
+import com.arpnetworking.tsdcore.statistics.Calculator;
+import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precompiled layout of the calculators for a set of specified and dependent
+ * statistics. The statistics are resolved once, including transitive
+ * dependencies, and ordered such that every statistic follows its
+ * dependencies. The count statistic always occupies the first slot. Plans
+ * are interned and shared by all buckets with the same statistics.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class CalculatorPlan {
+
+    /**
+     * Lookup the plan for the specified and dependent statistics.
+     *
+     * @param specifiedStatistics The statistics requested for publication.
+     * @param dependentStatistics The statistics required to compute the specified statistics.
+     * @return The shared <code>CalculatorPlan</code>.
+     */
+    public static CalculatorPlan of(
+            final ImmutableSet<Statistic> specifiedStatistics,
+            final ImmutableSet<Statistic> dependentStatistics) {
+        final List<ImmutableSet<Statistic>> planKey = ImmutableList.of(specifiedStatistics, dependentStatistics);
+        CalculatorPlan plan = PLANS.get(planKey);
+        if (plan == null) {
+            final CalculatorPlan newPlan = new CalculatorPlan(specifiedStatistics, dependentStatistics);
+            plan = PLANS.putIfAbsent(planKey, newPlan);
+            if (plan == null) {
+                plan = newPlan;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Create a new set of calculators laid out according to this plan.
+     *
+     * @return The calculators indexed by slot.
+     */
+    public Calculator<?>[] createCalculators() {
+        final Calculator<?>[] calculators = new Calculator<?>[_statistics.length];
+        for (int i = 0; i < _statistics.length; ++i) {
+            calculators[i] = _statistics[i].createCalculator();
+        }
+        return calculators;
+    }
+
+    /**
+     * Extract the accumulators from calculators created by this plan.
+     *
+     * @param calculators The calculators created by this plan.
+     * @return The accumulators in slot order.
+     */
+    public Accumulator<?>[] getAccumulators(final Calculator<?>[] calculators) {
+        final Accumulator<?>[] accumulators = new Accumulator<?>[_accumulatorSlots.length];
+        for (int i = 0; i < _accumulatorSlots.length; ++i) {
+            accumulators[i] = (Accumulator<?>) calculators[_accumulatorSlots[i]];
+        }
+        return accumulators;
+    }
+
+    /**
+     * Determine the slot of a statistic in this plan.
+     *
+     * @param statistic The <code>Statistic</code> to find.
+     * @return The slot or -1 if the statistic is not part of this plan.
+     */
+    public int indexOf(final Object statistic) {
+        for (int i = 0; i < _statistics.length; ++i) {
+            if (_statistics[i].equals(statistic)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return _statistics.length;
+    }
+
+    public Statistic getStatistic(final int index) {
+        return _statistics[index];
+    }
+
+    public boolean isSpecified(final int index) {
+        return _isSpecified[index];
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("statistics", Arrays.asList(_statistics))
+                .put("specified", Arrays.toString(_isSpecified))
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private static void addInDependencyOrder(final Statistic statistic, final List<Statistic> ordered) {
+        if (ordered.contains(statistic)) {
+            return;
+        }
+        for (final Statistic dependency : statistic.getDependencies()) {
+            addInDependencyOrder(dependency, ordered);
+        }
+        ordered.add(statistic);
+    }
+
+    private CalculatorPlan(
+            final ImmutableSet<Statistic> specifiedStatistics,
+            final ImmutableSet<Statistic> dependentStatistics) {
+        final List<Statistic> ordered = Lists.newArrayList();
+        ordered.add(COUNT_STATISTIC);
+        for (final Statistic statistic : dependentStatistics) {
+            addInDependencyOrder(statistic, ordered);
+        }
+        for (final Statistic statistic : specifiedStatistics) {
+            addInDependencyOrder(statistic, ordered);
+        }
+        _statistics = ordered.toArray(new Statistic[ordered.size()]);
+        _isSpecified = new boolean[_statistics.length];
+        final List<Integer> accumulatorSlots = Lists.newArrayList();
+        for (int i = 0; i < _statistics.length; ++i) {
+            _isSpecified[i] = specifiedStatistics.contains(_statistics[i]);
+            if (_statistics[i].createCalculator() instanceof Accumulator) {
+                accumulatorSlots.add(i);
+            }
+        }
+        _accumulatorSlots = accumulatorSlots.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private final Statistic[] _statistics;
+    private final boolean[] _isSpecified;
+    private final int[] _accumulatorSlots;
+
+    /* package private */ static final int COUNT_INDEX = 0;
+
+    private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
+    private static final Statistic COUNT_STATISTIC = STATISTIC_FACTORY.getStatistic("count");
+    private static final ConcurrentMap<List<ImmutableSet<Statistic>>, CalculatorPlan> PLANS = Maps.newConcurrentMap();
+
+    /**
+     * Dependency view over the calculators of one metric. A single instance
+     * is reused across the metrics of a bucket to avoid allocating and
+     * populating a dependency map per metric. Not thread safe.
+     */
+    /* package private */ static final class Dependencies extends AbstractMap<Statistic, Calculator<?>> {
+
+        /**
+         * Point this view at the calculators of a metric.
+         *
+         * @param plan The plan the calculators were created by.
+         * @param calculators The calculators of the metric.
+         */
+        public void reset(final CalculatorPlan plan, final Calculator<?>[] calculators) {
+            _plan = plan;
+            _calculators = calculators;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Calculator<?> get(final Object key) {
+            final int index = _plan.indexOf(key);
+            return index < 0 ? null : _calculators[index];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(final Object key) {
+            return _plan.indexOf(key) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<Statistic, Calculator<?>>> entrySet() {
+            final ImmutableSet.Builder<Entry<Statistic, Calculator<?>>> entries = ImmutableSet.builder();
+            for (int i = 0; i < _calculators.length; ++i) {
+                entries.add(new SimpleImmutableEntry<>(_plan.getStatistic(i), _calculators[i]));
+            }
+            return entries.build();
+        }
+
+        private CalculatorPlan _plan;
+        private Calculator<?>[] _calculators = new Calculator<?>[0];
+    }
+}
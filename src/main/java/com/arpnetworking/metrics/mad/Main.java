@@ -206,7 +206,8 @@ public final class Main implements Launchable {
         LOGGER.info().setMessage("Launching pipelines").log();
         _pipelinesLaunchable = new PipelinesLaunchable(
                 PipelineConfiguration.createObjectMapper(injector),
-                _configuration.getPipelinesDirectory());
+                _configuration.getPipelinesDirectory(),
+                injector.getInstance(MetricsFactory.class));
         _pipelinesLaunchable.launch();
     }
 
@@ -235,6 +236,7 @@ public final class Main implements Launchable {
                 injector.getInstance(PeriodicMetrics.class),
                 _configuration.getHttpHealthCheckPath(),
                 _configuration.getHttpStatusPath(),
+                _configuration.getHttpParallelism(),
                 supplementalHttpRoutes);
         final Http http = Http.get(actorSystem);
         final akka.stream.javadsl.Source<IncomingConnection, CompletionStage<ServerBinding>> binding = http.bind(
@@ -362,9 +364,13 @@ public final class Main implements Launchable {
 
     private static final class PipelinesLaunchable implements Launchable, Runnable {
 
-        private PipelinesLaunchable(final ObjectMapper objectMapper, final File directory) {
+        private PipelinesLaunchable(
+                final ObjectMapper objectMapper,
+                final File directory,
+                final MetricsFactory metricsFactory) {
             _objectMapper = objectMapper;
             _directory = directory;
+            _metricsFactory = metricsFactory;
             _fileToPipelineLaunchables = Maps.newConcurrentMap();
         }
 
@@ -418,7 +424,9 @@ public final class Main implements Launchable {
                     .log();
 
             final Configurator<Pipeline, PipelineConfiguration> pipelineConfigurator =
-                    new Configurator<>(Pipeline::new, PipelineConfiguration.class);
+                    new Configurator<>(
+                            configuration -> new Pipeline(configuration, _metricsFactory),
+                            PipelineConfiguration.class);
             final DynamicConfiguration pipelineConfiguration = new DynamicConfiguration.Builder()
                     .setObjectMapper(_objectMapper)
                     .addSourceBuilder(getFileSourceBuilder(file))
@@ -450,6 +458,7 @@ public final class Main implements Launchable {
 
         private final ObjectMapper _objectMapper;
         private final File _directory;
+        private final MetricsFactory _metricsFactory;
         private final Map<File, List<Launchable>> _fileToPipelineLaunchables;
 
         private ScheduledExecutorService _pipelinesExecutor;
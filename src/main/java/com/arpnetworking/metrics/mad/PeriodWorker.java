@@ -21,7 +21,6 @@ import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import net.sf.oval.constraint.NotNull;
 import org.joda.time.DateTime;
@@ -29,12 +28,16 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.Period;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
 /**
  * Responsible for managing aggregation buckets for a period.
@@ -48,6 +51,11 @@ import java.util.concurrent.LinkedBlockingDeque;
      */
     public void shutdown() {
         _isRunning = false;
+        // Wake the worker if it is blocked waiting for records
+        final Thread thread = _thread;
+        if (thread != null) {
+            thread.interrupt();
+        }
     }
 
     /**
@@ -56,7 +64,19 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param record Instance of <code>Record</code> to process.
      */
     public void record(final Record record) {
-        _recordQueue.add(record);
+        _backlog.incrementAndGet();
+        _recordQueue.add(Collections.singletonList(record));
+    }
+
+    /**
+     * Process a batch of <code>Record</code> instances. The batch is queued
+     * as a single element and must not be modified after it is submitted.
+     *
+     * @param records The <code>Record</code> instances to process.
+     */
+    public void record(final List<Record> records) {
+        _backlog.addAndGet(records.size());
+        _recordQueue.add(records);
     }
 
     /**
@@ -71,40 +91,37 @@ import java.util.concurrent.LinkedBlockingDeque;
                         .setThrowable(throwable)
                         .log());
 
+        _thread = Thread.currentThread();
         while (_isRunning) {
             try {
-                DateTime now = DateTime.now();
-                final DateTime rotateAt = getRotateAt(now);
-                Duration timeToRotate = new Duration(now, rotateAt);
-                while (_isRunning && timeToRotate.isLongerThan(Duration.ZERO)) {
-                    // Process records or sleep
-                    Record recordToProcess = _recordQueue.poll();
-                    if (recordToProcess != null) {
-                        while (recordToProcess != null) {
-                            process(recordToProcess);
-                            recordToProcess = _recordQueue.poll();
-                        }
-                    } else {
-                        Thread.sleep(Math.min(timeToRotate.getMillis(), 100));
-                    }
-                    // Recompute time to close
-                    now = DateTime.now();
-                    timeToRotate = new Duration(now, rotateAt);
-                }
-                // Drain the record queue before rotating
-                final List<Record> recordsToProcess = Lists.newArrayList();
-                _recordQueue.drainTo(recordsToProcess);
-                for (final Record recordToProcess : recordsToProcess) {
-                    process(recordToProcess);
+                // Process any queued records before closing expired buckets
+                long now = System.currentTimeMillis();
+                List<Record> records = _recordQueue.poll();
+                while (records != null) {
+                    process(records, now);
+                    records = _recordQueue.poll();
                 }
-                // Rotate
                 rotate(now);
+
+                // Block until the next bucket expires or a record arrives
+                final ScheduledBucket nextExpiration = _expirations.peek();
+                if (nextExpiration != null) {
+                    records = _recordQueue.poll(Math.max(nextExpiration._expiration - now, 0), TimeUnit.MILLISECONDS);
+                } else {
+                    records = _recordQueue.take();
+                }
+                if (records != null) {
+                    now = System.currentTimeMillis();
+                    process(records, now);
+                }
             } catch (final InterruptedException e) {
                 Thread.interrupted();
-                LOGGER.warn()
-                        .setMessage("Interrupted waiting to close buckets")
-                        .setThrowable(e)
-                        .log();
+                if (_isRunning) {
+                    LOGGER.warn()
+                            .setMessage("Interrupted waiting to close buckets")
+                            .setThrowable(e)
+                            .log();
+                }
                 // CHECKSTYLE.OFF: IllegalCatch - Top level catch to prevent thread death
             } catch (final Exception e) {
                 // CHECKSTYLE.ON: IllegalCatch
@@ -115,6 +132,7 @@ import java.util.concurrent.LinkedBlockingDeque;
                         .log();
             }
         }
+        _thread = null;
     }
 
     /**
@@ -127,6 +145,9 @@ import java.util.concurrent.LinkedBlockingDeque;
         return LogValueMapFactory.builder(this)
                 .put("period", _period)
                 .put("bucketBuilder", _bucketBuilder)
+                .put("timeoutMillis", _timeoutMillis)
+                .put("reaggregateLateData", _reaggregateLateData)
+                .put("openBuckets", _expirations.size())
                 .build();
     }
 
@@ -138,95 +159,65 @@ import java.util.concurrent.LinkedBlockingDeque;
         return toLogValue().toString();
     }
 
-    /* package private */ void process(final Record record) {
+    private void process(final List<Record> records, final long now) {
+        try {
+            for (final Record record : records) {
+                process(record, now);
+            }
+        } finally {
+            _backlog.addAndGet(-records.size());
+        }
+    }
+
+    /* package private */ void process(final Record record, final long now) {
         // Find an existing bucket for the record
-        final Duration timeout = getPeriodTimeout(_period);
         final DateTime start = getStartTime(record.getTime(), _period);
-        final DateTime expiration = max(DateTime.now().plus(timeout), start.plus(_period).plus(timeout));
         Bucket bucket = _bucketsByStart.get(start);
 
-        // Create a new bucket if one does not exist
+        // Create and schedule a new bucket if one does not exist; a bucket
+        // created after the period would have closed is a correction
         if (bucket == null) {
-            // Pre-emptively add the record to the _new_ bucket. This avoids
-            // the race condition after indexing by expiration between adding
-            // the record and closing the bucket.
-            final Bucket newBucket = _bucketBuilder
+            final long periodExpiration = start.getMillis() + _periodMillis + _timeoutMillis;
+            final long expiration = Math.max(now + _timeoutMillis, periodExpiration);
+            bucket = _bucketBuilder
                     .setStart(start)
+                    .setIsLate(_reaggregateLateData && periodExpiration <= now)
                     .build();
-            newBucket.add(record);
-
-            // Resolve bucket creation race condition; either:
-            // 1) We won and can proceed to index the new bucket
-            // 2) We lost and can proceed to add data to the existing bucket
-            bucket = _bucketsByStart.putIfAbsent(start, newBucket);
-            if (bucket == null) {
-                LOGGER.debug()
-                        .setMessage("Created new bucket")
-                        .addData("bucket", newBucket)
-                        .addData("expiration", expiration)
-                        .addData("trigger", record.getId())
-                        .log();
+            _bucketsByStart.put(start, bucket);
+            _expirations.add(new ScheduledBucket(bucket, expiration));
 
-                // Index the bucket by its expiration date; the expiration date is always in the future
-                _bucketsByExpiration.compute(expiration, (dateTime, buckets) -> {
-                    if (buckets == null) {
-                        buckets = Lists.newArrayList();
-                    }
-                    buckets.add(newBucket);
-                    return buckets;
-                });
-
-                // New bucket created and indexed with record
-                return;
-            }
+            LOGGER.debug()
+                    .setMessage("Created new bucket")
+                    .addData("bucket", bucket)
+                    .addData("expiration", expiration)
+                    .addData("trigger", record.getId())
+                    .log();
         }
 
-        // Add the record to the _existing_ bucket
+        // NOTE: Only the worker thread adds to and closes its buckets so there
+        // is no race between processing and closing.
         bucket.add(record);
     }
 
-    /* package private */ void rotate(final DateTime now) {
-        final Map<DateTime, List<Bucket>> expiredBucketMap = _bucketsByExpiration.headMap(now);
-        final List<Bucket> expiredBuckets = Lists.newArrayList();
+    /* package private */ void rotate(final long now) {
+        _maxCloseLatencyMillis = 0;
         int closedBucketCount = 0;
-
-        // Phase 1: Collect expired buckets
-        for (final DateTime key : expiredBucketMap.keySet()) {
-            for (final Bucket bucket : _bucketsByExpiration.remove(key)) {
-                expiredBuckets.add(bucket);
-            }
-        }
-
-        // Phase 2: Close the expired buckets
-        for (final Bucket bucket : expiredBuckets) {
-            // Close the bucket
-            // NOTE: The race condition between process and close is resolved in Bucket
-            bucket.close();
-            _bucketsByStart.remove(bucket.getStart());
+        while (!_expirations.isEmpty() && _expirations.peek()._expiration <= now) {
+            final ScheduledBucket scheduledBucket = _expirations.poll();
+            closeBucket(scheduledBucket._bucket, scheduledBucket._expiration);
             ++closedBucketCount;
-
+        }
+        if (closedBucketCount > 0) {
             LOGGER.debug()
-                    .setMessage("Bucket closed")
-                    .addData("periodWorker", this)
-                    .addData("bucket", bucket)
-                    .addData("now", now)
+                    .setMessage("Rotated")
+                    .addData("count", closedBucketCount)
+                    .addData("maxCloseLatencyMillis", _maxCloseLatencyMillis)
                     .log();
         }
-
-        LOGGER.debug().setMessage("Rotated").addData("count", closedBucketCount).log();
-    }
-
-    /* package private */ DateTime getRotateAt(final DateTime now) {
-        final Map.Entry<DateTime, List<Bucket>> firstEntry = _bucketsByExpiration.firstEntry();
-        final DateTime periodFirstExpiration = firstEntry == null ? null : firstEntry.getKey();
-        if (periodFirstExpiration != null && periodFirstExpiration.isAfter(now)) {
-            return periodFirstExpiration;
-        }
-        return now.plus(_rotationCheck);
     }
 
     /* package private */ static Duration getPeriodTimeout(final Period period) {
-        // TODO(vkoskela): Support separate configurable timeouts per period. [MAI-499]
+        // The default timeout for periods without a configured timeout
         final Duration timeoutDuration = period.toStandardDuration().dividedBy(2);
         if (MINIMUM_PERIOD_TIMEOUT.isLongerThan(timeoutDuration)) {
             return MINIMUM_PERIOD_TIMEOUT;
@@ -246,32 +237,65 @@ import java.util.concurrent.LinkedBlockingDeque;
         return new DateTime(dateTimeMillis - (dateTimeMillis % periodMillis), DateTimeZone.UTC);
     }
 
-    /* package private */ static DateTime max(final DateTime dateTime1, final DateTime dateTime2) {
-        if (dateTime1.isAfter(dateTime2)) {
-            return dateTime1;
-        }
-        return dateTime2;
+    private void closeBucket(final Bucket bucket, final long expiration) {
+        final long closedAt = System.currentTimeMillis();
+        bucket.close();
+        _bucketsByStart.remove(bucket.getStart());
+        _maxCloseLatencyMillis = Math.max(_maxCloseLatencyMillis, closedAt - expiration);
+        _closeLatency.accumulate(closedAt - expiration);
+
+        LOGGER.debug()
+                .setMessage("Bucket closed")
+                .addData("periodWorker", this)
+                .addData("bucket", bucket)
+                .addData("closeLatencyMillis", closedAt - expiration)
+                .log();
     }
 
     private PeriodWorker(final Builder builder) {
         _period = builder._period;
         _bucketBuilder = builder._bucketBuilder;
+        _periodMillis = _period.toStandardDuration().getMillis();
+        _timeoutMillis = builder._timeout.getMillis();
+        _reaggregateLateData = builder._reaggregateLateData;
+        _backlog = builder._backlog;
+        _closeLatency = builder._closeLatency;
     }
 
     private volatile boolean _isRunning = true;
+    private volatile Thread _thread;
 
     private final Period _period;
     private final Bucket.Builder _bucketBuilder;
-    private final Duration _rotationCheck = Duration.millis(100);
-    private final BlockingQueue<Record> _recordQueue = new LinkedBlockingDeque<>();
-    private final ConcurrentSkipListMap<DateTime, Bucket> _bucketsByStart = new ConcurrentSkipListMap<>();
-    private final NavigableMap<DateTime, List<Bucket>> _bucketsByExpiration =
-            Maps.synchronizedNavigableMap(new ConcurrentSkipListMap<>());
-
+    private final long _periodMillis;
+    private final long _timeoutMillis;
+    private final boolean _reaggregateLateData;
+    private final AtomicLong _backlog;
+    private final LongAccumulator _closeLatency;
+    private final BlockingQueue<List<Record>> _recordQueue = new LinkedBlockingDeque<>();
+    private final Map<DateTime, Bucket> _bucketsByStart = Maps.newHashMap();
+    // NOTE: A worker has few open buckets so a heap is cheaper than a wheel
+    private final PriorityQueue<ScheduledBucket> _expirations = new PriorityQueue<>(
+            INITIAL_EXPIRATIONS_CAPACITY,
+            Comparator.comparingLong(scheduledBucket -> scheduledBucket._expiration));
+    private long _maxCloseLatencyMillis = 0;
+
+    private static final int INITIAL_EXPIRATIONS_CAPACITY = 4;
     private static final Logger LOGGER = LoggerFactory.getLogger(PeriodWorker.class);
     private static final Duration MINIMUM_PERIOD_TIMEOUT = Duration.standardSeconds(1);
     private static final Duration MAXIMUM_PERIOD_TIMEOUT = Duration.standardMinutes(10);
 
+    private static final class ScheduledBucket {
+
+        private ScheduledBucket(final Bucket bucket, final long expiration) {
+            _bucket = bucket;
+            _expiration = expiration;
+        }
+
+        private final Bucket _bucket;
+        private final long _expiration;
+    }
+
     /**
      * <code>Builder</code> implementation for <code>PeriodWorker</code>.
      */
@@ -295,6 +319,31 @@ import java.util.concurrent.LinkedBlockingDeque;
             return this;
         }
 
+        /**
+         * Set the time to wait after the end of a period before closing its
+         * bucket. Cannot be null.
+         *
+         * @param value The timeout.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setTimeout(final Duration value) {
+            _timeout = value;
+            return this;
+        }
+
+        /**
+         * Set whether records received after their period closed are
+         * aggregated into a correction bucket flagged as late. Optional.
+         * Cannot be null. Default is false.
+         *
+         * @param value Whether to re-aggregate late data.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setReaggregateLateData(final Boolean value) {
+            _reaggregateLateData = value;
+            return this;
+        }
+
         /**
          * Set the <code>Bucket</code> <code>Builder</code>. Cannot be null.
          *
@@ -306,9 +355,44 @@ import java.util.concurrent.LinkedBlockingDeque;
             return this;
         }
 
+        /**
+         * Set the counter of records queued and not yet processed. The
+         * counter may be shared by workers. Optional. Cannot be null. Default
+         * is a counter for this worker.
+         *
+         * @param value The backlog counter.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setBacklog(final AtomicLong value) {
+            _backlog = value;
+            return this;
+        }
+
+        /**
+         * Set the accumulator of the maximum time in milliseconds between the
+         * scheduled and actual close of a bucket. The accumulator may be
+         * shared by workers and is reset by its reader. Optional. Cannot be null.
+         * Default is an accumulator for this worker.
+         *
+         * @param value The close latency accumulator.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setCloseLatency(final LongAccumulator value) {
+            _closeLatency = value;
+            return this;
+        }
+
         @NotNull
         private Period _period;
         @NotNull
+        private Duration _timeout;
+        @NotNull
+        private Boolean _reaggregateLateData = false;
+        @NotNull
         private Bucket.Builder _bucketBuilder;
+        @NotNull
+        private AtomicLong _backlog = new AtomicLong();
+        @NotNull
+        private LongAccumulator _closeLatency = new LongAccumulator(Math::max, 0);
     }
 }
@@ -16,11 +16,13 @@
 package com.arpnetworking.metrics.mad;
 
 import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.common.sources.Source;
 import com.arpnetworking.metrics.mad.configuration.PipelineConfiguration;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.arpnetworking.tsdcore.sinks.LateDataRoutingSink;
 import com.arpnetworking.tsdcore.sinks.MultiSink;
 import com.arpnetworking.tsdcore.sinks.Sink;
 import com.arpnetworking.utility.Launchable;
@@ -29,6 +31,7 @@ import com.google.common.collect.Lists;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Single data pathway through the time series data aggregator. The pathway
@@ -47,6 +50,18 @@ public final class Pipeline implements Launchable {
      */
     public Pipeline(final PipelineConfiguration pipelineConfiguration) {
         _pipelineConfiguration = pipelineConfiguration;
+        _metricsFactory = null;
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param pipelineConfiguration Instance of <code>PipelineConfiguration</code>.
+     * @param metricsFactory Instance of <code>MetricsFactory</code> to publish pipeline metrics to.
+     */
+    public Pipeline(final PipelineConfiguration pipelineConfiguration, final MetricsFactory metricsFactory) {
+        _pipelineConfiguration = pipelineConfiguration;
+        _metricsFactory = metricsFactory;
     }
 
     /**
@@ -59,18 +74,46 @@ public final class Pipeline implements Launchable {
                 .addData("configuration", _pipelineConfiguration)
                 .log();
 
-        final Sink rootSink = new MultiSink.Builder()
+        final Sink sink = new MultiSink.Builder()
                 .setName(_pipelineConfiguration.getName())
                 .setSinks(_pipelineConfiguration.getSinks())
+                .setQueueSize(_pipelineConfiguration.getSinkQueueSize())
+                .setOverflowPolicy(_pipelineConfiguration.getSinkOverflowPolicy())
                 .build();
+        final Sink rootSink;
+        if (_pipelineConfiguration.getLateDataSinks().isEmpty()) {
+            // Late data is published to the sinks along with the on time data
+            rootSink = sink;
+        } else {
+            rootSink = new LateDataRoutingSink.Builder()
+                    .setName(_pipelineConfiguration.getName())
+                    .setSink(sink)
+                    .setLateDataSink(new MultiSink.Builder()
+                            .setName(_pipelineConfiguration.getName() + "_late")
+                            .setSinks(_pipelineConfiguration.getLateDataSinks())
+                            .setQueueSize(_pipelineConfiguration.getSinkQueueSize())
+                            .setOverflowPolicy(_pipelineConfiguration.getSinkOverflowPolicy())
+                            .build())
+                    .build();
+        }
         _sinks.add(rootSink);
 
         final Aggregator aggregator = new Aggregator.Builder()
+                .setName(_pipelineConfiguration.getName())
+                .setMetricsFactory(_metricsFactory)
                 .setPeriods(_pipelineConfiguration.getPeriods())
                 .setTimerStatistics(_pipelineConfiguration.getTimerStatistics())
                 .setCounterStatistics(_pipelineConfiguration.getCounterStatistics())
                 .setGaugeStatistics(_pipelineConfiguration.getGaugeStatistics())
                 .setStatistics(_pipelineConfiguration.getStatistics())
+                .setAggregationMode(_pipelineConfiguration.getAggregationMode())
+                .setShardCount(_pipelineConfiguration.getAggregationShardCount())
+                .setPeriodTimeouts(_pipelineConfiguration.getPeriodTimeouts())
+                .setReaggregateLateData(_pipelineConfiguration.getReaggregateLateData())
+                .setStatisticsCacheMaximumSize(_pipelineConfiguration.getStatisticsCacheMaximumSize())
+                .setStatisticsCacheExpiration(_pipelineConfiguration.getStatisticsCacheExpiration())
+                .setKeyRegistryMaximumSize(_pipelineConfiguration.getKeyRegistryMaximumSize())
+                .setKeyRegistryExpiration(_pipelineConfiguration.getKeyRegistryExpiration())
                 .setSink(rootSink)
                 .build();
         aggregator.launch();
@@ -132,6 +175,8 @@ public final class Pipeline implements Launchable {
     }
 
     private final PipelineConfiguration _pipelineConfiguration;
+    @Nullable
+    private final MetricsFactory _metricsFactory;
     private final AtomicReference<Aggregator> _aggregator = new AtomicReference<>();
     private final List<Sink> _sinks = Lists.newArrayList();
     private final List<Source> _sources = Lists.newArrayList();
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Hierarchical hashed timing wheel for scheduling deadlines. Each slot covers
+ * one tick of time and holds the timeouts whose deadline falls into that tick
+ * within the current rotation of the wheel. Timeouts beyond the current
+ * rotation are held by an overflow wheel whose tick is one full rotation of
+ * this wheel and are cascaded down as their rotation arrives. Scheduling is
+ * O(1) and expiring is proportional to the number of ticks elapsed plus the
+ * number of timeouts expired or cascaded, independent of the total number of
+ * scheduled timeouts. Slots are allocated when first used so a sparsely
+ * populated wheel costs little more than its slot array.
+ *
+ * This class is <b>not</b> thread safe; it is intended to be owned by a
+ * single worker thread.
+ *
+ * @param <T> The type of value scheduled on the wheel.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class TimingWheel<T> {
+
+    /**
+     * Public constructor.
+     *
+     * @param tickMillis The duration of each tick in milliseconds.
+     * @param ticksPerWheel The number of slots in the wheel.
+     * @param nowMillis The current time in milliseconds since the epoch.
+     */
+    @SuppressWarnings("unchecked")
+    /* package private */ TimingWheel(final long tickMillis, final int ticksPerWheel, final long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Ticks per wheel must be positive");
+        }
+        _tickMillis = tickMillis;
+        _slots = new ArrayDeque[ticksPerWheel];
+        _currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedule a value to expire at the specified deadline. Deadlines in the
+     * past expire on the next call to <code>expire</code>.
+     *
+     * @param value The value to schedule.
+     * @param deadlineMillis The deadline in milliseconds since the epoch.
+     */
+    public void schedule(final T value, final long deadlineMillis) {
+        schedule(new Timeout<>(value, deadlineMillis));
+        ++_size;
+    }
+
+    /**
+     * Advance the wheel to the specified time and pass every value whose
+     * deadline is at or before that time to the consumer together with its
+     * deadline.
+     *
+     * @param nowMillis The current time in milliseconds since the epoch.
+     * @param consumer The consumer of expired values and their deadlines.
+     * @return The number of values expired.
+     */
+    public int expire(final long nowMillis, final ObjLongConsumer<T> consumer) {
+        final long targetTick = nowMillis / _tickMillis;
+        if (targetTick < _currentTick) {
+            return 0;
+        }
+        // Visit each slot at most once even if more than one rotation elapsed
+        final long ticksToVisit = Math.min(targetTick - _currentTick + 1, _slots.length);
+        int expiredCount = 0;
+        for (long i = 0; i < ticksToVisit; ++i) {
+            final ArrayDeque<Timeout<T>> slot = _slots[slotIndex(_currentTick + i)];
+            if (slot == null) {
+                continue;
+            }
+            final Iterator<Timeout<T>> iterator = slot.iterator();
+            while (iterator.hasNext()) {
+                final Timeout<T> timeout = iterator.next();
+                if (timeout._deadlineMillis <= nowMillis) {
+                    iterator.remove();
+                    ++expiredCount;
+                    consumer.accept(timeout._value, timeout._deadlineMillis);
+                }
+            }
+        }
+        // NOTE: The target tick is revisited on the next call since it may
+        // still contain timeouts later in the tick than now.
+        _currentTick = targetTick;
+
+        // Cascade timeouts from the overflow wheel which now fall within the
+        // current rotation; any which are already due expire immediately
+        if (_overflow != null) {
+            final int[] cascadeExpiredCount = {0};
+            _overflow.expire(
+                    (_currentTick + _slots.length) * _tickMillis - 1,
+                    (timeout, deadlineMillis) -> {
+                        if (deadlineMillis <= nowMillis) {
+                            ++cascadeExpiredCount[0];
+                            consumer.accept(timeout._value, deadlineMillis);
+                        } else {
+                            schedule(timeout);
+                        }
+                    });
+            expiredCount += cascadeExpiredCount[0];
+        }
+        _size -= expiredCount;
+        return expiredCount;
+    }
+
+    /**
+     * Return the earliest deadline scheduled on the wheel.
+     *
+     * @return The earliest deadline in milliseconds since the epoch, if any.
+     */
+    public OptionalLong getNextDeadline() {
+        if (_size == 0) {
+            return OptionalLong.empty();
+        }
+        // This wheel only holds timeouts within the current rotation so the
+        // first non-empty slot contains the earliest deadline
+        for (long tick = _currentTick; tick < _currentTick + _slots.length; ++tick) {
+            final ArrayDeque<Timeout<T>> slot = _slots[slotIndex(tick)];
+            if (slot != null && !slot.isEmpty()) {
+                long earliest = Long.MAX_VALUE;
+                for (final Timeout<T> timeout : slot) {
+                    earliest = Math.min(earliest, timeout._deadlineMillis);
+                }
+                return OptionalLong.of(earliest);
+            }
+        }
+        // All timeouts are at least one rotation away
+        return _overflow.getNextDeadline();
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("tickMillis", _tickMillis)
+                .put("ticksPerWheel", _slots.length)
+                .put("currentTick", _currentTick)
+                .put("size", _size)
+                .put("overflow", _overflow)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private void schedule(final Timeout<T> timeout) {
+        final long tick = Math.max(timeout._deadlineMillis / _tickMillis, _currentTick);
+        if (tick < _currentTick + _slots.length) {
+            final int index = slotIndex(tick);
+            if (_slots[index] == null) {
+                _slots[index] = new ArrayDeque<>(INITIAL_SLOT_CAPACITY);
+            }
+            _slots[index].add(timeout);
+        } else {
+            if (_overflow == null) {
+                _overflow = new TimingWheel<>(_tickMillis * _slots.length, _slots.length, _currentTick * _tickMillis);
+            }
+            _overflow.schedule(timeout, timeout._deadlineMillis);
+        }
+    }
+
+    private int slotIndex(final long tick) {
+        return (int) (tick % _slots.length);
+    }
+
+    private final long _tickMillis;
+    private final ArrayDeque<Timeout<T>>[] _slots;
+    private long _currentTick;
+    private int _size = 0;
+    private TimingWheel<Timeout<T>> _overflow;
+
+    private static final int INITIAL_SLOT_CAPACITY = 4;
+
+    private static final class Timeout<T> {
+
+        private Timeout(final T value, final long deadlineMillis) {
+            _value = value;
+            _deadlineMillis = deadlineMillis;
+        }
+
+        private final T _value;
+        private final long _deadlineMillis;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad.configuration;
+
+/**
+ * The aggregation engine used by a pipeline.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum AggregationMode {
+    /**
+     * One worker thread per dimension key and period.
+     */
+    PER_KEY,
+    /**
+     * Dimension keys are hash partitioned across a fixed number of worker
+     * threads each of which owns the buckets for all periods of its keys.
+     */
+    SHARDED;
+}
@@ -19,6 +19,7 @@ import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.http.SupplementalRoutes;
 import com.arpnetworking.logback.annotations.Loggable;
 import com.google.common.base.MoreObjects;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
 import net.sf.oval.constraint.Range;
@@ -65,6 +66,10 @@ public final class AggregatorConfiguration {
         return _httpStatusPath;
     }
 
+    public int getHttpParallelism() {
+        return _httpParallelism;
+    }
+
     public Optional<Class<? extends SupplementalRoutes>> getSupplementalHttpRoutesClass() {
         return _supplementalHttpRoutesClass;
     }
@@ -91,6 +96,7 @@ public final class AggregatorConfiguration {
                 .add("HttpPort", _httpPort)
                 .add("HttpHealthCheckPath", _httpHealthCheckPath)
                 .add("HttpStatusPath", _httpStatusPath)
+                .add("HttpParallelism", _httpParallelism)
                 .add("SupplementalHttpRoutesClass", _supplementalHttpRoutesClass)
                 .add("AkkaConfiguration", _akkaConfiguration)
                 .add("JvmMetricsCollectorInterval", _jvmMetricsCollectionInterval)
@@ -105,6 +111,7 @@ public final class AggregatorConfiguration {
         _httpPort = builder._httpPort;
         _httpHealthCheckPath = builder._httpHealthCheckPath;
         _httpStatusPath = builder._httpStatusPath;
+        _httpParallelism = builder._httpParallelism;
         _supplementalHttpRoutesClass = Optional.ofNullable(builder._supplementalHttpRoutesClass);
         _jvmMetricsCollectionInterval = builder._jvmMetricsCollectionInterval;
         _akkaConfiguration = builder._akkaConfiguration;
@@ -117,6 +124,7 @@ public final class AggregatorConfiguration {
     private final String _httpHealthCheckPath;
     private final String _httpStatusPath;
     private final int _httpPort;
+    private final int _httpParallelism;
     private Optional<Class<? extends SupplementalRoutes>> _supplementalHttpRoutesClass;
     private final Period _jvmMetricsCollectionInterval;
     private final Map<String, ?> _akkaConfiguration;
@@ -213,6 +221,19 @@ public final class AggregatorConfiguration {
             return this;
         }
 
+        /**
+         * The number of requests processed concurrently on each http
+         * connection. Responses are returned in request order. Optional.
+         * Default is 1.
+         *
+         * @param value The number of concurrent requests per connection.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setHttpParallelism(final Integer value) {
+            _httpParallelism = value;
+            return this;
+        }
+
         /**
          * The supplemental routes class. Optional.
          *
@@ -271,6 +292,9 @@ public final class AggregatorConfiguration {
         @NotNull
         @NotEmpty
         private String _httpStatusPath = "/status";
+        @NotNull
+        @Min(1)
+        private Integer _httpParallelism = 1;
         private Class<? extends SupplementalRoutes> _supplementalHttpRoutesClass;
         @NotNull
         private Period _jvmMetricsCollectionInterval = Period.millis(500);
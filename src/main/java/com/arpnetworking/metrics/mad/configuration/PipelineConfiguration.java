@@ -19,6 +19,7 @@ import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.logback.annotations.Loggable;
 import com.arpnetworking.metrics.common.sources.Source;
+import com.arpnetworking.tsdcore.sinks.OverflowPolicy;
 import com.arpnetworking.tsdcore.sinks.Sink;
 import com.arpnetworking.tsdcore.statistics.Statistic;
 import com.arpnetworking.tsdcore.statistics.StatisticDeserializer;
@@ -34,6 +35,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.inject.Injector;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
 import org.joda.time.Period;
@@ -89,6 +91,10 @@ public final class PipelineConfiguration {
         return _sinks;
     }
 
+    public List<Sink> getLateDataSinks() {
+        return _lateDataSinks;
+    }
+
     public Set<Period> getPeriods() {
         return _periods;
     }
@@ -109,6 +115,46 @@ public final class PipelineConfiguration {
         return _statistics;
     }
 
+    public AggregationMode getAggregationMode() {
+        return _aggregationMode;
+    }
+
+    public int getAggregationShardCount() {
+        return _aggregationShardCount;
+    }
+
+    public ImmutableMap<Period, Period> getPeriodTimeouts() {
+        return _periodTimeouts;
+    }
+
+    public boolean getReaggregateLateData() {
+        return _reaggregateLateData;
+    }
+
+    public int getSinkQueueSize() {
+        return _sinkQueueSize;
+    }
+
+    public OverflowPolicy getSinkOverflowPolicy() {
+        return _sinkOverflowPolicy;
+    }
+
+    public long getStatisticsCacheMaximumSize() {
+        return _statisticsCacheMaximumSize;
+    }
+
+    public Period getStatisticsCacheExpiration() {
+        return _statisticsCacheExpiration;
+    }
+
+    public long getKeyRegistryMaximumSize() {
+        return _keyRegistryMaximumSize;
+    }
+
+    public Period getKeyRegistryExpiration() {
+        return _keyRegistryExpiration;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -119,10 +165,21 @@ public final class PipelineConfiguration {
                 .add("Name", _name)
                 .add("Sources", _sources)
                 .add("Sinks", _sinks)
+                .add("LateDataSinks", _lateDataSinks)
                 .add("Periods", _periods)
                 .add("TimerStatistic", _timerStatistic)
                 .add("CounterStatistic", _counterStatistic)
                 .add("GaugeStatistic", _gaugeStatistic)
+                .add("AggregationMode", _aggregationMode)
+                .add("AggregationShardCount", _aggregationShardCount)
+                .add("PeriodTimeouts", _periodTimeouts)
+                .add("ReaggregateLateData", _reaggregateLateData)
+                .add("SinkQueueSize", _sinkQueueSize)
+                .add("SinkOverflowPolicy", _sinkOverflowPolicy)
+                .add("StatisticsCacheMaximumSize", _statisticsCacheMaximumSize)
+                .add("StatisticsCacheExpiration", _statisticsCacheExpiration)
+                .add("KeyRegistryMaximumSize", _keyRegistryMaximumSize)
+                .add("KeyRegistryExpiration", _keyRegistryExpiration)
                 .toString();
     }
 
@@ -130,21 +187,47 @@ public final class PipelineConfiguration {
         _name = builder._name;
         _sources = ImmutableList.copyOf(builder._sources);
         _sinks = ImmutableList.copyOf(builder._sinks);
+        _lateDataSinks = ImmutableList.copyOf(builder._lateDataSinks);
         _periods = ImmutableSet.copyOf(builder._periods);
         _timerStatistic = ImmutableSet.copyOf(builder._timerStatistics);
         _counterStatistic = ImmutableSet.copyOf(builder._counterStatistics);
         _gaugeStatistic = ImmutableSet.copyOf(builder._gaugeStatistics);
         _statistics = ImmutableMap.copyOf(builder._statistics);
+        _aggregationMode = builder._aggregationMode;
+        _aggregationShardCount = builder._aggregationShardCount;
+        final ImmutableMap.Builder<Period, Period> periodTimeouts = ImmutableMap.builder();
+        for (final Map.Entry<String, Period> entry : builder._periodTimeouts.entrySet()) {
+            periodTimeouts.put(Period.parse(entry.getKey()), entry.getValue());
+        }
+        _periodTimeouts = periodTimeouts.build();
+        _reaggregateLateData = builder._reaggregateLateData;
+        _sinkQueueSize = builder._sinkQueueSize;
+        _sinkOverflowPolicy = builder._sinkOverflowPolicy;
+        _statisticsCacheMaximumSize = builder._statisticsCacheMaximumSize;
+        _statisticsCacheExpiration = builder._statisticsCacheExpiration;
+        _keyRegistryMaximumSize = builder._keyRegistryMaximumSize;
+        _keyRegistryExpiration = builder._keyRegistryExpiration;
     }
 
     private final String _name;
     private final ImmutableList<Source> _sources;
     private final ImmutableList<Sink> _sinks;
+    private final ImmutableList<Sink> _lateDataSinks;
     private final ImmutableSet<Period> _periods;
     private final ImmutableSet<Statistic> _timerStatistic;
     private final ImmutableSet<Statistic> _counterStatistic;
     private final ImmutableSet<Statistic> _gaugeStatistic;
     private final ImmutableMap<String, Set<Statistic>> _statistics;
+    private final AggregationMode _aggregationMode;
+    private final int _aggregationShardCount;
+    private final ImmutableMap<Period, Period> _periodTimeouts;
+    private final boolean _reaggregateLateData;
+    private final int _sinkQueueSize;
+    private final OverflowPolicy _sinkOverflowPolicy;
+    private final long _statisticsCacheMaximumSize;
+    private final Period _statisticsCacheExpiration;
+    private final long _keyRegistryMaximumSize;
+    private final Period _keyRegistryExpiration;
 
     private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
 
@@ -195,6 +278,20 @@ public final class PipelineConfiguration {
             return this;
         }
 
+        /**
+         * The sinks for late data when re-aggregating late data. When set,
+         * late data is published only to these sinks since it is a correction
+         * which the other sinks may publish as a replacement. Optional. Cannot
+         * be null. Default is empty; late data is published to the sinks.
+         *
+         * @param value The sinks for late data.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setLateDataSinks(final List<Sink> value) {
+            _lateDataSinks = value;
+            return this;
+        }
+
         /**
          * The aggregation periods. Cannot be null or empty. Default is one
          * second and five minute periods.
@@ -255,6 +352,140 @@ public final class PipelineConfiguration {
             return this;
         }
 
+        /**
+         * The aggregation engine. Optional. Cannot be null. Default is
+         * <code>PER_KEY</code> which uses one worker thread per dimension key
+         * and period. The <code>SHARDED</code> mode uses a fixed number of
+         * worker threads regardless of the number of dimension keys.
+         *
+         * @param value The aggregation mode.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setAggregationMode(final AggregationMode value) {
+            _aggregationMode = value;
+            return this;
+        }
+
+        /**
+         * The number of worker threads when using the <code>SHARDED</code>
+         * aggregation mode. Optional. Cannot be null. Must be at least one.
+         * Default is the number of available processors.
+         *
+         * @param value The number of aggregation shards.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setAggregationShardCount(final Integer value) {
+            _aggregationShardCount = value;
+            return this;
+        }
+
+        /**
+         * The time to wait after the end of a period before closing its
+         * buckets keyed by the period in ISO-8601 notation (e.g. "PT1M").
+         * Optional. Cannot be null. Default is empty; periods without a
+         * timeout wait half the period bounded to between one second and
+         * ten minutes.
+         *
+         * @param value The timeout by period.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setPeriodTimeouts(final Map<String, Period> value) {
+            _periodTimeouts = value;
+            return this;
+        }
+
+        /**
+         * Whether records received after their period closed are aggregated
+         * into a correction which is published flagged as late instead of
+         * as a replacement for the period. Optional. Cannot be null. Default
+         * is false.
+         *
+         * @param value Whether to re-aggregate late data.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setReaggregateLateData(final Boolean value) {
+            _reaggregateLateData = value;
+            return this;
+        }
+
+        /**
+         * The number of periodic data queued for each sink. When zero the
+         * sinks are invoked in turn on the thread which closed the bucket;
+         * otherwise each sink is invoked on its own thread so a slow sink
+         * does not delay aggregation. Optional. Cannot be null. Default is
+         * zero.
+         *
+         * @param value The size of the queue for each sink.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setSinkQueueSize(final Integer value) {
+            _sinkQueueSize = value;
+            return this;
+        }
+
+        /**
+         * What to do when the queue of a sink is full. Optional. Cannot be
+         * null. Default is <code>BLOCK</code>.
+         *
+         * @param value The overflow policy for sink queues.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setSinkOverflowPolicy(final OverflowPolicy value) {
+            _sinkOverflowPolicy = value;
+            return this;
+        }
+
+        /**
+         * The maximum number of metric names for which the statistics matched
+         * by <code>statistics</code> are cached. Optional. Cannot be null.
+         * Must be at least one. Default is 100,000.
+         *
+         * @param value The maximum number of cached metric names.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setStatisticsCacheMaximumSize(final Long value) {
+            _statisticsCacheMaximumSize = value;
+            return this;
+        }
+
+        /**
+         * The time after last access that the matched statistics for a metric
+         * name are evicted from the cache. Optional. Cannot be null. Default
+         * is one hour.
+         *
+         * @param value The cache expiration.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setStatisticsCacheExpiration(final Period value) {
+            _statisticsCacheExpiration = value;
+            return this;
+        }
+
+        /**
+         * The maximum number of distinct dimension sets for which canonical
+         * keys are retained. Optional. Cannot be null. Must be at least one.
+         * Default is 100,000.
+         *
+         * @param value The maximum number of registered keys.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setKeyRegistryMaximumSize(final Long value) {
+            _keyRegistryMaximumSize = value;
+            return this;
+        }
+
+        /**
+         * The time after last use that the canonical key for a dimension set
+         * is evicted. Optional. Cannot be null. Default is one hour.
+         *
+         * @param value The key expiration.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setKeyRegistryExpiration(final Period value) {
+            _keyRegistryExpiration = value;
+            return this;
+        }
+
         @NotNull
         @NotEmpty
         private String _name;
@@ -263,6 +494,8 @@ public final class PipelineConfiguration {
         @NotNull
         private List<Sink> _sinks = Collections.emptyList();
         @NotNull
+        private List<Sink> _lateDataSinks = Collections.emptyList();
+        @NotNull
         @NotEmpty
         private Set<Period> _periods = Sets.newHashSet(Period.seconds(1), Period.minutes(1));
         @NotNull
@@ -287,5 +520,29 @@ public final class PipelineConfiguration {
                 STATISTIC_FACTORY.getStatistic("mean"));
         @NotNull
         private Map<String, Set<Statistic>> _statistics = Collections.emptyMap();
+        @NotNull
+        private AggregationMode _aggregationMode = AggregationMode.PER_KEY;
+        @NotNull
+        @Min(1)
+        private Integer _aggregationShardCount = Runtime.getRuntime().availableProcessors();
+        @NotNull
+        private Map<String, Period> _periodTimeouts = Collections.emptyMap();
+        @NotNull
+        private Boolean _reaggregateLateData = false;
+        @NotNull
+        @Min(0)
+        private Integer _sinkQueueSize = 0;
+        @NotNull
+        private OverflowPolicy _sinkOverflowPolicy = OverflowPolicy.BLOCK;
+        @NotNull
+        @Min(1)
+        private Long _statisticsCacheMaximumSize = 100000L;
+        @NotNull
+        private Period _statisticsCacheExpiration = Period.hours(1);
+        @NotNull
+        @Min(1)
+        private Long _keyRegistryMaximumSize = 100000L;
+        @NotNull
+        private Period _keyRegistryExpiration = Period.hours(1);
     }
 }
@@ -15,11 +15,24 @@
  */
 package com.arpnetworking.metrics.mad.model;
 
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
 /**
- * Represents a parsable HTTP request.
+ * Represents a parsable HTTP request. The body is held as the chunks it was
+ * received in; parsers should prefer reading it through
+ * <code>getBodyStream</code> or <code>getBodyChunks</code> over
+ * <code>getBody</code>, which copies a chunked body into one array.
  *
  * @author Brandon Arp (brandon dot arp at smartsheet dot com)
  */
@@ -29,8 +42,55 @@ public final class HttpRequest {
         return _headers;
     }
 
+    /**
+     * Get the body as a single array. A body received in more than one chunk
+     * is copied into a new array on each call.
+     *
+     * @return The body of the request.
+     */
     public byte[] getBody() {
-        return _body;
+        if (_body != null) {
+            return _body;
+        }
+        int size = 0;
+        for (final ByteBuffer chunk : _bodyChunks) {
+            size += chunk.remaining();
+        }
+        final byte[] body = new byte[size];
+        int offset = 0;
+        for (final ByteBuffer chunk : _bodyChunks) {
+            final int length = chunk.remaining();
+            chunk.duplicate().get(body, offset, length);
+            offset += length;
+        }
+        return body;
+    }
+
+    /**
+     * Get the chunks of the body in order. Each call returns independent views
+     * of the chunks which share their content.
+     *
+     * @return The chunks of the body.
+     */
+    public List<ByteBuffer> getBodyChunks() {
+        final List<ByteBuffer> chunks = Lists.newArrayListWithCapacity(_bodyChunks.size());
+        for (final ByteBuffer chunk : _bodyChunks) {
+            chunks.add(chunk.duplicate());
+        }
+        return chunks;
+    }
+
+    /**
+     * Get a stream over the chunks of the body without copying them.
+     *
+     * @return A new stream over the body.
+     */
+    public InputStream getBodyStream() {
+        final List<InputStream> streams = Lists.newArrayListWithCapacity(_bodyChunks.size());
+        for (final ByteBuffer chunk : _bodyChunks) {
+            streams.add(new ByteBufferBackedInputStream(chunk.duplicate()));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
     }
 
     /**
@@ -42,9 +102,24 @@ public final class HttpRequest {
     public HttpRequest(final Multimap<String, String> headers, final byte[] body) {
         _headers = headers;
         _body = body;
+        _bodyChunks = ImmutableList.of(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param headers The headers.
+     * @param bodyChunks The chunks of the body of the request in order.
+     */
+    public HttpRequest(final Multimap<String, String> headers, final List<ByteBuffer> bodyChunks) {
+        _headers = headers;
+        _body = null;
+        _bodyChunks = ImmutableList.copyOf(bodyChunks);
     }
 
     private final Multimap<String, String> _headers;
     // TODO(barp): change this into a List or similar struture to ensure no modifications
+    @Nullable
     private final byte[] _body;
+    private final ImmutableList<ByteBuffer> _bodyChunks;
 }
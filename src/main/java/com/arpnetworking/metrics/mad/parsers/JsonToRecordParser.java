@@ -19,7 +19,7 @@ import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.commons.jackson.databind.EnumerationDeserializer;
 import com.arpnetworking.commons.jackson.databind.EnumerationDeserializerStrategyUsingToUpperCase;
 import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
-import com.arpnetworking.metrics.common.parsers.Parser;
+import com.arpnetworking.metrics.common.parsers.BufferParser;
 import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
 import com.arpnetworking.metrics.mad.model.DefaultMetric;
 import com.arpnetworking.metrics.mad.model.DefaultRecord;
@@ -40,6 +40,7 @@ import com.arpnetworking.tsdcore.model.Quantity;
 import com.arpnetworking.tsdcore.model.Unit;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -51,6 +52,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import net.sf.oval.exception.ConstraintsViolatedException;
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
@@ -58,7 +60,9 @@ import org.joda.time.chrono.ISOChronology;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -77,57 +81,27 @@ import javax.annotation.Nullable;
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
  * @author Ryan Ascheman (rascheman at groupon dot com)
  */
-public final class JsonToRecordParser implements Parser<Record, byte[]> {
+public final class JsonToRecordParser implements BufferParser<Record> {
 
     /**
      * {@inheritDoc}
      */
     @Override
     public Record parse(final byte[] data) throws ParsingException {
-        // Attempt to parse the data as JSON to distinguish between the legacy
-        // format and the current JSON format
-        final JsonNode jsonNode;
-        try {
-            jsonNode = OBJECT_MAPPER.readTree(data);
-        } catch (final IOException ex) {
-            throw new ParsingException("Unsupported non-json format", data);
-        }
+        return parse(data, 0, data.length);
+    }
 
-        // If it's JSON extract the version and parse accordingly
-        final Optional<JsonNode> dataNode = Optional.ofNullable(jsonNode.get(DATA_KEY));
-        Optional<JsonNode> versionNode = Optional.ofNullable(jsonNode.get(VERSION_KEY));
-        if (dataNode.isPresent()) {
-            final Optional<JsonNode> dataVersionNode = Optional.ofNullable(dataNode.get().get(VERSION_KEY));
-            if (dataVersionNode.isPresent()) {
-                versionNode = dataVersionNode;
-            }
-        }
-        if (!versionNode.isPresent()) {
-            throw new ParsingException("Unable to determine version, version node not found", data);
-        }
-        final String version = versionNode.get().textValue().toLowerCase(Locale.getDefault());
-        try {
-            switch (version) {
-                case "2g":
-                    return parseV2gLogLine(jsonNode);
-                case "2f":
-                    if (dataNode.isPresent()) {
-                        return parseV2fStenoLogLine(jsonNode);
-                    } else {
-                        return parseV2fLogLine(jsonNode);
-                    }
-                case "2e":
-                    return parseV2eLogLine(jsonNode);
-                case "2d":
-                    return parseV2dLogLine(jsonNode);
-                case "2c":
-                    return parseV2cLogLine(jsonNode);
-                default:
-                    throw new ParsingException(String.format("Unsupported version; version=%s", version), data);
-            }
-        } catch (final JsonProcessingException | ConstraintsViolatedException e) {
-            throw new ParsingException("Error parsing record", data, e);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Record parse(final ByteBuffer data) throws ParsingException {
+        if (data.hasArray()) {
+            return parse(data.array(), data.arrayOffset() + data.position(), data.remaining());
         }
+        final byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return parse(bytes, 0, bytes.length);
     }
 
     // NOTE: Package private for testing
@@ -284,6 +258,324 @@ public final class JsonToRecordParser implements Parser<Record, byte[]> {
                 .build();
     }
 
+    // NOTE: Package private for testing
+    /* package private */ Optional<Record> parseV2gStream(final byte[] data, final int offset, final int length) {
+        // NOTE: The factory recycles the parser buffers and symbol tables per
+        // thread so creating a parser per record is inexpensive
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            boolean isVersion2g = false;
+            String id = null;
+            DateTime start = null;
+            DateTime end = null;
+            ImmutableMap<String, String> dimensions = null;
+            ImmutableMap<String, String> annotations = null;
+            ImmutableMap<String, Metric> timers = ImmutableMap.of();
+            ImmutableMap<String, Metric> counters = ImmutableMap.of();
+            ImmutableMap<String, Metric> gauges = ImmutableMap.of();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                switch (field) {
+                    case VERSION_KEY:
+                        // Other versions are identified as soon as the version is read
+                        if (token != JsonToken.VALUE_STRING || !VERSION_2G.equalsIgnoreCase(parser.getText())) {
+                            return Optional.empty();
+                        }
+                        isVersion2g = true;
+                        break;
+                    case DATA_KEY:
+                        return Optional.empty();
+                    case ID_KEY:
+                        id = readString(parser);
+                        break;
+                    case START_KEY:
+                        start = readDateTime(parser);
+                        break;
+                    case END_KEY:
+                        end = readDateTime(parser);
+                        break;
+                    case DIMENSIONS_KEY:
+                        dimensions = readStringMap(parser);
+                        break;
+                    case ANNOTATIONS_KEY:
+                        annotations = readStringMap(parser);
+                        break;
+                    case TIMERS_KEY:
+                        timers = readVariablesVersion2g(parser, MetricType.TIMER);
+                        break;
+                    case COUNTERS_KEY:
+                        counters = readVariablesVersion2g(parser, MetricType.COUNTER);
+                        break;
+                    case GAUGES_KEY:
+                        gauges = readVariablesVersion2g(parser, MetricType.GAUGE);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+            if (!isVersion2g || id == null || start == null || end == null
+                    || dimensions == null || annotations == null) {
+                return Optional.empty();
+            }
+
+            final ImmutableMap.Builder<String, Metric> variables = ImmutableMap.builder();
+            variables.putAll(timers);
+            variables.putAll(counters);
+            variables.putAll(gauges);
+
+            return Optional.of(
+                    new DefaultRecord.Builder()
+                            .setMetrics(variables.build())
+                            .setTime(end)
+                            .setId(id)
+                            .setAnnotations(annotations)
+                            .setDimensions(dimensions)
+                            .build());
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Record parse(final byte[] data, final int offset, final int length) throws ParsingException {
+        // The current format is parsed in a single streaming pass; anything
+        // the streaming parse does not accept is parsed from the tree below
+        // which also reports any errors
+        try {
+            final Optional<Record> record = parseV2gStream(data, offset, length);
+            if (record.isPresent()) {
+                return record.get();
+            }
+        } catch (final ConstraintsViolatedException e) {
+            throw new ParsingException("Error parsing record", copyOfRange(data, offset, length), e);
+        }
+
+        // Attempt to parse the data as JSON to distinguish between the legacy
+        // format and the current JSON format
+        final JsonNode jsonNode;
+        try {
+            jsonNode = OBJECT_MAPPER.readValue(data, offset, length, JsonNode.class);
+        } catch (final IOException ex) {
+            throw new ParsingException("Unsupported non-json format", copyOfRange(data, offset, length));
+        }
+
+        // If it's JSON extract the version and parse accordingly
+        final Optional<JsonNode> dataNode = Optional.ofNullable(jsonNode.get(DATA_KEY));
+        Optional<JsonNode> versionNode = Optional.ofNullable(jsonNode.get(VERSION_KEY));
+        if (dataNode.isPresent()) {
+            final Optional<JsonNode> dataVersionNode = Optional.ofNullable(dataNode.get().get(VERSION_KEY));
+            if (dataVersionNode.isPresent()) {
+                versionNode = dataVersionNode;
+            }
+        }
+        if (!versionNode.isPresent()) {
+            throw new ParsingException(
+                    "Unable to determine version, version node not found",
+                    copyOfRange(data, offset, length));
+        }
+        final String version = versionNode.get().textValue().toLowerCase(Locale.getDefault());
+        try {
+            switch (version) {
+                case "2g":
+                    return parseV2gLogLine(jsonNode);
+                case "2f":
+                    if (dataNode.isPresent()) {
+                        return parseV2fStenoLogLine(jsonNode);
+                    } else {
+                        return parseV2fLogLine(jsonNode);
+                    }
+                case "2e":
+                    return parseV2eLogLine(jsonNode);
+                case "2d":
+                    return parseV2dLogLine(jsonNode);
+                case "2c":
+                    return parseV2cLogLine(jsonNode);
+                default:
+                    throw new ParsingException(
+                            String.format("Unsupported version; version=%s", version),
+                            copyOfRange(data, offset, length));
+            }
+        } catch (final JsonProcessingException | ConstraintsViolatedException e) {
+            throw new ParsingException("Error parsing record", copyOfRange(data, offset, length), e);
+        }
+    }
+
+    private static byte[] copyOfRange(final byte[] data, final int offset, final int length) {
+        if (offset == 0 && length == data.length) {
+            return data;
+        }
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    private static ImmutableMap<String, Metric> readVariablesVersion2g(
+            final JsonParser parser,
+            final MetricType metricKind)
+            throws IOException {
+
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return ImmutableMap.of();
+        }
+        expectToken(parser, JsonToken.START_OBJECT);
+        final Map<String, Metric> variables = Maps.newLinkedHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            variables.put(
+                    name,
+                    new DefaultMetric.Builder()
+                            .setType(metricKind)
+                            .setValues(readElementVersion2g(parser))
+                            .build());
+        }
+        return ImmutableMap.copyOf(variables);
+    }
+
+    private static List<Quantity> readElementVersion2g(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.START_OBJECT);
+        List<Quantity> quantities = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if (VALUES_KEY.equals(field)) {
+                expectToken(parser, JsonToken.START_ARRAY);
+                quantities = Lists.newArrayList();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    final Quantity quantity = readSampleVersion2g(parser);
+                    if (quantity != null) {
+                        quantities.add(quantity);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (quantities == null) {
+            throw new JsonMappingException(parser, "Missing values");
+        }
+        return quantities;
+    }
+
+    @Nullable
+    private static Quantity readSampleVersion2g(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.START_OBJECT);
+        Double value = null;
+        CompositeUnit unit = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (VALUE_KEY.equals(field)) {
+                if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+                    throw new JsonMappingException(parser, "Expected numeric value");
+                }
+                value = parser.getDoubleValue();
+            } else if (UNIT_KEY.equals(field)) {
+                unit = token == JsonToken.VALUE_NULL ? null : readUnitVersion2g(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (value == null) {
+            throw new JsonMappingException(parser, "Missing value");
+        }
+        return version2gValueToQuantity(value, unit);
+    }
+
+    @Nullable
+    private static CompositeUnit readUnitVersion2g(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.START_OBJECT);
+        CompositeUnit numerator = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (NUMERATORS_KEY.equals(field) || DENOMINATORS_KEY.equals(field)) {
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                expectToken(parser, JsonToken.START_ARRAY);
+                // Denominators are validated but only the first numerator is used
+                CompositeUnit first = null;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    final CompositeUnit compositeUnit = readCompositeUnitVersion2g(parser);
+                    if (first == null) {
+                        first = compositeUnit;
+                    }
+                }
+                if (NUMERATORS_KEY.equals(field)) {
+                    numerator = first;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return numerator;
+    }
+
+    private static CompositeUnit readCompositeUnitVersion2g(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.START_OBJECT);
+        CompositeUnit.Type type = null;
+        CompositeUnit.Scale scale = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (TYPE_KEY.equals(field)) {
+                type = readEnum(parser, CompositeUnit.Type.class);
+            } else if (SCALE_KEY.equals(field)) {
+                scale = token == JsonToken.VALUE_NULL ? null : readEnum(parser, CompositeUnit.Scale.class);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            throw new JsonMappingException(parser, "Missing unit type");
+        }
+        return new CompositeUnit(scale, type);
+    }
+
+    private static <T extends Enum<T>> T readEnum(final JsonParser parser, final Class<T> clazz) throws IOException {
+        final String text = readString(parser);
+        try {
+            return Enum.valueOf(clazz, text.toUpperCase(Locale.getDefault()));
+        } catch (final IllegalArgumentException e) {
+            throw new JsonMappingException(parser, String.format("Unsupported value; value=%s", text), e);
+        }
+    }
+
+    private static ImmutableMap<String, String> readStringMap(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.START_OBJECT);
+        final Map<String, String> map = Maps.newLinkedHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String key = parser.getCurrentName();
+            parser.nextToken();
+            map.put(key, readString(parser));
+        }
+        return ImmutableMap.copyOf(map);
+    }
+
+    private static String readString(final JsonParser parser) throws IOException {
+        expectToken(parser, JsonToken.VALUE_STRING);
+        return parser.getText();
+    }
+
+    private static DateTime readDateTime(final JsonParser parser) throws IOException {
+        // Use the mapper's deserializer to accept the same representations
+        final DateTime value = OBJECT_MAPPER.readValue(parser, DateTime.class);
+        if (value == null) {
+            throw new JsonMappingException(parser, "Missing timestamp");
+        }
+        return value;
+    }
+
+    private static void expectToken(final JsonParser parser, final JsonToken expected) throws JsonMappingException {
+        if (parser.getCurrentToken() != expected) {
+            throw new JsonMappingException(
+                    parser,
+                    String.format("Unexpected token; expected=%s, actual=%s", expected, parser.getCurrentToken()));
+        }
+    }
+
     private static ImmutableMap<String, String> extractLegacyDimensions(final Map<String, String> annotations) {
 
         final ImmutableMap.Builder<String, String> defaultDimensions = ImmutableMap.builder();
@@ -532,6 +824,22 @@ public final class JsonToRecordParser implements Parser<Record, byte[]> {
     private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.createInstance();
     private static final String DATA_KEY = "data";
     private static final String VERSION_KEY = "version";
+    private static final String VERSION_2G = "2g";
+    private static final String ID_KEY = "id";
+    private static final String START_KEY = "start";
+    private static final String END_KEY = "end";
+    private static final String DIMENSIONS_KEY = "dimensions";
+    private static final String ANNOTATIONS_KEY = "annotations";
+    private static final String TIMERS_KEY = "timers";
+    private static final String COUNTERS_KEY = "counters";
+    private static final String GAUGES_KEY = "gauges";
+    private static final String VALUES_KEY = "values";
+    private static final String VALUE_KEY = "value";
+    private static final String UNIT_KEY = "unit";
+    private static final String NUMERATORS_KEY = "numerators";
+    private static final String DENOMINATORS_KEY = "denominators";
+    private static final String TYPE_KEY = "type";
+    private static final String SCALE_KEY = "scale";
     private static final String LOCAL_HOST_NAME;
     private static final Logger INVALID_SAMPLE_LOGGER = LoggerFactory.getRateLimitLogger(JsonToRecordParser.class, Duration.ofSeconds(30));
 
@@ -650,32 +958,36 @@ public final class JsonToRecordParser implements Parser<Record, byte[]> {
 
     private static Quantity version2gSampleToQuantity(final Version2g.Sample sample) {
         if (sample != null) {
-            if (Double.isFinite(sample.getValue())) {
-                final CompositeUnit sampleUnit = sample.getUnit2g() != null
-                        ? Iterables.getFirst(sample.getUnit2g().getNumerators(), null)
-                        : null;
-
-                return new Quantity.Builder()
-                        .setValue(sample.getValue())
-                        .setUnit(getLegacyUnit(sampleUnit))
-                        // TODO(vkoskela): Support compound units in Tsd Aggregator
-                        //.setNumerator(sampleNumerator)  // same as sampleUnit above
-                        //.setDenominator(sampleDenominator)
-                        .build();
-            } else {
-                // TODO(barp): Create a counter for invalid metrics
-                INVALID_SAMPLE_LOGGER
-                        .warn()
-                        .setMessage("Invalid sample for metric")
-                        .addData("value", sample.getValue())
-                        .log();
-                return null;
-            }
+            final CompositeUnit sampleUnit = sample.getUnit2g() != null
+                    ? Iterables.getFirst(sample.getUnit2g().getNumerators(), null)
+                    : null;
+            return version2gValueToQuantity(sample.getValue(), sampleUnit);
         } else {
             return null;
         }
     };
 
+    @Nullable
+    private static Quantity version2gValueToQuantity(final double value, @Nullable final CompositeUnit sampleUnit) {
+        if (Double.isFinite(value)) {
+            return new Quantity.Builder()
+                    .setValue(value)
+                    .setUnit(getLegacyUnit(sampleUnit))
+                    // TODO(vkoskela): Support compound units in Tsd Aggregator
+                    //.setNumerator(sampleNumerator)  // same as sampleUnit above
+                    //.setDenominator(sampleDenominator)
+                    .build();
+        } else {
+            // TODO(barp): Create a counter for invalid metrics
+            INVALID_SAMPLE_LOGGER
+                    .warn()
+                    .setMessage("Invalid sample for metric")
+                    .addData("value", value)
+                    .log();
+            return null;
+        }
+    }
+
     static {
         final SimpleModule queryLogParserModule = new SimpleModule("QueryLogParser");
         queryLogParserModule.addDeserializer(
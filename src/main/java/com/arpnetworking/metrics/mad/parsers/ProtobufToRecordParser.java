@@ -25,13 +25,16 @@ import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.tsdcore.model.MetricType;
 import com.arpnetworking.tsdcore.model.Quantity;
 import com.arpnetworking.tsdcore.model.Unit;
+import com.google.common.base.Enums;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.inscopemetrics.client.protocol.ClientV1;
 import net.sf.oval.exception.ConstraintsViolatedException;
 import org.joda.time.DateTime;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.UUID;
@@ -49,48 +52,68 @@ public class ProtobufToRecordParser implements Parser<List<Record>, HttpRequest>
     @Override
     public List<Record> parse(final HttpRequest data) throws ParsingException {
         try {
-            final ClientV1.RecordSet request = ClientV1.RecordSet.parseFrom(data.getBody());
-            final List<Record> records = Lists.newArrayList();
+            final CodedInputStream input = createInput(data);
+            final ClientV1.RecordSet request = ClientV1.RecordSet.parseFrom(input);
+            final List<Record> records = Lists.newArrayListWithExpectedSize(request.getRecordsCount());
+            final Quantity.Builder quantityBuilder = new Quantity.Builder();
             for (final ClientV1.Record record : request.getRecordsList()) {
-                final ByteBuffer byteBuffer = ByteBuffer.wrap(record.getId().toByteArray());
-                final Long high = byteBuffer.getLong();
-                final Long low = byteBuffer.getLong();
+                final ByteBuffer byteBuffer = record.getId().asReadOnlyByteBuffer();
+                final long high = byteBuffer.getLong();
+                final long low = byteBuffer.getLong();
                 final DefaultRecord.Builder builder = new DefaultRecord.Builder()
                         .setId(new UUID(high, low).toString())
                         .setTime(new DateTime(record.getEndMillisSinceEpoch()))
                         .setAnnotations(buildAnnotations(record))
                         .setDimensions(buildDimensions(record))
-                        .setMetrics(buildMetrics(record));
+                        .setMetrics(buildMetrics(record, quantityBuilder));
 
                 records.add(builder.build());
             }
             return records;
         } catch (final InvalidProtocolBufferException e) {
             throw new ParsingException("Could not create Request message from data", data.getBody(), e);
+        } catch (final IOException e) {
+            throw new ParsingException("Could not read Request message from data", data.getBody(), e);
         } catch (final ConstraintsViolatedException | IllegalArgumentException e) {
             throw new ParsingException("Could not build record", data.getBody(), e);
         }
     }
 
-    private ImmutableMap<String, ? extends Metric> buildMetrics(final ClientV1.Record record) {
+    private static CodedInputStream createInput(final HttpRequest data) {
+        final List<ByteBuffer> chunks = data.getBodyChunks();
+        if (chunks.size() == 1) {
+            // Bytes fields such as the record id alias a contiguous body instead of being copied
+            final CodedInputStream input = CodedInputStream.newInstance(chunks.get(0));
+            input.enableAliasing(true);
+            return input;
+        }
+        // Decode a chunked body as a stream rather than joining the chunks first
+        return CodedInputStream.newInstance(data.getBodyStream());
+    }
+
+    private ImmutableMap<String, ? extends Metric> buildMetrics(
+            final ClientV1.Record record,
+            final Quantity.Builder quantityBuilder) {
         final ImmutableMap.Builder<String, Metric> metrics = ImmutableMap.builder();
-        processEntries(metrics, record.getCountersList(), MetricType.COUNTER);
-        processEntries(metrics, record.getTimersList(), MetricType.TIMER);
-        processEntries(metrics, record.getGaugesList(), MetricType.GAUGE);
+        processEntries(metrics, record.getCountersList(), MetricType.COUNTER, quantityBuilder);
+        processEntries(metrics, record.getTimersList(), MetricType.TIMER, quantityBuilder);
+        processEntries(metrics, record.getGaugesList(), MetricType.GAUGE, quantityBuilder);
         return metrics.build();
     }
 
     private void processEntries(
             final ImmutableMap.Builder<String, Metric> metrics,
             final List<ClientV1.MetricEntry> entries,
-            final MetricType metricType) {
+            final MetricType metricType,
+            final Quantity.Builder quantityBuilder) {
         for (final ClientV1.MetricEntry metricEntry : entries) {
             final DefaultMetric.Builder metricBuilder = new DefaultMetric.Builder()
                     .setType(metricType);
             final List<Quantity> quantities = Lists.newArrayListWithExpectedSize(metricEntry.getSamplesCount());
             for (final ClientV1.DoubleQuantity quantity : metricEntry.getSamplesList()) {
+                // NOTE: The builder holds no state beyond the fields set here so it is reused
                 quantities.add(
-                        new Quantity.Builder()
+                        quantityBuilder
                                 .setUnit(baseUnit(quantity.getUnit()))
                                 .setValue(quantity.getValue())
                                 .build());
@@ -103,20 +126,19 @@ public class ProtobufToRecordParser implements Parser<List<Record>, HttpRequest>
 
     @Nullable
     private Unit baseUnit(final ClientV1.CompoundUnit compoundUnit) {
-        if (!compoundUnit.getNumeratorList().isEmpty()) {
+        if (compoundUnit.getNumeratorCount() > 0) {
             final ClientV1.Unit selectedUnit = compoundUnit.getNumerator(0);
             if (ClientV1.Unit.Type.UNRECOGNIZED.equals(selectedUnit.getType())) {
                 return null;
             }
-            final String unitName;
-            if (!ClientV1.Unit.Scale.UNIT.equals(selectedUnit.getScale())
-                    && !ClientV1.Unit.Scale.UNRECOGNIZED.equals(selectedUnit.getScale())) {
-                unitName = selectedUnit.getScale().name() + selectedUnit.getType().name();
-            } else {
-                unitName = selectedUnit.getType().name();
+            final Unit unit = UNITS[selectedUnit.getScale().ordinal()][selectedUnit.getType().ordinal()];
+            if (unit == null) {
+                throw new IllegalArgumentException(String.format(
+                        "Unsupported unit; scale=%s, type=%s",
+                        selectedUnit.getScale(),
+                        selectedUnit.getType()));
             }
-
-            return Unit.valueOf(unitName);
+            return unit;
         }
         return null;
     }
@@ -136,4 +158,29 @@ public class ProtobufToRecordParser implements Parser<List<Record>, HttpRequest>
         }
         return dimensions.build();
     }
+
+    // Units by protocol scale and type ordinal; null where the combination is not a unit
+    private static final Unit[][] UNITS;
+
+    static {
+        final ClientV1.Unit.Scale[] scales = ClientV1.Unit.Scale.values();
+        final ClientV1.Unit.Type[] types = ClientV1.Unit.Type.values();
+        UNITS = new Unit[scales.length][types.length];
+        for (final ClientV1.Unit.Scale scale : scales) {
+            for (final ClientV1.Unit.Type type : types) {
+                if (ClientV1.Unit.Type.UNRECOGNIZED.equals(type)) {
+                    continue;
+                }
+                final String unitName;
+                if (!ClientV1.Unit.Scale.UNIT.equals(scale)
+                        && !ClientV1.Unit.Scale.UNRECOGNIZED.equals(scale)) {
+                    unitName = scale.name() + type.name();
+                } else {
+                    unitName = type.name();
+                }
+                // NOTE: Some scales do not apply to some types (e.g. kilo-seconds)
+                UNITS[scale.ordinal()][type.ordinal()] = Enums.getIfPresent(Unit.class, unitName).orNull();
+            }
+        }
+    }
 }
@@ -30,6 +30,7 @@ import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.arpnetworking.tsdcore.model.MetricType;
 import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.utility.Backlogged;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -108,7 +109,7 @@ public final class MappingSource extends BaseSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(MappingSource.class);
 
     // NOTE: Package private for testing
-    /* package private */ static final class MappingObserver implements Observer {
+    /* package private */ static final class MappingObserver implements Observer, Backlogged {
 
         /* package private */ MappingObserver(final MappingSource source, final Map<Pattern, List<String>> findAndReplace) {
             _source = source;
@@ -117,16 +118,31 @@ public final class MappingSource extends BaseSource {
 
         @Override
         public void notify(final Observable observable, final Object event) {
-            if (!(event instanceof Record)) {
-                LOGGER.error()
-                        .setMessage("Observed unsupported event")
-                        .addData("event", event)
-                        .log();
-                return;
+            if (event instanceof Record) {
+                _source.notify(map((Record) event));
+            } else if (event instanceof List) {
+                final List<Record> mappedRecords = Lists.newArrayListWithCapacity(((List<?>) event).size());
+                for (final Object element : (List<?>) event) {
+                    if (element instanceof Record) {
+                        mappedRecords.add(map((Record) element));
+                    } else {
+                        logUnsupportedEvent(element);
+                    }
+                }
+                _source.notify(mappedRecords);
+            } else {
+                logUnsupportedEvent(event);
             }
+        }
 
+        @Override
+        public long getBacklog() {
+            // Mapping is synchronous so the backlog is that of the observers of the mapping source
+            return _source.getBacklog();
+        }
+
+        private Record map(final Record record) {
             // Merge the metrics in the record together
-            final Record record = (Record) event;
             final Map<String, MergingMetric> mergedMetrics = Maps.newHashMap();
             for (final Map.Entry<String, ? extends Metric> metric : record.getMetrics().entrySet()) {
                 boolean found = false;
@@ -145,24 +161,29 @@ public final class MappingSource extends BaseSource {
                 }
             }
 
-            // Raise the merged record event with this source's observers
             // NOTE: Do not leak instances of MergingMetric since it is mutable
-            _source.notify(
-                    new DefaultRecord.Builder()
-                            .setMetrics(
-                                    ImmutableMap.copyOf(
-                                            Maps.transformEntries(
-                                                    mergedMetrics,
-                                                    (key, mergingMetric) ->
-                                                            OvalBuilder.clone(
-                                                                    mergingMetric,
-                                                                    new DefaultMetric.Builder())
-                                                            .build())))
-                            .setId(record.getId())
-                            .setTime(record.getTime())
-                            .setAnnotations(record.getAnnotations())
-                            .setDimensions(record.getDimensions())
-                            .build());
+            return new DefaultRecord.Builder()
+                    .setMetrics(
+                            ImmutableMap.copyOf(
+                                    Maps.transformEntries(
+                                            mergedMetrics,
+                                            (key, mergingMetric) ->
+                                                    OvalBuilder.clone(
+                                                            mergingMetric,
+                                                            new DefaultMetric.Builder())
+                                                    .build())))
+                    .setId(record.getId())
+                    .setTime(record.getTime())
+                    .setAnnotations(record.getAnnotations())
+                    .setDimensions(record.getDimensions())
+                    .build();
+        }
+
+        private void logUnsupportedEvent(final Object event) {
+            LOGGER.error()
+                    .setMessage("Observed unsupported event")
+                    .addData("event", event)
+                    .log();
         }
 
         private void merge(final Metric metric, final String key, final Map<String, MergingMetric> mergedMetrics) {
@@ -42,7 +42,19 @@ public final class AggregationMessage {
      * @return <code>Buffer</code> containing serialized message.
      */
     public Buffer serialize() {
-        final Buffer b = new Buffer();
+        final Buffer b = new Buffer(getLength());
+        serialize(b);
+        return b;
+    }
+
+    /**
+     * Serialize the message to the end of a <code>Buffer</code>. Messages
+     * are length prefixed so several may be written to the same buffer.
+     *
+     * @param b The <code>Buffer</code> to append the serialized message to.
+     */
+    public void serialize(final Buffer b) {
+        final int start = b.length();
         b.appendInt(0);
         if (_message instanceof Messages.HostIdentification) {
             b.appendByte((byte) 0x01);
@@ -60,8 +72,7 @@ public final class AggregationMessage {
             throw new IllegalArgumentException(String.format("Unsupported message; message=%s", _message));
         }
         b.appendBytes(_message.toByteArray());
-        b.setInt(0, b.length());
-        return b;
+        b.setInt(start, b.length() - start);
     }
 
     public GeneratedMessage getMessage() {
@@ -22,7 +22,8 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Objects;
 
 /**
- * Default implementation of the <code>Key</code> interface.
+ * Default implementation of the <code>Key</code> interface. Instances for
+ * the same dimensions may be shared using <code>KeyRegistry</code>.
  *
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
  */
@@ -75,7 +76,8 @@ public final class DefaultKey implements Key {
         }
 
         final DefaultKey otherKey = (DefaultKey) other;
-        return Objects.equals(getParameters(), otherKey.getParameters());
+        return _hashCode == otherKey._hashCode
+                && Objects.equals(getParameters(), otherKey.getParameters());
     }
 
     /**
@@ -83,7 +85,7 @@ public final class DefaultKey implements Key {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(_dimensions);
+        return _hashCode;
     }
 
     /**
@@ -103,7 +105,11 @@ public final class DefaultKey implements Key {
      */
     public DefaultKey(final ImmutableMap<String, String> dimensions) {
         _dimensions = dimensions;
+        _hashCode = Objects.hash(_dimensions);
     }
 
     private final ImmutableMap<String, String> _dimensions;
+    // NOTE: Keys are looked up in hash maps for every record so the hash is
+    // computed once since the dimensions are immutable
+    private final int _hashCode;
 }
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.model;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.joda.time.Period;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of canonical <code>Key</code> instances by dimensions. Each
+ * distinct set of dimensions maps to a single <code>Key</code> whose
+ * dimension names and values are interned, so that keys for the same
+ * dimensions compare by identity and share their strings. Keys which are
+ * not looked up within the expiration are evicted, as are the least
+ * recently used keys once the maximum size is reached. An evicted key
+ * remains valid and equal to its replacement.
+ *
+ * Keys are registered by a fingerprint of the dimension names and values in
+ * iteration order computed from their cached string hash codes, so a lookup
+ * neither hashes nor compares the dimensions as a map. The few dimension
+ * sets whose fingerprint is already taken by different dimensions are
+ * registered by their dimensions instead. Equal dimensions supplied in a
+ * different order map to equal but distinct keys.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class KeyRegistry {
+
+    /**
+     * Lookup the canonical <code>Key</code> for the dimensions.
+     *
+     * @param dimensions The dimension key-value pairs.
+     * @return The canonical <code>Key</code>.
+     */
+    public Key intern(final ImmutableMap<String, String> dimensions) {
+        final Long fingerprint = fingerprint(dimensions);
+        final Key existingKey = _keys.getIfPresent(fingerprint);
+        if (existingKey != null) {
+            return matches(existingKey, dimensions) ? existingKey : internCollision(dimensions);
+        }
+
+        final Key key = createKey(dimensions);
+        final Key previousKey = _keys.asMap().putIfAbsent(fingerprint, key);
+        if (previousKey == null) {
+            return key;
+        }
+        return matches(previousKey, dimensions) ? previousKey : internCollision(dimensions);
+    }
+
+    /**
+     * The number of keys currently registered.
+     *
+     * @return The number of live keys.
+     */
+    public long size() {
+        return _keys.size() + _collisions.size();
+    }
+
+    /**
+     * The lookup statistics of this registry by fingerprint.
+     *
+     * @return The <code>CacheStats</code>.
+     */
+    public CacheStats stats() {
+        return _keys.stats();
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("size", _keys.size())
+                .put("collisions", _collisions.size())
+                .put("maximumSize", _maximumSize)
+                .put("expiration", _expiration)
+                .put("stats", _keys.stats())
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private Key internCollision(final ImmutableMap<String, String> dimensions) {
+        final Key existingKey = _collisions.getIfPresent(dimensions);
+        if (existingKey != null) {
+            return existingKey;
+        }
+        final Key key = createKey(dimensions);
+        final Key previousKey = _collisions.asMap().putIfAbsent(key.getParameters(), key);
+        return previousKey == null ? key : previousKey;
+    }
+
+    private static Key createKey(final ImmutableMap<String, String> dimensions) {
+        // Register the key under its canonical dimensions so the registry
+        // does not retain the caller's strings
+        final ImmutableMap.Builder<String, String> canonicalDimensions = ImmutableMap.builder();
+        for (final Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            canonicalDimensions.put(STRINGS.intern(dimension.getKey()), STRINGS.intern(dimension.getValue()));
+        }
+        return new DefaultKey(canonicalDimensions.build());
+    }
+
+    private static long fingerprint(final ImmutableMap<String, String> dimensions) {
+        long fingerprint = dimensions.size();
+        for (final Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            fingerprint = fingerprint * FINGERPRINT_MULTIPLIER + dimension.getKey().hashCode();
+            fingerprint = fingerprint * FINGERPRINT_MULTIPLIER + dimension.getValue().hashCode();
+        }
+        return fingerprint;
+    }
+
+    private static boolean matches(final Key key, final ImmutableMap<String, String> dimensions) {
+        final ImmutableMap<String, String> parameters = key.getParameters();
+        if (parameters.size() != dimensions.size()) {
+            return false;
+        }
+        // The canonical dimensions retain the iteration order of the
+        // dimensions they were registered for
+        final Iterator<Map.Entry<String, String>> iterator = parameters.entrySet().iterator();
+        for (final Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            final Map.Entry<String, String> parameter = iterator.next();
+            if (!parameter.getKey().equals(dimension.getKey()) || !parameter.getValue().equals(dimension.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private KeyRegistry(final Builder builder) {
+        _maximumSize = builder._maximumSize;
+        _expiration = builder._expiration;
+        _keys = CacheBuilder.newBuilder()
+                .maximumSize(_maximumSize)
+                .expireAfterAccess(_expiration.toStandardDuration().getMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        _collisions = CacheBuilder.newBuilder()
+                .maximumSize(_maximumSize)
+                .expireAfterAccess(_expiration.toStandardDuration().getMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private final long _maximumSize;
+    private final Period _expiration;
+    private final Cache<Long, Key> _keys;
+    private final Cache<ImmutableMap<String, String>, Key> _collisions;
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final long FINGERPRINT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * <code>Builder</code> implementation for <code>KeyRegistry</code>.
+     */
+    public static final class Builder extends OvalBuilder<KeyRegistry> {
+
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KeyRegistry::new);
+        }
+
+        /**
+         * The maximum number of registered keys. Optional. Cannot be null.
+         * Must be at least one. Default is 100,000.
+         *
+         * @param value The maximum number of registered keys.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setMaximumSize(final Long value) {
+            _maximumSize = value;
+            return this;
+        }
+
+        /**
+         * The time after last lookup that a key is evicted. Optional. Cannot
+         * be null. Default is one hour.
+         *
+         * @param value The key expiration.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setExpiration(final Period value) {
+            _expiration = value;
+            return this;
+        }
+
+        @NotNull
+        @Min(1)
+        private Long _maximumSize = 100000L;
+        @NotNull
+        private Period _expiration = Period.hours(1);
+    }
+}
@@ -48,6 +48,10 @@ public final class PeriodicData {
         return _data;
     }
 
+    public boolean isLate() {
+        return _isLate;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -65,7 +69,8 @@ public final class PeriodicData {
         return Objects.equal(_data, other._data)
                 && Objects.equal(_dimensions, other._dimensions)
                 && Objects.equal(_period, other._period)
-                && Objects.equal(_start, other._start);
+                && Objects.equal(_start, other._start)
+                && _isLate == other._isLate;
     }
 
     /**
@@ -77,7 +82,8 @@ public final class PeriodicData {
                 _data,
                 _dimensions,
                 _period,
-                _start);
+                _start,
+                _isLate);
     }
 
     /**
@@ -91,6 +97,7 @@ public final class PeriodicData {
                 .add("Start", _start)
                 .add("Dimensions", _dimensions)
                 .add("Data", _data)
+                .add("IsLate", _isLate)
                 .toString();
     }
 
@@ -99,12 +106,14 @@ public final class PeriodicData {
         _start = builder._start;
         _dimensions = builder._dimensions;
         _data = builder._data;
+        _isLate = builder._isLate;
     }
 
     private final Period _period;
     private final DateTime _start;
     private final Key _dimensions;
     private final ImmutableMultimap<String, AggregatedData> _data;
+    private final boolean _isLate;
 
     /**
      * <code>Builder</code> implementation for <code>PeriodicData</code>.
@@ -162,6 +171,20 @@ public final class PeriodicData {
             return this;
         }
 
+        /**
+         * Set whether the data was aggregated from samples received after the
+         * period was closed. Late data is a correction to be combined with,
+         * rather than replace, data previously published for the same period
+         * and dimensions. Optional. Cannot be null. Defaults to false.
+         *
+         * @param value Whether the data is late.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setIsLate(final Boolean value) {
+            _isLate = value;
+            return this;
+        }
+
         @NotNull
         private Period _period;
         @NotNull
@@ -170,5 +193,7 @@ public final class PeriodicData {
         private Key _dimensions;
         @NotNull
         private ImmutableMultimap<String, AggregatedData> _data = ImmutableMultimap.of();
+        @NotNull
+        private Boolean _isLate = false;
     }
 }
@@ -15,7 +15,9 @@
  */
 package com.arpnetworking.tsdcore.sinks;
 
+import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.metrics.aggregation.protocol.Messages;
+import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.arpnetworking.tsdcore.model.AggregatedData;
@@ -24,14 +26,23 @@ import com.arpnetworking.tsdcore.model.PeriodicData;
 import com.arpnetworking.tsdcore.statistics.HistogramStatistic;
 import com.arpnetworking.tsdcore.statistics.Statistic;
 import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
 import org.joda.time.DateTime;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Publisher to send data to an upstream aggregation server.
@@ -49,72 +60,113 @@ public final class AggregationServerSink extends VertxSink {
                 .addData("sink", getName())
                 .addData("dataSize", periodicData.getData().size())
                 .log();
-        
-        for (final Map.Entry<String, Collection<AggregatedData>> entry : periodicData.getData().asMap().entrySet()) {
-            final String metricName = entry.getKey();
-            final Collection<AggregatedData> data = entry.getValue();
-            if (!data.isEmpty()) {
-                final Messages.StatisticSetRecord record = serializeMetricData(periodicData, metricName, data);
-                enqueueData(AggregationMessage.create(record).serialize());
-            }
+
+        final List<Buffer> batches = serialize(periodicData, _maxBatchBytes, _batchSizeHistogram);
+        if (!batches.isEmpty()) {
+            enqueueData(batches, periodicData.getDimensions());
         }
     }
 
-    private Messages.StatisticSetRecord serializeMetricData(
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    @Override
+    public Object toLogValue() {
+        final Map<String, Long> batchSizeHistogram = Maps.newLinkedHashMap();
+        for (int i = 0; i < _batchSizeHistogram.length(); ++i) {
+            batchSizeHistogram.put(String.valueOf(1 << i), _batchSizeHistogram.get(i));
+        }
+        return LogValueMapFactory.builder(this)
+                .put("super", super.toLogValue())
+                .put("maxBatchBytes", _maxBatchBytes)
+                .put("batchSizeHistogram", batchSizeHistogram)
+                .build();
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ static List<Buffer> serialize(
             final PeriodicData periodicData,
-            final String metricName,
-            final Collection<AggregatedData> data) {
+            final int maxBatchBytes,
+            final AtomicLongArray batchSizeHistogram) {
+        // The fields shared by every metric are serialized once
+        final ByteString header = serializeHeader(periodicData);
+        final List<StatisticSetRecordWriter> records = Lists.newArrayListWithExpectedSize(
+                periodicData.getData().keySet().size());
+        for (final Map.Entry<String, Collection<AggregatedData>> entry : periodicData.getData().asMap().entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                records.add(new StatisticSetRecordWriter(header, entry.getKey(), entry.getValue()));
+            }
+        }
 
-        // Map all dimensions
-        final List<Messages.DimensionEntry> dimensions = Lists.newArrayList();
-        for (final Map.Entry<String, String> entry : periodicData.getDimensions().getParameters().entrySet()) {
-            dimensions.add(
-                    Messages.DimensionEntry.newBuilder()
-                            .setKey(entry.getKey())
-                            .setValue(entry.getValue())
-                            .build()
-            );
+        // Pack the length prefixed messages into batches
+        final List<Buffer> batches = Lists.newArrayList();
+        int batchStart = 0;
+        int batchBytes = 0;
+        for (int i = 0; i < records.size(); ++i) {
+            final int length = records.get(i).getLength();
+            if (i > batchStart && batchBytes + length > maxBatchBytes) {
+                batches.add(writeBatch(records.subList(batchStart, i), batchBytes, batchSizeHistogram));
+                batchStart = i;
+                batchBytes = 0;
+            }
+            batchBytes += length;
+        }
+        if (batchStart < records.size()) {
+            batches.add(writeBatch(records.subList(batchStart, records.size()), batchBytes, batchSizeHistogram));
         }
+        return batches;
+    }
 
-        // Create a statistic record set
+    private static ByteString serializeHeader(final PeriodicData periodicData) {
+        // A message without the metric and statistics; fields may be concatenated
         final Messages.StatisticSetRecord.Builder builder = Messages.StatisticSetRecord.newBuilder()
-                .setMetric(metricName)
                 .setPeriod(periodicData.getPeriod().toString())
                 .setPeriodStart(periodicData.getStart().toString())
-                .addAllDimensions(dimensions)
                 .setCluster(periodicData.getDimensions().getCluster())
                 .setService(periodicData.getDimensions().getService());
+        for (final Map.Entry<String, String> entry : periodicData.getDimensions().getParameters().entrySet()) {
+            builder.addDimensionsBuilder()
+                    .setKey(entry.getKey())
+                    .setValue(entry.getValue());
+        }
+        final ByteString header = builder.build().toByteString();
+        return periodicData.isLate() ? header.concat(LATE_FIELD) : header;
+    }
 
-        for (final AggregatedData datum : data) {
-            if (EXPRESSION_STATISTIC.equals(datum.getStatistic())) {
-                continue;
-            }
-
-            final String unit;
-            if (datum.getValue().getUnit().isPresent()) {
-                // TODO(ville): The protocol needs to support compound units.
-                unit = datum.getValue().getUnit().get().toString();
-            } else {
-                unit = "";
-            }
-
-            final Messages.StatisticRecord.Builder entryBuilder = builder.addStatisticsBuilder()
-                    .setStatistic(datum.getStatistic().getName())
-                    .setValue(datum.getValue().getValue())
-                    .setUnit(unit)
-                    .setUserSpecified(datum.isSpecified());
+    private static ByteString serializeLateField() {
+        final byte[] bytes = new byte[CodedOutputStream.computeBoolSize(LATE_FIELD_NUMBER, true)];
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            output.writeBool(LATE_FIELD_NUMBER, true);
+            output.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return ByteString.copyFrom(bytes);
+    }
 
-            final ByteString supportingData = serializeSupportingData(datum);
-            if (supportingData != null) {
-                entryBuilder.setSupportingData(supportingData);
+    private static Buffer writeBatch(
+            final List<StatisticSetRecordWriter> records,
+            final int length,
+            final AtomicLongArray batchSizeHistogram) {
+        final byte[] bytes = new byte[length];
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            for (final StatisticSetRecordWriter record : records) {
+                record.writeTo(output);
             }
-            entryBuilder.build();
+            output.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            throw Throwables.propagate(e);
         }
-
-        return builder.build();
+        recordBatchSize(batchSizeHistogram, records.size());
+        return new Buffer(bytes);
     }
 
-    private ByteString serializeSupportingData(final AggregatedData datum) {
+    private static ByteString serializeSupportingData(final AggregatedData datum) {
         final Object data = datum.getSupportingData();
         final ByteString byteString;
         if (data instanceof HistogramStatistic.HistogramSupportingData) {
@@ -130,10 +182,10 @@ public final class AggregationServerSink extends VertxSink {
             }
             builder.setUnit(unit);
 
-            for (final Map.Entry<Double, Integer> entry : histogram.getValues()) {
+            for (int i = 0; i < histogram.getBucketsCount(); ++i) {
                 builder.addEntriesBuilder()
-                        .setBucket(entry.getKey())
-                        .setCount(entry.getValue())
+                        .setBucket(histogram.getBucketValue(i))
+                        .setCount(histogram.getBucketEntriesCount(i))
                         .build();
             }
             byteString = ByteString.copyFrom(AggregationMessage.create(builder.build()).serialize().getBytes());
@@ -143,6 +195,12 @@ public final class AggregationServerSink extends VertxSink {
         return byteString;
     }
 
+    private static void recordBatchSize(final AtomicLongArray batchSizeHistogram, final int records) {
+        // Buckets count batches by the power of two at or below their number of records
+        final int bucket = Math.min(31 - Integer.numberOfLeadingZeros(records), batchSizeHistogram.length() - 1);
+        batchSizeHistogram.incrementAndGet(bucket);
+    }
+
     private void heartbeat() {
 
         final Messages.HeartbeatRecord message = Messages.HeartbeatRecord.newBuilder()
@@ -157,6 +215,7 @@ public final class AggregationServerSink extends VertxSink {
 
     private AggregationServerSink(final Builder builder) {
         super(builder);
+        _maxBatchBytes = builder._maxBatchBytes;
         super.getVertx().setPeriodic(15000, new Handler<Long>() {
             @Override
             public void handle(final Long event) {
@@ -169,10 +228,122 @@ public final class AggregationServerSink extends VertxSink {
         });
     }
 
+    private final int _maxBatchBytes;
+    private final AtomicLongArray _batchSizeHistogram = new AtomicLongArray(BATCH_SIZE_HISTOGRAM_BUCKETS);
+
+    private static final int BATCH_SIZE_HISTOGRAM_BUCKETS = 16;
+    private static final int FRAME_HEADER_SIZE = Integer.SIZE / 8 + 1;
+    private static final byte STATISTIC_SET_RECORD_TYPE = 0x04;
+    // NOTE: The protocol does not define a late flag yet so it is written as
+    // a field of its own which aggregators that do not know it skip; false is
+    // the default and is not written.
+    // NOTE: Package private for testing
+    /* package private */ static final int LATE_FIELD_NUMBER = 100;
+    private static final ByteString LATE_FIELD = serializeLateField();
     private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
     private static final Statistic EXPRESSION_STATISTIC = STATISTIC_FACTORY.getStatistic("expression");
     private static final Logger LOGGER = LoggerFactory.getLogger(AggregationServerSink.class);
 
+    /**
+     * Writes the framed <code>StatisticSetRecord</code> of one metric from a
+     * shared serialized header without building the message.
+     */
+    private static final class StatisticSetRecordWriter {
+
+        public int getLength() {
+            return FRAME_HEADER_SIZE + _size;
+        }
+
+        public void writeTo(final CodedOutputStream output) throws IOException {
+            // Frame length and type as written by AggregationMessage
+            final int length = getLength();
+            output.writeRawByte((byte) (length >>> 24));
+            output.writeRawByte((byte) (length >>> 16));
+            output.writeRawByte((byte) (length >>> 8));
+            output.writeRawByte((byte) length);
+            output.writeRawByte(STATISTIC_SET_RECORD_TYPE);
+
+            output.writeRawBytes(_header);
+            output.writeString(Messages.StatisticSetRecord.METRIC_FIELD_NUMBER, _metricName);
+            for (int i = 0; i < _statistics.size(); ++i) {
+                final AggregatedData datum = _statistics.get(i);
+                output.writeTag(
+                        Messages.StatisticSetRecord.STATISTICS_FIELD_NUMBER,
+                        WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(_statisticSizes[i]);
+                output.writeString(Messages.StatisticRecord.STATISTIC_FIELD_NUMBER, datum.getStatistic().getName());
+                output.writeDouble(Messages.StatisticRecord.VALUE_FIELD_NUMBER, datum.getValue().getValue());
+                output.writeString(Messages.StatisticRecord.UNIT_FIELD_NUMBER, _units.get(i));
+                output.writeBool(Messages.StatisticRecord.USER_SPECIFIED_FIELD_NUMBER, datum.isSpecified());
+                final ByteString supportingData = _supportingData.get(i);
+                if (supportingData != null) {
+                    output.writeBytes(Messages.StatisticRecord.SUPPORTING_DATA_FIELD_NUMBER, supportingData);
+                }
+            }
+        }
+
+        private StatisticSetRecordWriter(
+                final ByteString header,
+                final String metricName,
+                final Collection<AggregatedData> data) {
+            _header = header;
+            _metricName = metricName;
+            _statistics = Lists.newArrayListWithExpectedSize(data.size());
+            _units = Lists.newArrayListWithExpectedSize(data.size());
+            _supportingData = Lists.newArrayListWithExpectedSize(data.size());
+            for (final AggregatedData datum : data) {
+                if (EXPRESSION_STATISTIC.equals(datum.getStatistic())) {
+                    continue;
+                }
+                _statistics.add(datum);
+                if (datum.getValue().getUnit().isPresent()) {
+                    // TODO(ville): The protocol needs to support compound units.
+                    _units.add(datum.getValue().getUnit().get().toString());
+                } else {
+                    _units.add("");
+                }
+                _supportingData.add(serializeSupportingData(datum));
+            }
+
+            // Size the record so it can be written directly to its batch
+            _statisticSizes = new int[_statistics.size()];
+            int size = header.size()
+                    + CodedOutputStream.computeStringSize(Messages.StatisticSetRecord.METRIC_FIELD_NUMBER, metricName);
+            for (int i = 0; i < _statistics.size(); ++i) {
+                final AggregatedData datum = _statistics.get(i);
+                int statisticSize = CodedOutputStream.computeStringSize(
+                        Messages.StatisticRecord.STATISTIC_FIELD_NUMBER,
+                        datum.getStatistic().getName())
+                        + CodedOutputStream.computeDoubleSize(
+                                Messages.StatisticRecord.VALUE_FIELD_NUMBER,
+                                datum.getValue().getValue())
+                        + CodedOutputStream.computeStringSize(Messages.StatisticRecord.UNIT_FIELD_NUMBER, _units.get(i))
+                        + CodedOutputStream.computeBoolSize(
+                                Messages.StatisticRecord.USER_SPECIFIED_FIELD_NUMBER,
+                                datum.isSpecified());
+                final ByteString supportingData = _supportingData.get(i);
+                if (supportingData != null) {
+                    statisticSize += CodedOutputStream.computeBytesSize(
+                            Messages.StatisticRecord.SUPPORTING_DATA_FIELD_NUMBER,
+                            supportingData);
+                }
+                _statisticSizes[i] = statisticSize;
+                size += CodedOutputStream.computeTagSize(Messages.StatisticSetRecord.STATISTICS_FIELD_NUMBER)
+                        + CodedOutputStream.computeUInt32SizeNoTag(statisticSize)
+                        + statisticSize;
+            }
+            _size = size;
+        }
+
+        private final ByteString _header;
+        private final String _metricName;
+        private final List<AggregatedData> _statistics;
+        private final List<String> _units;
+        private final List<ByteString> _supportingData;
+        private final int[] _statisticSizes;
+        private final int _size;
+    }
+
     /**
      * Implementation of builder pattern for <code>AggreationServerSink</code>.
      *
@@ -188,6 +359,19 @@ public final class AggregationServerSink extends VertxSink {
             setServerPort(7065);
         }
 
+        /**
+         * The maximum size in bytes of a batch of messages queued and written
+         * to the server together. A message larger than this is sent in a
+         * batch of its own. Optional. Cannot be null. Default is 64 KiB.
+         *
+         * @param value The maximum size of a batch in bytes.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setMaxBatchBytes(final Integer value) {
+            _maxBatchBytes = value;
+            return this;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -195,5 +379,9 @@ public final class AggregationServerSink extends VertxSink {
         protected Builder self() {
             return this;
         }
+
+        @NotNull
+        @Min(1)
+        private Integer _maxBatchBytes = 64 * 1024;
     }
 }
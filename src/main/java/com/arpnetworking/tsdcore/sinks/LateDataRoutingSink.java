@@ -0,0 +1,127 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.sinks;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.tsdcore.model.PeriodicData;
+import net.sf.oval.constraint.NotNull;
+
+/**
+ * A publisher that forwards on time data to one sink and late data to
+ * another. Late data is a correction to data already published for the same
+ * period and dimensions, which sinks that cannot combine it with that data
+ * would overwrite or double count. This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class LateDataRoutingSink extends BaseSink {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordAggregateData(final PeriodicData periodicData) {
+        if (periodicData.isLate()) {
+            _lateDataSink.recordAggregateData(periodicData);
+        } else {
+            _sink.recordAggregateData(periodicData);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        _sink.close();
+        _lateDataSink.close();
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    @Override
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("super", super.toLogValue())
+                .put("sink", _sink)
+                .put("lateDataSink", _lateDataSink)
+                .build();
+    }
+
+    private LateDataRoutingSink(final Builder builder) {
+        super(builder);
+        _sink = builder._sink;
+        _lateDataSink = builder._lateDataSink;
+    }
+
+    private final Sink _sink;
+    private final Sink _lateDataSink;
+
+    /**
+     * Implementation of builder pattern for <code>LateDataRoutingSink</code>.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    public static final class Builder extends BaseSink.Builder<Builder, LateDataRoutingSink> {
+
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(LateDataRoutingSink::new);
+        }
+
+        /**
+         * The sink for on time data. Cannot be null.
+         *
+         * @param value The sink for on time data.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setSink(final Sink value) {
+            _sink = value;
+            return this;
+        }
+
+        /**
+         * The sink for late data. Cannot be null.
+         *
+         * @param value The sink for late data.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setLateDataSink(final Sink value) {
+            _lateDataSink = value;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @NotNull
+        private Sink _sink;
+        @NotNull
+        private Sink _lateDataSink;
+    }
+}
@@ -21,15 +21,26 @@ import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.arpnetworking.tsdcore.model.PeriodicData;
 import com.google.common.collect.Lists;
+import net.sf.oval.constraint.Min;
 import net.sf.oval.constraint.NotNull;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A publisher that wraps multiple others and publishes to all of them. This
- * class is thread safe.
- *
- * TODO(vkoskela): Support concurrent execution [MAI-98]
+ * A publisher that wraps multiple others and publishes to all of them. By
+ * default each wrapped sink is invoked in turn on the calling thread. With a
+ * queue size each wrapped sink instead has its own bounded queue drained by
+ * its own thread, so a slow sink does not delay the caller or other sinks.
+ * When a queue is full the caller either waits or the data is dropped for
+ * that sink depending on the overflow policy. This class is thread safe.
  *
  * @author Brandon Arp (brandonarp at gmail dot com)
  */
@@ -46,8 +57,14 @@ public final class MultiSink extends BaseSink {
                 .addData("dataSize", periodicData.getData().size())
                 .log();
 
-        for (final Sink sink : _sinks) {
-            sink.recordAggregateData(periodicData);
+        if (_queues.isEmpty()) {
+            for (final Sink sink : _sinks) {
+                sink.recordAggregateData(periodicData);
+            }
+        } else {
+            for (final SinkQueue queue : _queues) {
+                queue.offer(periodicData);
+            }
         }
     }
 
@@ -60,6 +77,13 @@ public final class MultiSink extends BaseSink {
                 .setMessage("Closing sink")
                 .addData("sink", getName())
                 .log();
+        // Stop all queues before waiting for any of them to drain
+        for (final SinkQueue queue : _queues) {
+            queue.stop();
+        }
+        for (final SinkQueue queue : _queues) {
+            queue.awaitDrained();
+        }
         for (final Sink sink : _sinks) {
             sink.close();
         }
@@ -76,18 +100,201 @@ public final class MultiSink extends BaseSink {
         return LogValueMapFactory.builder(this)
                 .put("super", super.toLogValue())
                 .put("sinks", _sinks)
+                .put("queueSize", _queueSize)
+                .put("overflowPolicy", _overflowPolicy)
+                .put("queues", _queues)
                 .build();
     }
 
     private MultiSink(final Builder builder) {
         super(builder);
         _sinks = builder._sinks;
+        _queueSize = builder._queueSize;
+        _overflowPolicy = builder._overflowPolicy;
+        if (_queueSize > 0) {
+            final List<SinkQueue> queues = Lists.newArrayListWithExpectedSize(_sinks.size());
+            int index = 0;
+            for (final Sink sink : _sinks) {
+                queues.add(new SinkQueue(getName() + "-" + index++, sink, _queueSize, _overflowPolicy));
+            }
+            _queues = Collections.unmodifiableList(queues);
+        } else {
+            _queues = Collections.emptyList();
+        }
     }
 
     private final Collection<Sink> _sinks;
+    private final int _queueSize;
+    private final OverflowPolicy _overflowPolicy;
+    private final List<SinkQueue> _queues;
 
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
     private static final Logger LOGGER = LoggerFactory.getLogger(MultiSink.class);
 
+    /**
+     * Bounded queue of <code>PeriodicData</code> for one wrapped sink and
+     * the thread which records it.
+     */
+    private static final class SinkQueue implements Runnable {
+
+        public void offer(final PeriodicData periodicData) {
+            if (!_running) {
+                drop("stopped");
+                return;
+            }
+            final QueuedData queuedData = new QueuedData(periodicData, System.nanoTime());
+            if (OverflowPolicy.BLOCK.equals(_overflowPolicy)) {
+                try {
+                    // Stop blocking if the queue stops while full since it will not drain
+                    while (!_queue.offer(queuedData, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (!_running) {
+                            drop("stopped");
+                            return;
+                        }
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop("interrupted");
+                }
+            } else if (!_queue.offer(queuedData)) {
+                drop("queue full");
+            }
+        }
+
+        @Override
+        public void run() {
+            // Continue until stopped and all queued data is recorded
+            while (_running || !_queue.isEmpty()) {
+                final QueuedData queuedData;
+                try {
+                    queuedData = _queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (queuedData == null) {
+                    continue;
+                }
+                final long lagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedData.getEnqueuedAt());
+                _lagMillis = lagMillis;
+                _maxLagMillis = Math.max(_maxLagMillis, lagMillis);
+                try {
+                    _sink.recordAggregateData(queuedData.getPeriodicData());
+                    _recorded.incrementAndGet();
+                    // CHECKSTYLE.OFF: IllegalCatch - One failure must not stop the queue
+                } catch (final RuntimeException e) {
+                    // CHECKSTYLE.ON: IllegalCatch
+                    LOGGER.error()
+                            .setMessage("Error recording data to sink")
+                            .addData("sink", _name)
+                            .addData("wrappedSink", _sink)
+                            .setThrowable(e)
+                            .log();
+                }
+            }
+        }
+
+        public void stop() {
+            _running = false;
+            _executor.shutdown();
+        }
+
+        public void awaitDrained() {
+            try {
+                if (!_executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn()
+                            .setMessage("Sink queue did not drain before shutdown timeout")
+                            .addData("sink", _name)
+                            .addData("size", _queue.size())
+                            .log();
+                    _executor.shutdownNow();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Generate a Steno log compatible representation.
+         *
+         * @return Steno log compatible representation.
+         */
+        @LogValue
+        public Object toLogValue() {
+            return LogValueMapFactory.builder(this)
+                    .put("name", _name)
+                    .put("size", _queue.size())
+                    .put("recorded", _recorded.get())
+                    .put("dropped", _dropped.get())
+                    .put("lagMillis", _lagMillis)
+                    .put("maxLagMillis", _maxLagMillis)
+                    .build();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return toLogValue().toString();
+        }
+
+        private void drop(final String reason) {
+            final long dropped = _dropped.incrementAndGet();
+            LOGGER.warn()
+                    .setMessage("Dropping data for sink")
+                    .addData("sink", _name)
+                    .addData("reason", reason)
+                    .addData("dropped", dropped)
+                    .log();
+        }
+
+        private SinkQueue(
+                final String name,
+                final Sink sink,
+                final int queueSize,
+                final OverflowPolicy overflowPolicy) {
+            _name = name;
+            _sink = sink;
+            _queue = new ArrayBlockingQueue<>(queueSize);
+            _overflowPolicy = overflowPolicy;
+            _executor = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "MultiSink-" + name));
+            _executor.execute(this);
+        }
+
+        private final String _name;
+        private final Sink _sink;
+        private final BlockingQueue<QueuedData> _queue;
+        private final OverflowPolicy _overflowPolicy;
+        private final ExecutorService _executor;
+        private final AtomicLong _recorded = new AtomicLong();
+        private final AtomicLong _dropped = new AtomicLong();
+        private volatile boolean _running = true;
+        private volatile long _lagMillis = 0;
+        private volatile long _maxLagMillis = 0;
+    }
+
+    private static final class QueuedData {
+
+        public PeriodicData getPeriodicData() {
+            return _periodicData;
+        }
+
+        public long getEnqueuedAt() {
+            return _enqueuedAt;
+        }
+
+        private QueuedData(final PeriodicData periodicData, final long enqueuedAt) {
+            _periodicData = periodicData;
+            _enqueuedAt = enqueuedAt;
+        }
+
+        private final PeriodicData _periodicData;
+        private final long _enqueuedAt;
+    }
+
     /**
      * Implementation of builder pattern for <code>MultiSink</code>.
      *
@@ -127,6 +334,32 @@ public final class MultiSink extends BaseSink {
             return this;
         }
 
+        /**
+         * The size of the queue of data for each wrapped sink. When zero the
+         * wrapped sinks are invoked in turn on the calling thread; otherwise
+         * each wrapped sink is invoked on its own thread. Optional. Cannot be
+         * null. Default is zero.
+         *
+         * @param value The size of the queue for each wrapped sink.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setQueueSize(final Integer value) {
+            _queueSize = value;
+            return this;
+        }
+
+        /**
+         * What to do when the queue of a wrapped sink is full. Optional.
+         * Cannot be null. Default is <code>BLOCK</code>.
+         *
+         * @param value The overflow policy.
+         * @return This instance of <code>Builder</code>.
+         */
+        public Builder setOverflowPolicy(final OverflowPolicy value) {
+            _overflowPolicy = value;
+            return this;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -137,5 +370,10 @@ public final class MultiSink extends BaseSink {
 
         @NotNull
         private Collection<Sink> _sinks;
+        @NotNull
+        @Min(0)
+        private Integer _queueSize = 0;
+        @NotNull
+        private OverflowPolicy _overflowPolicy = OverflowPolicy.BLOCK;
     }
 }
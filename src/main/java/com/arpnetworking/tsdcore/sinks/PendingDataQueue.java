@@ -0,0 +1,507 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.sinks;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import org.apache.commons.io.IOUtils;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * Queue of <code>Buffer</code> instances pending delivery by a
+ * <code>VertxSink</code> bounded by both the number of buffers and their
+ * total size in bytes. Without a spill file the oldest buffers are evicted
+ * to make room for new ones. With a spill file buffers which do not fit in
+ * memory are appended to it instead, and every buffer queued after them is
+ * also spilled so that delivery order is preserved. Spilled buffers are
+ * read back into memory once the buffers in memory are delivered. The file
+ * starts with the offset of the first spilled buffer not yet removed from
+ * the queue, which is updated as each replayed buffer is removed, so that
+ * the next queue using the same file replays only the buffers which were
+ * not delivered. The file is truncated once all of it has been delivered
+ * and the delivered buffers at its start are discarded when it would
+ * otherwise exceed the maximum spill size. Beyond the maximum spill size
+ * new buffers are dropped.
+ *
+ * This class is not thread safe; it is confined to the event loop of its
+ * sink. Spilling and replay perform blocking file operations on that
+ * thread.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class PendingDataQueue {
+
+    /**
+     * Add a <code>Buffer</code> to the end of the queue.
+     *
+     * @param buffer The <code>Buffer</code> to add.
+     */
+    public void offer(final Buffer buffer) {
+        if (_maxSize == 0) {
+            drop(buffer, "queue size is zero");
+            return;
+        }
+
+        // Once data is spilled newer data is spilled behind it
+        if (_spilledBytes == 0 && fitsInMemory(buffer.length())) {
+            addToMemory(buffer);
+            return;
+        }
+        if (_spillChannel != null) {
+            spill(buffer);
+            return;
+        }
+
+        // Evict the oldest data to make room
+        long evictedCount = 0;
+        long evictedBytes = 0;
+        while (!fitsInMemory(buffer.length())) {
+            final Buffer evicted = _memory.poll();
+            _memoryBytes -= evicted.length();
+            ++evictedCount;
+            evictedBytes += evicted.length();
+        }
+        addToMemory(buffer);
+        _droppedBytes += evictedBytes;
+        LOGGER.warn()
+                .setMessage("Dropping data due to queue full")
+                .addData("sink", _sinkName)
+                .addData("count", evictedCount)
+                .addData("bytes", evictedBytes)
+                .log();
+    }
+
+    /**
+     * Remove the <code>Buffer</code> at the front of the queue.
+     *
+     * @return The <code>Buffer</code> at the front of the queue or
+     * <code>null</code> if the queue is empty.
+     */
+    public Buffer poll() {
+        if (_memory.isEmpty() && _spilledBytes > 0) {
+            replay();
+        }
+        final Buffer buffer = _memory.poll();
+        if (buffer != null) {
+            _memoryBytes -= buffer.length();
+            final Long replayedEnd = _replayedEnds.poll();
+            if (replayedEnd != null) {
+                commit(replayedEnd);
+            }
+        }
+        return buffer;
+    }
+
+    public boolean isEmpty() {
+        return _memory.isEmpty() && _spilledBytes == 0;
+    }
+
+    public int getSize() {
+        return _memory.size();
+    }
+
+    public long getBytes() {
+        return _memoryBytes;
+    }
+
+    public long getSpilledBytes() {
+        return _spilledBytes;
+    }
+
+    /**
+     * Close the spill file if any. Buffers in memory are discarded; those
+     * replayed from the spill file are replayed again by the next queue.
+     */
+    public void close() {
+        IOUtils.closeQuietly(_spillChannel);
+        _spillChannel = null;
+        _spilledBytes = 0;
+        _replayedEnds.clear();
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("size", _memory.size())
+                .put("bytes", _memoryBytes)
+                .put("maxSize", _maxSize)
+                .put("maxBytes", _maxBytes)
+                .put("spillFile", _spillFile)
+                .put("spilledBytes", _spilledBytes)
+                .put("spillFileBytes", _spillChannel == null ? 0 : _writePosition)
+                .put("maxSpillBytes", _maxSpillBytes)
+                .put("totalSpilledBytes", _totalSpilledBytes)
+                .put("totalReplayedBytes", _totalReplayedBytes)
+                .put("droppedBytes", _droppedBytes)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private boolean fitsInMemory(final int length) {
+        // A buffer larger than the byte limit is admitted on its own
+        return _memory.isEmpty()
+                || (_memory.size() < _maxSize && _memoryBytes + length <= _maxBytes);
+    }
+
+    private void addToMemory(final Buffer buffer) {
+        _memory.add(buffer);
+        _memoryBytes += buffer.length();
+    }
+
+    private void drop(final Buffer buffer, final String reason) {
+        _droppedBytes += buffer.length();
+        LOGGER.warn()
+                .setMessage("Dropping data")
+                .addData("sink", _sinkName)
+                .addData("reason", reason)
+                .addData("bytes", buffer.length())
+                .log();
+    }
+
+    private void spill(final Buffer buffer) {
+        final int recordLength = RECORD_HEADER_SIZE + buffer.length();
+        try {
+            if (_writePosition + recordLength > _maxSpillBytes) {
+                compact();
+            }
+            if (_writePosition + recordLength > _maxSpillBytes) {
+                drop(buffer, "spill file full");
+                return;
+            }
+            if (_writePosition == FILE_HEADER_SIZE) {
+                writeHeader(FILE_HEADER_SIZE);
+            }
+            final ByteBuffer record = ByteBuffer.allocate(recordLength);
+            record.putInt(buffer.length());
+            record.put(buffer.getBytes());
+            record.flip();
+            writeFully(record, _writePosition);
+        } catch (final IOException e) {
+            LOGGER.error()
+                    .setMessage("Unable to spill data")
+                    .addData("sink", _sinkName)
+                    .addData("file", _spillFile)
+                    .setThrowable(e)
+                    .log();
+            drop(buffer, "spill failed");
+            return;
+        }
+        if (_spilledBytes == 0) {
+            LOGGER.info()
+                    .setMessage("Spilling data to file")
+                    .addData("sink", _sinkName)
+                    .addData("file", _spillFile)
+                    .log();
+            _replayStart = System.nanoTime();
+            _replayStartBytes = _totalReplayedBytes;
+        }
+        _writePosition += recordLength;
+        _spilledBytes += recordLength;
+        _totalSpilledBytes += recordLength;
+    }
+
+    private void replay() {
+        try {
+            // Read back as much spilled data as fits in memory
+            while (_readPosition < _writePosition) {
+                final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+                readFully(header, _readPosition);
+                header.flip();
+                final int length = header.getInt();
+                if (!fitsInMemory(length)) {
+                    break;
+                }
+                final ByteBuffer data = ByteBuffer.allocate(length);
+                readFully(data, _readPosition + RECORD_HEADER_SIZE);
+                addToMemory(new Buffer(data.array()));
+                final long recordLength = RECORD_HEADER_SIZE + data.capacity();
+                _readPosition += recordLength;
+                _replayedEnds.add(_readPosition);
+                _spilledBytes -= recordLength;
+                _totalReplayedBytes += recordLength;
+            }
+            if (_readPosition >= _writePosition) {
+                final long elapsedNanos = System.nanoTime() - _replayStart;
+                final long replayedBytes = _totalReplayedBytes - _replayStartBytes;
+                LOGGER.info()
+                        .setMessage("Replayed spilled data")
+                        .addData("sink", _sinkName)
+                        .addData("file", _spillFile)
+                        .addData("bytes", replayedBytes)
+                        .addData("bytesPerSecond", elapsedNanos > 0 ? replayedBytes * 1000000000.0 / elapsedNanos : 0)
+                        .log();
+            }
+        } catch (final IOException e) {
+            LOGGER.error()
+                    .setMessage("Unable to replay spilled data; discarding it")
+                    .addData("sink", _sinkName)
+                    .addData("file", _spillFile)
+                    .addData("bytes", _spilledBytes)
+                    .setThrowable(e)
+                    .log();
+            _droppedBytes += _spilledBytes;
+            // The buffers already replayed are delivered but no longer tracked
+            _replayedEnds.clear();
+            truncate();
+        }
+    }
+
+    private void commit(final long position) {
+        try {
+            if (position >= _writePosition) {
+                // Everything spilled has been delivered
+                truncate();
+            } else {
+                writeHeader(position);
+                _committedPosition = position;
+            }
+        } catch (final IOException e) {
+            LOGGER.warn()
+                    .setMessage("Unable to record delivery of spilled data")
+                    .addData("sink", _sinkName)
+                    .addData("file", _spillFile)
+                    .setThrowable(e)
+                    .log();
+        }
+    }
+
+    private void compact() throws IOException {
+        // Move the undelivered records to the start of the file; the move
+        // must not overlap them, nor the end marker, so a crash at any
+        // point leaves either the old or the new layout readable
+        final long live = _writePosition - _committedPosition;
+        final long offset = _committedPosition - FILE_HEADER_SIZE;
+        if (offset < live + RECORD_HEADER_SIZE) {
+            return;
+        }
+        final ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(live, COMPACT_CHUNK_SIZE));
+        long copied = 0;
+        while (copied < live) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), live - copied));
+            readFully(chunk, _committedPosition + copied);
+            chunk.flip();
+            writeFully(chunk, FILE_HEADER_SIZE + copied);
+            copied += chunk.limit();
+        }
+        final ByteBuffer endMarker = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        endMarker.putInt(END_MARKER);
+        endMarker.flip();
+        writeFully(endMarker, FILE_HEADER_SIZE + live);
+        writeHeader(FILE_HEADER_SIZE);
+        _committedPosition -= offset;
+        _readPosition -= offset;
+        _writePosition -= offset;
+        final int replayedCount = _replayedEnds.size();
+        for (int i = 0; i < replayedCount; ++i) {
+            _replayedEnds.add(_replayedEnds.poll() - offset);
+        }
+        _spillChannel.truncate(_writePosition);
+        LOGGER.debug()
+                .setMessage("Compacted spill file")
+                .addData("sink", _sinkName)
+                .addData("file", _spillFile)
+                .addData("bytes", _writePosition)
+                .log();
+    }
+
+    private void writeHeader(final long committedPosition) throws IOException {
+        _header.clear();
+        _header.putLong(committedPosition);
+        _header.flip();
+        writeFully(_header, 0);
+    }
+
+    private void truncate() {
+        _committedPosition = FILE_HEADER_SIZE;
+        _readPosition = FILE_HEADER_SIZE;
+        _writePosition = FILE_HEADER_SIZE;
+        _spilledBytes = 0;
+        try {
+            _spillChannel.truncate(0);
+        } catch (final IOException e) {
+            LOGGER.warn()
+                    .setMessage("Unable to truncate spill file")
+                    .addData("sink", _sinkName)
+                    .addData("file", _spillFile)
+                    .setThrowable(e)
+                    .log();
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (_spillChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of spill file");
+            }
+        }
+    }
+
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            _spillChannel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void recover() throws IOException {
+        // Resume from the complete records spilled but not delivered by a previous queue
+        final long size = _spillChannel.size();
+        if (size < FILE_HEADER_SIZE) {
+            _spillChannel.truncate(0);
+            return;
+        }
+        _header.clear();
+        readFully(_header, 0);
+        _header.flip();
+        final long committedPosition = Math.min(Math.max(_header.getLong(), FILE_HEADER_SIZE), size);
+        long position = committedPosition;
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            final int length = header.getInt();
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position == committedPosition) {
+            _spillChannel.truncate(0);
+            return;
+        }
+        if (position < size) {
+            _spillChannel.truncate(position);
+        }
+        _committedPosition = committedPosition;
+        _readPosition = committedPosition;
+        _writePosition = position;
+        _spilledBytes = position - committedPosition;
+        LOGGER.info()
+                .setMessage("Recovered spilled data")
+                .addData("sink", _sinkName)
+                .addData("file", _spillFile)
+                .addData("bytes", _spilledBytes)
+                .log();
+        _replayStart = System.nanoTime();
+        _replayStartBytes = _totalReplayedBytes;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param sinkName The name of the sink for logging.
+     * @param maxSize The maximum number of buffers in memory.
+     * @param maxBytes The maximum size of the buffers in memory.
+     * @param spillFile The file to spill buffers to, if any.
+     * @param maxSpillBytes The maximum size of the spill file.
+     */
+    /* package private */ PendingDataQueue(
+            final String sinkName,
+            final int maxSize,
+            final long maxBytes,
+            final Optional<Path> spillFile,
+            final long maxSpillBytes) {
+        _sinkName = sinkName;
+        _maxSize = maxSize;
+        _maxBytes = maxBytes;
+        _spillFile = spillFile;
+        _maxSpillBytes = maxSpillBytes;
+        if (spillFile.isPresent()) {
+            FileChannel channel = null;
+            try {
+                final Path parent = spillFile.get().toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                channel = FileChannel.open(
+                        spillFile.get(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                _spillChannel = channel;
+                recover();
+            } catch (final IOException e) {
+                LOGGER.error()
+                        .setMessage("Unable to open spill file; data will not be spilled")
+                        .addData("sink", sinkName)
+                        .addData("file", spillFile.get())
+                        .setThrowable(e)
+                        .log();
+                IOUtils.closeQuietly(channel);
+                _spillChannel = null;
+                _committedPosition = FILE_HEADER_SIZE;
+                _readPosition = FILE_HEADER_SIZE;
+                _writePosition = FILE_HEADER_SIZE;
+                _spilledBytes = 0;
+            }
+        }
+    }
+
+    private final String _sinkName;
+    private final int _maxSize;
+    private final long _maxBytes;
+    private final Optional<Path> _spillFile;
+    private final long _maxSpillBytes;
+    private final Deque<Buffer> _memory = new ArrayDeque<>();
+    // NOTE: The end offsets of the replayed buffers at the front of memory
+    private final Deque<Long> _replayedEnds = new ArrayDeque<>();
+    private final ByteBuffer _header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+    private FileChannel _spillChannel;
+    private long _committedPosition = FILE_HEADER_SIZE;
+    private long _readPosition = FILE_HEADER_SIZE;
+    private long _writePosition = FILE_HEADER_SIZE;
+    private long _replayStart;
+    private long _replayStartBytes;
+    // NOTE: Statistics are written on the event loop and read for logging
+    private volatile long _memoryBytes = 0;
+    private volatile long _spilledBytes = 0;
+    private volatile long _totalSpilledBytes = 0;
+    private volatile long _totalReplayedBytes = 0;
+    private volatile long _droppedBytes = 0;
+
+    private static final int FILE_HEADER_SIZE = Long.SIZE / 8;
+    private static final int RECORD_HEADER_SIZE = Integer.SIZE / 8;
+    private static final int END_MARKER = -1;
+    private static final int COMPACT_CHUNK_SIZE = 64 * 1024;
+    private static final Logger LOGGER = LoggerFactory.getLogger(PendingDataQueue.class);
+}
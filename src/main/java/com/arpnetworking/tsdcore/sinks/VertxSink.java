@@ -19,9 +19,18 @@ import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
-import com.google.common.collect.EvictingQueue;
+import com.arpnetworking.tsdcore.model.Key;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.net.HostAndPort;
+import net.sf.oval.constraint.CheckWith;
+import net.sf.oval.constraint.CheckWithCheck;
 import net.sf.oval.constraint.Min;
-import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
 import net.sf.oval.constraint.Range;
 import org.joda.time.DateTime;
@@ -38,6 +47,12 @@ import org.vertx.java.core.impl.DefaultVertx;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetSocket;
 
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -61,18 +76,25 @@ import java.util.function.Function;
  *     to it.
  * </p>
  * <p>
- *     The connect loop runs on the vertx event loop and is tasked with maintaining the
- *     connection to the upstream server.  This is done by calling connectToServer.
+ *     The connect loop runs on the vertx event loop and is tasked with maintaining each
+ *     connection to the upstream servers.  This is done by calling connectToServer.
  *     When an error is detected on the socket, the callback fires and again calls
  *     connectToServer.  If the connection fails, connectToServer is called in a vertx
  *     setTimer call, thus making it a loop.
  * </p>
  * <p>
  *     The send loop also runs on the vertx event loop and is tasked with sending the queued
- *     data to the connected socket.  If a connected socket does not exist, the loop will "sleep"
+ *     data to the connected sockets.  If no socket can be written to, the loop will "sleep"
  *     by re-scheduling itself with the vertx setTimer call. The main function for this loop is
  *     consumeLoop.
  * </p>
+ * <p>
+ *     The sink maintains a number of connections to each of one or more servers. With round
+ *     robin load balancing all connections send from a single queue. With consistent hashing
+ *     each server has its own queue and data is assigned to a server by its <code>Key</code>
+ *     without the host dimension.
+ *     A socket whose write queue is full is skipped until its drain handler wakes the send loop.
+ * </p>
  *
  * @author Brandon Arp (brandonarp at gmail dot com)
  */
@@ -84,9 +106,11 @@ public abstract class VertxSink extends BaseSink {
     public void close() {
         dispatch(
                 event -> {
-                    final NetSocket socket = _socket.getAndSet(null);
-                    if (socket != null) {
-                        socket.close();
+                    for (final Connection connection : _connections) {
+                        connection.close();
+                    }
+                    for (final Lane lane : _lanes) {
+                        lane.getPendingData().close();
                     }
                 });
     }
@@ -99,18 +123,21 @@ public abstract class VertxSink extends BaseSink {
     @LogValue
     @Override
     public Object toLogValue() {
+        final List<PendingDataQueue> pendingData = Lists.newArrayListWithExpectedSize(_lanes.size());
+        for (final Lane lane : _lanes) {
+            pendingData.add(lane.getPendingData());
+        }
         return LogValueMapFactory.builder(this)
                 .put("super", super.toLogValue())
-                .put("serverAddress", _serverAddress)
-                .put("serverPort", _serverPort)
-                .put("connecting", _connecting)
-                .put("pendingDataSize", _pendingData.size())
+                .put("loadBalancing", _loadBalancing)
+                .put("connections", _connections)
+                .put("pendingData", pendingData)
                 .build();
     }
 
     /**
-     * Perform tasks when the connection is first established. This method is
-     * invoked while holding a lock on the socket.
+     * Perform tasks when a connection is first established. This method is
+     * invoked on the event loop for each connection in the pool.
      *
      * @param socket The <code>NetSocket</code> instance that was connected.
      */
@@ -122,49 +149,74 @@ public abstract class VertxSink extends BaseSink {
      * @param data The data to add to the queue.
      */
     protected void enqueueData(final Buffer data) {
-        dispatch(
-                event -> {
-                    if (_pendingData.remainingCapacity() == 0) {
-                        LOGGER.warn()
-                                .setMessage("Dropping data due to queue full")
-                                .addData("sink", getName())
-                                .log();
-                    }
-                    _pendingData.add(data);
-                });
+        dispatch(event -> nextLane().getPendingData().offer(data));
+    }
+
+    /**
+     * Adds several {@link Buffer} instances of data to the pending data queue
+     * with a single dispatch to the event loop.
+     *
+     * @param data The data to add to the queue in order.
+     */
+    protected void enqueueData(final List<Buffer> data) {
+        dispatch(event -> offer(nextLane(), data));
     }
 
     /**
-     * Sends a <code>Buffer</code> of bytes to the socket if the client is connected.
+     * Adds several {@link Buffer} instances of data for a <code>Key</code> to
+     * the pending data queue with a single dispatch to the event loop. With
+     * consistent hashing data for keys which differ only by host is always
+     * sent to the same endpoint.
+     *
+     * @param data The data to add to the queue in order.
+     * @param key The <code>Key</code> the data belongs to.
+     */
+    protected void enqueueData(final List<Buffer> data, final Key key) {
+        if (_ringPositions.isEmpty()) {
+            enqueueData(data);
+            return;
+        }
+        final Lane lane = _lanes.get(selectOnRing(hash(key)));
+        dispatch(event -> offer(lane, data));
+    }
+
+    /**
+     * Sends a <code>Buffer</code> of bytes to every connected socket.
      *
      * @param data the data to send
      */
     protected void sendRawData(final Buffer data) {
         dispatch(
                 event -> {
-                    final NetSocket socket = _socket.get();
-                    try {
-                        if (socket != null) {
-                            socket.write(data);
-                        } else {
-                            LOGGER.warn()
-                                    .setMessage("Could not write data to socket, socket is not connected")
-                                    .addData("sink", getName())
-                                    .log();
+                    boolean sent = false;
+                    for (final Connection connection : _connections) {
+                        final NetSocket socket = connection.getSocket();
+                        if (socket == null) {
+                            continue;
                         }
-
-                        // CHECKSTYLE.OFF: IllegalCatch - Vertx might not log
-                    } catch (final Exception e) {
-                        // CHECKSTYLE.ON: IllegalCatch
-                        if (socket != null) {
+                        try {
+                            // NOTE: Each socket is given its own copy of the buffer
+                            socket.write(data.copy());
+                            sent = true;
+
+                            // CHECKSTYLE.OFF: IllegalCatch - Vertx might not log
+                        } catch (final Exception e) {
+                            // CHECKSTYLE.ON: IllegalCatch
                             socket.close();
+                            LOGGER.error()
+                                    .setMessage("Error writing data to socket")
+                                    .addData("sink", getName())
+                                    .addData("connection", connection)
+                                    .setThrowable(e)
+                                    .log();
+                            throw e;
                         }
-                        LOGGER.error()
-                                .setMessage("Error writing data to socket")
+                    }
+                    if (!sent) {
+                        LOGGER.warn()
+                                .setMessage("Could not write data to socket, socket is not connected")
                                 .addData("sink", getName())
-                                .setThrowable(e)
                                 .log();
-                        throw e;
                     }
                 });
     }
@@ -178,105 +230,78 @@ public abstract class VertxSink extends BaseSink {
         return _vertx;
     }
 
-    private void dispatch(final Handler<Void> handler) {
-        if (_context != null) {
-            _context.runOnContext(handler);
-        } else {
-            _vertx.runOnContext(handler);
+    // NOTE: Package private for testing
+    /* package private */ static int hash(final Key key) {
+        // Hash the sorted dimensions other than the host so the data of a
+        // series from every host is sent to the same endpoint
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        for (final Map.Entry<String, String> entry : new TreeMap<>(key.getParameters()).entrySet()) {
+            if (Key.HOST_DIMENSION_KEY.equals(entry.getKey())) {
+                continue;
+            }
+            hasher.putString(entry.getKey(), Charsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putString(entry.getValue(), Charsets.UTF_8)
+                    .putByte((byte) 0);
         }
+        return hasher.hash().asInt();
     }
 
-    /**
-     * This function need only be called once, now in the constructor.
-     */
-    //TODO(barp): Move to a start/stop model for Sinks [MAI-257]
-    private void connectToServer() {
-        // Check if already connected
-        if (_socket.get() != null) {
-            return;
-        }
-
-        // Block if already connecting
-        final boolean isConnecting = _connecting.getAndSet(true);
-        if (isConnecting) {
-            LOGGER.debug()
-                    .setMessage("Already connecting, not attempting another connection at this time")
-                    .addData("sink", getName())
-                    .log();
-            return;
-        }
-
-        // Don't try to connect too frequently
-        final long currentTime = System.currentTimeMillis();
-        if (currentTime - _lastConnectionAttempt < _currentReconnectWait) {
-            LOGGER.debug()
-                    .setMessage("Not attempting connection")
-                    .addData("sink", getName())
-                    .log();
-            _connecting.set(false);
-            return;
-        }
+    // NOTE: Package private for testing
+    /* package private */ int selectOnRing(final int hash) {
+        final Map.Entry<Integer, Integer> entry = _ringPositions.ceilingEntry(hash);
+        return entry != null ? entry.getValue() : _ringPositions.firstEntry().getValue();
+    }
 
-        // Attempt to connect
-        LOGGER.info()
-                .setMessage("Connecting to server")
-                .addData("sink", getName())
-                .addData("attempt", _connectionAttempt)
-                .addData("address", _serverAddress)
-                .addData("port", _serverPort)
-                .log();
-        _lastConnectionAttempt = currentTime;
-        _client.connect(
-                _serverPort,
-                _serverAddress,
-                new ConnectionHandler());
+    private Lane nextLane() {
+        final Lane lane = _lanes.get(_nextLane);
+        _nextLane = (_nextLane + 1) % _lanes.size();
+        return lane;
     }
 
-    private Handler<Void> createSocketCloseHandler(final NetSocket socket) {
-        return event -> {
-            if (socket != null) {
-                socket.close();
-            }
-            LOGGER.warn()
-                    .setMessage("Server socket closed; forcing reconnect attempt")
-                    .addData("sink", getName())
-                    .log();
-            _socket.set(null);
-            _lastConnectionAttempt = 0;
-            connectToServer();
-        };
+    private static void offer(final Lane lane, final List<Buffer> data) {
+        for (final Buffer buffer : data) {
+            lane.getPendingData().offer(buffer);
+        }
     }
 
-    private Handler<Throwable> createSocketExceptionHandler() {
-        return event -> LOGGER.warn()
-                .setMessage("Server socket exception")
-                .addData("sink", getName())
-                .setThrowable(event)
-                .log();
+    private void dispatch(final Handler<Void> handler) {
+        if (_context != null) {
+            _context.runOnContext(handler);
+        } else {
+            _vertx.runOnContext(handler);
+        }
     }
 
     private void consumeLoop() {
+        _consumeLoopTimer = null;
         long flushedBytes = 0;
         try {
-            boolean done = false;
-            NetSocket socket = _socket.get();
-            if (!_pendingData.isEmpty()) {
-                LOGGER.debug()
-                        .setMessage("Pending data")
-                        .addData("sink", getName())
-                        .addData("size", _pendingData.size())
-                        .log();
-            }
-            while (socket != null && !done) {
-                if (_pendingData.size() > 0 && flushedBytes < MAX_FLUSH_BYTES) {
-                    final Buffer buffer = _pendingData.poll();
-                    flushedBytes += flushBuffer(buffer, socket);
-                } else {
-                    done = true;
+            boolean disconnected = false;
+            for (final Lane lane : _lanes) {
+                final PendingDataQueue pendingData = lane.getPendingData();
+                if (!pendingData.isEmpty()) {
+                    LOGGER.debug()
+                            .setMessage("Pending data")
+                            .addData("sink", getName())
+                            .addData("size", pendingData.getSize())
+                            .addData("bytes", pendingData.getBytes())
+                            .addData("spilledBytes", pendingData.getSpilledBytes())
+                            .log();
+                }
+                for (final Connection connection : lane.getConnections()) {
+                    connection.resetFlushedBytes();
                 }
-                socket = _socket.get();
+                while (!pendingData.isEmpty()) {
+                    final NetSocket socket = lane.nextWritableSocket();
+                    if (socket == null) {
+                        break;
+                    }
+                    flushedBytes += flushBuffer(pendingData.poll(), socket, lane.getCurrentConnection());
+                }
+                disconnected |= !lane.isConnected();
             }
-            if (socket == null
+            if (disconnected
                     && (_lastNotConnectedNotify == null
                     || _lastNotConnectedNotify.plus(Duration.standardSeconds(30)).isBeforeNow())) {
                 LOGGER.debug()
@@ -300,12 +325,21 @@ public abstract class VertxSink extends BaseSink {
             if (flushedBytes > 0) {
                 dispatch(event -> consumeLoop());
             } else {
-                getVertx().setTimer(NO_DATA_CONSUME_LOOP_INTERVAL, event -> consumeLoop());
+                _consumeLoopTimer = getVertx().setTimer(NO_DATA_CONSUME_LOOP_INTERVAL, event -> consumeLoop());
             }
         }
     }
 
-    private int flushBuffer(final Buffer buffer, final NetSocket socket) {
+    private void wakeConsumeLoop() {
+        // Resume a sleeping consume loop as soon as a socket drains
+        final Long timer = _consumeLoopTimer;
+        if (timer != null && getVertx().cancelTimer(timer)) {
+            _consumeLoopTimer = null;
+            dispatch(event -> consumeLoop());
+        }
+    }
+
+    private int flushBuffer(final Buffer buffer, final NetSocket socket, final Connection connection) {
         // Write the serialized data
         try {
             final int bufferLength = buffer.length();
@@ -314,9 +348,11 @@ public abstract class VertxSink extends BaseSink {
             LOGGER.debug()
                     .setMessage("Writing buffer to socket")
                     .addData("sink", getName())
+                    .addData("connection", connection)
                     .addData("length", bufferLength)
                     .log();
             socket.write(buffer);
+            connection.addFlushedBytes(bufferLength);
             return bufferLength;
         // CHECKSTYLE.OFF: IllegalCatch - Vertx might not log
         } catch (final Exception e) {
@@ -324,6 +360,7 @@ public abstract class VertxSink extends BaseSink {
             LOGGER.error()
                     .setMessage("Error writing AggregatedData data to socket")
                     .addData("sink", getName())
+                    .addData("connection", connection)
                     .addData("buffer", buffer)
                     .setThrowable(e)
                     .log();
@@ -331,6 +368,28 @@ public abstract class VertxSink extends BaseSink {
         }
     }
 
+    private static List<HostAndPort> parseEndpoints(final Builder<?, ?> builder) {
+        final List<HostAndPort> endpoints = Lists.newArrayList();
+        if (builder._serverAddresses.isEmpty()) {
+            endpoints.add(HostAndPort.fromParts(builder._serverAddress, builder._serverPort));
+        } else {
+            for (final String serverAddress : builder._serverAddresses) {
+                endpoints.add(HostAndPort.fromString(serverAddress).withDefaultPort(builder._serverPort));
+            }
+        }
+        return endpoints;
+    }
+
+    private static Optional<Path> getSpillFile(final Builder<?, ?> builder, final int lane, final int lanes) {
+        if (builder._spillFile == null) {
+            return Optional.empty();
+        }
+        if (lanes == 1) {
+            return Optional.of(builder._spillFile);
+        }
+        return Optional.of(builder._spillFile.resolveSibling(builder._spillFile.getFileName() + "." + lane));
+    }
+
     /**
      * Protected constructor.
      *
@@ -338,8 +397,8 @@ public abstract class VertxSink extends BaseSink {
      */
     protected VertxSink(final Builder<?, ?> builder) {
         super(builder);
-        _serverAddress = builder._serverAddress;
-        _serverPort = builder._serverPort;
+        _loadBalancing = builder._loadBalancing;
+        _writeQueueMaxBytes = builder._writeQueueMaxBytes;
         _vertx = VertxFactory.newVertx();
         //Calling this just so the context gets created
         if (_vertx instanceof DefaultVertx) {
@@ -360,82 +419,328 @@ public abstract class VertxSink extends BaseSink {
                 .setConnectTimeout(5000)
                 .setTCPNoDelay(true)
                 .setTCPKeepAlive(true);
-        _socket = new AtomicReference<>();
-        _pendingData = EvictingQueue.create(builder._maxQueueSize);
         _exponentialBackoffBase = builder._exponentialBackoffBase;
 
-        connectToServer();
+        // Round robin shares one queue across all connections while
+        // consistent hashing queues data separately for each endpoint
+        final List<HostAndPort> endpoints = parseEndpoints(builder);
+        final boolean consistentHash = LoadBalancing.CONSISTENT_HASH.equals(_loadBalancing);
+        final int laneCount = consistentHash ? endpoints.size() : 1;
+        final List<List<Connection>> laneConnections = Lists.newArrayList();
+        for (int i = 0; i < laneCount; ++i) {
+            laneConnections.add(Lists.newArrayList());
+        }
+        final List<Connection> connections = Lists.newArrayList();
+        for (int i = 0; i < endpoints.size(); ++i) {
+            for (int j = 0; j < builder._connections; ++j) {
+                final Connection connection = new Connection(endpoints.get(i));
+                connections.add(connection);
+                laneConnections.get(consistentHash ? i : 0).add(connection);
+            }
+        }
+        final List<Lane> lanes = Lists.newArrayList();
+        for (int i = 0; i < laneCount; ++i) {
+            lanes.add(
+                    new Lane(
+                            new PendingDataQueue(
+                                    getName(),
+                                    builder._maxQueueSize,
+                                    builder._maxQueueBytes,
+                                    getSpillFile(builder, i, laneCount),
+                                    builder._maxSpillBytes),
+                            laneConnections.get(i)));
+        }
+        _connections = Collections.unmodifiableList(connections);
+        _lanes = Collections.unmodifiableList(lanes);
+        _ringPositions = new TreeMap<>();
+        if (consistentHash) {
+            for (int i = 0; i < endpoints.size(); ++i) {
+                for (int j = 0; j < VIRTUAL_NODES_PER_ENDPOINT; ++j) {
+                    _ringPositions.put(
+                            HASH_FUNCTION.hashString(endpoints.get(i) + "#" + j, Charsets.UTF_8).asInt(),
+                            i);
+                }
+            }
+        }
+
+        for (final Connection connection : _connections) {
+            connection.connectToServer();
+        }
         consumeLoop();
     }
 
-    private final String _serverAddress;
-    private final int _serverPort;
+    private final LoadBalancing _loadBalancing;
+    private final int _writeQueueMaxBytes;
     private final Vertx _vertx;
     private final NetClient _client;
     private final Context _context;
-    private final AtomicReference<NetSocket> _socket;
-    private final EvictingQueue<Buffer> _pendingData;
-    private final AtomicBoolean _connecting = new AtomicBoolean(false);
-    private DateTime _lastNotConnectedNotify = null;
-    private volatile long _lastConnectionAttempt = 0;
-    private volatile int _connectionAttempt = 1;
+    private final List<Connection> _connections;
+    private final List<Lane> _lanes;
+    private final TreeMap<Integer, Integer> _ringPositions;
     private final int _exponentialBackoffBase;
-
-    private int _currentReconnectWait = 3000;
+    private DateTime _lastNotConnectedNotify = null;
+    private int _nextLane = 0;
+    private Long _consumeLoopTimer = null;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VertxSink.class);
-    private static final long MAX_FLUSH_BYTES = 2 ^ 20; // 1 Mebibyte
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+    private static final int VIRTUAL_NODES_PER_ENDPOINT = 128;
+    private static final long MAX_FLUSH_BYTES = 1 << 20; // 1 Mebibyte
     private static final int NO_DATA_CONSUME_LOOP_INTERVAL = 100;
 
-    private class ConnectionHandler implements AsyncResultHandler<NetSocket> {
+    /**
+     * A pending data queue and the connections which send its data.
+     */
+    private static final class Lane {
+
+        public PendingDataQueue getPendingData() {
+            return _pendingData;
+        }
+
+        public List<Connection> getConnections() {
+            return _connections;
+        }
+
+        public Connection getCurrentConnection() {
+            return _connections.get(_current);
+        }
+
+        public boolean isConnected() {
+            for (final Connection connection : _connections) {
+                if (connection.getSocket() != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Select the next connection in round robin order which is connected,
+         * whose write queue is not full and which has not reached its flush
+         * limit for this pass of the consume loop.
+         *
+         * @return The socket of the selected connection or <code>null</code>
+         * if no connection can be written to.
+         */
+        public NetSocket nextWritableSocket() {
+            for (int i = 0; i < _connections.size(); ++i) {
+                _current = (_current + 1) % _connections.size();
+                final Connection connection = _connections.get(_current);
+                final NetSocket socket = connection.getSocket();
+                if (socket != null && connection.getFlushedBytes() < MAX_FLUSH_BYTES && !socket.writeQueueFull()) {
+                    return socket;
+                }
+            }
+            return null;
+        }
+
+        private Lane(final PendingDataQueue pendingData, final List<Connection> connections) {
+            _pendingData = pendingData;
+            _connections = connections;
+        }
+
+        private final PendingDataQueue _pendingData;
+        private final List<Connection> _connections;
+        private int _current = 0;
+    }
+
+    /**
+     * A connection to one endpoint. The connect loop of each connection is
+     * independent of the others.
+     */
+    private final class Connection {
+
+        public NetSocket getSocket() {
+            return _socket.get();
+        }
+
+        public long getFlushedBytes() {
+            return _flushedBytes;
+        }
+
+        public void addFlushedBytes(final long bytes) {
+            _flushedBytes += bytes;
+        }
+
+        public void resetFlushedBytes() {
+            _flushedBytes = 0;
+        }
+
+        public void close() {
+            final NetSocket socket = _socket.getAndSet(null);
+            if (socket != null) {
+                socket.close();
+            }
+        }
+
+        /**
+         * Generate a Steno log compatible representation.
+         *
+         * @return Steno log compatible representation.
+         */
+        @LogValue
+        public Object toLogValue() {
+            return LogValueMapFactory.builder(this)
+                    .put("serverAddress", _endpoint.getHostText())
+                    .put("serverPort", _endpoint.getPort())
+                    .put("connected", _socket.get() != null)
+                    .put("connecting", _connecting)
+                    .build();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return toLogValue().toString();
+        }
+
+        /**
+         * This function need only be called once, now in the constructor.
+         */
+        //TODO(barp): Move to a start/stop model for Sinks [MAI-257]
+        private void connectToServer() {
+            // Check if already connected
+            if (_socket.get() != null) {
+                return;
+            }
+
+            // Block if already connecting
+            final boolean isConnecting = _connecting.getAndSet(true);
+            if (isConnecting) {
+                LOGGER.debug()
+                        .setMessage("Already connecting, not attempting another connection at this time")
+                        .addData("sink", getName())
+                        .addData("connection", this)
+                        .log();
+                return;
+            }
+
+            // Don't try to connect too frequently
+            final long currentTime = System.currentTimeMillis();
+            if (currentTime - _lastConnectionAttempt < _currentReconnectWait) {
+                LOGGER.debug()
+                        .setMessage("Not attempting connection")
+                        .addData("sink", getName())
+                        .addData("connection", this)
+                        .log();
+                _connecting.set(false);
+                return;
+            }
+
+            // Attempt to connect
+            LOGGER.info()
+                    .setMessage("Connecting to server")
+                    .addData("sink", getName())
+                    .addData("attempt", _connectionAttempt)
+                    .addData("address", _endpoint.getHostText())
+                    .addData("port", _endpoint.getPort())
+                    .log();
+            _lastConnectionAttempt = currentTime;
+            _client.connect(
+                    _endpoint.getPort(),
+                    _endpoint.getHostText(),
+                    new ConnectionHandler(this));
+        }
+
+        private Handler<Void> createSocketCloseHandler(final NetSocket socket) {
+            return event -> {
+                if (socket != null) {
+                    socket.close();
+                }
+                LOGGER.warn()
+                        .setMessage("Server socket closed; forcing reconnect attempt")
+                        .addData("sink", getName())
+                        .addData("connection", this)
+                        .log();
+                _socket.set(null);
+                _lastConnectionAttempt = 0;
+                connectToServer();
+            };
+        }
+
+        private Handler<Throwable> createSocketExceptionHandler() {
+            return event -> LOGGER.warn()
+                    .setMessage("Server socket exception")
+                    .addData("sink", getName())
+                    .addData("connection", this)
+                    .setThrowable(event)
+                    .log();
+        }
+
+        private Connection(final HostAndPort endpoint) {
+            _endpoint = endpoint;
+        }
+
+        private final HostAndPort _endpoint;
+        private final AtomicReference<NetSocket> _socket = new AtomicReference<>();
+        private final AtomicBoolean _connecting = new AtomicBoolean(false);
+        private volatile long _lastConnectionAttempt = 0;
+        private volatile int _connectionAttempt = 1;
+        private int _currentReconnectWait = 3000;
+        private long _flushedBytes = 0;
+    }
+
+    private final class ConnectionHandler implements AsyncResultHandler<NetSocket> {
         @Override
         public void handle(final AsyncResult<NetSocket> event) {
+            final HostAndPort endpoint = _connection._endpoint;
             if (event.succeeded()) {
                 LOGGER.info()
                         .setMessage("Connected to server")
                         .addData("sink", getName())
-                        .addData("address", _serverAddress)
-                        .addData("port", _serverPort)
-                        .addData("attempt", _connectionAttempt)
+                        .addData("address", endpoint.getHostText())
+                        .addData("port", endpoint.getPort())
+                        .addData("attempt", _connection._connectionAttempt)
                         .log();
                 final NetSocket socket = event.result();
-                socket.exceptionHandler(createSocketExceptionHandler());
-                socket.endHandler(createSocketCloseHandler(socket));
-                _connectionAttempt = 1;
+                socket.exceptionHandler(_connection.createSocketExceptionHandler());
+                socket.endHandler(_connection.createSocketCloseHandler(socket));
+                socket.setWriteQueueMaxSize(_writeQueueMaxBytes);
+                socket.drainHandler(drained -> wakeConsumeLoop());
+                _connection._connectionAttempt = 1;
 
                 onConnect(socket);
 
-                _connecting.set(false);
-                _socket.set(socket);
+                _connection._connecting.set(false);
+                _connection._socket.set(socket);
             } else if (event.failed()) {
                 LOGGER.warn()
                         .setMessage("Error connecting to server")
                         .addData("sink", getName())
-                        .addData("address", _serverAddress)
-                        .addData("port", _serverPort)
+                        .addData("address", endpoint.getHostText())
+                        .addData("port", endpoint.getPort())
                         .setThrowable(event.cause())
                         .log();
-                _connectionAttempt++;
+                _connection._connectionAttempt++;
                 //Calculate the next reconnect delay.  Exponential backoff formula.
 
-                _currentReconnectWait = (((int) (Math.random()  //randomize
-                        * Math.pow(1.3, Math.min(_connectionAttempt, 20)))) //1.3^x where x = min(attempt, 20)
+                final int attempt = _connection._connectionAttempt;
+                _connection._currentReconnectWait = (((int) (Math.random()  //randomize
+                        * Math.pow(1.3, Math.min(attempt, 20)))) //1.3^x where x = min(attempt, 20)
                         +  1) //make sure we don't wait 0
                         *  _exponentialBackoffBase; //the milliseconds base
                 LOGGER.info()
                         .setMessage("Waiting")
                         .addData("sink", getName())
-                        .addData("currentReconnectWait", _currentReconnectWait)
+                        .addData("currentReconnectWait", _connection._currentReconnectWait)
                         .log();
-                getVertx().setTimer(_currentReconnectWait, handler -> connectToServer());
+                getVertx().setTimer(_connection._currentReconnectWait, handler -> _connection.connectToServer());
                 final NetSocket socket = event.result();
                 if (socket != null) {
                     socket.close();
                 }
-                _connecting.set(false);
-                _socket.set(null);
+                _connection._connecting.set(false);
+                _connection._socket.set(null);
             }
         }
+
+        private ConnectionHandler(final Connection connection) {
+            _connection = connection;
+        }
+
+        private final Connection _connection;
     }
 
     /**
@@ -448,7 +753,7 @@ public abstract class VertxSink extends BaseSink {
     public abstract static class Builder<B extends BaseSink.Builder<B, S>, S extends Sink> extends BaseSink.Builder<B, S> {
 
         /**
-         * The server host name. Cannot be null or empty.
+         * The server host name. Optional if server addresses are set.
          *
          * @param value The aggregation server host name.
          * @return This instance of <code>Builder</code>.
@@ -459,7 +764,58 @@ public abstract class VertxSink extends BaseSink {
         }
 
         /**
-         * The server port. Cannot be null; must be between 1 and 65535.
+         * The server host names, each optionally followed by a port as
+         * <code>host:port</code>. Optional. Default is the server address.
+         * Either the server address or server addresses must be set.
+         *
+         * @param value The server host names and ports.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setServerAddresses(final List<String> value) {
+            _serverAddresses = value;
+            return self();
+        }
+
+        /**
+         * The number of connections to each server. Cannot be null. Default
+         * is 1.
+         *
+         * @param value The number of connections to each server.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setConnections(final Integer value) {
+            _connections = value;
+            return self();
+        }
+
+        /**
+         * The load balancing of data across servers. Cannot be null. Default
+         * is <code>ROUND_ROBIN</code>.
+         *
+         * @param value The load balancing of data across servers.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setLoadBalancing(final LoadBalancing value) {
+            _loadBalancing = value;
+            return self();
+        }
+
+        /**
+         * The size in bytes of a connection's write queue beyond which no
+         * more data is written to it until it drains. Cannot be null. Default
+         * is 1 MiB.
+         *
+         * @param value The maximum size of a connection's write queue.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setWriteQueueMaxBytes(final Integer value) {
+            _writeQueueMaxBytes = value;
+            return self();
+        }
+
+        /**
+         * The server port. Cannot be null; must be between 1 and 65535. This
+         * is the port of server addresses without a port.
          *
          * @param value The server port.
          * @return This instance of <code>Builder</code>.
@@ -480,6 +836,44 @@ public abstract class VertxSink extends BaseSink {
             return self();
         }
 
+        /**
+         * The maximum size in bytes of the queue held in memory. Cannot be
+         * null. Default is 64 MiB.
+         *
+         * @param value The maximum size in bytes of the queue in memory.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setMaxQueueBytes(final Long value) {
+            _maxQueueBytes = value;
+            return self();
+        }
+
+        /**
+         * The file to spill data which does not fit in the queue to while
+         * the server is unavailable. Spilled data is sent in order once the
+         * queue drains, including data spilled before a restart. Optional.
+         * Default is to drop the oldest data when the queue is full.
+         *
+         * @param value The file to spill data to.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setSpillFile(final Path value) {
+            _spillFile = value;
+            return self();
+        }
+
+        /**
+         * The maximum size in bytes of the spill file; data is dropped
+         * once it is reached. Cannot be null. Default is 1 GiB.
+         *
+         * @param value The maximum size in bytes of the spill file.
+         * @return This instance of <code>Builder</code>.
+         */
+        public B setMaxSpillBytes(final Long value) {
+            _maxSpillBytes = value;
+            return self();
+        }
+
         /**
          * Protected constructor for subclasses.
          *
@@ -489,16 +883,49 @@ public abstract class VertxSink extends BaseSink {
             super(targetConstructor);
         }
 
-        @NotNull
-        @NotEmpty
+        @CheckWith(
+                value = ServerAddressSet.class,
+                ignoreIfNull = false,
+                message = "serverAddress or serverAddresses must be set")
         private String _serverAddress;
         @NotNull
+        private List<String> _serverAddresses = ImmutableList.of();
+        @NotNull
+        @Min(value = 1)
+        private Integer _connections = 1;
+        @NotNull
+        private LoadBalancing _loadBalancing = LoadBalancing.ROUND_ROBIN;
+        @NotNull
+        @Min(value = 1)
+        private Integer _writeQueueMaxBytes = 1024 * 1024;
+        @NotNull
         @Range(min = 1, max = 65535)
         private Integer _serverPort;
         @NotNull
         @Min(value = 0)
         private Integer _maxQueueSize = 10000;
         @NotNull
+        @Min(value = 1)
+        private Long _maxQueueBytes = 64L * 1024 * 1024;
+        private Path _spillFile;
+        @NotNull
+        @Min(value = 0)
+        private Long _maxSpillBytes = 1024L * 1024 * 1024;
+        @NotNull
         private Integer _exponentialBackoffBase = 500;
+
+        private static final class ServerAddressSet implements CheckWithCheck.SimpleCheck {
+            @Override
+            public boolean isSatisfied(final Object validatedObject, final Object value) {
+                if (validatedObject instanceof Builder) {
+                    final Builder<?, ?> builder = (Builder<?, ?>) validatedObject;
+                    return !Strings.isNullOrEmpty(builder._serverAddress)
+                            || (builder._serverAddresses != null && !builder._serverAddresses.isEmpty());
+                }
+                return false;
+            }
+
+            private static final long serialVersionUID = 1L;
+        }
     }
 }
@@ -20,13 +20,14 @@ import com.arpnetworking.tsdcore.model.AggregatedData;
 import com.arpnetworking.tsdcore.model.CalculatedValue;
 import com.arpnetworking.tsdcore.model.Quantity;
 import com.arpnetworking.tsdcore.model.Unit;
+import com.google.common.collect.ImmutableMap;
 import net.sf.oval.constraint.NotNull;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * Histogram statistic. This is a supporting statistic and does not produce
@@ -101,16 +102,14 @@ public final class HistogramStatistic extends BaseStatistic {
             final Optional<Unit> quantityUnit = quantity.getUnit();
             checkUnit(quantityUnit);
             if (_unit.isPresent() && !_unit.equals(quantityUnit)) {
-                _histogram.recordValue(
-                        new Quantity.Builder()
-                                .setUnit(_unit.get())
-                                .setValue(_unit.get().convert(quantity.getValue(), quantityUnit.get()))
-                                .build().getValue());
+                _histogram.recordValue(_unit.get().convert(quantity.getValue(), quantityUnit.get()));
             } else {
                 _histogram.recordValue(quantity.getValue());
             }
 
-            _unit = Optional.ofNullable(_unit.orElse(quantityUnit.orElse(null)));
+            if (!_unit.isPresent()) {
+                _unit = quantityUnit;
+            }
             return this;
         }
 
@@ -127,7 +126,9 @@ public final class HistogramStatistic extends BaseStatistic {
                 _histogram.add(calculatedValue.getData().getHistogramSnapshot());
             }
 
-            _unit = Optional.ofNullable(_unit.orElse(unit.orElse(null)));
+            if (!_unit.isPresent()) {
+                _unit = unit;
+            }
             return this;
         }
 
@@ -204,9 +205,10 @@ public final class HistogramStatistic extends BaseStatistic {
         public HistogramSupportingData toUnit(final Unit newUnit) {
             if (_unit.isPresent()) {
                 final Histogram newHistogram = new Histogram();
-                for (final Map.Entry<Double, Integer> entry : _histogramSnapshot.getValues()) {
-                    final Double newBucket = newUnit.convert(entry.getKey(), _unit.get());
-                    newHistogram.recordValue(newBucket, entry.getValue());
+                for (int i = 0; i < _histogramSnapshot.getBucketsCount(); ++i) {
+                    newHistogram.recordValue(
+                            newUnit.convert(_histogramSnapshot.getBucketValue(i), _unit.get()),
+                            _histogramSnapshot.getBucketEntriesCount(i));
                 }
                 return new HistogramSupportingData.Builder()
                         .setHistogramSnapshot(newHistogram.getSnapshot())
@@ -266,10 +268,24 @@ public final class HistogramStatistic extends BaseStatistic {
     }
 
     /**
-     * A simple histogram implementation.
+     * A histogram implementation with buckets defined by truncating each value
+     * to its sign, exponent and the seven most significant bits of its
+     * mantissa. The 19-bit bucket index is stored in a primitive open-addressed
+     * hash map so that recording a value is O(1) and allocation free except
+     * when the map grows. The snapshot is sorted once and cached until the
+     * histogram is next modified.
+     *
+     * This class is not thread safe.
      */
     public static final class Histogram {
 
+        /**
+         * Public constructor.
+         */
+        public Histogram() {
+            Arrays.fill(_indexes, EMPTY_INDEX);
+        }
+
         /**
          * Records a value into the histogram.
          *
@@ -277,8 +293,9 @@ public final class HistogramStatistic extends BaseStatistic {
          * @param count The number of entries at this value.
          */
         public void recordValue(final double value, final int count) {
-            _data.merge(truncate(value), count, (i, j) -> i + j);
+            increment(bucketIndex(value), count);
             _entriesCount += count;
+            _snapshot = null;
         }
 
         /**
@@ -296,34 +313,129 @@ public final class HistogramStatistic extends BaseStatistic {
          * @param histogramSnapshot The histogram snapshot to add to this one.
          */
         public void add(final HistogramSnapshot histogramSnapshot) {
-            for (final Map.Entry<Double, Integer> entry : histogramSnapshot._data.entrySet()) {
-                _data.merge(entry.getKey(), entry.getValue(), (i, j) -> i + j);
+            for (int i = 0; i < histogramSnapshot._bucketValues.length; ++i) {
+                increment(bucketIndex(histogramSnapshot._bucketValues[i]), histogramSnapshot._bucketCounts[i]);
             }
             _entriesCount += histogramSnapshot._entriesCount;
+            _snapshot = null;
         }
 
+        /**
+         * Create an immutable snapshot of the histogram. The snapshot is
+         * cached until the histogram is modified.
+         *
+         * @return The snapshot of the histogram.
+         */
         public HistogramSnapshot getSnapshot() {
-            return new HistogramSnapshot(_data, _entriesCount);
+            HistogramSnapshot snapshot = _snapshot;
+            if (snapshot == null) {
+                snapshot = createSnapshot();
+                _snapshot = snapshot;
+            }
+            return snapshot;
+        }
+
+        private HistogramSnapshot createSnapshot() {
+            // Map each bucket index to a long which sorts in the same order as
+            // the double value of the bucket
+            final long[] sortableBits = new long[_size];
+            int j = 0;
+            for (int i = 0; i < _indexes.length; ++i) {
+                if (_indexes[i] != EMPTY_INDEX) {
+                    sortableBits[j++] = toSortableBits(bucketBits(_indexes[i]));
+                }
+            }
+            Arrays.sort(sortableBits);
+
+            final double[] bucketValues = new double[_size];
+            final int[] bucketCounts = new int[_size];
+            for (int i = 0; i < sortableBits.length; ++i) {
+                // NOTE: The sortable bits transform is its own inverse
+                final long bits = toSortableBits(sortableBits[i]);
+                bucketValues[i] = Double.longBitsToDouble(bits);
+                bucketCounts[i] = _counts[find((int) (bits >>> TRUNCATED_BITS))];
+            }
+            return new HistogramSnapshot(bucketValues, bucketCounts, _entriesCount);
+        }
+
+        private void increment(final int index, final int count) {
+            final int slot = find(index);
+            if (_indexes[slot] == index) {
+                _counts[slot] += count;
+                return;
+            }
+            _indexes[slot] = index;
+            _counts[slot] = count;
+            if (++_size > _indexes.length * MAXIMUM_LOAD_FACTOR_PERCENT / 100) {
+                resize(_indexes.length * 2);
+            }
+        }
+
+        private int find(final int index) {
+            final int mask = _indexes.length - 1;
+            int slot = mix(index) & mask;
+            while (_indexes[slot] != EMPTY_INDEX && _indexes[slot] != index) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize(final int capacity) {
+            final int[] oldIndexes = _indexes;
+            final int[] oldCounts = _counts;
+            _indexes = new int[capacity];
+            _counts = new int[capacity];
+            Arrays.fill(_indexes, EMPTY_INDEX);
+            for (int i = 0; i < oldIndexes.length; ++i) {
+                if (oldIndexes[i] != EMPTY_INDEX) {
+                    final int slot = find(oldIndexes[i]);
+                    _indexes[slot] = oldIndexes[i];
+                    _counts[slot] = oldCounts[i];
+                }
+            }
         }
 
-        private static double truncate(final double val) {
-            final long mask = 0xffffe00000000000L;
-            return Double.longBitsToDouble(Double.doubleToRawLongBits(val) & mask);
+        private static int bucketIndex(final double value) {
+            return (int) (Double.doubleToRawLongBits(value) >>> TRUNCATED_BITS);
+        }
+
+        private static long bucketBits(final int index) {
+            return ((long) index) << TRUNCATED_BITS;
+        }
+
+        private static long toSortableBits(final long bits) {
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+
+        private static int mix(final int index) {
+            final int hash = index * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
         }
 
         private int _entriesCount = 0;
-        private final TreeMap<Double, Integer> _data = new TreeMap<>();
+        private int _size = 0;
+        private int[] _indexes = new int[INITIAL_CAPACITY];
+        private int[] _counts = new int[INITIAL_CAPACITY];
+        private HistogramSnapshot _snapshot;
+
+        // The bucket retains the sign, exponent and 7 most significant mantissa bits
+        private static final int TRUNCATED_BITS = 45;
+        private static final int EMPTY_INDEX = -1;
+        private static final int INITIAL_CAPACITY = 16;
+        private static final int MAXIMUM_LOAD_FACTOR_PERCENT = 50;
     }
 
     /**
-     * Represents a snapshot of immutable histogram data.
+     * Represents a snapshot of immutable histogram data. The buckets are
+     * ordered by value.
      *
      * @author Brandon Arp (brandonarp at gmail dot com)
      */
     public static final class HistogramSnapshot {
-        private HistogramSnapshot(final TreeMap<Double, Integer> data, final int entriesCount) {
+        private HistogramSnapshot(final double[] bucketValues, final int[] bucketCounts, final int entriesCount) {
+            _bucketValues = bucketValues;
+            _bucketCounts = bucketCounts;
             _entriesCount = entriesCount;
-            _data.putAll(data);
         }
 
         /**
@@ -338,10 +450,10 @@ public final class HistogramStatistic extends BaseStatistic {
             // slightly larger than the _entriesCount and prevents an index out of range.
             final int target = (int) Math.min(Math.ceil(_entriesCount * percentile / 100.0D), _entriesCount);
             int accumulated = 0;
-            for (final Map.Entry<Double, Integer> next : _data.entrySet()) {
-                accumulated += next.getValue();
+            for (int i = 0; i < _bucketCounts.length; ++i) {
+                accumulated += _bucketCounts[i];
                 if (accumulated >= target) {
-                    return next.getKey();
+                    return _bucketValues[i];
                 }
             }
             return 0D;
@@ -351,10 +463,51 @@ public final class HistogramStatistic extends BaseStatistic {
             return _entriesCount;
         }
 
+        /**
+         * Gets the number of distinct buckets in the snapshot.
+         *
+         * @return The number of buckets.
+         */
+        public int getBucketsCount() {
+            return _bucketValues.length;
+        }
+
+        /**
+         * Gets the value of a bucket by index in value order.
+         *
+         * @param index The index of the bucket.
+         * @return The value of the bucket.
+         */
+        public double getBucketValue(final int index) {
+            return _bucketValues[index];
+        }
+
+        /**
+         * Gets the number of entries in a bucket by index in value order.
+         *
+         * @param index The index of the bucket.
+         * @return The number of entries in the bucket.
+         */
+        public int getBucketEntriesCount(final int index) {
+            return _bucketCounts[index];
+        }
+
+        /**
+         * Gets the buckets and their entry counts in value order. Prefer the
+         * indexed accessors on hot paths as this boxes every bucket.
+         *
+         * @return The buckets and their entry counts.
+         */
         public Set<Map.Entry<Double, Integer>> getValues() {
-            return _data.entrySet();
+            final ImmutableMap.Builder<Double, Integer> builder = ImmutableMap.builder();
+            for (int i = 0; i < _bucketValues.length; ++i) {
+                builder.put(_bucketValues[i], _bucketCounts[i]);
+            }
+            return builder.build().entrySet();
         }
-        private int _entriesCount = 0;
-        private final TreeMap<Double, Integer> _data = new TreeMap<>();
+
+        private final double[] _bucketValues;
+        private final int[] _bucketCounts;
+        private final int _entriesCount;
     }
 }
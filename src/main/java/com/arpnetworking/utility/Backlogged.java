@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.utility;
+
+/**
+ * Interface for components which queue work for asynchronous processing
+ * and can report how much work is queued, allowing producers to shed load
+ * before the queue grows without bound.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public interface Backlogged {
+
+    /**
+     * The amount of work queued but not yet processed. Implementations
+     * define the unit (e.g. records) and the value must be cheap to read.
+     *
+     * @return The amount of queued work.
+     */
+    long getBacklog();
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.utility;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import org.apache.commons.io.IOUtils;
+import org.joda.time.Duration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Trigger} that fires when a file is created, modified or deleted
+ * as reported by a <code>WatchService</code> on its directory, or once the
+ * maximum wait elapses. Events which occur between waits fire the next wait
+ * immediately. If the directory cannot be watched the trigger waits the
+ * maximum wait and retries watching on the next wait.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class FileWatchTrigger implements Trigger, Closeable {
+
+    /**
+     * Public constructor.
+     *
+     * @param file The file to watch.
+     * @param maximumWait The maximum time to wait for a change.
+     */
+    public FileWatchTrigger(final Path file, final Duration maximumWait) {
+        _file = file.toAbsolutePath();
+        _maximumWait = maximumWait;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void waitOnTrigger() throws InterruptedException {
+        final boolean watched = _watchService != null;
+        if (!watched && !watch()) {
+            Thread.sleep(_maximumWait.getMillis());
+            _changed = true;
+            return;
+        }
+
+        final boolean changed = awaitChange();
+        // Changes before the directory was watched are unknown
+        _changed = changed || !watched;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean mayHaveChanged() {
+        return _changed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(_watchService);
+        _watchService = null;
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("file", _file)
+                .put("maximumWait", _maximumWait)
+                .put("watching", _watchService != null)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private boolean awaitChange() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_maximumWait.getMillis());
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            final WatchKey key;
+            try {
+                key = _watchService.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (final ClosedWatchServiceException e) {
+                _watchService = null;
+                return true;
+            }
+            if (key == null) {
+                return false;
+            }
+            boolean changed = false;
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (StandardWatchEventKinds.OVERFLOW.equals(event.kind())
+                        || _file.getFileName().equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                // The directory is no longer accessible
+                close();
+                return true;
+            }
+            if (changed) {
+                return true;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        return false;
+    }
+
+    private boolean watch() {
+        WatchService watchService = null;
+        try {
+            watchService = _file.getFileSystem().newWatchService();
+            _file.getParent().register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            _watchService = watchService;
+            return true;
+        } catch (final IOException | UnsupportedOperationException e) {
+            IOUtils.closeQuietly(watchService);
+            LOGGER.debug()
+                    .setMessage("Unable to watch file")
+                    .addData("file", _file)
+                    .setThrowable(e)
+                    .log();
+            return false;
+        }
+    }
+
+    private final Path _file;
+    private final Duration _maximumWait;
+
+    private WatchService _watchService;
+    private boolean _changed = true;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWatchTrigger.class);
+}
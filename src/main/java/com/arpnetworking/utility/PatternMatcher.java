@@ -0,0 +1,265 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.utility;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled set of ordered regular expressions each mapped to a value. The
+ * value of the first pattern (in iteration order of the map provided on
+ * construction) which matches the entire input is returned. This is
+ * equivalent to evaluating each pattern in turn; however, literal patterns
+ * are resolved with a hash lookup, literal prefix patterns (e.g.
+ * <code>foo/bar/.*</code>) are resolved with a single walk of a prefix trie
+ * and the remaining patterns are combined into a single alternation so that
+ * only one regular expression is evaluated per input.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @param <T> The type of value mapped to each pattern.
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class PatternMatcher<T> {
+
+    /**
+     * Public constructor.
+     *
+     * @param patterns The patterns and their values in priority order.
+     */
+    public PatternMatcher(final Map<String, T> patterns) {
+        _patterns = new ArrayList<>(patterns.keySet());
+        _values = new ArrayList<>(patterns.values());
+
+        final List<String> combinable = new ArrayList<>();
+        final List<Integer> combinablePriorities = new ArrayList<>();
+        final List<Pattern> standalone = new ArrayList<>();
+        final List<Integer> standalonePriorities = new ArrayList<>();
+        for (int priority = 0; priority < _patterns.size(); ++priority) {
+            final String pattern = _patterns.get(priority);
+            // Validate every pattern even if it is matched without regex
+            Pattern.compile(pattern);
+            final String anchored = stripAnchors(pattern);
+            if (isLiteral(anchored)) {
+                _literals.putIfAbsent(anchored, priority);
+            } else if (anchored.endsWith(ANY_SUFFIX)
+                    && isLiteral(anchored.substring(0, anchored.length() - ANY_SUFFIX.length()))) {
+                _prefixes.insert(anchored.substring(0, anchored.length() - ANY_SUFFIX.length()), priority);
+            } else if (isCombinable(pattern)) {
+                combinable.add(pattern);
+                combinablePriorities.add(priority);
+            } else {
+                standalone.add(Pattern.compile(pattern));
+                standalonePriorities.add(priority);
+            }
+        }
+
+        if (combinable.isEmpty()) {
+            _combined = Optional.empty();
+        } else {
+            final StringBuilder combined = new StringBuilder();
+            for (int i = 0; i < combinable.size(); ++i) {
+                if (i > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?<").append(GROUP_PREFIX).append(i).append('>').append(combinable.get(i)).append(')');
+            }
+            _combined = Optional.of(Pattern.compile(combined.toString()));
+        }
+        _combinedPriorities = combinablePriorities.stream().mapToInt(Integer::intValue).toArray();
+        _standalone = standalone.toArray(new Pattern[standalone.size()]);
+        _standalonePriorities = standalonePriorities.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Find the value of the first pattern matching the input.
+     *
+     * @param input The input to match.
+     * @return The value of the first matching pattern or empty if none match.
+     */
+    public Optional<T> match(final String input) {
+        int best = Integer.MAX_VALUE;
+
+        final Integer literal = _literals.get(input);
+        if (literal != null) {
+            best = literal;
+        }
+        best = Math.min(best, _prefixes.match(input));
+
+        // Only evaluate regular expressions which could improve on the match
+        if (_combined.isPresent() && _combinedPriorities[0] < best) {
+            final Matcher matcher = _combined.get().matcher(input);
+            if (matcher.matches()) {
+                for (int i = 0; i < _combinedPriorities.length; ++i) {
+                    if (matcher.start(GROUP_PREFIX + i) >= 0) {
+                        best = Math.min(best, _combinedPriorities[i]);
+                        break;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < _standalone.length && _standalonePriorities[i] < best; ++i) {
+            if (_standalone[i].matcher(input).matches()) {
+                best = _standalonePriorities[i];
+                break;
+            }
+        }
+
+        if (best == Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+        return Optional.of(_values.get(best));
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("patterns", _patterns)
+                .put("literalCount", _literals.size())
+                .put("combinedCount", _combinedPriorities.length)
+                .put("standaloneCount", _standalone.length)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private static String stripAnchors(final String pattern) {
+        int start = 0;
+        int end = pattern.length();
+        if (end > 0 && pattern.charAt(0) == '^') {
+            start = 1;
+        }
+        if (end > start && pattern.charAt(end - 1) == '$' && (end < 2 || pattern.charAt(end - 2) != '\\')) {
+            end = end - 1;
+        }
+        return pattern.substring(start, end);
+    }
+
+    private static boolean isLiteral(final String pattern) {
+        for (int i = 0; i < pattern.length(); ++i) {
+            if (META_CHARACTERS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCombinable(final String pattern) {
+        // Patterns with back references, named groups or inline flags change
+        // meaning when embedded in a larger expression and are evaluated alone
+        for (int i = 0; i < pattern.length() - 1; ++i) {
+            final char current = pattern.charAt(i);
+            final char next = pattern.charAt(i + 1);
+            if (current == '\\') {
+                if (Character.isDigit(next) || next == 'k') {
+                    return false;
+                }
+                ++i;
+            } else if (current == '(' && next == '?') {
+                final char kind = i + 2 < pattern.length() ? pattern.charAt(i + 2) : ' ';
+                final char subKind = i + 3 < pattern.length() ? pattern.charAt(i + 3) : ' ';
+                final boolean lookaround = kind == '=' || kind == '!'
+                        || (kind == '<' && (subKind == '=' || subKind == '!'));
+                if (kind != ':' && !lookaround) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private final List<String> _patterns;
+    private final List<T> _values;
+    private final Map<String, Integer> _literals = new HashMap<>();
+    private final TrieNode _prefixes = new TrieNode();
+    private final Optional<Pattern> _combined;
+    private final int[] _combinedPriorities;
+    private final Pattern[] _standalone;
+    private final int[] _standalonePriorities;
+
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String ANY_SUFFIX = ".*";
+    private static final String GROUP_PREFIX = "pmg";
+
+    private static final class TrieNode {
+
+        public void insert(final String prefix, final int priority) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); ++i) {
+                node = node.getOrCreateChild(prefix.charAt(i));
+            }
+            node._priority = Math.min(node._priority, priority);
+        }
+
+        public int match(final String input) {
+            int best = _priority;
+            TrieNode node = this;
+            for (int i = 0; i < input.length(); ++i) {
+                node = node.getChild(input.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                best = Math.min(best, node._priority);
+            }
+            return best;
+        }
+
+        private TrieNode getChild(final char key) {
+            for (int i = 0; i < _keys.length; ++i) {
+                if (_keys[i] == key) {
+                    return _children[i];
+                }
+            }
+            return null;
+        }
+
+        private TrieNode getOrCreateChild(final char key) {
+            TrieNode child = getChild(key);
+            if (child == null) {
+                child = new TrieNode();
+                _keys = Arrays.copyOf(_keys, _keys.length + 1);
+                _children = Arrays.copyOf(_children, _children.length + 1);
+                _keys[_keys.length - 1] = key;
+                _children[_children.length - 1] = child;
+            }
+            return child;
+        }
+
+        private char[] _keys = new char[0];
+        private TrieNode[] _children = new TrieNode[0];
+        private int _priority = Integer.MAX_VALUE;
+    }
+}
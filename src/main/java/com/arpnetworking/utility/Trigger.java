@@ -27,4 +27,16 @@ public interface Trigger {
      * @throws InterruptedException thrown when the wait is interrupted.
      */
     void waitOnTrigger() throws InterruptedException;
+
+    /**
+     * Whether the resource the caller is waiting on may have changed during
+     * the most recent wait. Triggers which do not observe changes always
+     * return true.
+     *
+     * @return <code>False</code> if and only if the resource is known not to
+     * have changed.
+     */
+    default boolean mayHaveChanged() {
+        return true;
+    }
 }
@@ -16,15 +16,20 @@
 package com.arpnetworking.metrics.common.sources;
 
 import akka.actor.ActorRef;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.HttpResponse;
 import akka.http.javadsl.model.headers.RawHeader;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
 import com.arpnetworking.commons.observer.Observer;
 import com.arpnetworking.http.RequestReply;
 import com.arpnetworking.metrics.common.parsers.Parser;
 import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
 import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.test.TestBeanFactory;
+import com.arpnetworking.utility.Backlogged;
 import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
@@ -59,6 +64,7 @@ public final class CollectdHttpSourceV1Test extends BaseActorSourceTest {
                 .setActorName("collectd")
                 .setName("collectd_source")
                 .setParser(_parser)
+                .setMaxBodySize(MAX_BODY_SIZE)
                 .build();
         _source.attach(_observer);
     }
@@ -75,6 +81,65 @@ public final class CollectdHttpSourceV1Test extends BaseActorSourceTest {
         Assert.assertEquals("bar", captor.getValue().getHeaders().get("x-tag-foo").toArray()[0]);
     }
 
+    @Test
+    public void testParsesChunkedEntity() throws ExecutionException, ParsingException {
+        Mockito.when(_parser.parse(Mockito.any())).thenReturn(Collections.emptyList());
+        final HttpResponse response = dispatchRequest(HttpRequest.create().withEntity(HttpEntities.create(
+                ContentTypes.APPLICATION_JSON,
+                Source.from(Lists.newArrayList(ByteString.fromString("[{\"a\":"), ByteString.fromString("1}]"))))));
+        Assert.assertEquals(200, response.status().intValue());
+        final ArgumentCaptor<com.arpnetworking.metrics.mad.model.HttpRequest> captor =
+                ArgumentCaptor.forClass(com.arpnetworking.metrics.mad.model.HttpRequest.class);
+        Mockito.verify(_parser).parse(captor.capture());
+        // The chunks are handed to the parser as received rather than joined
+        Assert.assertEquals(2, captor.getValue().getBodyChunks().size());
+        Assert.assertArrayEquals("[{\"a\":1}]".getBytes(Charsets.UTF_8), captor.getValue().getBody());
+    }
+
+    @Test
+    public void test413OnLargeEntity() throws ParsingException {
+        final byte[] entity = new byte[MAX_BODY_SIZE + 1];
+        final HttpResponse response = dispatchRequest(HttpRequest.create().withEntity(entity));
+        Assert.assertEquals(413, response.status().intValue());
+        Mockito.verify(_parser, Mockito.never()).parse(Mockito.any());
+    }
+
+    @Test
+    public void test413OnLargeChunkedEntity() throws ParsingException {
+        final ByteString chunk = ByteString.fromArray(new byte[MAX_BODY_SIZE / 2 + 1]);
+        final HttpResponse response = dispatchRequest(HttpRequest.create().withEntity(HttpEntities.create(
+                ContentTypes.APPLICATION_OCTET_STREAM,
+                Source.from(Lists.newArrayList(chunk, chunk)))));
+        Assert.assertEquals(413, response.status().intValue());
+        Mockito.verify(_parser, Mockito.never()).parse(Mockito.any());
+    }
+
+    @Test
+    public void test429WhenOverloaded() throws ParsingException {
+        final Observer aggregator = Mockito.mock(
+                Observer.class,
+                Mockito.withSettings().extraInterfaces(Backlogged.class));
+        Mockito.when(((Backlogged) aggregator).getBacklog()).thenReturn(11L);
+        _source = new CollectdHttpSourceV1.Builder()
+                .setActorName("collectd")
+                .setName("collectd_source")
+                .setParser(_parser)
+                .setMaxBacklog(10L)
+                .setRetryAfterSeconds(5)
+                .build();
+        _source.attach(aggregator);
+
+        final HttpResponse response = dispatchRequest();
+        Assert.assertEquals(429, response.status().intValue());
+        Assert.assertEquals("5", response.getHeader("Retry-After").get().value());
+        Mockito.verify(_parser, Mockito.never()).parse(Mockito.any());
+
+        // Requests are accepted again once the backlog drains
+        Mockito.when(((Backlogged) aggregator).getBacklog()).thenReturn(10L);
+        Mockito.when(_parser.parse(Mockito.any())).thenReturn(Collections.emptyList());
+        Assert.assertEquals(200, dispatchRequest().status().intValue());
+    }
+
     @Test
     public void test200OnEmptyData() throws ExecutionException, ParsingException {
         Mockito.when(_parser.parse(Mockito.any())).thenReturn(Collections.emptyList());
@@ -99,10 +164,13 @@ public final class CollectdHttpSourceV1Test extends BaseActorSourceTest {
         Mockito.when(_parser.parse(Mockito.any())).thenReturn(builders);
         final HttpResponse response = dispatchRequest();
         Assert.assertEquals(200, response.status().intValue());
-        final ArgumentCaptor<Record> builderCaptor = ArgumentCaptor.forClass(Record.class);
-        Mockito.verify(_observer, Mockito.times(3)).notify(Mockito.any(), builderCaptor.capture());
+        // The records of a request are dispatched together in order
+        @SuppressWarnings("rawtypes")
+        final ArgumentCaptor<List> recordsCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(_observer).notify(Mockito.any(), recordsCaptor.capture());
 
-        final List<Record> constructed = builderCaptor.getAllValues();
+        final List<?> constructed = recordsCaptor.getValue();
+        Assert.assertEquals(3, constructed.size());
         Assert.assertEquals(record1, constructed.get(0));
         Assert.assertEquals(record2, constructed.get(1));
         Assert.assertEquals(record3, constructed.get(2));
@@ -131,4 +199,6 @@ public final class CollectdHttpSourceV1Test extends BaseActorSourceTest {
     @Mock
     private Parser<List<Record>, com.arpnetworking.metrics.mad.model.HttpRequest> _parser;
     private CollectdHttpSourceV1 _source;
+
+    private static final int MAX_BODY_SIZE = 1024;
 }
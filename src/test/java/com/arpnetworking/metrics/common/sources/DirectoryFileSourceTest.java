@@ -0,0 +1,251 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.sources;
+
+import com.arpnetworking.commons.observer.Observer;
+import com.arpnetworking.metrics.common.parsers.Parser;
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the <code>DirectoryFileSource</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class DirectoryFileSourceTest {
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        _observer = Mockito.mock(Observer.class);
+        _parser = Mockito.mock(Parser.class);
+    }
+
+    @Test
+    public void testTailMatchingFiles() throws IOException, ParsingException {
+        final Path directory = createDirectory("testTailMatchingFiles");
+        final Path fileA = Files.createFile(directory.resolve("a.log"));
+        final Path fileB = Files.createFile(directory.resolve("b.txt"));
+
+        final String expectedDataA = "Expected Data A";
+        final String expectedDataC = "Expected Data C";
+        final String unexpectedData = "Unexpected Data";
+        Mockito.when(_parser.parse(expectedDataA.getBytes(Charsets.UTF_8))).thenReturn(expectedDataA);
+        Mockito.when(_parser.parse(expectedDataC.getBytes(Charsets.UTF_8))).thenReturn(expectedDataC);
+        Mockito.when(_parser.parse(unexpectedData.getBytes(Charsets.UTF_8)))
+                .thenThrow(new AssertionError("should not tail files not matching the glob"));
+
+        final DirectoryFileSource<Object> source = new DirectoryFileSource.Builder<>()
+                .setName("testTailMatchingFiles")
+                .setDirectory(directory)
+                .setGlob("*.log")
+                .setParser(_parser)
+                .setInterval(Duration.millis(INTERVAL))
+                .setScanInterval(Duration.millis(INTERVAL))
+                .build();
+        source.attach(_observer);
+        source.start();
+
+        write(fileA, expectedDataA);
+        write(fileB, unexpectedData);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, expectedDataA);
+
+        // Files created after start are discovered
+        final Path fileC = Files.createFile(directory.resolve("c.log"));
+        write(fileC, expectedDataC);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, expectedDataC);
+        source.stop();
+
+        Mockito.verify(_observer, Mockito.never()).notify(source, unexpectedData);
+        Mockito.verify(_observer, Mockito.never()).notify(Matchers.eq(source), Matchers.isNull());
+    }
+
+    @Test
+    public void testResumeFromSharedStateFile() throws IOException, ParsingException {
+        final Path directory = createDirectory("testResumeFromSharedStateFile");
+        final Path state = _directory.resolve("testResumeFromSharedStateFile.state");
+        Files.deleteIfExists(state);
+        final Path fileA = Files.createFile(directory.resolve("a.log"));
+        final Path fileB = Files.createFile(directory.resolve("b.log"));
+
+        // NOTE: Files are identified by a hash of their first 512 bytes
+        final String initialDataA = "A" + Strings.repeat("-", 600);
+        final String initialDataB = "B" + Strings.repeat("-", 600);
+        final String expectedDataA = "Expected Data A";
+        final String expectedDataB = "Expected Data B";
+        Mockito.when(_parser.parse(initialDataA.getBytes(Charsets.UTF_8))).thenReturn(initialDataA);
+        Mockito.when(_parser.parse(initialDataB.getBytes(Charsets.UTF_8))).thenReturn(initialDataB);
+        Mockito.when(_parser.parse(expectedDataA.getBytes(Charsets.UTF_8))).thenReturn(expectedDataA);
+        Mockito.when(_parser.parse(expectedDataB.getBytes(Charsets.UTF_8))).thenReturn(expectedDataB);
+        write(fileA, initialDataA);
+        write(fileB, initialDataB);
+
+        final DirectoryFileSource.Builder<Object> builder = new DirectoryFileSource.Builder<>()
+                .setName("testResumeFromSharedStateFile")
+                .setDirectory(directory)
+                .setStateFile(state)
+                .setParser(_parser)
+                .setThreads(1)
+                .setInterval(Duration.millis(INTERVAL))
+                .setScanInterval(Duration.millis(INTERVAL));
+        final DirectoryFileSource<Object> source = builder.build();
+        source.attach(_observer);
+        source.start();
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, initialDataA);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, initialDataB);
+        source.stop();
+
+        write(fileA, expectedDataA);
+        write(fileB, expectedDataB);
+        final DirectoryFileSource<Object> resumedSource = builder.build();
+        resumedSource.attach(_observer);
+        resumedSource.start();
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(resumedSource, expectedDataA);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(resumedSource, expectedDataB);
+        resumedSource.stop();
+
+        Mockito.verify(_observer, Mockito.never()).notify(resumedSource, initialDataA);
+        Mockito.verify(_observer, Mockito.never()).notify(resumedSource, initialDataB);
+    }
+
+    @Test
+    public void testResumeFilesWithSharedHeader() throws IOException, ParsingException {
+        final Path directory = createDirectory("testResumeFilesWithSharedHeader");
+        final Path state = _directory.resolve("testResumeFilesWithSharedHeader.state");
+        Files.deleteIfExists(state);
+        final Path fileA = Files.createFile(directory.resolve("a.log"));
+        final Path fileB = Files.createFile(directory.resolve("b.log"));
+
+        // NOTE: Both files have the same first 512 bytes but different positions
+        final String header = "H" + Strings.repeat("-", 600);
+        final String initialDataB = "Initial Data B";
+        final String expectedDataA = "Expected Data A";
+        final String expectedDataB = "Expected Data B";
+        Mockito.when(_parser.parse(header.getBytes(Charsets.UTF_8))).thenReturn(header);
+        Mockito.when(_parser.parse(initialDataB.getBytes(Charsets.UTF_8))).thenReturn(initialDataB);
+        Mockito.when(_parser.parse(expectedDataA.getBytes(Charsets.UTF_8))).thenReturn(expectedDataA);
+        Mockito.when(_parser.parse(expectedDataB.getBytes(Charsets.UTF_8))).thenReturn(expectedDataB);
+        write(fileA, header);
+        write(fileB, header);
+        write(fileB, initialDataB);
+
+        final DirectoryFileSource.Builder<Object> builder = new DirectoryFileSource.Builder<>()
+                .setName("testResumeFilesWithSharedHeader")
+                .setDirectory(directory)
+                .setStateFile(state)
+                .setParser(_parser)
+                .setThreads(1)
+                .setInterval(Duration.millis(INTERVAL))
+                .setScanInterval(Duration.millis(INTERVAL));
+        final DirectoryFileSource<Object> source = builder.build();
+        source.attach(_observer);
+        source.start();
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT).times(2)).notify(source, header);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, initialDataB);
+        source.stop();
+
+        write(fileA, expectedDataA);
+        write(fileB, expectedDataB);
+        final DirectoryFileSource<Object> resumedSource = builder.build();
+        resumedSource.attach(_observer);
+        resumedSource.start();
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(resumedSource, expectedDataA);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(resumedSource, expectedDataB);
+        resumedSource.stop();
+
+        Mockito.verify(_observer, Mockito.never()).notify(resumedSource, header);
+        Mockito.verify(_observer, Mockito.never()).notify(resumedSource, initialDataB);
+    }
+
+    @Test
+    public void testRotatedFileNotReadAgain() throws IOException, ParsingException, InterruptedException {
+        final Path directory = createDirectory("testRotatedFileNotReadAgain");
+        final Path file = Files.createFile(directory.resolve("app.log"));
+
+        // NOTE: Files are identified by a hash of their first 512 bytes and their file key
+        final String initialData = "I" + Strings.repeat("-", 600);
+        final String rotatedData = "Rotated Data";
+        final String expectedData = "Expected Data";
+        Mockito.when(_parser.parse(initialData.getBytes(Charsets.UTF_8))).thenReturn(initialData);
+        Mockito.when(_parser.parse(rotatedData.getBytes(Charsets.UTF_8))).thenReturn(rotatedData);
+        Mockito.when(_parser.parse(expectedData.getBytes(Charsets.UTF_8))).thenReturn(expectedData);
+        write(file, initialData);
+        write(file, rotatedData);
+
+        final DirectoryFileSource<Object> source = new DirectoryFileSource.Builder<>()
+                .setName("testRotatedFileNotReadAgain")
+                .setDirectory(directory)
+                .setParser(_parser)
+                .setInterval(Duration.millis(INTERVAL))
+                .setScanInterval(Duration.millis(INTERVAL))
+                .build();
+        source.attach(_observer);
+        source.start();
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, rotatedData);
+        // Allow the tailer to record its position
+        Thread.sleep(INTERVAL);
+
+        // The rotated file still matches the glob and is discovered as a new file
+        Files.move(file, directory.resolve("app.log.1"));
+        Files.createFile(file);
+        write(file, expectedData);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, expectedData);
+        Thread.sleep(INTERVAL * 10);
+        source.stop();
+
+        Mockito.verify(_observer, Mockito.times(1)).notify(source, initialData);
+        Mockito.verify(_observer, Mockito.times(1)).notify(source, rotatedData);
+    }
+
+    private Path createDirectory(final String name) throws IOException {
+        final Path directory = _directory.resolve(name);
+        if (Files.exists(directory)) {
+            try (final Stream<Path> files = Files.list(directory)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+        return Files.createDirectories(directory);
+    }
+
+    private static void write(final Path file, final String line) throws IOException {
+        Files.write(
+                file,
+                (line + "\n").getBytes(Charsets.UTF_8),
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+    }
+
+    private Observer _observer;
+    private Parser<Object, byte[]> _parser;
+    private final Path _directory = Paths.get("./target/tmp/filter/DirectoryFileSourceTest");
+
+    private static final long INTERVAL = 50;
+    private static final int TIMEOUT = 10000;
+}
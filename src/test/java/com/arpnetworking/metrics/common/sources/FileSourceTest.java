@@ -19,6 +19,7 @@ import com.arpnetworking.commons.observer.Observer;
 import com.arpnetworking.metrics.common.parsers.Parser;
 import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
 import com.arpnetworking.metrics.common.tailer.InitialPosition;
+import com.arpnetworking.metrics.common.tailer.PositionStore;
 import com.arpnetworking.steno.LogBuilder;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
@@ -30,6 +31,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 
@@ -43,9 +45,12 @@ import java.nio.file.attribute.FileTime;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Tests for the FileSource class.
@@ -105,6 +110,140 @@ public class FileSourceTest {
         source.stop();
     }
 
+    @Test
+    public void testParseDataBatched() throws IOException, InterruptedException, ParsingException {
+        final Path file = _directory.resolve("testParseDataBatched.log");
+        final Path state = _directory.resolve("testParseDataBatched.log.state");
+        Files.deleteIfExists(file);
+        Files.createFile(file);
+        Files.deleteIfExists(state);
+
+        final String expectedData1 = "Expected Data 1";
+        final String expectedData2 = "Expected Data 2";
+        final String expectedData3 = "Expected Data 3";
+        Mockito.when(_parser.parse(expectedData1.getBytes(Charsets.UTF_8))).thenReturn(expectedData1);
+        Mockito.when(_parser.parse(expectedData2.getBytes(Charsets.UTF_8))).thenReturn(expectedData2);
+        Mockito.when(_parser.parse(expectedData3.getBytes(Charsets.UTF_8))).thenReturn(expectedData3);
+
+        final FileSource<Object> source = new FileSource<>(
+                new FileSource.Builder<>()
+                        .setSourceFile(file)
+                        .setStateFile(state)
+                        .setParser(_parser)
+                        .setBatchSize(2)
+                        .setInterval(Duration.millis(INTERVAL)),
+                _logger);
+
+        source.attach(_observer);
+        source.start();
+
+        Files.write(
+                file,
+                (expectedData1 + "\n" + expectedData2 + "\n" + expectedData3 + "\n").getBytes(Charsets.UTF_8),
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, Arrays.asList(expectedData1, expectedData2));
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, Collections.singletonList(expectedData3));
+        source.stop();
+    }
+
+    @Test
+    public void testParseDataParallel() throws IOException, InterruptedException, ParsingException {
+        final Path file = _directory.resolve("testParseDataParallel.log");
+        final Path state = _directory.resolve("testParseDataParallel.log.state");
+        Files.deleteIfExists(file);
+        Files.createFile(file);
+        Files.deleteIfExists(state);
+
+        final String expectedData1 = "Expected Data 1";
+        final String expectedData2 = "Expected Data 2";
+        final String expectedData3 = "Expected Data 3";
+        Mockito.when(_parser.parse(expectedData1.getBytes(Charsets.UTF_8))).thenReturn(expectedData1);
+        Mockito.when(_parser.parse(expectedData2.getBytes(Charsets.UTF_8))).thenReturn(expectedData2);
+        Mockito.when(_parser.parse(expectedData3.getBytes(Charsets.UTF_8))).thenReturn(expectedData3);
+
+        final FileSource<Object> source = new FileSource<>(
+                new FileSource.Builder<>()
+                        .setSourceFile(file)
+                        .setStateFile(state)
+                        .setParser(_parser)
+                        .setParserThreads(2)
+                        .setParseQueueSize(2)
+                        .setInterval(Duration.millis(INTERVAL)),
+                _logger);
+
+        source.attach(_observer);
+        source.start();
+
+        Files.write(
+                file,
+                (expectedData1 + "\n" + expectedData2 + "\n").getBytes(Charsets.UTF_8),
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, expectedData2);
+        Files.write(
+                file,
+                (expectedData3 + "\n").getBytes(Charsets.UTF_8),
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Mockito.verify(_observer, Mockito.timeout(TIMEOUT)).notify(source, expectedData3);
+        source.stop();
+
+        final InOrder inOrder = Mockito.inOrder(_observer);
+        inOrder.verify(_observer).notify(source, expectedData1);
+        inOrder.verify(_observer).notify(source, expectedData2);
+        inOrder.verify(_observer).notify(source, expectedData3);
+    }
+
+    @Test
+    public void testParseDataParallelCheckpointsAfterDispatch()
+            throws IOException, InterruptedException, ParsingException {
+        final Path file = _directory.resolve("testParseDataParallelCheckpointsAfterDispatch.log");
+        Files.deleteIfExists(file);
+        Files.createFile(file);
+
+        // The first line is long enough for the tailer to identify the file
+        final String expectedData1 = String.join("", Collections.nCopies(600, "1"));
+        final String expectedData2 = "Expected Data 2";
+        final byte[] contents = (expectedData1 + "\n" + expectedData2 + "\n").getBytes(Charsets.UTF_8);
+        Files.write(file, contents, StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+
+        final CountDownLatch parseLatch = new CountDownLatch(1);
+        Mockito.when(_parser.parse(expectedData1.getBytes(Charsets.UTF_8))).thenAnswer(invocation -> {
+            parseLatch.await();
+            return expectedData1;
+        });
+        Mockito.when(_parser.parse(expectedData2.getBytes(Charsets.UTF_8))).thenReturn(expectedData2);
+        final PositionStore positionStore = Mockito.mock(PositionStore.class);
+        Mockito.when(positionStore.getPosition(Matchers.anyString())).thenReturn(Optional.empty());
+
+        final FileSource<Object> source = new FileSource<>(
+                new FileSource.Builder<>()
+                        .setSourceFile(file)
+                        .setParser(_parser)
+                        .setParserThreads(2)
+                        .setInterval(Duration.millis(INTERVAL)),
+                _logger,
+                positionStore);
+
+        source.attach(_observer);
+        source.start();
+
+        // No position is stored while the lines are still being parsed
+        Mockito.verify(_parser, Mockito.timeout(TIMEOUT)).parse(expectedData1.getBytes(Charsets.UTF_8));
+        Thread.sleep(3 * SLEEP_INTERVAL);
+        Mockito.verify(positionStore, Mockito.never()).setPosition(Matchers.anyString(), Matchers.anyLong());
+        Mockito.verifyZeroInteractions(_observer);
+
+        // The position following the lines is stored once they are dispatched
+        parseLatch.countDown();
+        Mockito.verify(positionStore, Mockito.timeout(TIMEOUT))
+                .setPosition(Matchers.anyString(), Matchers.eq((long) contents.length));
+        source.stop();
+
+        final InOrder inOrder = Mockito.inOrder(_observer);
+        inOrder.verify(_observer).notify(source, expectedData1);
+        inOrder.verify(_observer).notify(source, expectedData2);
+    }
+
     @Test
     public void testTailFromEnd() throws IOException, InterruptedException, ParsingException {
         final Path file = _directory.resolve("testTailFromEnd.log");
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.tailer;
+
+import com.google.common.base.Charsets;
+import org.joda.time.Duration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Tests for the <code>LogPositionStore</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class LogPositionStoreTest {
+
+    @Before
+    public void setUp() throws IOException {
+        final Path directory = Files.createDirectories(Paths.get("./target/tmp/filter/LogPositionStoreTest"));
+        _file = directory.resolve("positions.log");
+        Files.deleteIfExists(_file);
+    }
+
+    @Test
+    public void testPersistPositions() {
+        final LogPositionStore store = new LogPositionStore.Builder()
+                .setFile(_file)
+                .setFlushInterval(Duration.ZERO)
+                .build();
+        Assert.assertEquals(Optional.empty(), store.getPosition("a"));
+        store.setPosition("a", 1);
+        store.setPosition("b", 2);
+        store.setPosition("a", 3);
+        Assert.assertEquals(Optional.of(3L), store.getPosition("a"));
+
+        // Positions are readable without closing the store
+        final LogPositionStore recoveredStore = new LogPositionStore.Builder().setFile(_file).build();
+        Assert.assertEquals(Optional.of(3L), recoveredStore.getPosition("a"));
+        Assert.assertEquals(Optional.of(2L), recoveredStore.getPosition("b"));
+        recoveredStore.close();
+        store.close();
+    }
+
+    @Test
+    public void testPersistOnClose() {
+        final LogPositionStore store = new LogPositionStore.Builder()
+                .setFile(_file)
+                .setFlushInterval(Duration.standardHours(1))
+                .build();
+        store.setPosition("a", 1);
+        store.close();
+
+        final LogPositionStore reopenedStore = new LogPositionStore.Builder().setFile(_file).build();
+        Assert.assertEquals(Optional.of(1L), reopenedStore.getPosition("a"));
+        reopenedStore.close();
+    }
+
+    @Test
+    public void testIgnorePartialRecord() throws IOException {
+        final long now = System.currentTimeMillis();
+        Files.write(
+                _file,
+                ("a 1 " + now + "\nb 2 " + now + "\ninvalid\na 3 " + now + "\nb 4").getBytes(Charsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        final LogPositionStore store = new LogPositionStore.Builder()
+                .setFile(_file)
+                .setFlushInterval(Duration.ZERO)
+                .build();
+        Assert.assertEquals(Optional.of(3L), store.getPosition("a"));
+        Assert.assertEquals(Optional.of(2L), store.getPosition("b"));
+
+        // Records appended after recovery are not joined to the partial record
+        store.setPosition("b", 5);
+        store.close();
+        final LogPositionStore reopenedStore = new LogPositionStore.Builder().setFile(_file).build();
+        Assert.assertEquals(Optional.of(3L), reopenedStore.getPosition("a"));
+        Assert.assertEquals(Optional.of(5L), reopenedStore.getPosition("b"));
+        reopenedStore.close();
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        final long now = System.currentTimeMillis();
+        final long expired = now - Duration.standardDays(2).getMillis();
+        Files.write(
+                _file,
+                ("a 1 " + expired + "\nb 2 " + now + "\n").getBytes(Charsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        final LogPositionStore store = new LogPositionStore.Builder()
+                .setFile(_file)
+                .setRetention(Duration.standardDays(1))
+                .build();
+        Assert.assertEquals(Optional.empty(), store.getPosition("a"));
+        Assert.assertEquals(Optional.of(2L), store.getPosition("b"));
+        store.close();
+    }
+
+    private Path _file;
+}
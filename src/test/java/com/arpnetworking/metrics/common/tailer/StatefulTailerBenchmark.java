@@ -0,0 +1,124 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.common.tailer;
+
+import com.google.common.base.Charsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading the lines of a file from start to end with
+ * <code>StatefulTailer</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StatefulTailerBenchmark {
+
+    @Setup
+    public void setUp() throws IOException {
+        _file = Files.createTempFile("StatefulTailerBenchmark", ".log");
+        try (BufferedWriter writer = Files.newBufferedWriter(_file, Charsets.UTF_8)) {
+            for (int i = 0; i < LINE_COUNT; ++i) {
+                writer.write("{\"id\":\"" + UUID.randomUUID() + "\",\"value\":" + i + ",\"padding\":\"" + PADDING + "\"}");
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_file);
+    }
+
+    @Benchmark
+    public long readLines() {
+        final CountingListener listener = new CountingListener();
+        final StatefulTailer tailer = new StatefulTailer(
+                new StatefulTailer.Builder()
+                        .setFile(_file)
+                        .setPositionStore(NO_POSITION_STORE)
+                        .setListener(listener),
+                () -> { });
+        tailer.run();
+        return listener._byteCount;
+    }
+
+    private Path _file;
+
+    private static final int LINE_COUNT = 100000;
+    private static final String PADDING = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final NoPositionStore NO_POSITION_STORE = new NoPositionStore();
+
+    private static final class CountingListener implements TailerListener {
+
+        @Override
+        public void initialize(final Tailer tailer) {
+            _tailer = tailer;
+        }
+
+        @Override
+        public void fileNotFound() {
+            _tailer.stop();
+        }
+
+        @Override
+        public void fileRotated() { }
+
+        @Override
+        public void fileOpened() { }
+
+        @Override
+        public void handle(final ByteBuffer line) {
+            _byteCount += line.remaining();
+            // Stop once the entire file has been read
+            if (++_lineCount == LINE_COUNT) {
+                _tailer.stop();
+            }
+        }
+
+        @Override
+        public void handle(final Throwable throwable) {
+            _tailer.stop();
+        }
+
+        private Tailer _tailer;
+        private int _lineCount = 0;
+        private long _byteCount = 0;
+    }
+}
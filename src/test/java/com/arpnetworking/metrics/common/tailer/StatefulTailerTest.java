@@ -20,6 +20,7 @@ import com.arpnetworking.utility.ManualSingleThreadedTrigger;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import org.joda.time.Duration;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -29,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -60,7 +62,7 @@ public class StatefulTailerTest {
         _readTrigger = new ManualSingleThreadedTrigger();
 
         final StatefulTailer.Builder builder = new StatefulTailer.Builder()
-                .setListener(_listener)
+                .setListener(new CopyingListener(_listener))
                 .setFile(_file)
                 .setPositionStore(_positionStore)
                 .setReadInterval(READ_INTERVAL);
@@ -91,6 +93,38 @@ public class StatefulTailerTest {
         }
     }
 
+    @Test
+    public void testPollWithReadLimit() throws IOException {
+        final BufferedWriter writer = Files.newBufferedWriter(_file, Charsets.UTF_8, StandardOpenOption.CREATE_NEW);
+        final List<String> expectedValues = Lists.newArrayList();
+        writeUuids(writer, 5000, expectedValues);
+        writer.close();
+
+        final StatefulTailer tailer = new StatefulTailer.Builder()
+                .setListener(new CopyingListener(_listener))
+                .setFile(_file)
+                .setPositionStore(_positionStore)
+                .setReadInterval(READ_INTERVAL)
+                .setReadLimit(1L)
+                .build();
+        int polls = 0;
+        while (!tailer.poll()) {
+            ++polls;
+        }
+        tailer.stop();
+        Assert.assertFalse(tailer.poll());
+
+        // The file is opened and then read one buffer at a time
+        Assert.assertTrue(polls > 2);
+        Mockito.verify(_listener).initialize(tailer);
+        Mockito.verify(_listener).fileOpened();
+        Mockito.verify(_listener, Mockito.never()).fileRotated();
+        Mockito.verify(_listener, Mockito.never()).handle(Mockito.any(Throwable.class));
+        for (final String expectedValue : expectedValues) {
+            Mockito.verify(_listener).handle(expectedValue.getBytes(Charsets.UTF_8));
+        }
+    }
+
     @Test
     public void testReadDataAfterFileCreation() throws IOException, InterruptedException {
 
@@ -154,6 +188,35 @@ public class StatefulTailerTest {
         }
     }
 
+    @Test
+    public void testReadDataSpanningReads() throws IOException, InterruptedException {
+        final BufferedWriter writer = Files.newBufferedWriter(_file, Charsets.UTF_8, StandardOpenOption.CREATE_NEW);
+        final List<String> expectedValues = Lists.newArrayList();
+        // Lines longer than the read buffer and terminators split across reads
+        for (int i = 0; i < 6; ++i) {
+            final StringBuilder value = new StringBuilder();
+            while (value.length() < 50000 + i) {
+                value.append(UUID.randomUUID().toString());
+            }
+            expectedValues.add(value.toString());
+            writer.write(value + (i % 2 == 0 ? "\r\n" : "\r"));
+        }
+        writeUuids(writer, 10, expectedValues);
+
+        writer.close();
+        _executor.execute(_tailer);
+        _readTrigger.waitForWait();
+        _readTrigger.disable();
+        _tailer.stop();
+        _executor.shutdown();
+        _executor.awaitTermination(EXECUTOR_TERMINATE_TIMEOUT.getMillis(), TimeUnit.MILLISECONDS);
+
+        Mockito.verify(_listener, Mockito.never()).handle(Mockito.any(Throwable.class));
+        for (final String expectedValue : expectedValues) {
+            Mockito.verify(_listener).handle(expectedValue.getBytes(Charsets.UTF_8));
+        }
+    }
+
     @Test
     public void testTailData() throws IOException, InterruptedException {
         final BufferedWriter writer = Files.newBufferedWriter(_file, Charsets.UTF_8, StandardOpenOption.CREATE_NEW);
@@ -982,12 +1045,52 @@ public class StatefulTailerTest {
         //}
     }
 
+    @Test
+    public void testReadDataCatchUp() throws IOException, InterruptedException {
+        // Ignore the first initialize invocation
+        Mockito.verify(_listener).initialize(_tailer);
+        final StatefulTailer.Builder builder = new StatefulTailer.Builder()
+                .setListener(new CopyingListener(_listener))
+                .setFile(_file)
+                .setPositionStore(_positionStore)
+                .setCatchUpThreshold(100L)
+                .setCatchUpWindowSize(256)
+                .setReadInterval(READ_INTERVAL);
+        _tailer = new StatefulTailer(builder, _readTrigger);
+
+        // Lines span the mapped windows and the remainder read normally
+        final BufferedWriter writer = Files.newBufferedWriter(_file, Charsets.UTF_8, StandardOpenOption.CREATE_NEW);
+        final List<String> expectedValues = Lists.newArrayList();
+        for (int i = 0; i < 30; ++i) {
+            final String value = UUID.randomUUID().toString();
+            expectedValues.add(value);
+            writer.write(value + (i % 3 == 0 ? "\r\n" : "\n"));
+        }
+        writer.close();
+
+        _executor.execute(_tailer);
+        _readTrigger.waitForWait();
+        _readTrigger.disable();
+        _tailer.stop();
+        _executor.shutdown();
+        _executor.awaitTermination(EXECUTOR_TERMINATE_TIMEOUT.getMillis(), TimeUnit.MILLISECONDS);
+
+        Mockito.verify(_listener, Mockito.never()).handle(Mockito.any(Throwable.class));
+        Mockito.verify(_listener).fileOpened();
+        Mockito.verify(_listener).initialize(_tailer);
+        for (final String expectedValue : expectedValues) {
+            Mockito.verify(_listener).handle(expectedValue.getBytes(Charsets.UTF_8));
+        }
+        Mockito.verifyNoMoreInteractions(_listener);
+        Assert.assertEquals(0, _tailer.getBytesBehind());
+    }
+
     @Test
     public void testTailFromEnd() throws IOException, InterruptedException {
         // Ignore the first initialize invocation
         Mockito.verify(_listener).initialize(_tailer);
         final StatefulTailer.Builder builder = new StatefulTailer.Builder()
-                .setListener(_listener)
+                .setListener(new CopyingListener(_listener))
                 .setFile(_file)
                 .setPositionStore(_positionStore)
                 .setInitialPosition(InitialPosition.END)
@@ -1032,7 +1135,7 @@ public class StatefulTailerTest {
         // Ignore the first initialize invocation
         Mockito.verify(_listener).initialize(_tailer);
         final StatefulTailer.Builder builder = new StatefulTailer.Builder()
-                .setListener(_listener)
+                .setListener(new CopyingListener(_listener))
                 .setFile(_file)
                 .setPositionStore(_positionStore)
                 .setInitialPosition(InitialPosition.END)
@@ -1106,10 +1209,73 @@ public class StatefulTailerTest {
     private ManualSingleThreadedTrigger _readTrigger;
 
     private final PositionStore _positionStore = Mockito.mock(PositionStore.class);
-    private final TailerListener _listener = Mockito.mock(TailerListener.class);
+    private final LineListener _listener = Mockito.mock(LineListener.class);
     private final ExecutorService _executor = Executors.newSingleThreadExecutor();
 
     private static final Duration READ_INTERVAL = Duration.millis(250);
     private static final Duration EXECUTOR_TERMINATE_TIMEOUT = Duration.standardMinutes(10);
     private static final Logger LOGGER = LoggerFactory.getLogger(StatefulTailerTest.class);
+
+    /**
+     * The events of <code>TailerListener</code> with each line as a copy.
+     */
+    private interface LineListener {
+
+        void initialize(Tailer tailer);
+
+        void fileNotFound();
+
+        void fileRotated();
+
+        void fileOpened();
+
+        void handle(byte[] line);
+
+        void handle(Throwable throwable);
+    }
+
+    /**
+     * Lines are views of the tailer's reused buffer so they are copied before
+     * being recorded. Flushes are not forwarded.
+     */
+    private static final class CopyingListener implements TailerListener {
+
+        CopyingListener(final LineListener listener) {
+            _listener = listener;
+        }
+
+        @Override
+        public void initialize(final Tailer tailer) {
+            _listener.initialize(tailer);
+        }
+
+        @Override
+        public void fileNotFound() {
+            _listener.fileNotFound();
+        }
+
+        @Override
+        public void fileRotated() {
+            _listener.fileRotated();
+        }
+
+        @Override
+        public void fileOpened() {
+            _listener.fileOpened();
+        }
+
+        @Override
+        public void handle(final ByteBuffer line) {
+            final byte[] copy = new byte[line.remaining()];
+            line.get(copy);
+            _listener.handle(copy);
+        }
+
+        @Override
+        public void handle(final Throwable throwable) {
+            _listener.handle(throwable);
+        }
+
+        private final LineListener _listener;
+    }
 }
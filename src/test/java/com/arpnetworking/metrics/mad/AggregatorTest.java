@@ -17,8 +17,13 @@ package com.arpnetworking.metrics.mad;
 
 import com.arpnetworking.commons.observer.Observable;
 import com.arpnetworking.commons.observer.Observer;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Units;
+import com.arpnetworking.metrics.mad.configuration.AggregationMode;
 import com.arpnetworking.metrics.mad.model.DefaultMetric;
 import com.arpnetworking.metrics.mad.model.DefaultRecord;
+import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.test.TestBeanFactory;
 import com.arpnetworking.tsdcore.model.AggregatedData;
 import com.arpnetworking.tsdcore.model.DefaultKey;
@@ -29,6 +34,7 @@ import com.arpnetworking.tsdcore.model.Quantity;
 import com.arpnetworking.tsdcore.sinks.Sink;
 import com.arpnetworking.tsdcore.statistics.Statistic;
 import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
@@ -369,6 +375,221 @@ public class AggregatorTest {
                                 .build()));
     }
 
+    @Test
+    public void testShardedMultipleHosts() throws InterruptedException {
+        final Aggregator shardedAggregator = new Aggregator.Builder()
+                .setSink(_sink)
+                .setCounterStatistics(Collections.singleton(MAX_STATISTIC))
+                .setTimerStatistics(Collections.singleton(MAX_STATISTIC))
+                .setGaugeStatistics(Collections.singleton(MAX_STATISTIC))
+                .setPeriods(Collections.singleton(Period.seconds(1)))
+                .setAggregationMode(AggregationMode.SHARDED)
+                .setShardCount(2)
+                .build();
+        shardedAggregator.launch();
+        try {
+            final DateTime start = DateTime.parse("2015-02-05T00:00:00Z");
+
+            shardedAggregator.notify(
+                    OBSERVABLE,
+                    TestBeanFactory.createRecordBuilder()
+                            .setTime(start)
+                            .setDimensions(
+                                    ImmutableMap.of(
+                                            Key.HOST_DIMENSION_KEY, "MyHostA",
+                                            Key.SERVICE_DIMENSION_KEY, "MyService",
+                                            Key.CLUSTER_DIMENSION_KEY, "MyCluster"))
+                            .setMetrics(ImmutableMap.of(
+                                    "MyCounter",
+                                    new DefaultMetric.Builder()
+                                            .setType(MetricType.COUNTER)
+                                            .setValues(Collections.singletonList(ONE))
+                                            .build()))
+                            .build());
+
+            shardedAggregator.notify(
+                    OBSERVABLE,
+                    TestBeanFactory.createRecordBuilder()
+                            .setTime(start)
+                            .setDimensions(
+                                    ImmutableMap.of(
+                                            Key.HOST_DIMENSION_KEY, "MyHostB",
+                                            Key.SERVICE_DIMENSION_KEY, "MyService",
+                                            Key.CLUSTER_DIMENSION_KEY, "MyCluster"))
+                            .setMetrics(ImmutableMap.of(
+                                    "MyCounter",
+                                    new DefaultMetric.Builder()
+                                            .setType(MetricType.COUNTER)
+                                            .setValues(Collections.singletonList(TWO))
+                                            .build()))
+                            .build());
+
+            // Wait for the period to close
+            Thread.sleep(3000);
+        } finally {
+            shardedAggregator.shutdown();
+        }
+
+        // Verify the aggregation was emitted
+        Mockito.verify(_sink, Mockito.times(2)).recordAggregateData(_periodicDataCaptor.capture());
+        Mockito.verifyNoMoreInteractions(_sink);
+
+        final List<AggregatedData> unifiedData = getCapturedData(
+                "MyCounter",
+                new DefaultKey(ImmutableMap.of(
+                        Key.HOST_DIMENSION_KEY, "MyHostA",
+                        Key.SERVICE_DIMENSION_KEY, "MyService",
+                        Key.CLUSTER_DIMENSION_KEY, "MyCluster")),
+                new DefaultKey(ImmutableMap.of(
+                        Key.HOST_DIMENSION_KEY, "MyHostB",
+                        Key.SERVICE_DIMENSION_KEY, "MyService",
+                        Key.CLUSTER_DIMENSION_KEY, "MyCluster")));
+
+        final AggregatedData.Builder builder = new AggregatedData.Builder()
+                .setIsSpecified(false)
+                .setPopulationSize(1L)
+                .setValue(new Quantity.Builder().setValue(1d).build());
+        Assert.assertThat(
+                unifiedData,
+                Matchers.containsInAnyOrder(
+                        builder
+                                .setStatistic(COUNT_STATISTIC)
+                                .build(),
+                        builder
+                                .setStatistic(COUNT_STATISTIC)
+                                .build(),
+                        builder
+                                .setStatistic(MAX_STATISTIC)
+                                .setValue(ONE)
+                                .setIsSpecified(true)
+                                .build(),
+                        builder
+                                .setStatistic(MAX_STATISTIC)
+                                .setValue(TWO)
+                                .setIsSpecified(true)
+                                .build()));
+    }
+
+    @Test
+    public void testBatchedMultipleHosts() throws InterruptedException {
+        final DateTime start = DateTime.parse("2015-02-05T00:00:00Z");
+        final ImmutableMap<String, String> dimensionsA = ImmutableMap.of(
+                Key.HOST_DIMENSION_KEY, "MyHostA",
+                Key.SERVICE_DIMENSION_KEY, "MyService",
+                Key.CLUSTER_DIMENSION_KEY, "MyCluster");
+        final ImmutableMap<String, String> dimensionsB = ImmutableMap.of(
+                Key.HOST_DIMENSION_KEY, "MyHostB",
+                Key.SERVICE_DIMENSION_KEY, "MyService",
+                Key.CLUSTER_DIMENSION_KEY, "MyCluster");
+
+        _aggregator.notify(
+                OBSERVABLE,
+                ImmutableList.of(
+                        createCounterRecord(start, dimensionsA, ONE),
+                        createCounterRecord(start, dimensionsB, TWO),
+                        "Not a Record",
+                        createCounterRecord(start, dimensionsA, TWO)));
+
+        // Wait for the period to close
+        Thread.sleep(3000);
+
+        // Verify the aggregation was emitted
+        Mockito.verify(_sink, Mockito.times(2)).recordAggregateData(_periodicDataCaptor.capture());
+        Mockito.verifyNoMoreInteractions(_sink);
+
+        final List<AggregatedData> unifiedData = getCapturedData(
+                "MyCounter",
+                new DefaultKey(dimensionsA),
+                new DefaultKey(dimensionsB));
+        Assert.assertThat(
+                unifiedData,
+                Matchers.containsInAnyOrder(
+                        new AggregatedData.Builder()
+                                .setStatistic(COUNT_STATISTIC)
+                                .setIsSpecified(false)
+                                .setPopulationSize(2L)
+                                .setValue(TWO)
+                                .build(),
+                        new AggregatedData.Builder()
+                                .setStatistic(MAX_STATISTIC)
+                                .setIsSpecified(true)
+                                .setPopulationSize(2L)
+                                .setValue(TWO)
+                                .build(),
+                        new AggregatedData.Builder()
+                                .setStatistic(COUNT_STATISTIC)
+                                .setIsSpecified(false)
+                                .setPopulationSize(1L)
+                                .setValue(ONE)
+                                .build(),
+                        new AggregatedData.Builder()
+                                .setStatistic(MAX_STATISTIC)
+                                .setIsSpecified(true)
+                                .setPopulationSize(1L)
+                                .setValue(TWO)
+                                .build()));
+    }
+
+    @Test
+    public void testPublishesCloseLatency() throws InterruptedException {
+        final MetricsFactory metricsFactory = Mockito.mock(MetricsFactory.class);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(metricsFactory.create()).thenReturn(metrics);
+        final Aggregator aggregator = new Aggregator.Builder()
+                .setName("My.Pipeline")
+                .setMetricsFactory(metricsFactory)
+                .setSink(_sink)
+                .setCounterStatistics(Collections.singleton(MAX_STATISTIC))
+                .setTimerStatistics(Collections.singleton(MAX_STATISTIC))
+                .setGaugeStatistics(Collections.singleton(MAX_STATISTIC))
+                .setPeriods(Collections.singleton(Period.seconds(1)))
+                .build();
+        aggregator.launch();
+        try {
+            aggregator.notify(
+                    OBSERVABLE,
+                    createCounterRecord(
+                            DateTime.parse("2015-02-05T00:00:00Z"),
+                            ImmutableMap.of(Key.HOST_DIMENSION_KEY, "MyHost"),
+                            ONE));
+
+            // The maximum close latency is published periodically once the bucket closes
+            Mockito.verify(_sink, Mockito.timeout(5000)).recordAggregateData(Mockito.any());
+            Mockito.verify(metrics, Mockito.timeout(5000).atLeastOnce()).setGauge(
+                    org.mockito.Matchers.eq("aggregator/My_Pipeline/close_latency"),
+                    org.mockito.Matchers.anyLong(),
+                    org.mockito.Matchers.eq(Units.MILLISECOND));
+            Mockito.verify(metrics, Mockito.timeout(5000).atLeastOnce()).incrementCounter(
+                    org.mockito.Matchers.eq("aggregator/My_Pipeline/statistics_cache/misses"),
+                    org.mockito.Matchers.longThat(Matchers.greaterThan(0L)));
+            Mockito.verify(metrics, Mockito.timeout(5000).atLeastOnce()).incrementCounter(
+                    org.mockito.Matchers.eq("aggregator/My_Pipeline/key_registry/misses"),
+                    org.mockito.Matchers.longThat(Matchers.greaterThan(0L)));
+            Mockito.verify(metrics, Mockito.timeout(5000).atLeastOnce()).setGauge(
+                    "aggregator/My_Pipeline/key_registry/size",
+                    1L);
+            Mockito.verify(metrics, Mockito.timeout(5000).atLeastOnce()).close();
+        } finally {
+            aggregator.shutdown();
+        }
+    }
+
+    private static Record createCounterRecord(
+            final DateTime time,
+            final ImmutableMap<String, String> dimensions,
+            final Quantity value) {
+        return TestBeanFactory.createRecordBuilder()
+                .setTime(time)
+                .setDimensions(dimensions)
+                .setMetrics(ImmutableMap.of(
+                        "MyCounter",
+                        new DefaultMetric.Builder()
+                                .setType(MetricType.COUNTER)
+                                .setValues(Collections.singletonList(value))
+                                .build()))
+                .build();
+    }
+
     private List<AggregatedData> getCapturedData(
             final String metricName,
             final Key dimensionSetA,
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.arpnetworking.metrics.mad.model.DefaultMetric;
+import com.arpnetworking.metrics.mad.model.DefaultRecord;
+import com.arpnetworking.metrics.mad.model.Metric;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.arpnetworking.tsdcore.model.DefaultKey;
+import com.arpnetworking.tsdcore.model.Key;
+import com.arpnetworking.tsdcore.model.MetricType;
+import com.arpnetworking.tsdcore.model.PeriodicData;
+import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.tsdcore.model.Unit;
+import com.arpnetworking.tsdcore.sinks.Sink;
+import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for closing a <code>Bucket</code> which computes and publishes
+ * the statistics of every metric it accumulated.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BucketCloseBenchmark {
+
+    @Setup(Level.Trial)
+    public void setUpRecords() {
+        final ImmutableMap.Builder<String, Metric> metrics = ImmutableMap.builder();
+        for (int i = 0; i < _metricCount; ++i) {
+            metrics.put(
+                    "timer_" + i,
+                    new DefaultMetric.Builder()
+                            .setType(MetricType.TIMER)
+                            .setValues(ImmutableList.of(
+                                    new Quantity.Builder().setValue(12d + i).setUnit(Unit.MILLISECOND).build(),
+                                    new Quantity.Builder().setValue(37d + i).setUnit(Unit.MILLISECOND).build(),
+                                    new Quantity.Builder().setValue(150d + i).setUnit(Unit.MILLISECOND).build()))
+                            .build());
+            metrics.put(
+                    "counter_" + i,
+                    new DefaultMetric.Builder()
+                            .setType(MetricType.COUNTER)
+                            .setValues(ImmutableList.of(new Quantity.Builder().setValue(1d).build()))
+                            .build());
+        }
+        _record = new DefaultRecord.Builder()
+                .setTime(START)
+                .setId(UUID.randomUUID().toString())
+                .setDimensions(DIMENSIONS)
+                .setMetrics(metrics.build())
+                .build();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        _bucket = new Bucket.Builder()
+                .setKey(new DefaultKey(DIMENSIONS))
+                .setSink(NO_OP_SINK)
+                .setStart(START)
+                .setPeriod(Period.minutes(1))
+                .setSpecifiedCounterStatistics(ImmutableSet.of(SUM_STATISTIC))
+                .setSpecifiedGaugeStatistics(ImmutableSet.of(MAX_STATISTIC))
+                .setSpecifiedTimerStatistics(ImmutableSet.of(MIN_STATISTIC, MAX_STATISTIC, TP99_STATISTIC))
+                .setDependentCounterStatistics(ImmutableSet.of())
+                .setDependentGaugeStatistics(ImmutableSet.of())
+                .setDependentTimerStatistics(ImmutableSet.of(HISTOGRAM_STATISTIC))
+                .setSpecifiedStatistics(ABSENT_STATISTICS_CACHE)
+                .setDependentStatistics(ABSENT_STATISTICS_CACHE)
+                .build();
+        for (int i = 0; i < RECORD_COUNT; ++i) {
+            _bucket.add(_record);
+        }
+    }
+
+    @Benchmark
+    public void close() {
+        _bucket.close();
+    }
+
+    @Param({"10", "100"})
+    public int _metricCount;
+    private Record _record;
+    private Bucket _bucket;
+
+    private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
+    private static final Statistic SUM_STATISTIC = STATISTIC_FACTORY.getStatistic("sum");
+    private static final Statistic MIN_STATISTIC = STATISTIC_FACTORY.getStatistic("min");
+    private static final Statistic MAX_STATISTIC = STATISTIC_FACTORY.getStatistic("max");
+    private static final Statistic TP99_STATISTIC = STATISTIC_FACTORY.getStatistic("tp99");
+    private static final Statistic HISTOGRAM_STATISTIC = STATISTIC_FACTORY.getStatistic("histogram");
+    private static final DateTime START = new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final int RECORD_COUNT = 100;
+    private static final ImmutableMap<String, String> DIMENSIONS = ImmutableMap.of(
+            Key.HOST_DIMENSION_KEY, "MyHost",
+            Key.SERVICE_DIMENSION_KEY, "MyService",
+            Key.CLUSTER_DIMENSION_KEY, "MyCluster");
+    private static final LoadingCache<String, Optional<ImmutableSet<Statistic>>> ABSENT_STATISTICS_CACHE =
+            CacheBuilder.newBuilder().build(new CacheLoader<String, Optional<ImmutableSet<Statistic>>>() {
+                @Override
+                public Optional<ImmutableSet<Statistic>> load(final String key) {
+                    return Optional.empty();
+                }
+            });
+    private static final Sink NO_OP_SINK = new Sink() {
+        @Override
+        public void recordAggregateData(final PeriodicData data) { }
+
+        @Override
+        public void close() { }
+    };
+}
@@ -206,6 +206,36 @@ public class BucketTest {
                                 .build()));
     }
 
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; ++i) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; ++j) {
+                    addData("MyCounter", MetricType.COUNTER, ONE, 10);
+                }
+            });
+            producers[i].start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        _bucket.close();
+
+        final ArgumentCaptor<PeriodicData> dataCaptor = ArgumentCaptor.forClass(PeriodicData.class);
+        Mockito.verify(_sink).recordAggregateData(dataCaptor.capture());
+
+        Assert.assertThat(
+                dataCaptor.getValue().getData().get("MyCounter"),
+                Matchers.hasItem(
+                        new AggregatedData.Builder()
+                                .setIsSpecified(false)
+                                .setPopulationSize(4000L)
+                                .setStatistic(COUNT_STATISTIC)
+                                .setValue(new Quantity.Builder().setValue(4000.0).build())
+                                .build()));
+    }
+
     @Test
     public void testToString() {
         final String asString = new Bucket.Builder()
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.arpnetworking.tsdcore.statistics.Accumulator;
+import com.arpnetworking.tsdcore.statistics.Calculator;
+import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the <code>CalculatorPlan</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CalculatorPlanTest {
+
+    @Test
+    public void testDependencyOrder() {
+        final CalculatorPlan plan = CalculatorPlan.of(
+                ImmutableSet.of(TP99_STATISTIC, MEAN_STATISTIC),
+                ImmutableSet.of());
+
+        Assert.assertEquals(CalculatorPlan.COUNT_INDEX, plan.indexOf(COUNT_STATISTIC));
+        Assert.assertEquals(5, plan.size());
+        Assert.assertTrue(plan.indexOf(HISTOGRAM_STATISTIC) < plan.indexOf(TP99_STATISTIC));
+        Assert.assertTrue(plan.indexOf(SUM_STATISTIC) < plan.indexOf(MEAN_STATISTIC));
+        Assert.assertEquals(-1, plan.indexOf(MAX_STATISTIC));
+    }
+
+    @Test
+    public void testSpecified() {
+        final CalculatorPlan plan = CalculatorPlan.of(
+                ImmutableSet.of(MEAN_STATISTIC),
+                ImmutableSet.of(SUM_STATISTIC, COUNT_STATISTIC));
+
+        Assert.assertTrue(plan.isSpecified(plan.indexOf(MEAN_STATISTIC)));
+        Assert.assertFalse(plan.isSpecified(plan.indexOf(SUM_STATISTIC)));
+        Assert.assertFalse(plan.isSpecified(plan.indexOf(COUNT_STATISTIC)));
+    }
+
+    @Test
+    public void testShared() {
+        final CalculatorPlan plan = CalculatorPlan.of(ImmutableSet.of(MAX_STATISTIC), ImmutableSet.of());
+        Assert.assertSame(plan, CalculatorPlan.of(ImmutableSet.of(MAX_STATISTIC), ImmutableSet.of()));
+        Assert.assertNotSame(plan, CalculatorPlan.of(ImmutableSet.of(MEAN_STATISTIC), ImmutableSet.of()));
+    }
+
+    @Test
+    public void testCalculatorsAndDependencies() {
+        final CalculatorPlan plan = CalculatorPlan.of(
+                ImmutableSet.of(MEAN_STATISTIC, MAX_STATISTIC),
+                ImmutableSet.of(SUM_STATISTIC, COUNT_STATISTIC));
+        final Calculator<?>[] calculators = plan.createCalculators();
+        Assert.assertEquals(plan.size(), calculators.length);
+        for (int i = 0; i < calculators.length; ++i) {
+            Assert.assertEquals(plan.getStatistic(i), calculators[i].getStatistic());
+        }
+
+        final Accumulator<?>[] accumulators = plan.getAccumulators(calculators);
+        Assert.assertEquals(3, accumulators.length);
+
+        final CalculatorPlan.Dependencies dependencies = new CalculatorPlan.Dependencies();
+        dependencies.reset(plan, calculators);
+        Assert.assertSame(calculators[plan.indexOf(SUM_STATISTIC)], dependencies.get(SUM_STATISTIC));
+        Assert.assertNull(dependencies.get(TP99_STATISTIC));
+        Assert.assertEquals(calculators.length, dependencies.size());
+    }
+
+    private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
+    private static final Statistic COUNT_STATISTIC = STATISTIC_FACTORY.getStatistic("count");
+    private static final Statistic SUM_STATISTIC = STATISTIC_FACTORY.getStatistic("sum");
+    private static final Statistic MEAN_STATISTIC = STATISTIC_FACTORY.getStatistic("mean");
+    private static final Statistic MAX_STATISTIC = STATISTIC_FACTORY.getStatistic("max");
+    private static final Statistic TP99_STATISTIC = STATISTIC_FACTORY.getStatistic("tp99");
+    private static final Statistic HISTOGRAM_STATISTIC = STATISTIC_FACTORY.getStatistic("histogram");
+}
@@ -15,12 +15,35 @@
  */
 package com.arpnetworking.metrics.mad;
 
+import com.arpnetworking.metrics.mad.model.DefaultMetric;
+import com.arpnetworking.metrics.mad.model.DefaultRecord;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.arpnetworking.tsdcore.model.DefaultKey;
+import com.arpnetworking.tsdcore.model.Key;
+import com.arpnetworking.tsdcore.model.MetricType;
+import com.arpnetworking.tsdcore.model.PeriodicData;
+import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.tsdcore.sinks.Sink;
+import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.Period;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Tests for the <code>PeriodWorker</code> class.
@@ -115,7 +138,85 @@ public class PeriodWorkerTest {
         Assert.assertEquals(new Duration(600000), PeriodWorker.getPeriodTimeout(Period.hours(1)));
     }
 
+    @Test
+    public void testLateDataNotReaggregated() {
+        final List<PeriodicData> data = processLateRecord(false);
+        Assert.assertEquals(2, data.size());
+        Assert.assertFalse(data.get(0).isLate());
+        Assert.assertFalse(data.get(1).isLate());
+    }
+
+    @Test
+    public void testLateDataReaggregated() {
+        final List<PeriodicData> data = processLateRecord(true);
+        Assert.assertEquals(2, data.size());
+        Assert.assertFalse(data.get(0).isLate());
+        Assert.assertTrue(data.get(1).isLate());
+        Assert.assertEquals(data.get(0).getStart(), data.get(1).getStart());
+        Assert.assertEquals(1, data.get(1).getData().get("MyCounter").iterator().next().getPopulationSize());
+    }
+
+    private List<PeriodicData> processLateRecord(final boolean reaggregateLateData) {
+        final Sink sink = Mockito.mock(Sink.class);
+        final PeriodWorker periodWorker = new PeriodWorker.Builder()
+                .setPeriod(Period.minutes(1))
+                .setTimeout(Duration.standardSeconds(5))
+                .setReaggregateLateData(reaggregateLateData)
+                .setBucketBuilder(new Bucket.Builder()
+                        .setKey(new DefaultKey(ImmutableMap.of(Key.HOST_DIMENSION_KEY, "MyHost")))
+                        .setSink(sink)
+                        .setPeriod(Period.minutes(1))
+                        .setSpecifiedCounterStatistics(ImmutableSet.of(SUM_STATISTIC))
+                        .setSpecifiedGaugeStatistics(ImmutableSet.of(SUM_STATISTIC))
+                        .setSpecifiedTimerStatistics(ImmutableSet.of(SUM_STATISTIC))
+                        .setDependentCounterStatistics(ImmutableSet.of())
+                        .setDependentGaugeStatistics(ImmutableSet.of())
+                        .setDependentTimerStatistics(ImmutableSet.of())
+                        .setSpecifiedStatistics(ABSENT_STATISTICS_CACHE)
+                        .setDependentStatistics(ABSENT_STATISTICS_CACHE))
+                .build();
+
+        // Close the bucket for the period at its expiration (end + timeout)
+        final DateTime start = PeriodWorker.getStartTime(DateTime.now(), Period.minutes(1));
+        final long expiration = start.getMillis() + 65000;
+        periodWorker.process(createRecord(start.plus(1000)), start.getMillis() + 1000);
+        periodWorker.process(createRecord(start.plus(2000)), start.getMillis() + 2000);
+        periodWorker.rotate(expiration);
+
+        // Process a record for the same period after it closed
+        periodWorker.process(createRecord(start.plus(3000)), expiration + 1000);
+        periodWorker.rotate(expiration + 6000);
+
+        final ArgumentCaptor<PeriodicData> captor = ArgumentCaptor.forClass(PeriodicData.class);
+        Mockito.verify(sink, Mockito.times(2)).recordAggregateData(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static Record createRecord(final DateTime time) {
+        return new DefaultRecord.Builder()
+                .setTime(time)
+                .setId(UUID.randomUUID().toString())
+                .setDimensions(ImmutableMap.of(Key.HOST_DIMENSION_KEY, "MyHost"))
+                .setMetrics(ImmutableMap.of(
+                        "MyCounter",
+                        new DefaultMetric.Builder()
+                                .setType(MetricType.COUNTER)
+                                .setValues(Collections.singletonList(new Quantity.Builder().setValue(1.0).build()))
+                                .build()))
+                .build();
+    }
+
     private static DateTime createDateTime(final int hour, final int minute, final int second, final int millisecond) {
         return new DateTime(2014, 1, 1, hour, minute, second, millisecond, DateTimeZone.UTC);
     }
+
+    private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
+    private static final Statistic SUM_STATISTIC = STATISTIC_FACTORY.getStatistic("sum");
+    private static final LoadingCache<String, Optional<ImmutableSet<Statistic>>> ABSENT_STATISTICS_CACHE =
+            CacheBuilder.newBuilder().build(new CacheLoader<String, Optional<ImmutableSet<Statistic>>>() {
+                @Override
+                public Optional<ImmutableSet<Statistic>> load(final String key) {
+                    return Optional.empty();
+                }
+            });
 }
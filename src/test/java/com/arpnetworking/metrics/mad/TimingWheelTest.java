@@ -0,0 +1,119 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Tests for the <code>TimingWheel</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void testExpire() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        wheel.schedule("a", 1015);
+        wheel.schedule("b", 1050);
+        wheel.schedule("c", 1051);
+        Assert.assertEquals(3, wheel.size());
+
+        final List<String> expired = Lists.newArrayList();
+        Assert.assertEquals(0, wheel.expire(1014, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(1, wheel.expire(1015, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("a"), expired);
+        Assert.assertEquals(1, wheel.expire(1050, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("a", "b"), expired);
+        Assert.assertEquals(1, wheel.expire(1060, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("a", "b", "c"), expired);
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void testExpireMultipleRotations() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        wheel.schedule("near", 1020);
+        wheel.schedule("far", 1250);
+
+        final List<String> expired = Lists.newArrayList();
+        Assert.assertEquals(1, wheel.expire(1100, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("near"), expired);
+        Assert.assertEquals(1, wheel.expire(5000, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("near", "far"), expired);
+    }
+
+    @Test
+    public void testExpireFromOverflow() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        wheel.schedule("far", 1500);
+        wheel.schedule("farther", 9000);
+        wheel.schedule("near", 1020);
+        Assert.assertEquals(3, wheel.size());
+        Assert.assertEquals(OptionalLong.of(1020), wheel.getNextDeadline());
+
+        final List<String> expired = Lists.newArrayList();
+        final List<Long> deadlines = Lists.newArrayList();
+        Assert.assertEquals(1, wheel.expire(1030, (value, deadline) -> {
+            expired.add(value);
+            deadlines.add(deadline);
+        }));
+        Assert.assertEquals(OptionalLong.of(1500), wheel.getNextDeadline());
+        for (long now = 1040; now < 1500; now += 10) {
+            Assert.assertEquals(0, wheel.expire(now, (value, deadline) -> expired.add(value)));
+        }
+        Assert.assertEquals(1, wheel.expire(1500, (value, deadline) -> {
+            expired.add(value);
+            deadlines.add(deadline);
+        }));
+        Assert.assertEquals(Lists.newArrayList("near", "far"), expired);
+        Assert.assertEquals(Lists.newArrayList(1020L, 1500L), deadlines);
+        Assert.assertEquals(OptionalLong.of(9000), wheel.getNextDeadline());
+
+        // Jumping past the deadline expires directly from the overflow
+        Assert.assertEquals(1, wheel.expire(20000, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("near", "far", "farther"), expired);
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void testScheduleInPast() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        wheel.schedule("past", 500);
+
+        final List<String> expired = Lists.newArrayList();
+        Assert.assertEquals(1, wheel.expire(1000, (value, deadline) -> expired.add(value)));
+        Assert.assertEquals(Lists.newArrayList("past"), expired);
+    }
+
+    @Test
+    public void testGetNextDeadline() {
+        final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        Assert.assertEquals(OptionalLong.empty(), wheel.getNextDeadline());
+
+        wheel.schedule("far", 1500);
+        Assert.assertEquals(OptionalLong.of(1500), wheel.getNextDeadline());
+
+        wheel.schedule("near", 1035);
+        wheel.schedule("nearer", 1033);
+        Assert.assertEquals(OptionalLong.of(1033), wheel.getNextDeadline());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad.parsers;
+
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.google.common.io.Resources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for parsing query log entries of each supported version with
+ * <code>JsonToRecordParser</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JsonToRecordParserBenchmark {
+
+    @Setup
+    public void setUp() throws IOException {
+        _data = Resources.toByteArray(
+                Resources.getResource(
+                        JsonToRecordParserBenchmark.class,
+                        "QueryLogParserV" + _version + "Test/testParse.json"));
+        _parser = new JsonToRecordParser.Builder()
+                .setDefaultCluster("MyCluster")
+                .setDefaultService("MyService")
+                .setDefaultHost("MyHost")
+                .build();
+    }
+
+    @Benchmark
+    public Record parse() throws ParsingException {
+        return _parser.parse(_data);
+    }
+
+    @Param({"2c", "2d", "2e", "2f", "2fSteno", "2g"})
+    public String _version;
+    private byte[] _data;
+    private JsonToRecordParser _parser;
+}
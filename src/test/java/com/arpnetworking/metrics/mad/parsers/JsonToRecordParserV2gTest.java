@@ -15,12 +15,14 @@
  */
 package com.arpnetworking.metrics.mad.parsers;
 
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
 import com.arpnetworking.metrics.mad.model.Metric;
 import com.arpnetworking.metrics.mad.model.Record;
 import com.arpnetworking.tsdcore.model.Key;
 import com.arpnetworking.tsdcore.model.Quantity;
 import com.arpnetworking.tsdcore.model.Unit;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.io.Resources;
 import org.hamcrest.Matchers;
 import org.joda.time.DateTime;
@@ -28,6 +30,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Optional;
 
@@ -413,6 +417,50 @@ public class JsonToRecordParserV2gTest {
         Assert.assertTrue(c1.getValues().isEmpty());
     }
 
+    @Test
+    public void testStreamMatchesTree() throws IOException {
+        final JsonToRecordParser parser = new JsonToRecordParser.Builder().build();
+        for (final String fileName : new String[] {"testParse.json", "testEmpty.json", "testPresentDimensions.json",
+                "testEmptyValues.json", "testNullCounters.json", "testUpperCaseVersion.json"}) {
+            final byte[] data = readResource("QueryLogParserV2gTest/" + fileName);
+            final Optional<Record> record = parser.parseV2gStream(data, 0, data.length);
+            Assert.assertTrue(fileName, record.isPresent());
+            Assert.assertEquals(fileName, parser.parseV2gLogLine(OBJECT_MAPPER.readTree(data)), record.get());
+        }
+    }
+
+    @Test
+    public void testStreamDefersToTree() throws IOException {
+        final JsonToRecordParser parser = new JsonToRecordParser.Builder().build();
+        for (final String fileName : new String[] {"testMissingId.json", "testEmptyDate.json", "testBadCounters.json",
+                "testNullTimerValues.json", "testBadGaugeValuesValue.json",
+                "testBadTimerValuesValueDenominatorUnitsName.json", "testNaNValues.json"}) {
+            final byte[] data = readResource("QueryLogParserV2gTest/" + fileName);
+            Assert.assertFalse(fileName, parser.parseV2gStream(data, 0, data.length).isPresent());
+        }
+        final byte[] version2f = readResource("QueryLogParserV2fTest/testParse.json");
+        Assert.assertFalse(parser.parseV2gStream(version2f, 0, version2f.length).isPresent());
+        final byte[] nonJson = "not json".getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(parser.parseV2gStream(nonJson, 0, nonJson.length).isPresent());
+    }
+
+    @Test
+    public void testParseBuffer() throws ParsingException, IOException {
+        final JsonToRecordParser parser = new JsonToRecordParser.Builder().build();
+        final byte[] data = readResource("QueryLogParserV2gTest/testParse.json");
+        // Surround the record with other content as in a tailer's read buffer
+        final ByteBuffer buffer = ByteBuffer.allocate(data.length + 20);
+        buffer.put("{\"other\":\"line\"}\n".getBytes(StandardCharsets.UTF_8));
+        final int start = buffer.position();
+        buffer.put(data);
+        buffer.put((byte) '\n');
+        buffer.limit(start + data.length);
+        buffer.position(start);
+
+        Assert.assertEquals(parser.parse(data), parser.parse(buffer));
+        Assert.assertEquals(parser.parse(data), parser.parse(buffer.slice()));
+    }
+
     private static void assertValue(final Quantity quantity, final double value) {
         assertValue(quantity, value, Optional.empty());
     }
@@ -434,6 +482,12 @@ public class JsonToRecordParserV2gTest {
     private static Record parseRecord(final String fileName) throws ParsingException, IOException {
         return new JsonToRecordParser.Builder()
                 .build()
-                .parse(Resources.toByteArray(Resources.getResource(JsonToRecordParserV2gTest.class, fileName)));
+                .parse(readResource(fileName));
     }
+
+    private static byte[] readResource(final String fileName) throws IOException {
+        return Resources.toByteArray(Resources.getResource(JsonToRecordParserV2gTest.class, fileName));
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getInstance();
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad.parsers;
+
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+import com.arpnetworking.metrics.mad.model.HttpRequest;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.google.common.collect.ImmutableMultimap;
+import com.inscopemetrics.client.protocol.ClientV1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for parsing records of many samples with
+ * <code>ProtobufToRecordParser</code>. Throughput is reported in samples
+ * per second.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProtobufToRecordParserBenchmark {
+
+    @Setup
+    public void setUp() {
+        final ClientV1.MetricEntry.Builder timer = ClientV1.MetricEntry.newBuilder().setName("timer");
+        for (int i = 0; i < SAMPLES; ++i) {
+            timer.addSamples(ProtobufToRecordParserTest.createSample(
+                    i,
+                    ClientV1.Unit.Scale.MILLI,
+                    ClientV1.Unit.Type.SECOND));
+        }
+        final ClientV1.RecordSet recordSet = ClientV1.RecordSet.newBuilder()
+                .addRecords(ClientV1.Record.newBuilder()
+                        .setId(ProtobufToRecordParserTest.createId(UUID.randomUUID()))
+                        .setEndMillisSinceEpoch(System.currentTimeMillis())
+                        .addDimensions(ClientV1.DimensionEntry.newBuilder().setName("host").setValue("MyHost"))
+                        .addDimensions(ClientV1.DimensionEntry.newBuilder().setName("service").setValue("MyService"))
+                        .addDimensions(ClientV1.DimensionEntry.newBuilder().setName("cluster").setValue("MyCluster"))
+                        .addTimers(timer))
+                .build();
+        _request = new HttpRequest(ImmutableMultimap.of(), recordSet.toByteArray());
+        _parser = new ProtobufToRecordParser();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public List<Record> parse() throws ParsingException {
+        return _parser.parse(_request);
+    }
+
+    private HttpRequest _request;
+    private ProtobufToRecordParser _parser;
+
+    private static final int SAMPLES = 1000;
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad.parsers;
+
+import com.arpnetworking.metrics.common.parsers.exceptions.ParsingException;
+import com.arpnetworking.metrics.mad.model.HttpRequest;
+import com.arpnetworking.metrics.mad.model.Metric;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.arpnetworking.tsdcore.model.MetricType;
+import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.tsdcore.model.Unit;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.protobuf.ByteString;
+import com.inscopemetrics.client.protocol.ClientV1;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tests for the <code>ProtobufToRecordParser</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class ProtobufToRecordParserTest {
+
+    @Test
+    public void testParse() throws ParsingException {
+        final UUID id = UUID.randomUUID();
+        final ClientV1.RecordSet recordSet = ClientV1.RecordSet.newBuilder()
+                .addRecords(ClientV1.Record.newBuilder()
+                        .setId(createId(id))
+                        .setEndMillisSinceEpoch(1500000000000L)
+                        .addDimensions(ClientV1.DimensionEntry.newBuilder().setName("host").setValue("MyHost"))
+                        .addAnnotations(ClientV1.AnnotationEntry.newBuilder().setName("foo").setValue("bar"))
+                        .addTimers(ClientV1.MetricEntry.newBuilder()
+                                .setName("timer")
+                                .addSamples(createSample(1.0, ClientV1.Unit.Scale.MILLI, ClientV1.Unit.Type.SECOND))
+                                .addSamples(createSample(2.0, ClientV1.Unit.Scale.UNIT, ClientV1.Unit.Type.SECOND)))
+                        .addCounters(ClientV1.MetricEntry.newBuilder()
+                                .setName("counter")
+                                .addSamples(ClientV1.DoubleQuantity.newBuilder().setValue(3.0))))
+                .build();
+
+        final List<Record> records = new ProtobufToRecordParser().parse(
+                new HttpRequest(ImmutableMultimap.of(), recordSet.toByteArray()));
+
+        Assert.assertEquals(1, records.size());
+        final Record record = records.get(0);
+        Assert.assertEquals(id.toString(), record.getId());
+        Assert.assertEquals(new DateTime(1500000000000L), record.getTime());
+        Assert.assertEquals("MyHost", record.getDimensions().get("host"));
+        Assert.assertEquals("bar", record.getAnnotations().get("foo"));
+
+        final Metric timer = record.getMetrics().get("timer");
+        Assert.assertEquals(MetricType.TIMER, timer.getType());
+        Assert.assertEquals(
+                Arrays.asList(
+                        new Quantity.Builder().setValue(1.0).setUnit(Unit.MILLISECOND).build(),
+                        new Quantity.Builder().setValue(2.0).setUnit(Unit.SECOND).build()),
+                timer.getValues());
+        final Metric counter = record.getMetrics().get("counter");
+        Assert.assertEquals(MetricType.COUNTER, counter.getType());
+        Assert.assertEquals(
+                Arrays.asList(new Quantity.Builder().setValue(3.0).build()),
+                counter.getValues());
+    }
+
+    @Test
+    public void testParseChunked() throws ParsingException {
+        final UUID id = UUID.randomUUID();
+        final byte[] body = ClientV1.RecordSet.newBuilder()
+                .addRecords(ClientV1.Record.newBuilder()
+                        .setId(createId(id))
+                        .setEndMillisSinceEpoch(1500000000000L)
+                        .addCounters(ClientV1.MetricEntry.newBuilder()
+                                .setName("counter")
+                                .addSamples(ClientV1.DoubleQuantity.newBuilder().setValue(3.0))))
+                .build()
+                .toByteArray();
+
+        // Split the body mid-record so the parser must decode across chunks
+        final int split = body.length / 2;
+        final List<Record> records = new ProtobufToRecordParser().parse(
+                new HttpRequest(
+                        ImmutableMultimap.of(),
+                        Arrays.asList(
+                                ByteBuffer.wrap(body, 0, split),
+                                ByteBuffer.wrap(body, split, body.length - split))));
+
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(id.toString(), records.get(0).getId());
+        Assert.assertEquals(
+                Arrays.asList(new Quantity.Builder().setValue(3.0).build()),
+                records.get(0).getMetrics().get("counter").getValues());
+    }
+
+    @Test(expected = ParsingException.class)
+    public void testParseInvalidData() throws ParsingException {
+        new ProtobufToRecordParser().parse(
+                new HttpRequest(ImmutableMultimap.of(), new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff}));
+    }
+
+    /* package private */ static ByteString createId(final UUID id) {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        return ByteString.copyFrom(buffer.array());
+    }
+
+    /* package private */ static ClientV1.DoubleQuantity createSample(
+            final double value,
+            final ClientV1.Unit.Scale scale,
+            final ClientV1.Unit.Type type) {
+        return ClientV1.DoubleQuantity.newBuilder()
+                .setValue(value)
+                .setUnit(ClientV1.CompoundUnit.newBuilder()
+                        .addNumerator(ClientV1.Unit.newBuilder().setScale(scale).setType(type)))
+                .build();
+    }
+}
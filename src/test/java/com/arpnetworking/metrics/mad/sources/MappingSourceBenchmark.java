@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.mad.sources;
+
+import com.arpnetworking.commons.observer.Observable;
+import com.arpnetworking.commons.observer.Observer;
+import com.arpnetworking.metrics.common.sources.Source;
+import com.arpnetworking.metrics.mad.model.DefaultMetric;
+import com.arpnetworking.metrics.mad.model.Metric;
+import com.arpnetworking.metrics.mad.model.Record;
+import com.arpnetworking.test.TestBeanFactory;
+import com.arpnetworking.tsdcore.model.MetricType;
+import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.tsdcore.model.Unit;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks for rewriting the metrics of <code>Record</code> instances
+ * with <code>MappingSource</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MappingSourceBenchmark {
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final Map<String, List<String>> findAndReplace = ImmutableMap.of(
+                "foo/([^/]*)/bar", ImmutableList.of("foo/bar"),
+                "cat/([^/]*)/dog", ImmutableList.of("cat/dog", "cat/dog/$1"),
+                "^(.*)_latency$", ImmutableList.of("latency/$1"));
+        final MappingSource mappingSource = new MappingSource.Builder()
+                .setName("MappingSourceBenchmark")
+                .setSource(Mockito.mock(Source.class))
+                .setFindAndReplace(findAndReplace)
+                .build();
+        mappingSource.attach(new BlackholeObserver(blackhole));
+
+        final Map<Pattern, List<String>> compiledFindAndReplace = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, List<String>> entry : findAndReplace.entrySet()) {
+            compiledFindAndReplace.put(Pattern.compile(entry.getKey()), entry.getValue());
+        }
+        _observer = new MappingSource.MappingObserver(mappingSource, compiledFindAndReplace);
+
+        final ImmutableMap.Builder<String, Metric> metrics = ImmutableMap.builder();
+        for (int i = 0; i < METRIC_COUNT; ++i) {
+            final String name;
+            switch (i % 4) {
+                case 0:
+                    name = "foo/" + i + "/bar";
+                    break;
+                case 1:
+                    name = "cat/" + i + "/dog";
+                    break;
+                case 2:
+                    name = "request_" + i + "_latency";
+                    break;
+                default:
+                    name = "unmapped/" + i;
+            }
+            metrics.put(
+                    name,
+                    new DefaultMetric.Builder()
+                            .setType(MetricType.TIMER)
+                            .setValues(ImmutableList.of(
+                                    new Quantity.Builder().setValue((double) i).setUnit(Unit.MILLISECOND).build()))
+                            .build());
+        }
+        _record = TestBeanFactory.createRecordBuilder()
+                .setMetrics(metrics.build())
+                .build();
+    }
+
+    @Benchmark
+    public void map() {
+        _observer.notify(OBSERVABLE, _record);
+    }
+
+    private MappingSource.MappingObserver _observer;
+    private Record _record;
+
+    private static final int METRIC_COUNT = 20;
+    private static final Observable OBSERVABLE = new Observable() {
+        @Override
+        public void attach(final Observer observer) {
+        }
+
+        @Override
+        public void detach(final Observer observer) {
+        }
+    };
+
+    private static final class BlackholeObserver implements Observer {
+
+        private BlackholeObserver(final Blackhole blackhole) {
+            _blackhole = blackhole;
+        }
+
+        @Override
+        public void notify(final Observable observable, final Object event) {
+            _blackhole.consume(event);
+        }
+
+        private final Blackhole _blackhole;
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.test;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH benchmark results against baseline results recorded on the
+ * same host and reports benchmarks whose score regressed by more than a
+ * threshold. The baseline is replaced with the results when updating.
+ *
+ * Usage: BenchmarkBaseline results baseline threshold update failOnRegression
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class BenchmarkBaseline {
+
+    /**
+     * Entry point.
+     *
+     * @param args The results file, baseline file, regression threshold as a
+     * fraction, whether to update the baseline and whether to fail on regression.
+     * @throws IOException if the results or baseline cannot be read or written.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 5) {
+            throw new IllegalArgumentException(
+                    "Usage: BenchmarkBaseline results baseline threshold update failOnRegression");
+        }
+        final Path results = Paths.get(args[0]);
+        final Path baseline = Paths.get(args[1]);
+        final double threshold = Double.parseDouble(args[2]);
+        final boolean update = Boolean.parseBoolean(args[3]);
+        final boolean failOnRegression = Boolean.parseBoolean(args[4]);
+
+        if (!Files.exists(results)) {
+            LOGGER.warn()
+                    .setMessage("No benchmark results to compare; run with the jmhBenchmark profile")
+                    .addData("results", results)
+                    .log();
+            return;
+        }
+        if (update) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(results, baseline, StandardCopyOption.REPLACE_EXISTING);
+            LOGGER.info()
+                    .setMessage("Updated benchmark baseline")
+                    .addData("baseline", baseline)
+                    .log();
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            LOGGER.warn()
+                    .setMessage("No benchmark baseline to compare against")
+                    .addData("baseline", baseline)
+                    .log();
+            return;
+        }
+
+        final Map<String, JsonNode> baselineScores = readScores(baseline);
+        final Map<String, JsonNode> resultScores = readScores(results);
+        int regressions = 0;
+        for (final Map.Entry<String, JsonNode> result : resultScores.entrySet()) {
+            final JsonNode baselineResult = baselineScores.get(result.getKey());
+            if (baselineResult == null) {
+                LOGGER.info()
+                        .setMessage("New benchmark")
+                        .addData("benchmark", result.getKey())
+                        .addData("score", getScore(result.getValue()))
+                        .log();
+                continue;
+            }
+
+            // Throughput improves as the score increases; all other modes
+            // measure time which improves as the score decreases
+            final double baselineScore = getScore(baselineResult);
+            final double score = getScore(result.getValue());
+            final double change = (score - baselineScore) / baselineScore;
+            final boolean isThroughput = THROUGHPUT_MODE.equals(result.getValue().path("mode").asText());
+            final boolean isRegression = isThroughput ? change < -threshold : change > threshold;
+            if (isRegression) {
+                ++regressions;
+                LOGGER.warn()
+                        .setMessage("Benchmark regressed")
+                        .addData("benchmark", result.getKey())
+                        .addData("baselineScore", baselineScore)
+                        .addData("score", score)
+                        .addData("change", change)
+                        .addData("unit", result.getValue().path("primaryMetric").path("scoreUnit").asText())
+                        .log();
+            } else {
+                LOGGER.info()
+                        .setMessage("Benchmark within threshold")
+                        .addData("benchmark", result.getKey())
+                        .addData("baselineScore", baselineScore)
+                        .addData("score", score)
+                        .addData("change", change)
+                        .log();
+            }
+        }
+
+        if (regressions > 0 && failOnRegression) {
+            throw new IllegalStateException(String.format(
+                    "Benchmarks regressed beyond threshold; regressions=%d, threshold=%s",
+                    regressions,
+                    threshold));
+        }
+    }
+
+    private static Map<String, JsonNode> readScores(final Path file) throws IOException {
+        final Map<String, JsonNode> scores = Maps.newLinkedHashMap();
+        for (final JsonNode result : OBJECT_MAPPER.readTree(file.toFile())) {
+            scores.put(getName(result), result);
+        }
+        return scores;
+    }
+
+    private static String getName(final JsonNode result) {
+        // Parameterized benchmarks are distinguished by their parameter values
+        final StringBuilder name = new StringBuilder(result.path("benchmark").asText());
+        final Map<String, String> params = new TreeMap<>();
+        final Iterator<Map.Entry<String, JsonNode>> iterator = result.path("params").fields();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, JsonNode> param = iterator.next();
+            params.put(param.getKey(), param.getValue().asText());
+        }
+        if (!params.isEmpty()) {
+            name.append(params);
+        }
+        name.append(':').append(result.path("mode").asText());
+        return name.toString();
+    }
+
+    private static double getScore(final JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private BenchmarkBaseline() {}
+
+    private static final String THROUGHPUT_MODE = "thrpt";
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getInstance();
+    private static final Logger LOGGER = LoggerFactory.getLogger(BenchmarkBaseline.class);
+}
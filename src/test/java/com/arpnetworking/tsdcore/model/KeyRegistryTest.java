@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.model;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the <code>KeyRegistry</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class KeyRegistryTest {
+
+    @Test
+    public void testIntern() {
+        final KeyRegistry registry = new KeyRegistry.Builder().build();
+        final Key key = registry.intern(createDimensions("MyHost"));
+
+        Assert.assertSame(key, registry.intern(createDimensions("MyHost")));
+        Assert.assertEquals(new DefaultKey(createDimensions("MyHost")), key);
+        Assert.assertEquals(new DefaultKey(createDimensions("MyHost")).hashCode(), key.hashCode());
+        Assert.assertNotEquals(key, registry.intern(createDimensions("OtherHost")));
+        Assert.assertEquals(2, registry.size());
+        Assert.assertEquals(1, registry.stats().hitCount());
+        Assert.assertEquals(2, registry.stats().missCount());
+    }
+
+    @Test
+    public void testInternedStrings() {
+        final KeyRegistry registry = new KeyRegistry.Builder().build();
+        final Key keyA = registry.intern(createDimensions("MyHostA"));
+        final Key keyB = registry.intern(createDimensions("MyHostB"));
+
+        Assert.assertSame(keyA.getService(), keyB.getService());
+        Assert.assertSame(keyA.getCluster(), keyB.getCluster());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        final KeyRegistry registry = new KeyRegistry.Builder()
+                .setMaximumSize(1L)
+                .build();
+        final Key key = registry.intern(createDimensions("MyHostA"));
+        registry.intern(createDimensions("MyHostB"));
+
+        Assert.assertEquals(1, registry.size());
+        final Key replacementKey = registry.intern(createDimensions("MyHostA"));
+        Assert.assertEquals(key, replacementKey);
+        Assert.assertEquals(key.hashCode(), replacementKey.hashCode());
+    }
+
+    @Test
+    public void testFingerprintCollision() {
+        // NOTE: The strings "Aa" and "BB" have the same hash code
+        final KeyRegistry registry = new KeyRegistry.Builder().build();
+        final Key keyA = registry.intern(createDimensions("Aa"));
+        final Key keyB = registry.intern(createDimensions("BB"));
+
+        Assert.assertNotEquals(keyA, keyB);
+        Assert.assertEquals(new DefaultKey(createDimensions("BB")), keyB);
+        Assert.assertSame(keyA, registry.intern(createDimensions("Aa")));
+        Assert.assertSame(keyB, registry.intern(createDimensions("BB")));
+        Assert.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testDimensionOrder() {
+        final KeyRegistry registry = new KeyRegistry.Builder().build();
+        final Key key = registry.intern(ImmutableMap.of("a", "1", "b", "2"));
+        final Key reorderedKey = registry.intern(ImmutableMap.of("b", "2", "a", "1"));
+
+        Assert.assertEquals(key, reorderedKey);
+        Assert.assertEquals(key.hashCode(), reorderedKey.hashCode());
+        Assert.assertSame(reorderedKey, registry.intern(ImmutableMap.of("b", "2", "a", "1")));
+    }
+
+    private static ImmutableMap<String, String> createDimensions(final String host) {
+        // NOTE: Construct new strings to ensure equality rather than identity
+        return ImmutableMap.of(
+                new String(Key.HOST_DIMENSION_KEY), new String(host),
+                new String(Key.SERVICE_DIMENSION_KEY), new String("MyService"),
+                new String(Key.CLUSTER_DIMENSION_KEY), new String("MyCluster"));
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.sinks;
+
+import com.arpnetworking.tsdcore.model.AggregatedData;
+import com.arpnetworking.tsdcore.model.DefaultKey;
+import com.arpnetworking.tsdcore.model.Key;
+import com.arpnetworking.tsdcore.model.PeriodicData;
+import com.arpnetworking.tsdcore.model.Quantity;
+import com.arpnetworking.tsdcore.model.Unit;
+import com.arpnetworking.tsdcore.statistics.HistogramStatistic;
+import com.arpnetworking.tsdcore.statistics.Statistic;
+import com.arpnetworking.tsdcore.statistics.StatisticFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Benchmarks for serializing <code>PeriodicData</code> into the messages
+ * sent by <code>AggregationServerSink</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AggregationServerSinkBenchmark {
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(SEED);
+        final HistogramStatistic.Histogram histogram = new HistogramStatistic.Histogram();
+        for (int i = 0; i < _histogramSampleCount; ++i) {
+            histogram.recordValue(Math.exp(4 + random.nextGaussian()));
+        }
+        final HistogramStatistic.HistogramSupportingData supportingData = new HistogramStatistic.HistogramSupportingData.Builder()
+                .setHistogramSnapshot(histogram.getSnapshot())
+                .setUnit(Optional.of(Unit.MILLISECOND))
+                .build();
+
+        final ImmutableMultimap.Builder<String, AggregatedData> data = ImmutableMultimap.builder();
+        for (int i = 0; i < METRIC_COUNT; ++i) {
+            final String metricName = "metric_" + i;
+            data.put(metricName, createAggregatedData(COUNT_STATISTIC, _histogramSampleCount, null));
+            data.put(metricName, createAggregatedData(MIN_STATISTIC, 1, null));
+            data.put(metricName, createAggregatedData(MAX_STATISTIC, 1000, null));
+            data.put(metricName, createAggregatedData(MEAN_STATISTIC, 55, null));
+            data.put(metricName, createAggregatedData(HISTOGRAM_STATISTIC, 0, supportingData));
+        }
+        _periodicData = new PeriodicData.Builder()
+                .setDimensions(new DefaultKey(ImmutableMap.of(
+                        Key.HOST_DIMENSION_KEY, "MyHost",
+                        Key.SERVICE_DIMENSION_KEY, "MyService",
+                        Key.CLUSTER_DIMENSION_KEY, "MyCluster")))
+                .setPeriod(Period.minutes(1))
+                .setStart(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC))
+                .setData(data.build())
+                .build();
+    }
+
+    @Benchmark
+    public void serialize(final Blackhole blackhole) {
+        // Each message in a batch of its own
+        blackhole.consume(AggregationServerSink.serialize(_periodicData, 1, _batchSizeHistogram));
+    }
+
+    @Benchmark
+    public void serializeBatch(final Blackhole blackhole) {
+        blackhole.consume(AggregationServerSink.serialize(_periodicData, MAX_BATCH_BYTES, _batchSizeHistogram));
+    }
+
+    private static AggregatedData createAggregatedData(
+            final Statistic statistic,
+            final double value,
+            final Object supportingData) {
+        return new AggregatedData.Builder()
+                .setStatistic(statistic)
+                .setValue(new Quantity.Builder().setValue(value).setUnit(Unit.MILLISECOND).build())
+                .setIsSpecified(true)
+                .setPopulationSize(1000L)
+                .setSupportingData(supportingData)
+                .build();
+    }
+
+    @Param({"100", "10000"})
+    public int _histogramSampleCount;
+    private PeriodicData _periodicData;
+    private final AtomicLongArray _batchSizeHistogram = new AtomicLongArray(16);
+
+    private static final long SEED = 42;
+    private static final int METRIC_COUNT = 20;
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+    private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
+    private static final Statistic COUNT_STATISTIC = STATISTIC_FACTORY.getStatistic("count");
+    private static final Statistic MIN_STATISTIC = STATISTIC_FACTORY.getStatistic("min");
+    private static final Statistic MAX_STATISTIC = STATISTIC_FACTORY.getStatistic("max");
+    private static final Statistic MEAN_STATISTIC = STATISTIC_FACTORY.getStatistic("mean");
+    private static final Statistic HISTOGRAM_STATISTIC = STATISTIC_FACTORY.getStatistic("histogram");
+}
@@ -15,20 +15,36 @@
  */
 package com.arpnetworking.tsdcore.sinks;
 
+import com.arpnetworking.metrics.aggregation.protocol.Messages;
 import com.arpnetworking.test.TestBeanFactory;
+import com.arpnetworking.tsdcore.model.AggregatedData;
+import com.arpnetworking.tsdcore.model.DefaultKey;
+import com.arpnetworking.tsdcore.model.Key;
 import com.arpnetworking.tsdcore.model.PeriodicData;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Sets;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Tests for the <code>AggregationServerSink</code> class.
@@ -108,6 +124,205 @@ public class AggregationServerSinkTest {
         }
     }
 
+    @Test
+    public void testBatchedMessages() throws IOException, InterruptedException {
+        AggregationServerSink sink = null;
+        try {
+            sink = new AggregationServerSink.Builder()
+                    .setName("foo-name")
+                    .setServerAddress("localhost")
+                    .setServerPort(_port)
+                    .setMaxBatchBytes(256)
+                    .build();
+
+            // Enough metrics to span several batches
+            final ImmutableMultimap.Builder<String, AggregatedData> data = ImmutableMultimap.builder();
+            final Set<String> expectedMetrics = Sets.newHashSet();
+            for (int i = 0; i < 20; ++i) {
+                final String metric = "metric-" + i;
+                data.put(metric, TestBeanFactory.createAggregatedData());
+                expectedMetrics.add(metric);
+            }
+            sink.recordAggregateData(TestBeanFactory.createPeriodicDataBuilder().setData(data.build()).build());
+
+            final SocketChannel connectedSocket = listenForConnection(_serverChannel, Duration.standardSeconds(5));
+            connectedSocket.configureBlocking(false);
+
+            // Each length prefixed message is delivered intact regardless of batching
+            final Set<String> actualMetrics = Sets.newHashSet();
+            final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            final DateTime start = DateTime.now();
+            while (actualMetrics.size() < expectedMetrics.size()
+                    && DateTime.now().isBefore(start.plus(Duration.standardSeconds(10)))) {
+                if (connectedSocket.read(buffer) == 0) {
+                    Thread.sleep(20);
+                }
+                buffer.flip();
+                while (buffer.remaining() >= 4 && buffer.remaining() >= buffer.getInt(buffer.position())) {
+                    final int length = buffer.getInt();
+                    final byte type = buffer.get();
+                    final byte[] payload = new byte[length - 5];
+                    buffer.get(payload);
+                    if (type == 0x04) {
+                        actualMetrics.add(Messages.StatisticSetRecord.parseFrom(payload).getMetric());
+                    }
+                }
+                buffer.compact();
+            }
+            Assert.assertEquals(expectedMetrics, actualMetrics);
+        } finally {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        final AggregatedData datum = TestBeanFactory.createAggregatedData();
+        final PeriodicData periodicData = TestBeanFactory.createPeriodicDataBuilder()
+                .setData(ImmutableMultimap.of("metric-a", datum, "metric-b", datum))
+                .build();
+        final AtomicLongArray batchSizeHistogram = new AtomicLongArray(16);
+        final List<Buffer> batches = AggregationServerSink.serialize(periodicData, 1024 * 1024, batchSizeHistogram);
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(1, batchSizeHistogram.get(1));
+
+        // The records written from the shared header match the generated messages
+        final ByteBuffer buffer = ByteBuffer.wrap(batches.get(0).getBytes());
+        for (final String metric : new String[] {"metric-a", "metric-b"}) {
+            final int length = buffer.getInt();
+            Assert.assertEquals(0x04, buffer.get());
+            final byte[] payload = new byte[length - 5];
+            buffer.get(payload);
+            final Messages.StatisticSetRecord.Builder expected = Messages.StatisticSetRecord.newBuilder()
+                    .setMetric(metric)
+                    .setPeriod(periodicData.getPeriod().toString())
+                    .setPeriodStart(periodicData.getStart().toString())
+                    .setCluster(periodicData.getDimensions().getCluster())
+                    .setService(periodicData.getDimensions().getService());
+            for (final Map.Entry<String, String> entry : periodicData.getDimensions().getParameters().entrySet()) {
+                expected.addDimensionsBuilder().setKey(entry.getKey()).setValue(entry.getValue());
+            }
+            expected.addStatisticsBuilder()
+                    .setStatistic(datum.getStatistic().getName())
+                    .setValue(datum.getValue().getValue())
+                    .setUnit(datum.getValue().getUnit().get().toString())
+                    .setUserSpecified(datum.isSpecified());
+            Assert.assertEquals(expected.build(), Messages.StatisticSetRecord.parseFrom(payload));
+        }
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testSerializeLate() throws IOException {
+        final PeriodicData periodicData = TestBeanFactory.createPeriodicDataBuilder()
+                .setData(ImmutableMultimap.of("metric-a", TestBeanFactory.createAggregatedData()))
+                .setIsLate(true)
+                .build();
+        final List<Buffer> batches = AggregationServerSink.serialize(
+                periodicData,
+                1024 * 1024,
+                new AtomicLongArray(16));
+        final ByteBuffer buffer = ByteBuffer.wrap(batches.get(0).getBytes());
+        final byte[] payload = new byte[buffer.getInt() - 5];
+        buffer.get();
+        buffer.get(payload);
+
+        // The late flag is written as a field of its own which is skipped by parsers which do not know it
+        Assert.assertEquals("metric-a", Messages.StatisticSetRecord.parseFrom(payload).getMetric());
+        final CodedInputStream input = CodedInputStream.newInstance(payload);
+        boolean isLate = false;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            if (WireFormat.getTagFieldNumber(tag) == AggregationServerSink.LATE_FIELD_NUMBER) {
+                isLate = input.readBool();
+            } else {
+                input.skipField(tag);
+            }
+        }
+        Assert.assertTrue(isLate);
+    }
+
+    @Test
+    public void testConnectionPool() throws IOException, InterruptedException {
+        AggregationServerSink sink = null;
+        try {
+            sink = new AggregationServerSink.Builder()
+                    .setName("foo-name")
+                    .setServerAddresses(ImmutableList.of("localhost:" + _port))
+                    .setConnections(2)
+                    .build();
+
+            Assert.assertNotNull(listenForConnection(_serverChannel, Duration.standardSeconds(5)));
+            Assert.assertNotNull(listenForConnection(_serverChannel, Duration.standardSeconds(5)));
+        } finally {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
+    @Test
+    public void testConsistentHash() {
+        AggregationServerSink sink = null;
+        try {
+            sink = new AggregationServerSink.Builder()
+                    .setName("foo-name")
+                    .setServerAddresses(
+                            ImmutableList.of("localhost:" + _port, "localhost:" + NEXT_PORT.getAndIncrement()))
+                    .setLoadBalancing(LoadBalancing.CONSISTENT_HASH)
+                    .build();
+
+            // The hash of a key does not depend on the order of its dimensions
+            Assert.assertEquals(
+                    VertxSink.hash(new DefaultKey(ImmutableMap.of("host", "a", "service", "b"))),
+                    VertxSink.hash(new DefaultKey(ImmutableMap.of("service", "b", "host", "a"))));
+
+            // Keys are spread across the servers
+            final Set<Integer> servers = Sets.newHashSet();
+            for (int i = 0; i < 100; ++i) {
+                final int hash = VertxSink.hash(new DefaultKey(ImmutableMap.of("service", "service-" + i)));
+                Assert.assertEquals(sink.selectOnRing(hash), sink.selectOnRing(hash));
+                servers.add(sink.selectOnRing(hash));
+            }
+            Assert.assertEquals(Sets.newHashSet(0, 1), servers);
+        } finally {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
+    @Test
+    public void testConsistentHashIgnoresHost() {
+        AggregationServerSink sink = null;
+        try {
+            sink = new AggregationServerSink.Builder()
+                    .setName("foo-name")
+                    .setServerAddresses(
+                            ImmutableList.of("localhost:" + _port, "localhost:" + NEXT_PORT.getAndIncrement()))
+                    .setLoadBalancing(LoadBalancing.CONSISTENT_HASH)
+                    .build();
+
+            // A series from every host is sent to the same server
+            for (int i = 0; i < 100; ++i) {
+                final int hashA = VertxSink.hash(new DefaultKey(ImmutableMap.of(
+                        Key.HOST_DIMENSION_KEY, "host-a",
+                        Key.SERVICE_DIMENSION_KEY, "service-" + i,
+                        Key.CLUSTER_DIMENSION_KEY, "cluster")));
+                final int hashB = VertxSink.hash(new DefaultKey(ImmutableMap.of(
+                        Key.HOST_DIMENSION_KEY, "host-b",
+                        Key.SERVICE_DIMENSION_KEY, "service-" + i,
+                        Key.CLUSTER_DIMENSION_KEY, "cluster")));
+                Assert.assertEquals(sink.selectOnRing(hashA), sink.selectOnRing(hashB));
+            }
+        } finally {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
     private void spammyWait(final int wait, final AggregationServerSink sink) throws InterruptedException {
         final DateTime start = DateTime.now();
 
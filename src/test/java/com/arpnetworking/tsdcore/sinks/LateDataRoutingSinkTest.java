@@ -0,0 +1,64 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.sinks;
+
+import com.arpnetworking.test.TestBeanFactory;
+import com.arpnetworking.tsdcore.model.PeriodicData;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for the <code>LateDataRoutingSink</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class LateDataRoutingSinkTest {
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testRouteLateData() {
+        final LateDataRoutingSink sink = new LateDataRoutingSink.Builder()
+                .setName("testRouteLateData")
+                .setSink(_sink)
+                .setLateDataSink(_lateDataSink)
+                .build();
+        final PeriodicData onTimeData = TestBeanFactory.createPeriodicData();
+        final PeriodicData lateData = TestBeanFactory.createPeriodicDataBuilder().setIsLate(true).build();
+
+        sink.recordAggregateData(onTimeData);
+        sink.recordAggregateData(lateData);
+        Mockito.verify(_sink).recordAggregateData(onTimeData);
+        Mockito.verify(_sink, Mockito.never()).recordAggregateData(lateData);
+        Mockito.verify(_lateDataSink).recordAggregateData(lateData);
+        Mockito.verify(_lateDataSink, Mockito.never()).recordAggregateData(onTimeData);
+
+        sink.close();
+        Mockito.verify(_sink).close();
+        Mockito.verify(_lateDataSink).close();
+    }
+
+    @Mock
+    private Sink _sink;
+    @Mock
+    private Sink _lateDataSink;
+}
@@ -21,10 +21,14 @@ import com.arpnetworking.tsdcore.model.PeriodicData;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Tests for the <code>MultiSink</code> class.
  *
@@ -69,5 +73,75 @@ public class MultiSinkTest {
         Mockito.verify(mockSinkB).recordAggregateData(periodicData);
     }
 
+    @Test
+    public void testRecordAsync() {
+        final Sink mockSinkA = Mockito.mock(Sink.class, "mockSinkA");
+        final Sink mockSinkB = Mockito.mock(Sink.class, "mockSinkB");
+        final Sink multiSink = _multiSinkBuilder
+                .setSinks(Lists.newArrayList(mockSinkA, mockSinkB))
+                .setQueueSize(10)
+                .build();
+        final PeriodicData periodicData = TestBeanFactory.createPeriodicData();
+        multiSink.recordAggregateData(periodicData);
+        Mockito.verify(mockSinkA, Mockito.timeout(TIMEOUT)).recordAggregateData(periodicData);
+        Mockito.verify(mockSinkB, Mockito.timeout(TIMEOUT)).recordAggregateData(periodicData);
+        multiSink.close();
+        Mockito.verify(mockSinkA).close();
+        Mockito.verify(mockSinkB).close();
+    }
+
+    @Test
+    public void testSlowSinkAsyncDrop() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Sink slowSink = Mockito.mock(Sink.class, "slowSink");
+        final Sink fastSink = Mockito.mock(Sink.class, "fastSink");
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(slowSink).recordAggregateData(Mockito.any());
+        final Sink multiSink = _multiSinkBuilder
+                .setSinks(Lists.newArrayList(slowSink, fastSink))
+                .setQueueSize(1)
+                .setOverflowPolicy(OverflowPolicy.DROP)
+                .build();
+
+        // The first data occupies the slow sink, the second is queued and the third dropped
+        multiSink.recordAggregateData(TestBeanFactory.createPeriodicData());
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Mockito.verify(fastSink, Mockito.timeout(TIMEOUT).times(1)).recordAggregateData(Mockito.any());
+        multiSink.recordAggregateData(TestBeanFactory.createPeriodicData());
+        Mockito.verify(fastSink, Mockito.timeout(TIMEOUT).times(2)).recordAggregateData(Mockito.any());
+        multiSink.recordAggregateData(TestBeanFactory.createPeriodicData());
+
+        // The slow sink does not delay the other sink
+        Mockito.verify(fastSink, Mockito.timeout(TIMEOUT).times(3)).recordAggregateData(Mockito.any());
+
+        // Queued data is recorded before the sink is closed
+        release.countDown();
+        multiSink.close();
+        Mockito.verify(slowSink, Mockito.times(2)).recordAggregateData(Mockito.any());
+        Mockito.verify(slowSink).close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRecordAfterCloseBlockDrops() {
+        final Sink mockSink = Mockito.mock(Sink.class, "mockSink");
+        final Sink multiSink = _multiSinkBuilder
+                .setSinks(Lists.newArrayList(mockSink))
+                .setQueueSize(1)
+                .setOverflowPolicy(OverflowPolicy.BLOCK)
+                .build();
+        multiSink.close();
+
+        // Data recorded after close is dropped rather than blocking on the stopped queue
+        multiSink.recordAggregateData(TestBeanFactory.createPeriodicData());
+        multiSink.recordAggregateData(TestBeanFactory.createPeriodicData());
+        Mockito.verify(mockSink, Mockito.never()).recordAggregateData(Mockito.any());
+    }
+
     private MultiSink.Builder _multiSinkBuilder;
+
+    private static final int TIMEOUT = 5000;
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.sinks;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Tests for the <code>PendingDataQueue</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class PendingDataQueueTest {
+
+    @Before
+    public void setUp() throws IOException {
+        final Path directory = Files.createDirectories(Paths.get("./target/tmp/sinks/PendingDataQueueTest"));
+        _file = directory.resolve("spill.dat");
+        Files.deleteIfExists(_file);
+    }
+
+    @Test
+    public void testEvictOldestWithoutSpillFile() {
+        final PendingDataQueue queue = new PendingDataQueue("test", 10, 10, Optional.empty(), 0);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        Assert.assertEquals(2, queue.getSize());
+        Assert.assertEquals(8, queue.getBytes());
+        Assert.assertEquals("bbbb", queue.poll().toString());
+        Assert.assertEquals("cccc", queue.poll().toString());
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSpillAndReplayInOrder() {
+        final PendingDataQueue queue = new PendingDataQueue("test", 10, 10, Optional.of(_file), 1024);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        queue.offer(buffer("dd"));
+        queue.offer(buffer("eeee"));
+        Assert.assertEquals(2, queue.getSize());
+        Assert.assertEquals(22, queue.getSpilledBytes());
+
+        Assert.assertEquals("aaaa", queue.poll().toString());
+        // Data is spilled behind earlier spilled data even if it fits
+        queue.offer(buffer("ff"));
+        Assert.assertEquals(28, queue.getSpilledBytes());
+        Assert.assertEquals("bbbb", queue.poll().toString());
+        Assert.assertEquals("cccc", queue.poll().toString());
+        Assert.assertEquals("dd", queue.poll().toString());
+        Assert.assertEquals("eeee", queue.poll().toString());
+        Assert.assertEquals("ff", queue.poll().toString());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.getSpilledBytes());
+        queue.close();
+    }
+
+    @Test
+    public void testDropWhenSpillFileFull() {
+        // NOTE: The spill file starts with an eight byte header
+        final PendingDataQueue queue = new PendingDataQueue("test", 1, 1024, Optional.of(_file), 24);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        queue.offer(buffer("dddd"));
+        Assert.assertEquals(16, queue.getSpilledBytes());
+        Assert.assertEquals("aaaa", queue.poll().toString());
+        Assert.assertEquals("bbbb", queue.poll().toString());
+        Assert.assertEquals("cccc", queue.poll().toString());
+        Assert.assertNull(queue.poll());
+        queue.close();
+    }
+
+    @Test
+    public void testRecoverSpilledData() throws IOException {
+        final PendingDataQueue queue = new PendingDataQueue("test", 1, 1024, Optional.of(_file), 1024);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        queue.close();
+
+        // A partially written record is discarded
+        Files.write(_file, new byte[] {0, 0, 0, 8, 'd'}, StandardOpenOption.APPEND);
+
+        final PendingDataQueue recoveredQueue = new PendingDataQueue("test", 1, 1024, Optional.of(_file), 1024);
+        Assert.assertFalse(recoveredQueue.isEmpty());
+        Assert.assertEquals(16, recoveredQueue.getSpilledBytes());
+        recoveredQueue.offer(buffer("eeee"));
+        Assert.assertEquals("bbbb", recoveredQueue.poll().toString());
+        Assert.assertEquals("cccc", recoveredQueue.poll().toString());
+        Assert.assertEquals("eeee", recoveredQueue.poll().toString());
+        Assert.assertTrue(recoveredQueue.isEmpty());
+        recoveredQueue.close();
+        Assert.assertEquals(0, Files.size(_file));
+    }
+
+    @Test
+    public void testRecoverAfterPartialReplay() throws IOException {
+        final PendingDataQueue queue = new PendingDataQueue("test", 2, 1024, Optional.of(_file), 1024);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        queue.offer(buffer("dddd"));
+        queue.offer(buffer("eeee"));
+        Assert.assertEquals("aaaa", queue.poll().toString());
+        Assert.assertEquals("bbbb", queue.poll().toString());
+        Assert.assertEquals("cccc", queue.poll().toString());
+        // The next buffer is replayed but not yet removed from the queue
+        Assert.assertEquals(1, queue.getSize());
+        queue.close();
+
+        // Only the data not yet delivered is replayed
+        final PendingDataQueue recoveredQueue = new PendingDataQueue("test", 2, 1024, Optional.of(_file), 1024);
+        Assert.assertEquals(16, recoveredQueue.getSpilledBytes());
+        Assert.assertEquals("dddd", recoveredQueue.poll().toString());
+        recoveredQueue.close();
+
+        final PendingDataQueue resumedQueue = new PendingDataQueue("test", 2, 1024, Optional.of(_file), 1024);
+        Assert.assertEquals("eeee", resumedQueue.poll().toString());
+        Assert.assertNull(resumedQueue.poll());
+        Assert.assertTrue(resumedQueue.isEmpty());
+        resumedQueue.close();
+        Assert.assertEquals(0, Files.size(_file));
+    }
+
+    @Test
+    public void testSpillFileSizeBounded() throws IOException {
+        // Room for the header and three records
+        final PendingDataQueue queue = new PendingDataQueue("test", 1, 1024, Optional.of(_file), 32);
+        queue.offer(buffer("aaaa"));
+        queue.offer(buffer("bbbb"));
+        queue.offer(buffer("cccc"));
+        queue.offer(buffer("dddd"));
+        Assert.assertEquals(32, Files.size(_file));
+        Assert.assertEquals("aaaa", queue.poll().toString());
+        Assert.assertEquals("bbbb", queue.poll().toString());
+        Assert.assertEquals("cccc", queue.poll().toString());
+
+        // Spilling while replaying reuses the space of the delivered data
+        queue.offer(buffer("eeee"));
+        queue.offer(buffer("ffff"));
+        Assert.assertEquals(24, queue.getSpilledBytes());
+        Assert.assertTrue(Files.size(_file) <= 32);
+        queue.close();
+
+        final PendingDataQueue recoveredQueue = new PendingDataQueue("test", 1, 1024, Optional.of(_file), 32);
+        Assert.assertEquals("dddd", recoveredQueue.poll().toString());
+        Assert.assertEquals("eeee", recoveredQueue.poll().toString());
+        Assert.assertEquals("ffff", recoveredQueue.poll().toString());
+        Assert.assertTrue(recoveredQueue.isEmpty());
+        recoveredQueue.close();
+    }
+
+    private static Buffer buffer(final String data) {
+        return new Buffer(data);
+    }
+
+    private Path _file;
+}
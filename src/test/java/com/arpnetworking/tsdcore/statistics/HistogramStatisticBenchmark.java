@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.tsdcore.statistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for recording values into, snapshotting and computing
+ * percentiles from the <code>Histogram</code> of <code>HistogramStatistic</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HistogramStatisticBenchmark {
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(SEED);
+        _values = new double[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; ++i) {
+            // Log-normal latencies spread the values across many buckets
+            _values[i] = Math.exp(4 + random.nextGaussian());
+        }
+        _histogram = new HistogramStatistic.Histogram();
+        for (int i = 0; i < _recordedValueCount; ++i) {
+            _histogram.recordValue(_values[i % VALUE_COUNT]);
+        }
+        _snapshot = _histogram.getSnapshot();
+    }
+
+    @Benchmark
+    public void recordValue() {
+        _histogram.recordValue(_values[_index]);
+        _index = (_index + 1) % VALUE_COUNT;
+    }
+
+    @Benchmark
+    public HistogramStatistic.HistogramSnapshot recordValueAndSnapshot() {
+        _histogram.recordValue(_values[_index]);
+        _index = (_index + 1) % VALUE_COUNT;
+        return _histogram.getSnapshot();
+    }
+
+    @Benchmark
+    public HistogramStatistic.HistogramSnapshot merge() {
+        final HistogramStatistic.Histogram histogram = new HistogramStatistic.Histogram();
+        histogram.add(_snapshot);
+        histogram.add(_snapshot);
+        return histogram.getSnapshot();
+    }
+
+    @Benchmark
+    public Double percentile() {
+        return _snapshot.getValueAtPercentile(99.9);
+    }
+
+    @Param({"100", "10000"})
+    public int _recordedValueCount;
+    private double[] _values;
+    private HistogramStatistic.Histogram _histogram;
+    private HistogramStatistic.HistogramSnapshot _snapshot;
+    private int _index = 0;
+
+    private static final long SEED = 42;
+    private static final int VALUE_COUNT = 10000;
+}
@@ -201,6 +201,44 @@ public class HistogramStatisticTest {
         Assert.assertEquals(50d, histogram.getValueAtPercentile(100), 1d);
     }
 
+    @Test
+    public void histogramOrderedWithNegativeValues() {
+        final HistogramStatistic.Histogram histogram = new HistogramStatistic.Histogram();
+        for (int x = -50; x < 50; ++x) {
+            histogram.recordValue(x);
+        }
+
+        final HistogramStatistic.HistogramSnapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(100, snapshot.getEntriesCount());
+        Assert.assertEquals(100, snapshot.getBucketsCount());
+        for (int i = 1; i < snapshot.getBucketsCount(); ++i) {
+            Assert.assertTrue(snapshot.getBucketValue(i - 1) < snapshot.getBucketValue(i));
+        }
+        Assert.assertEquals(-50d, snapshot.getValueAtPercentile(0), 0.001d);
+        Assert.assertEquals(-1d, snapshot.getValueAtPercentile(50), 0.001d);
+        Assert.assertEquals(49d, snapshot.getValueAtPercentile(100), 0.001d);
+    }
+
+    @Test
+    public void histogramAddSnapshot() {
+        final HistogramStatistic.Histogram histogram = new HistogramStatistic.Histogram();
+        for (int x = 1; x <= 1000; ++x) {
+            histogram.recordValue(x);
+        }
+        final HistogramStatistic.HistogramSnapshot snapshot = histogram.getSnapshot();
+        Assert.assertSame(snapshot, histogram.getSnapshot());
+
+        histogram.add(snapshot);
+        final HistogramStatistic.HistogramSnapshot merged = histogram.getSnapshot();
+        Assert.assertNotSame(snapshot, merged);
+        Assert.assertEquals(2000, merged.getEntriesCount());
+        Assert.assertEquals(snapshot.getBucketsCount(), merged.getBucketsCount());
+        for (int i = 0; i < merged.getBucketsCount(); ++i) {
+            Assert.assertEquals(snapshot.getBucketValue(i), merged.getBucketValue(i), 0d);
+            Assert.assertEquals(2 * snapshot.getBucketEntriesCount(i), merged.getBucketEntriesCount(i));
+        }
+    }
+
     private static final StatisticFactory STATISTIC_FACTORY = new StatisticFactory();
     private static final HistogramStatistic HISTOGRAM_STATISTIC = (HistogramStatistic) STATISTIC_FACTORY.getStatistic("histogram");
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.utility;
+
+import com.google.common.base.Charsets;
+import org.joda.time.Duration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for the <code>FileWatchTrigger</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class FileWatchTriggerTest {
+
+    @Before
+    public void setUp() throws IOException {
+        final Path directory = Files.createDirectories(Paths.get("./target/tmp/utility/FileWatchTriggerTest"));
+        _file = directory.resolve("file.log");
+        Files.deleteIfExists(_file);
+        Files.createFile(_file);
+    }
+
+    @Test
+    public void testNoChange() throws InterruptedException {
+        try (final FileWatchTrigger trigger = new FileWatchTrigger(_file, Duration.millis(50))) {
+            // The first wait cannot know whether the file changed before it was watched
+            trigger.waitOnTrigger();
+            Assert.assertTrue(trigger.mayHaveChanged());
+            trigger.waitOnTrigger();
+            Assert.assertFalse(trigger.mayHaveChanged());
+        }
+    }
+
+    @Test
+    public void testChange() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final FileWatchTrigger trigger = new FileWatchTrigger(_file, Duration.standardMinutes(1))) {
+            final Future<?> wait = executor.submit(() -> {
+                trigger.waitOnTrigger();
+                return null;
+            });
+
+            // Write until the wait ends since the directory may not be watched yet
+            // NOTE: Some platforms poll for changes rather than receive notifications
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!wait.isDone() && System.currentTimeMillis() < deadline) {
+                Files.write(_file, "data\n".getBytes(Charsets.UTF_8), StandardOpenOption.APPEND);
+                Thread.sleep(INTERVAL);
+            }
+            Assert.assertTrue(wait.isDone());
+            wait.get();
+            Assert.assertTrue(trigger.mayHaveChanged());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Path _file;
+
+    private static final long INTERVAL = 50;
+    private static final long TIMEOUT = 30000;
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.utility;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the <code>PatternMatcher</code> class.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class PatternMatcherTest {
+
+    @Test
+    public void testEmpty() {
+        final PatternMatcher<String> matcher = new PatternMatcher<>(Collections.emptyMap());
+        Assert.assertEquals(Optional.empty(), matcher.match("foo"));
+    }
+
+    @Test
+    public void testLiteral() {
+        final PatternMatcher<String> matcher = new PatternMatcher<>(ImmutableMap.of("foo/bar", "A", "^baz$", "B"));
+        Assert.assertEquals(Optional.of("A"), matcher.match("foo/bar"));
+        Assert.assertEquals(Optional.of("B"), matcher.match("baz"));
+        Assert.assertEquals(Optional.empty(), matcher.match("foo/bar/baz"));
+    }
+
+    @Test
+    public void testPrefix() {
+        final PatternMatcher<String> matcher = new PatternMatcher<>(ImmutableMap.of(
+                "foo/bar/.*", "A",
+                "foo/.*", "B"));
+        Assert.assertEquals(Optional.of("A"), matcher.match("foo/bar/baz"));
+        Assert.assertEquals(Optional.of("A"), matcher.match("foo/bar/"));
+        Assert.assertEquals(Optional.of("B"), matcher.match("foo/baz"));
+        Assert.assertEquals(Optional.empty(), matcher.match("fo"));
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        final PatternMatcher<String> matcher = new PatternMatcher<>(ImmutableMap.of(
+                ".*_latency", "A",
+                "foo/.*", "B",
+                "foo/bar_latency", "C",
+                "(?i)FOO/.*", "D"));
+        Assert.assertEquals(Optional.of("A"), matcher.match("foo/bar_latency"));
+        Assert.assertEquals(Optional.of("B"), matcher.match("foo/bar"));
+        Assert.assertEquals(Optional.of("D"), matcher.match("Foo/bar"));
+    }
+
+    @Test
+    public void testBackReference() {
+        final PatternMatcher<String> matcher = new PatternMatcher<>(ImmutableMap.of(
+                "(a+)b\\1", "A",
+                "(c)d", "B"));
+        Assert.assertEquals(Optional.of("A"), matcher.match("aabaa"));
+        Assert.assertEquals(Optional.empty(), matcher.match("aaba"));
+        Assert.assertEquals(Optional.of("B"), matcher.match("cd"));
+    }
+
+    @Test
+    public void testEquivalentToSequentialEvaluation() {
+        final Map<String, Integer> patterns = ImmutableMap.<String, Integer>builder()
+                .put("exact/name", 0)
+                .put("^foo/.*", 1)
+                .put("foo/bar/.*", 2)
+                .put("ba[rz].*", 3)
+                .put("qux$", 4)
+                .put(".*_count", 5)
+                .put("foo/bar/baz", 6)
+                .build();
+        final PatternMatcher<Integer> matcher = new PatternMatcher<>(patterns);
+        final String[] inputs = {"exact/name", "foo/x", "foo/bar/baz", "bar1", "qux", "x_count", "foo/bar", "zzz", ""};
+        for (final String input : inputs) {
+            Optional<Integer> expected = Optional.empty();
+            for (final Map.Entry<String, Integer> entry : patterns.entrySet()) {
+                if (Pattern.compile(entry.getKey()).matcher(input).matches()) {
+                    expected = Optional.of(entry.getValue());
+                    break;
+                }
+            }
+            Assert.assertEquals("Input: " + input, expected, matcher.match(input));
+        }
+    }
+
+    @Test(expected = java.util.regex.PatternSyntaxException.class)
+    public void testInvalidPattern() {
+        new PatternMatcher<>(ImmutableMap.of("foo[", "A"));
+    }
+}